@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.common.CallbackManager;
+import com.dmdirc.parser.common.DirectCallbackManager;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.WhoisResponseHandler;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares publishing numerics through MBassador with publishing them through
+ * the {@link DirectCallbackManager}. Each manager has a
+ * {@link WhoisResponseHandler} subscribed, whose handlers all have numeric
+ * conditions, and a listener for every numeric.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CallbackManagerBenchmark {
+
+    /** Numerics seen while connecting, none of which are part of a whois. */
+    private static final int[] CONNECTION_NUMERICS = {1, 2, 3, 4, 5, 251, 252, 254, 255, 265,
+            266, 375, 372, 376, 353, 366};
+
+    /** The callback manager to publish through: "mbassador" or "direct". */
+    @Param({"mbassador", "direct"})
+    public String dispatcher;
+
+    /** The manager being measured. */
+    private CallbackManager manager;
+    /** Events for each of the connection numerics. */
+    private NumericEvent[] connectionEvents;
+    /** Events making up a whois reply. */
+    private NumericEvent[] whoisEvents;
+    /** The index of the next connection event to publish. */
+    private int next;
+
+    /**
+     * Creates the manager and subscribes its listeners.
+     *
+     * @throws IOException If the registration sample could not be loaded
+     */
+    @Setup
+    public void setup() throws IOException {
+        final IRCParser parser = new ReplayParser();
+        manager = "direct".equals(dispatcher) ? new DirectCallbackManager(error -> {})
+                : new CallbackManager(error -> {});
+        new WhoisResponseHandler(parser, manager).start();
+        manager.subscribe(this);
+
+        final LocalDateTime date = LocalDateTime.now();
+        connectionEvents = new NumericEvent[CONNECTION_NUMERICS.length];
+        for (int i = 0; i < CONNECTION_NUMERICS.length; i++) {
+            connectionEvents[i] = new NumericEvent(parser, date, CONNECTION_NUMERICS[i],
+                    IRCParser.tokeniseLine(":server " + CONNECTION_NUMERICS[i] + " nick :Text"));
+        }
+        whoisEvents = new NumericEvent[]{
+                new NumericEvent(parser, date, 311, IRCParser.tokeniseLine(
+                        ":server 311 nick other ~ident host.example.com * :Real name")),
+                new NumericEvent(parser, date, 312, IRCParser.tokeniseLine(
+                        ":server 312 nick other irc.example.com :Example server")),
+                new NumericEvent(parser, date, 317, IRCParser.tokeniseLine(
+                        ":server 317 nick other 305 1422561556 :seconds idle, signon time")),
+                new NumericEvent(parser, date, 318, IRCParser.tokeniseLine(
+                        ":server 318 nick other :End of /WHOIS list.")),
+        };
+    }
+
+    /**
+     * Shuts down the manager.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Discards numerics.
+     *
+     * @param event The numeric
+     */
+    @Handler
+    public void handleNumeric(final NumericEvent event) {
+        // Only the cost of dispatching the event is of interest.
+    }
+
+    /**
+     * Publishes one of the numerics seen while connecting.
+     */
+    @Benchmark
+    public void publishNumeric() {
+        manager.publish(connectionEvents[next]);
+        next = (next + 1) % connectionEvents.length;
+    }
+
+    /**
+     * Publishes a complete whois reply, which the whois handler turns into a
+     * further event.
+     */
+    @Benchmark
+    public void publishWhois() {
+        for (NumericEvent event : whoisEvents) {
+            manager.publish(event);
+        }
+    }
+}
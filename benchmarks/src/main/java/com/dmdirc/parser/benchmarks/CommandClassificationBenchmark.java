@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.irc.IRCCommand;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways of classifying lines that {@code IRCParser.processLine}
+ * has used, over the {@link TrafficSample#CONVERSATION conversation sample}.
+ *
+ * <p>{@link #strings()} repeats the original chain of case-insensitive string
+ * comparisons followed by {@link Integer#parseInt}, which throws for every
+ * line that isn't a numeric. The other benchmarks classify each token once
+ * using {@link IRCCommand}, either from the decoded tokens or straight from
+ * the bytes read from the wire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommandClassificationBenchmark {
+
+    /** The sample lines, undecoded. */
+    private ReadLine[] rawLines;
+    /** The sample lines, decoded up front as if they were created from strings. */
+    private ReadLine[] decodedLines;
+
+    /**
+     * Reads the traffic sample.
+     *
+     * @throws IOException If the sample could not be loaded
+     */
+    @Setup
+    public void setup() throws IOException {
+        rawLines = TrafficSample.readLines(TrafficSample.CONVERSATION);
+        decodedLines = TrafficSample.readLines(TrafficSample.CONVERSATION);
+        for (int i = 0; i < decodedLines.length; i++) {
+            decodedLines[i] = new ReadLine(decodedLines[i].getLine(), decodedLines[i].getTokens());
+        }
+    }
+
+    /**
+     * Classifies every line using string comparisons and
+     * {@link Integer#parseInt}.
+     *
+     * @return A value derived from the classifications
+     */
+    @Benchmark
+    public int strings() {
+        int result = 0;
+        for (ReadLine line : decodedLines) {
+            result += classifyWithStrings(line.getTokens());
+        }
+        return result;
+    }
+
+    /**
+     * Classifies every line using {@link IRCCommand} on its decoded tokens.
+     *
+     * @return A value derived from the classifications
+     */
+    @Benchmark
+    public int decodedTokens() {
+        int result = 0;
+        for (ReadLine line : decodedLines) {
+            result += classifyWithCommands(line);
+        }
+        return result;
+    }
+
+    /**
+     * Classifies every line using {@link IRCCommand} on its undecoded bytes.
+     *
+     * @return A value derived from the classifications
+     */
+    @Benchmark
+    public int rawBytes() {
+        int result = 0;
+        for (ReadLine line : rawLines) {
+            result += classifyWithCommands(line);
+        }
+        return result;
+    }
+
+    /**
+     * Classifies a line the way processLine originally did.
+     *
+     * @param token The tokens of the line
+     * @return A value identifying the classification
+     */
+    private static int classifyWithStrings(final String... token) {
+        if ("PING".equalsIgnoreCase(token[0]) || "PING".equalsIgnoreCase(token[1])) {
+            return -2;
+        } else if ("PONG".equalsIgnoreCase(token[0]) || "PONG".equalsIgnoreCase(token[1])) {
+            return -3;
+        } else if ("ERROR".equalsIgnoreCase(token[0])) {
+            return -4;
+        } else if ("TSIRC".equalsIgnoreCase(token[1])) {
+            return -5;
+        } else if ("NOTICE".equalsIgnoreCase(token[0])
+                || token.length > 2 && "NOTICE".equalsIgnoreCase(token[2])) {
+            return -6;
+        }
+
+        try {
+            return Integer.parseInt(token[1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Classifies a line the way processLine now does.
+     *
+     * @param line The line to classify
+     * @return A value identifying the classification
+     */
+    private static int classifyWithCommands(final ReadLine line) {
+        final IRCCommand first = line.getCommand(0);
+        final IRCCommand command = line.getCommand(1);
+        if (first == IRCCommand.PING || command == IRCCommand.PING) {
+            return -2;
+        } else if (first == IRCCommand.PONG || command == IRCCommand.PONG) {
+            return -3;
+        } else if (first == IRCCommand.ERROR) {
+            return -4;
+        } else if (command == IRCCommand.TSIRC) {
+            return -5;
+        } else if (first == IRCCommand.NOTICE
+                || line.getTokenCount() > 2 && line.getCommand(2) == IRCCommand.NOTICE) {
+            return -6;
+        }
+
+        return command == IRCCommand.NUMERIC ? IRCCommand.getNumeric(line.getToken(1)) : -1;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.irc.IRCParser;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of debugging information, with and without a handler
+ * for {@link DebugInfoEvent}s. Without a handler, {@code gc.alloc.rate.norm}
+ * should be zero: nothing is formatted or published.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DebugInfoBenchmark {
+
+    /** Whether a debug handler is subscribed. */
+    @Param({"false", "true"})
+    public boolean subscribed;
+
+    /** The parser raising debugging information. */
+    private IRCParser parser;
+    /** Whether the next mode is being added or removed. */
+    private boolean positive;
+
+    /**
+     * Creates a parser, subscribing a debug handler if required.
+     *
+     * @throws IOException If the registration sample could not be loaded
+     */
+    @Setup
+    public void setup() throws IOException {
+        parser = new ReplayParser();
+        if (subscribed) {
+            parser.getCallbackManager().subscribe(this);
+        }
+    }
+
+    /**
+     * Discards debugging information.
+     *
+     * @param event The debugging information
+     */
+    @Handler
+    public void handleDebugInfo(final DebugInfoEvent event) {
+        // Only the cost of raising the event is of interest.
+    }
+
+    /**
+     * Raises debugging information in the same way as a mode change.
+     */
+    @Benchmark
+    public void modeDebugInfo() {
+        positive = !positive;
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "Set Mode: %c [%s] {Positive: %b}", 'l',
+                "50", positive);
+    }
+
+    /**
+     * Checks whether debugging information would be raised.
+     *
+     * @return True if debugging information would be raised
+     */
+    @Benchmark
+    public boolean isDebugging() {
+        return parser.isDebugging(IRCParser.DEBUG_INFO);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.IRCReader;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IRCReader#readLine()} reading the
+ * {@link TrafficSample#CONVERSATION conversation sample} from a stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IRCReaderBenchmark {
+
+    /** Whether the reader reads the stream a byte at a time, or into a buffer. */
+    @Param({"unbuffered", "buffered"})
+    public String mode;
+
+    /** The reader being measured. */
+    private IRCReader reader;
+
+    /**
+     * Creates a reader over the sample.
+     *
+     * @throws IOException If the sample could not be loaded
+     */
+    @Setup
+    public void setup() throws IOException {
+        final ReplayInputStream stream = new ReplayInputStream(
+                TrafficSample.getBytes(TrafficSample.CONVERSATION));
+        reader = "buffered".equals(mode)
+                ? new IRCReader(stream, new SystemEncoder(), StandardCharsets.UTF_8,
+                        ByteBuffer.allocate(16 * 1024))
+                : new IRCReader(stream, new SystemEncoder(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a line, leaving it undecoded.
+     *
+     * @return The line that was read
+     * @throws IOException Never, as the stream is in memory
+     */
+    @Benchmark
+    public ReadLine readLine() throws IOException {
+        return reader.readLine();
+    }
+
+    /**
+     * Reads a line and decodes all of its tokens, as the parser does.
+     *
+     * @return The tokens of the line that was read
+     * @throws IOException Never, as the stream is in memory
+     */
+    @Benchmark
+    public String[] readAndDecodeLine() throws IOException {
+        return reader.readLine().getTokens();
+    }
+}
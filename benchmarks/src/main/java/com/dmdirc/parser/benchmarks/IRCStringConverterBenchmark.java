@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.irc.IRCEncoding;
+import com.dmdirc.parser.irc.IRCStringConverter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the case mapping done by {@link IRCStringConverter} on nicknames
+ * and channel names, which happens whenever a client or channel is looked up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IRCStringConverterBenchmark {
+
+    /** Names typical of those seen on a network. */
+    private static final String[] NAMES = {
+        "alice", "Bob", "CaRoL[away]", "dave|work", "#dmdirc", "#DMDirc-Dev", "Erin^",
+        "frank{bot}", "grace\\", "HEIDI", "ivan`", "judy~",
+    };
+
+    /** The encoding to use. */
+    @Param({"RFC1459", "STRICT_RFC1459", "ASCII"})
+    public IRCEncoding encoding;
+
+    /** The converter being measured. */
+    private IRCStringConverter converter;
+    /** The upper-case form of each name. */
+    private String[] upperNames;
+    /** The index of the next name to convert. */
+    private int next;
+
+    /**
+     * Creates the converter.
+     */
+    @Setup
+    public void setup() {
+        converter = new IRCStringConverter(encoding);
+        upperNames = new String[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            upperNames[i] = converter.toUpperCase(NAMES[i]);
+        }
+    }
+
+    /**
+     * Converts the next name to lower case.
+     *
+     * @return The lower-case name
+     */
+    @Benchmark
+    public String toLowerCase() {
+        final String name = NAMES[next];
+        next = (next + 1) % NAMES.length;
+        return converter.toLowerCase(name);
+    }
+
+    /**
+     * Compares the next name with its upper-case form.
+     *
+     * @return True if the names are equal, which they always are
+     */
+    @Benchmark
+    public boolean equalsIgnoreCase() {
+        final int index = next;
+        next = (next + 1) % NAMES.length;
+        return converter.equalsIgnoreCase(NAMES[index], upperNames[index]);
+    }
+}
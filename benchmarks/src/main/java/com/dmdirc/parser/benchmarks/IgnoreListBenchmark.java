@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.common.IgnoreList;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IgnoreList#matches(String)}, which is checked against the
+ * host of every message and notice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IgnoreListBenchmark {
+
+    /** Hosts typical of those sending messages. */
+    private static final String[] HOSTS = {
+        "alice!alice@staff.example.com", "bob!~bob@203.0.113.7",
+        "carol!carol@carol.users.example.net", "dave!~dave@198.51.100.23",
+        "grace!~grace@gateway/web/session", "mallory!~m@198.51.100.200",
+    };
+
+    /** The number of patterns in the list. */
+    @Param({"1", "10", "100"})
+    public int patterns;
+
+    /** The list being measured. */
+    private IgnoreList list;
+    /** The index of the next host to check. */
+    private int next;
+
+    /**
+     * Creates an ignore list of simple patterns, with the only matching
+     * pattern at the end.
+     */
+    @Setup
+    public void setup() {
+        list = new IgnoreList();
+        for (int i = 1; i < patterns; i++) {
+            list.addSimple("spammer" + i + "!*@*.example.org");
+        }
+        list.addSimple("*!*@198.51.100.200");
+    }
+
+    /**
+     * Checks the next host against the list.
+     *
+     * @return The index of the matching pattern, or -1
+     */
+    @Benchmark
+    public int matches() {
+        final String host = HOSTS[next];
+        next = (next + 1) % HOSTS.length;
+        return list.matches(host);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.irc.MessageSplitter;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures splitting a large paste into lines that fit within the line
+ * length limit, in a charset measured without encoding (UTF-8) and one that
+ * isn't (UTF-16).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageSplitterBenchmark {
+
+    /** The number of bytes left for each message after the command and prefix. */
+    private static final int BUDGET = 420;
+    /** Words the paste is made of, including some that need formatting or several bytes. */
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over",
+            "lazy", "dogs", "\u0002bold\u0002", "\u000304,12red", "\u000f", "café",
+            "日本語", "😀", "https://example.com/a/long/path?query=1"};
+
+    /** The charset messages are encoded with. */
+    @Param({"UTF-8", "UTF-16"})
+    public String charset;
+
+    /** The splitter being measured. */
+    private MessageSplitter splitter;
+    /** The lines of the paste, each too long to send in one message. */
+    private String[] paste;
+    /** Lines that fit in a single message. */
+    private String[] shortLines;
+
+    /**
+     * Creates the splitter and generates the paste.
+     */
+    @Setup
+    public void setup() {
+        splitter = new MessageSplitter(Charset.forName(charset));
+        final Random random = new Random(42);
+        paste = new String[64];
+        for (int i = 0; i < paste.length; i++) {
+            paste[i] = generate(random, 2000);
+        }
+        shortLines = new String[64];
+        for (int i = 0; i < shortLines.length; i++) {
+            shortLines[i] = generate(random, 100);
+        }
+    }
+
+    /**
+     * Splits every line of a paste of around 128KB.
+     *
+     * @param blackhole Consumes the split lines
+     */
+    @Benchmark
+    public void splitPaste(final Blackhole blackhole) {
+        for (String line : paste) {
+            blackhole.consume(splitter.split(line, BUDGET));
+        }
+    }
+
+    /**
+     * Checks lines that don't need splitting.
+     *
+     * @param blackhole Consumes the lines
+     */
+    @Benchmark
+    public void splitShortLines(final Blackhole blackhole) {
+        for (String line : shortLines) {
+            blackhole.consume(splitter.split(line, BUDGET));
+        }
+    }
+
+    /**
+     * Generates a line of random words.
+     *
+     * @param random The source of randomness
+     * @param length The minimum length of the line
+     * @return The generated line
+     */
+    private static String generate(final Random random, final int length) {
+        final StringBuilder builder = new StringBuilder(length + 64);
+        while (builder.length() < length) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return builder.toString().trim();
+    }
+
+}
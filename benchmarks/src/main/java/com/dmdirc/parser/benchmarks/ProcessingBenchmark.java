@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+import com.dmdirc.parser.irc.ProcessingManager;
+import com.dmdirc.parser.irc.ProcessorNotFoundException;
+import com.dmdirc.parser.irc.processors.IRCProcessor;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the processing of lines by a parser that has registered and
+ * joined the sample channel, from the whole of
+ * {@code IRCParser.processLine} down to individual processors.
+ *
+ * <p>Each operation processes a single line. Lines are replayed in an order
+ * that leaves the parser's state unchanged after each full cycle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessingBenchmark {
+
+    /** The number of clients in the names reply used by {@link #processNames()}. */
+    private static final int NAMES = 200;
+    /** The date given to processors. */
+    private static final LocalDateTime DATE = LocalDateTime.of(2018, 1, 1, 12, 0);
+
+    /** The parser doing the processing. */
+    private ReplayParser parser;
+    /** The parser's processing manager. */
+    private ProcessingManager manager;
+    /** The lines of the conversation sample, as read from the wire. */
+    private ReadLine[] lines;
+    /** The tokens of the conversation sample lines that have a processor. */
+    private String[][] processedTokens;
+    /** The processor for messages. */
+    private IRCProcessor messageProcessor;
+    /** The processor for mode changes. */
+    private IRCProcessor modeProcessor;
+    /** The processor for names replies. */
+    private IRCProcessor namesProcessor;
+    /** A channel message. */
+    private String[] message;
+    /** Channel mode changes that together leave the channel unchanged. */
+    private String[][] modes;
+    /** A names reply and its terminating numeric. */
+    private String[][] names;
+    /** The index of the next line to process. */
+    private int next;
+
+    /**
+     * Prepares a registered parser and the lines for it to process.
+     *
+     * @throws IOException If the samples could not be loaded
+     * @throws ProcessorNotFoundException If the parser is missing a processor
+     */
+    @Setup
+    public void setup() throws IOException, ProcessorNotFoundException {
+        parser = new ReplayParser();
+        parser.replay(new ReadLine("", IRCParser.tokeniseLine(
+                ":dmdirc!dmdirc@host.example.com JOIN #names")));
+        manager = parser.getProcessingManager();
+        lines = TrafficSample.readLines(TrafficSample.CONVERSATION);
+
+        final List<String[]> processed = new ArrayList<>();
+        for (String line : TrafficSample.getLines(TrafficSample.CONVERSATION)) {
+            final String[] tokens = IRCParser.tokeniseLine(line);
+            try {
+                manager.getProcessor(tokens[1]);
+                processed.add(tokens);
+            } catch (ProcessorNotFoundException ex) {
+                // Handled by processLine itself.
+            }
+        }
+        processedTokens = processed.toArray(new String[processed.size()][]);
+
+        messageProcessor = manager.getProcessor("PRIVMSG");
+        modeProcessor = manager.getProcessor("MODE");
+        namesProcessor = manager.getProcessor("353");
+
+        message = IRCParser.tokeniseLine(
+                ":alice!alice@staff.example.com PRIVMSG #dmdirc :morning all");
+        modes = new String[][]{
+                IRCParser.tokeniseLine(":erin!erin@staff.example.com MODE #dmdirc +v carol"),
+                IRCParser.tokeniseLine(":erin!erin@staff.example.com MODE #dmdirc -v carol"),
+        };
+
+        final StringBuilder nicks = new StringBuilder();
+        for (int i = 0; i < NAMES; i++) {
+            nicks.append(i % 10 == 0 ? "@" : i % 4 == 0 ? "+" : "").append("user").append(i)
+                    .append(' ');
+        }
+        names = new String[][]{
+                IRCParser.tokeniseLine(":irc.example.net 353 dmdirc = #names :" + nicks),
+                IRCParser.tokeniseLine(":irc.example.net 366 dmdirc #names :End of /NAMES list."),
+        };
+    }
+
+    /**
+     * Processes the next sample line as if it had just been read.
+     */
+    @Benchmark
+    public void processLine() {
+        parser.replay(lines[next(lines.length)]);
+    }
+
+    /**
+     * Dispatches the next sample line through the processing manager.
+     *
+     * @throws ProcessorNotFoundException Never, as only lines with processors are used
+     */
+    @Benchmark
+    public void processingManager() throws ProcessorNotFoundException {
+        final String[] tokens = processedTokens[next(processedTokens.length)];
+        manager.process(DATE, tokens[1], tokens);
+    }
+
+    /**
+     * Processes a channel message.
+     */
+    @Benchmark
+    public void processMessage() {
+        messageProcessor.process(DATE, "PRIVMSG", message);
+    }
+
+    /**
+     * Processes a channel mode change.
+     */
+    @Benchmark
+    public void processMode() {
+        final String[] tokens = modes[next(modes.length)];
+        modeProcessor.process(DATE, "MODE", tokens);
+    }
+
+    /**
+     * Processes part of a names reply for a large channel.
+     */
+    @Benchmark
+    public void processNames() {
+        final String[] tokens = names[next(names.length)];
+        namesProcessor.process(DATE, tokens[1], tokens);
+    }
+
+    /**
+     * Gets the index of the next item to use, cycling through a fixed number
+     * of items.
+     *
+     * @param length The number of items
+     * @return The index of the next item
+     */
+    private int next(final int length) {
+        final int index = next % length;
+        next = index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import java.io.InputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An input stream that plays the same traffic over and over again, standing
+ * in for a socket so that readers can be benchmarked without any I/O.
+ */
+final class ReplayInputStream extends InputStream {
+
+    /** The traffic to replay. */
+    private final byte[] data;
+    /** The offset of the next byte to return. */
+    private int position;
+
+    /**
+     * Creates a new stream that replays the given traffic.
+     *
+     * @param data The traffic to replay
+     */
+    ReplayInputStream(final byte[] data) {
+        checkArgument(data.length > 0, "Traffic must not be empty");
+        this.data = data.clone();
+    }
+
+    @Override
+    public int read() {
+        final int result = data[position] & 0xff;
+        position = (position + 1) % data.length;
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) {
+        final int count = Math.min(length, data.length - position);
+        System.arraycopy(data, position, buffer, offset, count);
+        position = (position + count) % data.length;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return data.length - position;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.IOException;
+
+/**
+ * A parser that is fed lines directly rather than reading them from a
+ * socket. Anything the parser tries to send is discarded, as it never
+ * connects.
+ */
+final class ReplayParser extends IRCParser {
+
+    /**
+     * Creates a new parser that has already processed the
+     * {@link TrafficSample#REGISTRATION registration sample}, so it is
+     * connected to the network and in the sample channel.
+     *
+     * @throws IOException If the sample could not be loaded
+     */
+    ReplayParser() throws IOException {
+        for (ReadLine line : TrafficSample.readLines(TrafficSample.REGISTRATION)) {
+            replay(line);
+        }
+    }
+
+    /**
+     * Processes a line as if it had been read from the server.
+     *
+     * @param line The line to process
+     */
+    void replay(final ReadLine line) {
+        processLine(line);
+    }
+}
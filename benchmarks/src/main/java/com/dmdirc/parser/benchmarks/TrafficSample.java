@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.benchmarks;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.IRCReader;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides samples of IRC traffic for benchmarks to replay.
+ *
+ * <p>The {@link #REGISTRATION} sample takes a connection through registration
+ * and into a channel. The {@link #CONVERSATION} sample is a typical stretch of
+ * conversation in that channel, which leaves the channel as it found it so
+ * that it can be replayed indefinitely.
+ */
+final class TrafficSample {
+
+    /** The resource holding the registration sample, one line per line. */
+    static final String REGISTRATION = "registration.txt";
+    /** The resource holding the conversation sample, one line per line. */
+    static final String CONVERSATION = "traffic.txt";
+
+    private TrafficSample() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Gets the lines of a sample.
+     *
+     * @param resource The sample to load
+     * @return The lines of the sample, without line endings
+     * @throws IOException If the sample could not be loaded
+     */
+    static String[] getLines(final String resource) throws IOException {
+        return new String(getBytes(resource), StandardCharsets.UTF_8).split("\r\n");
+    }
+
+    /**
+     * Gets a sample as it would be sent by the server, with each line
+     * terminated by CR LF.
+     *
+     * @param resource The sample to load
+     * @return The bytes of the sample
+     * @throws IOException If the sample could not be loaded
+     */
+    static byte[] getBytes(final String resource) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = TrafficSample.class.getResourceAsStream(resource)) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        final byte[] raw = out.toByteArray();
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream(raw.length * 2);
+        for (byte b : raw) {
+            if (b == '\n') {
+                lines.write('\r');
+            }
+            if (b != '\r') {
+                lines.write(b);
+            }
+        }
+        return lines.toByteArray();
+    }
+
+    /**
+     * Reads a sample with an {@link IRCReader}, leaving each line undecoded.
+     *
+     * @param resource The sample to load
+     * @return The lines of the sample
+     * @throws IOException If the sample could not be loaded
+     */
+    static ReadLine[] readLines(final String resource) throws IOException {
+        final IRCReader reader = new IRCReader(new ByteArrayInputStream(getBytes(resource)),
+                new SystemEncoder());
+        final List<ReadLine> lines = new ArrayList<>();
+        ReadLine line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines.toArray(new ReadLine[lines.size()]);
+    }
+}
@@ -23,6 +23,7 @@
 package com.dmdirc.parser.common;
 
 import com.dmdirc.parser.events.ParserErrorEvent;
+import com.dmdirc.parser.events.ParserEvent;
 import com.dmdirc.parser.interfaces.ChannelInfo;
 import com.dmdirc.parser.interfaces.ClientInfo;
 
@@ -34,6 +35,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.engio.mbassy.bus.error.PublicationError;
 
@@ -74,6 +76,9 @@ public abstract class BaseParser extends ThreadedParser {
     /** The callback manager to use for this parser. */
     private CallbackManager callbackManager;
 
+    /** Number of raw data events that were skipped as nothing handled them. */
+    private final AtomicLong elidedDataEvents = new AtomicLong();
+
     /**
      * Creates a new base parser for the specified URI.
      *
@@ -240,4 +245,30 @@ public abstract class BaseParser extends ThreadedParser {
     public void setBindIPv6(final String ip) {
         this.bindIpv6 = ip;
     }
+
+    /**
+     * Checks whether a raw data event of the given type should be raised. Nothing needs to be
+     * built for data that no handler is subscribed to, so such events are counted as elided
+     * instead.
+     *
+     * @param type The type of data event that would be raised.
+     * @return True if the event has handlers and should be raised, false otherwise.
+     */
+    protected boolean isDataHandled(final Class<? extends ParserEvent> type) {
+        if (getCallbackManager().hasHandlers(type)) {
+            return true;
+        }
+        elidedDataEvents.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Gets the number of raw data in and out events that were not raised because nothing was
+     * subscribed to handle them.
+     *
+     * @return The number of elided data events.
+     */
+    public long getElidedDataEvents() {
+        return elidedDataEvents.get();
+    }
 }
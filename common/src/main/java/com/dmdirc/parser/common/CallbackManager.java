@@ -24,10 +24,22 @@ package com.dmdirc.parser.common;
 
 import com.dmdirc.parser.events.ParserEvent;
 
+import com.google.common.collect.MapMaker;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.bus.IMessagePublication;
 import net.engio.mbassy.bus.MBassador;
 import net.engio.mbassy.bus.config.BusConfiguration;
 import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.bus.error.IPublicationErrorHandler;
+import net.engio.mbassy.listener.Handler;
 
 /**
  * Parser Callback Manager.
@@ -35,16 +47,172 @@ import net.engio.mbassy.bus.error.IPublicationErrorHandler;
  */
 public class CallbackManager extends MBassador<ParserEvent> {
 
+    /**
+     * The event types handled by each subscribed listener. Listeners are held
+     * weakly, as the bus may not keep them alive, and compared by identity, as
+     * the bus tracks its subscriptions.
+     */
+    private final Map<Object, Set<Class<?>>> listenerTypes = new MapMaker().weakKeys().makeMap();
+    /** Whether each event type has handlers, cleared whenever listeners change. */
+    private final Map<Class<?>, Boolean> handledTypes = new ConcurrentHashMap<>();
+    /** The buffer events are delivered through, or null to deliver them as they are published. */
+    @Nullable private volatile EventBuffer eventBuffer;
+    /** The handler to report errors to. */
+    private final IPublicationErrorHandler errorHandler;
+
     public CallbackManager(final IPublicationErrorHandler errorHandler) {
         this(new BusConfiguration().addFeature(Feature.SyncPubSub.Default())
                 .addFeature(Feature.AsynchronousHandlerInvocation.Default(1, 1))
                 .addFeature(Feature.AsynchronousMessageDispatch.Default()
                         .setNumberOfMessageDispatchers(1))
-                .addPublicationErrorHandler(errorHandler));
+                .addPublicationErrorHandler(errorHandler), errorHandler);
     }
 
-    protected CallbackManager(final BusConfiguration busConfiguration) {
+    protected CallbackManager(final BusConfiguration busConfiguration,
+            final IPublicationErrorHandler errorHandler) {
         super(busConfiguration);
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public void subscribe(final Object listener) {
+        super.subscribe(listener);
+        final Set<Class<?>> types = getHandledTypes(listener.getClass());
+        synchronized (listenerTypes) {
+            listenerTypes.put(listener, types);
+            handledTypes.clear();
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(final Object listener) {
+        final boolean result = super.unsubscribe(listener);
+        synchronized (listenerTypes) {
+            listenerTypes.remove(listener);
+            handledTypes.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Publishes an event to all handlers that accept it. If an
+     * {@link EventBuffer} is set, the event is queued there instead, unless it
+     * was published by a handler of an earlier event.
+     *
+     * @param message The event to publish
+     * @return The publication, or null if the event was queued
+     */
+    @Override
+    public IMessagePublication publish(final ParserEvent message) {
+        final EventBuffer buffer = eventBuffer;
+        if (buffer == null || buffer.isDeliveryThread()) {
+            return dispatch(message);
+        }
+        buffer.offer(message);
+        return null;
+    }
+
+    /**
+     * Delivers an event to all handlers that accept it, on the current thread.
+     *
+     * @param message The event to deliver
+     * @return The publication
+     */
+    protected IMessagePublication dispatch(final ParserEvent message) {
+        return super.publish(message);
+    }
+
+    /**
+     * Gets the handler that errors raised while delivering events are
+     * reported to.
+     *
+     * @return The error handler
+     */
+    protected IPublicationErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * Gets the buffer that events are delivered through.
+     *
+     * @return The event buffer, or null if events are delivered as they are published
+     */
+    @Nullable
+    public EventBuffer getEventBuffer() {
+        return eventBuffer;
+    }
+
+    /**
+     * Sets a buffer to deliver events through, so that handlers run on the
+     * buffer's own thread rather than holding up the publisher. Any previous
+     * buffer is stopped, but still delivers the events waiting in it.
+     *
+     * @param buffer The buffer to use, which must not have been used before,
+     * or null to deliver events as they are published
+     */
+    public void setEventBuffer(@Nullable final EventBuffer buffer) {
+        if (buffer != null) {
+            buffer.start(this::dispatch, errorHandler);
+        }
+        final EventBuffer previous = eventBuffer;
+        eventBuffer = buffer;
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        setEventBuffer(null);
+        super.shutdown();
+    }
+
+    /**
+     * Checks whether any subscribed listener has a handler for the given type
+     * of event. Events that nobody handles don't need to be created, so this
+     * lets expensive events be skipped entirely.
+     *
+     * <p>Handler conditions are not taken into account, so this may return
+     * true for events that every handler would filter out.
+     *
+     * @param type The type of event
+     * @return True if a handler accepts events of the given type, false otherwise
+     */
+    public boolean hasHandlers(final Class<? extends ParserEvent> type) {
+        final Boolean cached = handledTypes.get(type);
+        if (cached != null) {
+            return cached;
+        }
+
+        synchronized (listenerTypes) {
+            boolean handled = false;
+            for (Set<Class<?>> types : listenerTypes.values()) {
+                for (Class<?> handledType : types) {
+                    handled |= handledType.isAssignableFrom(type);
+                }
+            }
+            handledTypes.put(type, handled);
+            return handled;
+        }
+    }
+
+    /**
+     * Finds the event types handled by a listener's enabled handlers.
+     *
+     * @param listenerClass The class of the listener
+     * @return The parameter types of its handler methods
+     */
+    private static Set<Class<?>> getHandledTypes(final Class<?> listenerClass) {
+        final Set<Class<?>> types = new HashSet<>();
+        for (Class<?> c = listenerClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                final Handler handler = method.getAnnotation(Handler.class);
+                if (handler != null && handler.enabled() && method.getParameterCount() == 1) {
+                    types.add(method.getParameterTypes()[0]);
+                }
+            }
+        }
+        return types;
     }
 
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.ParserEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.engio.mbassy.bus.IMessagePublication;
+import net.engio.mbassy.bus.config.BusConfiguration;
+import net.engio.mbassy.bus.config.Feature;
+import net.engio.mbassy.bus.error.IPublicationErrorHandler;
+
+/**
+ * Callback manager that invokes handlers synchronously, without going through
+ * MBassador. Handlers run on the publishing thread, or on the thread of the
+ * {@link EventBuffer} if one is set.
+ *
+ * <p>Handler methods are resolved to method handles when their listener is
+ * subscribed, and the handlers for each type of event are worked out the
+ * first time it is published. Handlers of {@link NumericEvent}s with a
+ * condition of the form {@code msg.numeric == 311} are routed by numeric,
+ * and other conditions comparing a property of the event with a literal are
+ * evaluated directly; no expression language is involved.
+ *
+ * <p>Every listener is also subscribed to the underlying MBassador bus. While
+ * any listener using features that can't be dispatched this way (such as
+ * filters, asynchronous delivery or more complex conditions) is subscribed,
+ * or if direct dispatch has been turned off, events are published through
+ * the bus alone, so that all handlers still run in order of priority.
+ */
+public class DirectCallbackManager extends CallbackManager {
+
+    /** The handlers for each numeric are cached for numerics below this. */
+    private static final int CACHED_NUMERICS = 1000;
+
+    /** Lock held while listeners are subscribed or unsubscribed. */
+    private final Object lock = new Object();
+    /** Listeners that have been subscribed to the underlying bus. */
+    private final Set<Object> busListeners = Collections.newSetFromMap(new WeakHashMap<>());
+    /** The currently subscribed handlers, replaced whenever listeners change. */
+    private volatile Registry registry = new Registry(new HandlerMethod[0], false);
+    /** Whether handlers are invoked directly when every listener supports it. */
+    private volatile boolean directDispatch = true;
+
+    /**
+     * Creates a new direct callback manager.
+     *
+     * @param errorHandler The handler to report errors to
+     */
+    public DirectCallbackManager(final IPublicationErrorHandler errorHandler) {
+        super(new BusConfiguration().addFeature(Feature.SyncPubSub.Default())
+                .addFeature(Feature.AsynchronousHandlerInvocation.Default(1, 1))
+                .addFeature(Feature.AsynchronousMessageDispatch.Default()
+                        .setNumberOfMessageDispatchers(0))
+                .addPublicationErrorHandler(errorHandler), errorHandler);
+    }
+
+    /**
+     * Gets whether handlers are invoked directly, rather than through
+     * MBassador, when every subscribed listener supports it.
+     *
+     * @return True if direct dispatch is enabled
+     */
+    public boolean isDirectDispatch() {
+        return directDispatch;
+    }
+
+    /**
+     * Sets whether handlers are invoked directly, rather than through
+     * MBassador, when every subscribed listener supports it. This may be
+     * changed at any time.
+     *
+     * @param directDispatch True to invoke handlers directly, false to always
+     * publish events through MBassador
+     */
+    public void setDirectDispatch(final boolean directDispatch) {
+        this.directDispatch = directDispatch;
+    }
+
+    @Override
+    public void subscribe(final Object listener) {
+        final List<HandlerMethod> handlers = HandlerMethod.getHandlers(listener);
+        synchronized (lock) {
+            super.subscribe(listener);
+            if (handlers == null) {
+                busListeners.add(listener);
+                registry = new Registry(registry.handlers, true);
+                return;
+            }
+
+            for (HandlerMethod handler : registry.handlers) {
+                if (handler.getListener() == listener) {
+                    return;
+                }
+            }
+            final List<HandlerMethod> updated = getLiveHandlers(null);
+            updated.addAll(handlers);
+            registry = new Registry(updated.toArray(new HandlerMethod[updated.size()]),
+                    registry.publishToBus);
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(final Object listener) {
+        synchronized (lock) {
+            super.unsubscribe(listener);
+            if (busListeners.remove(listener)) {
+                registry = new Registry(registry.handlers, !busListeners.isEmpty());
+                return true;
+            }
+
+            final List<HandlerMethod> updated = getLiveHandlers(listener);
+            if (updated.size() == registry.handlers.length) {
+                return false;
+            }
+            registry = new Registry(updated.toArray(new HandlerMethod[updated.size()]),
+                    registry.publishToBus);
+            return true;
+        }
+    }
+
+    /**
+     * Gets the subscribed handlers whose listeners still exist.
+     *
+     * @param excluded A listener whose handlers should be left out, or null
+     * @return A new list of the remaining handlers, in subscription order
+     */
+    private List<HandlerMethod> getLiveHandlers(final Object excluded) {
+        final List<HandlerMethod> handlers = new ArrayList<>(registry.handlers.length);
+        for (HandlerMethod handler : registry.handlers) {
+            final Object listener = handler.getListener();
+            if (listener != null && listener != excluded) {
+                handlers.add(handler);
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * Delivers an event to all handlers that accept it, invoking them on the
+     * current thread in order of priority.
+     *
+     * @param message The event to deliver
+     * @return The publication on the underlying bus if the event was
+     * published through it, or null otherwise
+     */
+    @Override
+    protected IMessagePublication dispatch(final ParserEvent message) {
+        final Registry current = registry;
+        if (!directDispatch || current.publishToBus) {
+            return super.dispatch(message);
+        }
+        for (HandlerMethod handler : current.getDispatch(message.getClass()).getHandlers(message)) {
+            handler.invoke(message, getErrorHandler());
+        }
+        return null;
+    }
+
+    @Override
+    public IMessagePublication publishAsync(final ParserEvent message) {
+        throw new UnsupportedOperationException("DirectCallbackManager does not support publishAsync");
+    }
+
+    @Override
+    public IMessagePublication publishAsync(final ParserEvent message, final long timeout,
+            final TimeUnit unit) {
+        throw new UnsupportedOperationException("DirectCallbackManager does not support publishAsync");
+    }
+
+    /**
+     * An immutable set of subscribed handlers, with the dispatches worked out
+     * from them so far.
+     */
+    private static class Registry {
+
+        /** All subscribed handlers, in subscription order. */
+        private final HandlerMethod[] handlers;
+        /** Whether events should be published through the underlying bus instead. */
+        private final boolean publishToBus;
+        /** The dispatch for each type of event published so far. */
+        private final Map<Class<?>, Dispatch> dispatches = new ConcurrentHashMap<>();
+
+        Registry(final HandlerMethod[] handlers, final boolean publishToBus) {
+            this.handlers = handlers;
+            this.publishToBus = publishToBus;
+        }
+
+        /**
+         * Gets the dispatch for a type of event.
+         *
+         * @param type The type of event
+         * @return The dispatch for the type
+         */
+        Dispatch getDispatch(final Class<?> type) {
+            final Dispatch dispatch = dispatches.get(type);
+            return dispatch == null ? dispatches.computeIfAbsent(type, this::createDispatch) : dispatch;
+        }
+
+        private Dispatch createDispatch(final Class<?> type) {
+            final List<HandlerMethod> accepted = new ArrayList<>();
+            for (HandlerMethod handler : handlers) {
+                if (handler.accepts(type)) {
+                    accepted.add(handler);
+                }
+            }
+            // The sort is stable, so handlers of equal priority stay in subscription order
+            accepted.sort(Comparator.comparingInt(HandlerMethod::getPriority).reversed());
+            return new Dispatch(accepted.toArray(new HandlerMethod[accepted.size()]));
+        }
+
+    }
+
+    /**
+     * The handlers for one type of event, in the order they are invoked.
+     */
+    private static class Dispatch {
+
+        /** Every handler of the event type, including those routed by numeric. */
+        private final HandlerMethod[] handlers;
+        /** The handlers not routed by numeric. */
+        private final HandlerMethod[] unrouted;
+        /** The handlers for each numeric, filled in as they are published. */
+        private final AtomicReferenceArray<HandlerMethod[]> numerics;
+
+        Dispatch(final HandlerMethod[] handlers) {
+            this.handlers = handlers;
+            this.unrouted = getHandlers(HandlerMethod.ANY_NUMERIC);
+            this.numerics = unrouted.length == handlers.length
+                    ? null : new AtomicReferenceArray<>(CACHED_NUMERICS);
+        }
+
+        /**
+         * Gets the handlers that an event should be given to.
+         *
+         * @param event The event being published
+         * @return The handlers for the event
+         */
+        HandlerMethod[] getHandlers(final ParserEvent event) {
+            if (numerics == null || !(event instanceof NumericEvent)) {
+                return unrouted;
+            }
+
+            final int numeric = ((NumericEvent) event).getNumeric();
+            if (numeric < 0 || numeric >= CACHED_NUMERICS) {
+                return getHandlers(numeric);
+            }
+            HandlerMethod[] result = numerics.get(numeric);
+            if (result == null) {
+                result = getHandlers(numeric);
+                numerics.set(numeric, result);
+            }
+            return result;
+        }
+
+        /**
+         * Filters the handlers down to those that are not routed by numeric,
+         * or that are routed by the given numeric.
+         *
+         * @param numeric The numeric to include handlers for
+         * @return The matching handlers, in order
+         */
+        private HandlerMethod[] getHandlers(final int numeric) {
+            return Arrays.stream(handlers)
+                    .filter(h -> h.getNumeric() == HandlerMethod.ANY_NUMERIC || h.getNumeric() == numeric)
+                    .toArray(HandlerMethod[]::new);
+        }
+
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.events.DataOutEvent;
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.ParserEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.bus.error.IPublicationErrorHandler;
+import net.engio.mbassy.bus.error.PublicationError;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded ring buffer of events, delivered in the order they were published
+ * by a single thread of their own.
+ *
+ * <p>Publishing to a {@link CallbackManager} that has a buffer only queues the
+ * event, so handlers run without holding up the parser. When the buffer is
+ * full, its {@link OverflowPolicy} decides whether the publisher waits (which,
+ * for a parser's reading thread, pushes back on the server) or low-value
+ * events such as raw data and debugging information are given up.
+ *
+ * <p>As handlers run later than the events they are given, they may see the
+ * parser in a newer state than the event describes.
+ */
+public class EventBuffer {
+
+    /** Events that are dropped or coalesced by default. */
+    public static final Set<Class<? extends ParserEvent>> LOW_VALUE_EVENTS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(DataInEvent.class, DataOutEvent.class,
+                    DebugInfoEvent.class)));
+
+    /** Lock guarding the buffer. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when an event is added. */
+    private final Condition notEmpty = lock.newCondition();
+    /** Signalled when an event is removed. */
+    private final Condition notFull = lock.newCondition();
+    /** The waiting events, starting at {@link #head}. */
+    private final ParserEvent[] events;
+    /** What to do with events published while the buffer is full. */
+    private final OverflowPolicy policy;
+    /** Types of events that may be dropped or coalesced. */
+    private final Set<Class<? extends ParserEvent>> lowValueEvents;
+    /** Factory for the delivery thread, or null to use a plain thread. */
+    @Nullable private final ThreadFactory threadFactory;
+    /** Number of events that have been dropped. */
+    private final AtomicLong dropped = new AtomicLong();
+    /** Number of events that have been coalesced into a waiting event. */
+    private final AtomicLong coalesced = new AtomicLong();
+    /** Number of events that have been delivered. */
+    private final AtomicLong delivered = new AtomicLong();
+    /** Total time spent in handlers, in nanoseconds. */
+    private final LongAdder handlerNanos = new LongAdder();
+    /** Longest time spent handling a single event, in nanoseconds. */
+    private volatile long maxHandlerNanos;
+    /** Index of the oldest waiting event. */
+    private int head;
+    /** Number of waiting events. */
+    private int size;
+    /** Highest number of events that have been waiting at once. */
+    private int maxSize;
+    /** Whether the buffer is accepting events. */
+    private boolean running;
+    /** The thread delivering events, or null if delivery hasn't started. */
+    private volatile Thread thread;
+
+    /**
+     * Creates a new event buffer that treats {@link #LOW_VALUE_EVENTS} as low
+     * value, and delivers events on a plain thread.
+     *
+     * @param capacity The maximum number of events that may be waiting
+     * @param policy What to do with events published while the buffer is full
+     */
+    public EventBuffer(final int capacity, final OverflowPolicy policy) {
+        this(capacity, policy, LOW_VALUE_EVENTS, null);
+    }
+
+    /**
+     * Creates a new event buffer.
+     *
+     * @param capacity The maximum number of events that may be waiting
+     * @param policy What to do with events published while the buffer is full
+     * @param lowValueEvents Types of events that may be dropped or coalesced
+     * @param threadFactory Factory for the delivery thread, or null to use a plain thread
+     */
+    public EventBuffer(final int capacity, final OverflowPolicy policy,
+            final Set<Class<? extends ParserEvent>> lowValueEvents,
+            @Nullable final ThreadFactory threadFactory) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.events = new ParserEvent[capacity];
+        this.policy = checkNotNull(policy);
+        this.lowValueEvents = checkNotNull(lowValueEvents);
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Starts delivering events.
+     *
+     * @param target The consumer to deliver events to
+     * @param errorHandler The handler to report exceptions thrown by the consumer to
+     */
+    void start(final Consumer<ParserEvent> target, final IPublicationErrorHandler errorHandler) {
+        lock.lock();
+        try {
+            if (thread != null) {
+                throw new IllegalStateException("Event buffer has already been started");
+            }
+            running = true;
+            final Runnable runnable = () -> deliver(target, errorHandler);
+            final Thread newThread = threadFactory == null
+                    ? new Thread(runnable, "Parser Event Delivery") : threadFactory.newThread(runnable);
+            newThread.setDaemon(true);
+            thread = newThread;
+            newThread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events. Events that are already waiting are still
+     * delivered.
+     */
+    void stop() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Determines whether the current thread is the one delivering events.
+     * Events published by handlers should be delivered straight away, as the
+     * buffer may be waiting on them to make space.
+     *
+     * @return True if called from the delivery thread, false otherwise
+     */
+    boolean isDeliveryThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Adds an event to the buffer, applying the overflow policy if it is full.
+     * Events are dropped if the buffer has been stopped, or if the publishing
+     * thread is interrupted while waiting for space.
+     *
+     * @param event The event to add
+     */
+    void offer(final ParserEvent event) {
+        lock.lock();
+        try {
+            while (size == events.length || !running) {
+                if (!running) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (policy != OverflowPolicy.BLOCK && isLowValue(event)) {
+                    if (policy == OverflowPolicy.DROP) {
+                        dropped.incrementAndGet();
+                        return;
+                    } else if (coalesce(event)) {
+                        coalesced.incrementAndGet();
+                        return;
+                    }
+                }
+                try {
+                    notFull.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+            events[(head + size) % events.length] = event;
+            size++;
+            maxSize = Math.max(maxSize, size);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Determines whether an event may be dropped or coalesced.
+     *
+     * @param event The event
+     * @return True if the event is of a low value type
+     */
+    private boolean isLowValue(final ParserEvent event) {
+        for (Class<? extends ParserEvent> type : lowValueEvents) {
+            if (type.isInstance(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the newest waiting event of the same class as the given event,
+     * and adds the given event to the end of the buffer in its place, so that
+     * it is still delivered after every event published before it. Must be
+     * called with the lock held.
+     *
+     * @param event The event to coalesce
+     * @return True if a waiting event was replaced, false if there was none
+     */
+    private boolean coalesce(final ParserEvent event) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (events[(head + i) % events.length].getClass() == event.getClass()) {
+                for (int j = i; j < size - 1; j++) {
+                    events[(head + j) % events.length] = events[(head + j + 1) % events.length];
+                }
+                events[(head + size - 1) % events.length] = event;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the oldest waiting event, waiting for one if necessary.
+     *
+     * @return The event, or null if the buffer has stopped and is empty
+     */
+    @Nullable
+    private ParserEvent take() {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            final ParserEvent event = events[head];
+            events[head] = null;
+            head = (head + 1) % events.length;
+            size--;
+            notFull.signal();
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delivers events until the buffer is stopped. Any runtime exception thrown
+     * while delivering an event is reported, and delivery carries on with the next
+     * event, so that publishers waiting for space are not left blocked.
+     *
+     * @param target The consumer to deliver events to
+     * @param errorHandler The handler to report exceptions thrown by the consumer to
+     */
+    private void deliver(final Consumer<ParserEvent> target,
+            final IPublicationErrorHandler errorHandler) {
+        ParserEvent event = take();
+        while (event != null) {
+            final long start = System.nanoTime();
+            try {
+                target.accept(event);
+            } catch (RuntimeException ex) {
+                errorHandler.handleError(new PublicationError(ex,
+                        "Error during delivery of buffered event").setPublishedMessage(event));
+            }
+            final long elapsed = System.nanoTime() - start;
+            handlerNanos.add(elapsed);
+            if (elapsed > maxHandlerNanos) {
+                maxHandlerNanos = elapsed;
+            }
+            delivered.incrementAndGet();
+            event = take();
+        }
+    }
+
+    /**
+     * Gets the maximum number of events that may be waiting.
+     *
+     * @return The capacity of the buffer
+     */
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Gets the number of events currently waiting to be delivered.
+     *
+     * @return The depth of the buffer
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the highest number of events that have been waiting at once.
+     *
+     * @return The maximum depth of the buffer
+     */
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events that were dropped, either by the overflow
+     * policy or because the buffer had stopped.
+     *
+     * @return The number of dropped events
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of events that replaced a waiting event of the same type.
+     *
+     * @return The number of coalesced events
+     */
+    public long getCoalescedEvents() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the number of events that have been delivered.
+     *
+     * @return The number of delivered events
+     */
+    public long getDeliveredEvents() {
+        return delivered.get();
+    }
+
+    /**
+     * Gets the total time handlers have spent handling delivered events.
+     *
+     * @return The total handler time, in nanoseconds
+     */
+    public long getHandlerNanos() {
+        return handlerNanos.sum();
+    }
+
+    /**
+     * Gets the longest time handlers have spent handling a single event.
+     *
+     * @return The maximum handler time, in nanoseconds
+     */
+    public long getMaxHandlerNanos() {
+        return maxHandlerNanos;
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.NumericEvent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.engio.mbassy.bus.error.IPublicationErrorHandler;
+import net.engio.mbassy.bus.error.PublicationError;
+import net.engio.mbassy.listener.Enveloped;
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Invoke;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+import net.engio.mbassy.listener.Synchronized;
+
+/**
+ * A single {@link Handler} method of a subscribed listener, resolved to a
+ * method handle so it can be invoked without reflection.
+ */
+class HandlerMethod {
+
+    /** Value of {@link #numeric} for handlers that are not routed by numeric. */
+    static final int ANY_NUMERIC = -1;
+
+    /** Conditions that can be evaluated without an expression language. */
+    private static final Pattern CONDITION = Pattern.compile(
+            "\\s*msg\\.(\\w+)\\s*(==|!=|\\beq\\b|\\bne\\b)\\s*(-?\\d+|'[^']*'|\"[^\"]*\"|true|false|null)\\s*");
+    /** The type all handler invokers are adapted to. */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class,
+            Object.class);
+    /** The type all property getters are adapted to. */
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /** The annotated method. */
+    private final Method method;
+    /** The listener, if it is held strongly. */
+    private final Object strongListener;
+    /** The listener, if it is held weakly. */
+    private final WeakReference<Object> weakListener;
+    /** Handle that invokes the method on a listener. */
+    private final MethodHandle invoker;
+    /** The type of event accepted by the method. */
+    private final Class<?> eventType;
+    /** Whether only events of exactly {@link #eventType} are accepted. */
+    private final boolean rejectSubtypes;
+    /** The priority of the handler; higher priorities are invoked first. */
+    private final int priority;
+    /** The numeric this handler is routed by, or {@link #ANY_NUMERIC}. */
+    private final int numeric;
+    /** The condition events must meet, or null if there is none. */
+    private final Predicate<Object> condition;
+
+    private HandlerMethod(final Method method, final Object listener, final boolean strong,
+            final MethodHandle invoker, final int numeric, final Predicate<Object> condition) {
+        final Handler handler = method.getAnnotation(Handler.class);
+        this.method = method;
+        this.strongListener = strong ? listener : null;
+        this.weakListener = strong ? null : new WeakReference<>(listener);
+        this.invoker = invoker;
+        this.eventType = method.getParameterTypes()[0];
+        this.rejectSubtypes = handler.rejectSubtypes();
+        this.priority = handler.priority();
+        this.numeric = numeric;
+        this.condition = condition;
+    }
+
+    /**
+     * Gets the listener this handler belongs to.
+     *
+     * @return The listener, or null if it was held weakly and has been collected
+     */
+    Object getListener() {
+        return weakListener == null ? strongListener : weakListener.get();
+    }
+
+    /**
+     * Gets the priority of this handler. Handlers with higher priorities are
+     * invoked first.
+     *
+     * @return This handler's priority
+     */
+    int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets the numeric that this handler is routed by.
+     *
+     * @return The numeric this handler accepts, or {@link #ANY_NUMERIC}
+     */
+    int getNumeric() {
+        return numeric;
+    }
+
+    /**
+     * Checks whether this handler accepts events of the given type.
+     *
+     * @param type The type of event
+     * @return True if this handler should be given events of the type
+     */
+    boolean accepts(final Class<?> type) {
+        return rejectSubtypes ? eventType == type : eventType.isAssignableFrom(type);
+    }
+
+    /**
+     * Invokes this handler with an event, if its listener still exists and
+     * the event meets its condition. Anything thrown by the handler is passed
+     * to the error handler, wrapped in an {@link InvocationTargetException} as
+     * MBassador does.
+     *
+     * @param event The event to handle
+     * @param errorHandler The handler to report errors to
+     */
+    void invoke(final Object event, final IPublicationErrorHandler errorHandler) {
+        final Object listener = getListener();
+        if (listener == null) {
+            return;
+        }
+        try {
+            if (condition == null || condition.test(event)) {
+                invoker.invokeExact(listener, event);
+            }
+        } catch (Throwable ex) {
+            errorHandler.handleError(new PublicationError(new InvocationTargetException(ex),
+                    "Error during invocation of message handler")
+                    .setHandler(method)
+                    .setListener(listener)
+                    .setPublishedMessage(event));
+        }
+    }
+
+    /**
+     * Resolves the handler methods of a listener.
+     *
+     * <p>Only the features of {@link Handler} that can be dispatched
+     * synchronously are supported: priorities, subtype rejection and
+     * conditions comparing a single property of the event with a literal. If
+     * any handler uses anything else (filters, asynchronous delivery,
+     * envelopes, synchronisation or a more complex condition), null is
+     * returned and the listener should be left to MBassador.
+     *
+     * @param listener The listener to resolve handlers for
+     * @return The listener's handlers, or null if they are not all supported
+     */
+    static List<HandlerMethod> getHandlers(final Object listener) {
+        final Listener annotation = listener.getClass().getAnnotation(Listener.class);
+        final boolean strong = annotation != null && annotation.references() == References.Strong;
+
+        final List<HandlerMethod> handlers = new ArrayList<>();
+        final Set<String> overridden = new HashSet<>();
+        for (Class<?> c = listener.getClass(); c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.isBridge() || method.isSynthetic() || !overridden.add(getSignature(method))) {
+                    continue;
+                }
+                final Handler handler = method.getAnnotation(Handler.class);
+                if (handler == null || !handler.enabled() || method.getParameterCount() != 1) {
+                    continue;
+                }
+                if (handler.filters().length > 0 || handler.delivery() != Invoke.Synchronously
+                        || method.isAnnotationPresent(Enveloped.class)
+                        || method.isAnnotationPresent(Synchronized.class)) {
+                    return null;
+                }
+                final HandlerMethod resolved = resolve(method, handler, listener, strong);
+                if (resolved == null) {
+                    return null;
+                }
+                handlers.add(resolved);
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * Resolves a single handler method.
+     *
+     * @param method The method to resolve
+     * @param handler The method's handler annotation
+     * @param listener The listener the method belongs to
+     * @param strong Whether the listener should be held strongly
+     * @return The resolved handler, or null if its condition isn't supported
+     */
+    private static HandlerMethod resolve(final Method method, final Handler handler,
+            final Object listener, final boolean strong) {
+        final Class<?> eventType = method.getParameterTypes()[0];
+        final String expression = handler.condition().trim();
+        int numeric = ANY_NUMERIC;
+        Predicate<Object> condition = null;
+
+        try {
+            if (!expression.isEmpty()) {
+                final Matcher matcher = CONDITION.matcher(expression);
+                if (!matcher.matches()) {
+                    return null;
+                }
+                final String property = matcher.group(1);
+                final boolean equal = "==".equals(matcher.group(2)) || "eq".equals(matcher.group(2));
+                final String literal = matcher.group(3);
+                if (equal && "numeric".equals(property) && Character.isDigit(literal.charAt(0))
+                        && NumericEvent.class.isAssignableFrom(eventType)) {
+                    numeric = Integer.parseInt(literal);
+                } else {
+                    final MethodHandle getter = getGetter(eventType, property);
+                    if (getter == null) {
+                        return null;
+                    }
+                    condition = getCondition(getter, getValue(literal), equal);
+                }
+            }
+
+            method.setAccessible(true);
+            final MethodHandle invoker = MethodHandles.lookup().unreflect(method).asType(INVOKER_TYPE);
+            return new HandlerMethod(method, listener, strong, invoker, numeric, condition);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the public getter for a property of an event.
+     *
+     * @param eventType The type of event
+     * @param property The name of the property
+     * @return A handle for the getter, or null if there is none
+     * @throws IllegalAccessException If the getter can't be accessed
+     */
+    private static MethodHandle getGetter(final Class<?> eventType, final String property)
+            throws IllegalAccessException {
+        final String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                final Method getter = eventType.getMethod(prefix + suffix);
+                getter.setAccessible(true);
+                return MethodHandles.lookup().unreflect(getter).asType(GETTER_TYPE);
+            } catch (NoSuchMethodException ex) {
+                // Try the next prefix
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a literal from a condition.
+     *
+     * @param literal The literal, as written in the condition
+     * @return The literal's value
+     */
+    private static Object getValue(final String literal) {
+        if ("null".equals(literal)) {
+            return null;
+        } else if ("true".equals(literal) || "false".equals(literal)) {
+            return Boolean.valueOf(literal);
+        } else if (literal.charAt(0) == '\'' || literal.charAt(0) == '"') {
+            return literal.substring(1, literal.length() - 1);
+        } else {
+            return Long.valueOf(literal);
+        }
+    }
+
+    /**
+     * Creates a condition comparing a property with a value, coercing the
+     * property to the value's type as the expression language would.
+     *
+     * @param getter Handle for the property's getter
+     * @param value The value to compare with
+     * @param equal True if the property must equal the value, false if it must not
+     * @return A predicate implementing the condition
+     */
+    private static Predicate<Object> getCondition(final MethodHandle getter, final Object value,
+            final boolean equal) {
+        return event -> {
+            final Object property;
+            try {
+                property = getter.invokeExact(event);
+            } catch (Throwable ex) {
+                throw new IllegalStateException("Unable to evaluate handler condition", ex);
+            }
+            final boolean matches;
+            if (value instanceof Long) {
+                matches = property instanceof Number && ((Number) property).longValue() == (Long) value;
+            } else if (value instanceof String) {
+                matches = property != null && value.equals(property.toString());
+            } else {
+                matches = Objects.equals(value, property);
+            }
+            return matches == equal;
+        };
+    }
+
+    /**
+     * Gets a signature for a method that is shared by the methods overriding it.
+     *
+     * @param method The method
+     * @return The method's name and parameter types
+     */
+    private static String getSignature(final Method method) {
+        final StringBuilder signature = new StringBuilder(method.getName());
+        for (Class<?> type : method.getParameterTypes()) {
+            signature.append(',').append(type.getName());
+        }
+        return signature.toString();
+    }
+
+}
@@ -24,6 +24,10 @@ package com.dmdirc.parser.common;
 
 import com.dmdirc.parser.interfaces.Parser;
 
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
+
 /**
  * This class represents a Parser that runs inside a thread (which should be
  * most parsers!)
@@ -34,12 +38,15 @@ public abstract class ThreadedParser implements Parser {
     protected Thread controlThread;
     /** Object to use to lock access to {@link #controlThread}. */
     protected final Object controlThreadLock = new Object();
+    /** Factory used to create the control thread, or null to use a platform thread. */
+    private ThreadFactory threadFactory;
 
     @Override
     public void connect() {
         synchronized (controlThreadLock) {
             if (controlThread == null) {
-                controlThread = new Thread(this::run, "Parser Thread");
+                controlThread = threadFactory == null ? new Thread(this::run, "Parser Thread")
+                        : threadFactory.newThread(this::run);
                 controlThread.start();
             } else {
                 // To ensure correct internal state, parsers must be recreated for
@@ -58,6 +65,29 @@ public abstract class ThreadedParser implements Parser {
         }
     }
 
+    /**
+     * Gets the factory used to create this parser's threads.
+     *
+     * @return The thread factory, or null if platform threads are created directly
+     */
+    @Nullable
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory used to create this parser's threads. This must be called before
+     * {@link #connect()} to have any effect on the control thread.
+     *
+     * <p>Passing {@link VirtualThreads#factory(String)} allows large numbers of parsers to
+     * use blocking I/O without each holding a platform thread.
+     *
+     * @param threadFactory The thread factory to use, or null to create platform threads
+     */
+    public void setThreadFactory(@Nullable final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
     /**
      * Get the control thread instance if one exists.
      *
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides access to virtual threads on runtimes that support them (Java 21 and later).
+ *
+ * <p>The parser is built for older runtimes, so virtual threads are created reflectively
+ * rather than through the {@code Thread.ofVirtual()} API directly.
+ */
+public final class VirtualThreads {
+
+    /** The {@code Thread.ofVirtual()} method, or null if not supported. */
+    private static final Method OF_VIRTUAL;
+    /** The {@code Thread.Builder.name(String, long)} method, or null if not supported. */
+    private static final Method NAME;
+    /** The {@code Thread.Builder.factory()} method, or null if not supported. */
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+            // Virtual threads aren't supported by this runtime.
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+        // Shouldn't be instantiated.
+    }
+
+    /**
+     * Determines whether the current runtime supports virtual threads.
+     *
+     * @return True if virtual threads are supported, false otherwise
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory for virtual threads. Threads are named with the given prefix followed
+     * by an increasing number.
+     *
+     * @param prefix The prefix to use when naming threads
+     * @return A thread factory that creates virtual threads
+     * @throws UnsupportedOperationException If the runtime doesn't support virtual threads
+     */
+    public static ThreadFactory factory(final String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+
+        try {
+            final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", ex);
+        }
+    }
+
+}
@@ -40,6 +40,40 @@ public class DataInEvent extends ParserEvent {
         this.data = checkNotNull(data);
     }
 
+    /**
+     * Creates a new event for data received at the given time.
+     *
+     * @param parser The parser that received the data
+     * @param timestamp The time the data was received, in milliseconds since the epoch
+     * @param data The data that was received
+     */
+    public DataInEvent(final Parser parser, final long timestamp, final String data) {
+        super(parser, timestamp);
+        this.data = checkNotNull(data);
+    }
+
+    /**
+     * Creates a new event whose data is supplied lazily by overriding {@link #getData()}.
+     *
+     * @param parser The parser that received the data
+     * @param date The date the data was received
+     */
+    protected DataInEvent(final Parser parser, final LocalDateTime date) {
+        super(parser, date);
+        this.data = null;
+    }
+
+    /**
+     * Creates a new event whose data is supplied lazily by overriding {@link #getData()}.
+     *
+     * @param parser The parser that received the data
+     * @param timestamp The time the data was received, in milliseconds since the epoch
+     */
+    protected DataInEvent(final Parser parser, final long timestamp) {
+        super(parser, timestamp);
+        this.data = null;
+    }
+
     public String getData() {
         return data;
     }
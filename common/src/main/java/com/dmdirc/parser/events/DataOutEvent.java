@@ -40,6 +40,18 @@ public class DataOutEvent extends ParserEvent {
         this.data = checkNotNull(data);
     }
 
+    /**
+     * Creates a new event for data sent at the given time.
+     *
+     * @param parser The parser sending the data
+     * @param timestamp The time the data was sent, in milliseconds since the epoch
+     * @param data The data being sent
+     */
+    public DataOutEvent(final Parser parser, final long timestamp, final String data) {
+        super(parser, timestamp);
+        this.data = checkNotNull(data);
+    }
+
     public String getData() {
         return data;
     }
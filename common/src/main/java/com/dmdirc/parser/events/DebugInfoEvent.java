@@ -43,6 +43,21 @@ public class DebugInfoEvent extends ParserEvent {
         this.data = checkNotNull(data);
     }
 
+    /**
+     * Creates a new debug event raised at the given time.
+     *
+     * @param parser The parser raising the event
+     * @param timestamp The time of the event, in milliseconds since the epoch
+     * @param level The debugging level
+     * @param data The debugging information
+     */
+    public DebugInfoEvent(final Parser parser, final long timestamp, final int level,
+            final String data) {
+        super(parser, timestamp);
+        this.level = level;
+        this.data = checkNotNull(data);
+    }
+
     public int getLevel() {
         return level;
     }
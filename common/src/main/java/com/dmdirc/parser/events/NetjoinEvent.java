@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.events;
+
+import com.dmdirc.parser.interfaces.ChannelClientInfo;
+import com.dmdirc.parser.interfaces.ChannelInfo;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Called once per channel when a netjoin has finished, with every user who
+ * rejoined the channel because of it.
+ */
+public class NetjoinEvent extends ChannelEvent {
+
+    private final String server;
+    private final String remoteServer;
+    private final Collection<ChannelClientInfo> clients;
+
+    public NetjoinEvent(final Parser parser, final LocalDateTime date, final ChannelInfo channel,
+            final String server, final String remoteServer,
+            final Collection<? extends ChannelClientInfo> clients) {
+        super(parser, date, channel);
+        this.server = checkNotNull(server);
+        this.remoteServer = checkNotNull(remoteServer);
+        this.clients = Collections.unmodifiableCollection(new ArrayList<>(clients));
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getRemoteServer() {
+        return remoteServer;
+    }
+
+    public Collection<ChannelClientInfo> getClients() {
+        return clients;
+    }
+}
@@ -24,29 +24,67 @@ package com.dmdirc.parser.events;
 
 import com.dmdirc.parser.interfaces.Parser;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Base class for events emitted by a {@link Parser}.
+ *
+ * <p>Events may be created with either a date or a timestamp. Whichever was
+ * not supplied is only computed, using the system default time zone, if it
+ * is asked for.
  */
 public abstract class ParserEvent {
 
+    /** Value of {@link #timestamp} for events created with a date. */
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
     private final Parser parser;
-    private final LocalDateTime date;
+    private final long timestamp;
+    private volatile LocalDateTime date;
 
     public ParserEvent(final Parser parser, final LocalDateTime date) {
         this.parser = checkNotNull(parser);
+        this.timestamp = NO_TIMESTAMP;
         this.date = checkNotNull(date);
     }
 
+    /**
+     * Creates a new event that happened at the given time.
+     *
+     * @param parser The parser that raised the event
+     * @param timestamp The time of the event, in milliseconds since the epoch
+     */
+    public ParserEvent(final Parser parser, final long timestamp) {
+        this.parser = checkNotNull(parser);
+        this.timestamp = timestamp;
+    }
+
     public Parser getParser() {
         return parser;
     }
 
     public LocalDateTime getDate() {
-        return date;
+        LocalDateTime result = date;
+        if (result == null) {
+            result = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+            date = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the time of the event.
+     *
+     * @return The time of the event, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp == NO_TIMESTAMP
+                ? date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : timestamp;
     }
 
 }
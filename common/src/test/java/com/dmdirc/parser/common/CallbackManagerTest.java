@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.events.QuitEvent;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CallbackManagerTest {
+
+    private final CallbackManager manager = new CallbackManager(error -> {});
+
+    @Test
+    public void testNoHandlers() {
+        assertFalse(manager.hasHandlers(DebugInfoEvent.class));
+    }
+
+    @Test
+    public void testSubscribeAndUnsubscribe() {
+        final DebugListener listener = new DebugListener();
+
+        manager.subscribe(listener);
+        assertTrue(manager.hasHandlers(DebugInfoEvent.class));
+        assertFalse(manager.hasHandlers(QuitEvent.class));
+
+        manager.unsubscribe(listener);
+        assertFalse(manager.hasHandlers(DebugInfoEvent.class));
+    }
+
+    @Test
+    public void testSupertypeHandlers() {
+        manager.subscribe(new AllEventsListener());
+
+        assertTrue(manager.hasHandlers(DebugInfoEvent.class));
+        assertTrue(manager.hasHandlers(QuitEvent.class));
+    }
+
+    @Test
+    public void testInheritedAndDisabledHandlers() {
+        manager.subscribe(new DisabledListener());
+        assertFalse(manager.hasHandlers(QuitEvent.class));
+        assertTrue(manager.hasHandlers(DebugInfoEvent.class));
+    }
+
+    @Test
+    public void testEqualListenersTrackedSeparately() {
+        final EqualListener first = new EqualListener();
+        final EqualListener second = new EqualListener();
+
+        manager.subscribe(first);
+        manager.subscribe(second);
+        manager.unsubscribe(first);
+        assertTrue(manager.hasHandlers(DebugInfoEvent.class));
+
+        manager.unsubscribe(second);
+        assertFalse(manager.hasHandlers(DebugInfoEvent.class));
+    }
+
+    public static class DebugListener {
+        @Handler
+        public void handleDebug(final DebugInfoEvent event) {
+        }
+    }
+
+    public static class AllEventsListener {
+        @Handler
+        public void handleEvent(final ParserEvent event) {
+        }
+    }
+
+    public static class DisabledListener extends DebugListener {
+        @Handler(enabled = false)
+        public void handleQuit(final QuitEvent event) {
+        }
+    }
+
+    public static class EqualListener extends DebugListener {
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof EqualListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.lang.reflect.InvocationTargetException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.engio.mbassy.bus.error.PublicationError;
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DirectCallbackManagerTest {
+
+    @Mock private Parser parser;
+    private final List<PublicationError> errors = new ArrayList<>();
+    private final DirectCallbackManager manager = new DirectCallbackManager(errors::add);
+    private final List<String> calls = new ArrayList<>();
+
+    @Test
+    public void testNumericRouting() {
+        manager.subscribe(new WhoisListener());
+
+        manager.publish(numeric(311));
+        manager.publish(numeric(318));
+        manager.publish(numeric(1));
+
+        assertEquals(Arrays.asList("any 311", "311", "any 318", "318", "any 1"), calls);
+    }
+
+    @Test
+    public void testPriorities() {
+        manager.subscribe(new PriorityListener());
+
+        manager.publish(numeric(1));
+
+        assertEquals(Arrays.asList("high", "numeric", "event", "low"), calls);
+    }
+
+    @Test
+    public void testRejectSubtypes() {
+        manager.subscribe(new RejectingListener());
+
+        manager.publish(numeric(1));
+        manager.publish(new TestEvent(parser));
+
+        assertEquals(Arrays.asList("event " + TestEvent.class.getSimpleName()), calls);
+    }
+
+    @Test
+    public void testPropertyConditions() {
+        manager.subscribe(new ConditionListener());
+
+        manager.publish(new DebugInfoEvent(parser, LocalDateTime.now(), 1, "a"));
+        manager.publish(new DebugInfoEvent(parser, LocalDateTime.now(), 2, "b"));
+        manager.publish(new DebugInfoEvent(parser, LocalDateTime.now(), 2, "quiet"));
+
+        assertEquals(Arrays.asList("not quiet a", "level 2 b", "not quiet b"), calls);
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        final WhoisListener listener = new WhoisListener();
+        manager.subscribe(listener);
+        assertTrue(manager.hasHandlers(NumericEvent.class));
+
+        assertTrue(manager.unsubscribe(listener));
+        assertFalse(manager.unsubscribe(listener));
+        assertFalse(manager.hasHandlers(NumericEvent.class));
+
+        manager.publish(numeric(311));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testSubscribeTwice() {
+        final WhoisListener listener = new WhoisListener();
+        manager.subscribe(listener);
+        manager.subscribe(listener);
+
+        manager.publish(numeric(311));
+
+        assertEquals(Arrays.asList("any 311", "311"), calls);
+    }
+
+    @Test
+    public void testErrorsReported() {
+        final FailingListener listener = new FailingListener();
+        manager.subscribe(listener);
+        manager.subscribe(new WhoisListener());
+
+        final NumericEvent event = numeric(318);
+        manager.publish(event);
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getCause() instanceof InvocationTargetException);
+        assertTrue(errors.get(0).getCause().getCause() instanceof IllegalStateException);
+        assertSame(listener, errors.get(0).getListener());
+        assertSame(event, errors.get(0).getPublishedMessage());
+        assertEquals(Arrays.asList("any 318", "318"), calls);
+    }
+
+    @Test
+    public void testUnsupportedConditionsUseBus() {
+        final ComplexConditionListener listener = new ComplexConditionListener();
+        manager.subscribe(listener);
+        assertTrue(manager.hasHandlers(NumericEvent.class));
+
+        manager.publish(numeric(311));
+        assertEquals(Arrays.asList("complex 311"), calls);
+
+        assertTrue(manager.unsubscribe(listener));
+        manager.publish(numeric(311));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testPrioritiesAcrossBusListeners() {
+        final PriorityListener listener = new PriorityListener();
+        final BusPriorityListener busListener = new BusPriorityListener();
+        manager.subscribe(listener);
+        manager.subscribe(busListener);
+
+        manager.publish(numeric(1));
+
+        assertEquals(Arrays.asList("high", "bus", "numeric", "event", "low"), calls);
+    }
+
+    @Test
+    public void testDirectDispatchDisabled() {
+        final PriorityListener listener = new PriorityListener();
+        manager.setDirectDispatch(false);
+        assertFalse(manager.isDirectDispatch());
+        manager.subscribe(listener);
+
+        manager.publish(numeric(1));
+
+        assertEquals(Arrays.asList("high", "numeric", "event", "low"), calls);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPublishAsync() {
+        manager.publishAsync(numeric(1));
+    }
+
+    private NumericEvent numeric(final int numeric) {
+        return new NumericEvent(parser, LocalDateTime.now(), numeric, new String[0]);
+    }
+
+    private static class TestEvent extends ParserEvent {
+        TestEvent(final Parser parser) {
+            super(parser, LocalDateTime.now());
+        }
+    }
+
+    private class WhoisListener {
+        @Handler
+        public void handleAny(final NumericEvent event) {
+            calls.add("any " + event.getNumeric());
+        }
+
+        @Handler(condition = "msg.numeric == 311")
+        public void handleUser(final NumericEvent event) {
+            calls.add("311");
+        }
+
+        @Handler(condition = "msg.numeric == 318")
+        public void handleEnd(final NumericEvent event) {
+            calls.add("318");
+        }
+    }
+
+    private class PriorityListener {
+        @Handler(priority = -1)
+        public void handleLow(final ParserEvent event) {
+            calls.add("low");
+        }
+
+        @Handler
+        public void handleEvent(final ParserEvent event) {
+            calls.add("event");
+        }
+
+        @Handler(priority = 10)
+        public void handleHigh(final ParserEvent event) {
+            calls.add("high");
+        }
+
+        @Handler(priority = 5, condition = "msg.numeric == 1")
+        public void handleNumeric(final NumericEvent event) {
+            calls.add("numeric");
+        }
+    }
+
+    private class RejectingListener {
+        @Handler(rejectSubtypes = true)
+        public void handleEvent(final ParserEvent event) {
+            calls.add("event " + event.getClass().getSimpleName());
+        }
+
+        @Handler(rejectSubtypes = true)
+        public void handleTestEvent(final TestEvent event) {
+            calls.add("event " + event.getClass().getSimpleName());
+        }
+    }
+
+    private class ConditionListener {
+        @Handler(condition = "msg.level == 2")
+        public void handleLevel(final DebugInfoEvent event) {
+            if (!"quiet".equals(event.getData())) {
+                calls.add("level 2 " + event.getData());
+            }
+        }
+
+        @Handler(priority = -1, condition = "msg.data != 'quiet'")
+        public void handleData(final DebugInfoEvent event) {
+            calls.add("not quiet " + event.getData());
+        }
+    }
+
+    private class FailingListener {
+        @Handler(priority = 1)
+        public void handleEnd(final NumericEvent event) {
+            throw new IllegalStateException("Failed");
+        }
+    }
+
+    private class BusPriorityListener {
+        @Handler(priority = 7, condition = "msg.numeric > 0 && msg.numeric < 400")
+        public void handleRange(final NumericEvent event) {
+            calls.add("bus");
+        }
+    }
+
+    private class ComplexConditionListener {
+        @Handler(condition = "msg.numeric > 300 && msg.numeric < 400")
+        public void handleRange(final NumericEvent event) {
+            calls.add("complex " + event.getNumeric());
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.engio.mbassy.bus.error.PublicationError;
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EventBufferTest {
+
+    @Mock private Parser parser;
+    private final DirectCallbackManager manager = new DirectCallbackManager(error -> {});
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testDeliversInOrderOnOwnThread() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(4, OverflowPolicy.BLOCK);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+        release.countDown();
+
+        for (int i = 0; i < 20; i++) {
+            manager.publish(numeric(i));
+        }
+        waitForDelivery(buffer, 20);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("numeric " + i, events.get(i));
+        }
+        assertNotEquals(Thread.currentThread(), threads.get(0));
+        assertTrue(buffer.getMaxDepth() <= 4);
+        assertEquals(0, buffer.getDroppedEvents());
+    }
+
+    @Test
+    public void testDropsLowValueEventsWhenFull() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(2, OverflowPolicy.DROP);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+
+        fill(buffer);
+        manager.publish(debug("dropped"));
+        assertEquals(1, buffer.getDroppedEvents());
+
+        release.countDown();
+        waitForDelivery(buffer, 3);
+        assertEquals(3, events.size());
+        assertFalse(events.contains("debug dropped"));
+    }
+
+    @Test
+    public void testCoalescesLowValueEventsWhenFull() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(2, OverflowPolicy.COALESCE);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+
+        manager.publish(numeric(1));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        manager.publish(debug("first"));
+        manager.publish(numeric(2));
+        manager.publish(debug("second"));
+        assertEquals(1, buffer.getCoalescedEvents());
+
+        release.countDown();
+        waitForDelivery(buffer, 3);
+        assertEquals(3, events.size());
+        assertEquals("numeric 1", events.get(0));
+        assertEquals("numeric 2", events.get(1));
+        assertEquals("debug second", events.get(2));
+    }
+
+    @Test
+    public void testBlocksWhenFull() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(2, OverflowPolicy.DROP);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+        fill(buffer);
+
+        final Thread publisher = new Thread(() -> manager.publish(numeric(3)));
+        publisher.start();
+        publisher.join(100);
+        assertTrue(publisher.isAlive());
+
+        release.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        waitForDelivery(buffer, 4);
+        assertEquals("numeric 3", events.get(3));
+    }
+
+    @Test
+    public void testHandlersPublishDirectly() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(1, OverflowPolicy.BLOCK);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+        manager.subscribe(new RepublishingListener());
+        release.countDown();
+
+        manager.publish(numeric(1));
+        waitForDelivery(buffer, 1);
+
+        assertTrue(events.contains("numeric 1"));
+        assertTrue(events.contains("debug republished"));
+    }
+
+    @Test
+    public void testStoppedBufferDeliversWaitingEvents() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(4, OverflowPolicy.BLOCK);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+        fill(buffer);
+
+        manager.setEventBuffer(null);
+        release.countDown();
+        waitForDelivery(buffer, 3);
+
+        manager.publish(numeric(3));
+        assertEquals("numeric 3", events.get(3));
+        assertEquals(Thread.currentThread(), threads.get(3));
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(8, OverflowPolicy.BLOCK);
+        manager.setEventBuffer(buffer);
+        manager.subscribe(new Listener());
+        fill(buffer);
+        assertEquals(2, buffer.getDepth());
+
+        release.countDown();
+        waitForDelivery(buffer, 3);
+        assertEquals(0, buffer.getDepth());
+        assertEquals(2, buffer.getMaxDepth());
+        assertEquals(8, buffer.getCapacity());
+        assertTrue(buffer.getMaxHandlerNanos() > 0);
+        assertTrue(buffer.getHandlerNanos() >= buffer.getMaxHandlerNanos());
+        assertNotNull(manager.getEventBuffer());
+    }
+
+    @Test(timeout = 5000)
+    public void testDeliveryContinuesAfterError() throws InterruptedException {
+        final List<PublicationError> errors = new CopyOnWriteArrayList<>();
+        final EventBuffer buffer = new EventBuffer(1, OverflowPolicy.BLOCK);
+        buffer.start(event -> {
+            if (event instanceof DebugInfoEvent) {
+                throw new IllegalStateException("Handler failed");
+            }
+            events.add("numeric " + ((NumericEvent) event).getNumeric());
+        }, errors::add);
+
+        buffer.offer(debug("fails"));
+        buffer.offer(numeric(1));
+        buffer.offer(numeric(2));
+        waitForDelivery(buffer, 3);
+        buffer.stop();
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getCause() instanceof IllegalStateException);
+        assertEquals(2, events.size());
+        assertEquals("numeric 2", events.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBufferCantBeReused() {
+        final EventBuffer buffer = new EventBuffer(1, OverflowPolicy.BLOCK);
+        manager.setEventBuffer(buffer);
+        manager.setEventBuffer(buffer);
+    }
+
+    /**
+     * Publishes an event that the listener blocks on, and then fills the
+     * buffer behind it.
+     */
+    private void fill(final EventBuffer buffer) throws InterruptedException {
+        manager.publish(numeric(0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        while (buffer.getDepth() < 2) {
+            manager.publish(numeric(buffer.getDepth() + 1));
+        }
+    }
+
+    private void waitForDelivery(final EventBuffer buffer, final int count)
+            throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (buffer.getDeliveredEvents() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, buffer.getDeliveredEvents());
+    }
+
+    private NumericEvent numeric(final int numeric) {
+        return new NumericEvent(parser, LocalDateTime.now(), numeric, new String[0]);
+    }
+
+    private DebugInfoEvent debug(final String data) {
+        return new DebugInfoEvent(parser, LocalDateTime.now(), 1, data);
+    }
+
+    private class Listener {
+        @Handler
+        public void handleNumeric(final NumericEvent event) throws InterruptedException {
+            record("numeric " + event.getNumeric());
+            blocked.countDown();
+            release.await();
+        }
+
+        @Handler
+        public void handleDebug(final DebugInfoEvent event) {
+            record("debug " + event.getData());
+        }
+
+        private void record(final String event) {
+            events.add(event);
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    private class RepublishingListener {
+        @Handler
+        public void handleNumeric(final NumericEvent event) {
+            manager.publish(debug("republished"));
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.integration;
+
+import com.dmdirc.parser.common.MyInfo;
+import com.dmdirc.parser.common.VirtualThreads;
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.integration.util.FakeIrcdRule;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadSoakTest {
+
+    /** Number of parsers to run with virtual threads. */
+    private static final int VIRTUAL_PARSERS = Integer.getInteger("soak.parsers", 2000);
+    /** Number of parsers to run with platform threads. */
+    private static final int PLATFORM_PARSERS = 100;
+
+    @Rule
+    public final FakeIrcdRule ircd = new FakeIrcdRule(VirtualThreads.isSupported()
+            ? VirtualThreads.factory("Fake ircd ") : Thread::new);
+
+    @Test
+    public void testPlatformThreads() throws InterruptedException {
+        soak(PLATFORM_PARSERS, null);
+    }
+
+    @Test
+    public void testVirtualThreads() throws InterruptedException {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        soak(VIRTUAL_PARSERS, VirtualThreads.factory("Parser "));
+    }
+
+    private void soak(final int count, final ThreadFactory threadFactory)
+            throws InterruptedException {
+        final List<IRCParser> parsers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final MyInfo myInfo = new MyInfo();
+            myInfo.setNickname("soak" + i);
+            final IRCParser parser = new IRCParser(myInfo,
+                    URI.create("irc://127.0.0.1:" + ircd.getPort()));
+            parser.setThreadFactory(threadFactory);
+            parser.connect();
+            parsers.add(parser);
+        }
+
+        assertTrue("Not all parsers answered the server's PING",
+                ircd.awaitPongs(count, 2, TimeUnit.MINUTES));
+
+        for (IRCParser parser : parsers) {
+            parser.disconnect("");
+        }
+        for (IRCParser parser : parsers) {
+            final Thread thread = parser.getControlThread();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse("Parser thread did not finish", thread.isAlive());
+        }
+    }
+
+}
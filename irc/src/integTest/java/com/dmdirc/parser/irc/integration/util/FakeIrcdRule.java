@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.integration.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * Rule that runs a minimal IRC server on the loopback interface. Each client that registers
+ * is welcomed and sent a PING, and the server counts the PONGs it gets back.
+ */
+public class FakeIrcdRule extends ExternalResource {
+
+    private final ThreadFactory threadFactory;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Semaphore pongs = new Semaphore(0);
+    private ServerSocket server;
+
+    public FakeIrcdRule(final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        super.before();
+
+        server = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        threadFactory.newThread(this::accept).start();
+    }
+
+    @Override
+    protected void after() {
+        super.after();
+
+        try {
+            server.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public boolean awaitPongs(final int count, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return pongs.tryAcquire(count, timeout, unit);
+    }
+
+    private void accept() {
+        try {
+            while (!server.isClosed()) {
+                final Socket client = server.accept();
+                clients.add(client);
+                threadFactory.newThread(() -> serve(client)).start();
+            }
+        } catch (IOException ex) {
+            // Server has been closed
+        }
+    }
+
+    private void serve(final Socket client) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                client.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new OutputStreamWriter(client.getOutputStream(),
+                        StandardCharsets.UTF_8)) {
+            String nickname = "*";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("NICK ")) {
+                    nickname = line.substring(5);
+                } else if (line.startsWith("USER ")) {
+                    writer.write(":fake.ircd 001 " + nickname + " :Welcome\r\n");
+                    writer.write("PING :" + nickname + "\r\n");
+                    writer.flush();
+                } else if (line.startsWith("PONG ")) {
+                    pongs.release();
+                } else if (line.startsWith("QUIT")) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            // Client has gone away
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+}
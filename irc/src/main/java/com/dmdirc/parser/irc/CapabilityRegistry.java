@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps track of the capabilities a server offers, along with their values
+ * and states, and of the capabilities the parser wants to enable.
+ *
+ * <p>Capability names are not case sensitive, and are stored in lower case.
+ *
+ * See: https://ircv3.net/specs/core/capability-negotiation.html
+ */
+public class CapabilityRegistry {
+
+    /** The longest capability request that will be sent, excluding its terminator. */
+    private static final int MAX_REQUEST_LENGTH = 510;
+    /** The start of each capability request. */
+    private static final String REQUEST_PREFIX = "CAP REQ :";
+
+    /** The capabilities offered by the server, and their states. */
+    private final Map<String, CapabilityState> states = new HashMap<>();
+    /** The values the server gave for its capabilities, where it gave one. */
+    private final Map<String, String> values = new HashMap<>();
+    /** The capabilities to enable when the server offers them. */
+    private final Set<String> wanted = new LinkedHashSet<>();
+    /** The capabilities that have been requested from the server. */
+    private final Set<String> requested = new HashSet<>();
+
+    /**
+     * Creates a new registry that wants each capability the parser can
+     * handle.
+     */
+    public CapabilityRegistry() {
+        // IRCv3.1 Standard
+        wanted.add("multi-prefix");
+        wanted.add("userhost-in-names");
+        wanted.add("away-notify");
+        wanted.add("account-notify");
+        wanted.add("extended-join");
+        wanted.add("self-message");
+        wanted.add("server-time");
+
+        // IRCv3.2 Standard, implied by CAP LS 302 but requested for older servers
+        wanted.add("cap-notify");
+
+        // IRCv3.2 Standard, used to group netsplits and netjoins
+        wanted.add("batch");
+
+        // Freenode
+        // wanted.add("identify-msg");
+
+        // DFBnc
+        wanted.add("dfbnc.com/tsirc");
+    }
+
+    /**
+     * Adds a capability offered by the server. A capability that is already
+     * known keeps its state.
+     *
+     * @param capability The name of the capability
+     * @param value The value the server gave for it, or null if it gave none
+     */
+    public synchronized void addCapability(final String capability, @Nullable final String value) {
+        final String name = capability.toLowerCase();
+        states.putIfAbsent(name, CapabilityState.DISABLED);
+        if (value == null) {
+            values.remove(name);
+        } else {
+            values.put(name, value);
+        }
+    }
+
+    /**
+     * Removes a capability the server no longer offers.
+     *
+     * @param capability The name of the capability
+     */
+    public synchronized void removeCapability(final String capability) {
+        final String name = capability.toLowerCase();
+        states.remove(name);
+        values.remove(name);
+        requested.remove(name);
+    }
+
+    /**
+     * Gets the state of a capability.
+     *
+     * @param capability The name of the capability
+     * @return The capability's state, or {@link CapabilityState#INVALID} if the
+     * server hasn't offered it
+     */
+    public synchronized CapabilityState getState(final String capability) {
+        return states.getOrDefault(capability.toLowerCase(), CapabilityState.INVALID);
+    }
+
+    /**
+     * Sets the state of a capability, if the server has offered it.
+     *
+     * @param capability The name of the capability
+     * @param state The capability's new state
+     */
+    public synchronized void setState(final String capability, final CapabilityState state) {
+        states.computeIfPresent(capability.toLowerCase(), (name, old) -> state);
+    }
+
+    /**
+     * Gets the value the server gave for a capability, such as the mechanisms
+     * listed for "sasl" in reply to CAP LS 302.
+     *
+     * @param capability The name of the capability
+     * @return The capability's value, or null if the server gave none
+     */
+    @Nullable
+    public synchronized String getValue(final String capability) {
+        return values.get(capability.toLowerCase());
+    }
+
+    /**
+     * Gets the capabilities offered by the server and their states.
+     *
+     * @return A copy of the capabilities and their states
+     */
+    public synchronized Map<String, CapabilityState> getStates() {
+        return new HashMap<>(states);
+    }
+
+    /**
+     * Gets the capabilities that are enabled.
+     *
+     * @return The names of the enabled capabilities
+     */
+    public synchronized Set<String> getEnabled() {
+        final Set<String> enabled = new HashSet<>();
+        for (Map.Entry<String, CapabilityState> state : states.entrySet()) {
+            if (state.getValue() == CapabilityState.ENABLED) {
+                enabled.add(state.getKey());
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Checks whether a capability is enabled when the server offers it.
+     *
+     * @param capability The name of the capability
+     * @return True if the capability is wanted
+     */
+    public synchronized boolean isWanted(final String capability) {
+        return wanted.contains(capability.toLowerCase());
+    }
+
+    /**
+     * Sets whether a capability should be enabled when the server offers it.
+     * This only affects capabilities offered after it is changed.
+     *
+     * @param capability The name of the capability
+     * @param want True to enable the capability, false to leave it disabled
+     */
+    public synchronized void setWanted(final String capability, final boolean want) {
+        if (want) {
+            wanted.add(capability.toLowerCase());
+        } else {
+            wanted.remove(capability.toLowerCase());
+        }
+    }
+
+    /**
+     * Gets the capabilities the parser enables when the server offers them.
+     *
+     * @return A copy of the wanted capabilities
+     */
+    public synchronized Set<String> getWanted() {
+        return new LinkedHashSet<>(wanted);
+    }
+
+    /**
+     * Checks whether a capability has been requested from the server.
+     *
+     * @param capability The name of the capability
+     * @return True if the capability has been requested
+     */
+    public synchronized boolean isRequested(final String capability) {
+        return requested.contains(capability.toLowerCase());
+    }
+
+    /**
+     * Notes that a capability has been requested from the server.
+     *
+     * @param capability The name of the capability
+     * @return True if the capability hadn't already been requested
+     */
+    public synchronized boolean setRequested(final String capability) {
+        return requested.add(capability.toLowerCase());
+    }
+
+    /**
+     * Forgets which capabilities have been requested.
+     */
+    public synchronized void clearRequested() {
+        requested.clear();
+    }
+
+    /**
+     * Builds the lines needed to request capabilities, with as many
+     * capabilities on each line as will fit.
+     *
+     * @param capabilities The capabilities to request
+     * @return The request lines, empty if there are no capabilities
+     */
+    public static List<String> getRequestLines(final Collection<String> capabilities) {
+        if (capabilities.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder line = new StringBuilder(REQUEST_PREFIX);
+        for (String capability : capabilities) {
+            if (line.length() > REQUEST_PREFIX.length()
+                    && line.length() + 1 + capability.length() > MAX_REQUEST_LENGTH) {
+                lines.add(line.toString());
+                line.setLength(REQUEST_PREFIX.length());
+            }
+            if (line.length() > REQUEST_PREFIX.length()) {
+                line.append(' ');
+            }
+            line.append(capability);
+        }
+        lines.add(line.toString());
+        return lines;
+    }
+
+}
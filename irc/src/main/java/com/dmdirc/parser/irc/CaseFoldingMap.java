@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A hash map keyed by nicknames or channel names, which compares keys using
+ * the server's case mapping.
+ *
+ * <p>Keys are hashed and compared by folding each character through an
+ * {@link IRCStringConverter} as it is read, so neither storing nor looking up
+ * an entry creates a lower-case copy of the key. Entries can also be looked
+ * up by a range of a larger string, such as the nickname in a hostmask.
+ *
+ * <p>Keys are stored as they were last put, so iterating over the map gives
+ * each name in the case it was most recently seen in. This map is not
+ * thread safe.
+ *
+ * @param <V> The type of value stored in the map
+ */
+final class CaseFoldingMap<V> extends AbstractMap<String, V> {
+
+    /** The initial number of buckets in the map; must be a power of two. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** The largest number of buckets the map will presize itself to. */
+    private static final int MAXIMUM_CAPACITY = 1 << 20;
+
+    /** The converter used to fold the case of keys. */
+    private IRCStringConverter converter;
+    /** The buckets of the map, each holding a chain of entries. */
+    private Node<V>[] table;
+    /** The number of entries in the map. */
+    private int size;
+    /** Cached view of the map's entries. */
+    private Set<Map.Entry<String, V>> entrySet;
+
+    /**
+     * Creates a new, empty, map.
+     *
+     * @param converter The converter used to fold the case of keys
+     */
+    CaseFoldingMap(final IRCStringConverter converter) {
+        this.converter = checkNotNull(converter);
+        this.table = newTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Changes the case mapping used by the map. Entries whose keys become
+     * equal under the new mapping are merged, keeping the last one found.
+     *
+     * @param converter The converter used to fold the case of keys
+     */
+    void setConverter(final IRCStringConverter converter) {
+        final Node<V>[] oldTable = table;
+        this.converter = checkNotNull(converter);
+        this.table = newTable(oldTable.length);
+        size = 0;
+        for (Node<V> bucket : oldTable) {
+            for (Node<V> node = bucket; node != null; node = node.next) {
+                put(node.key, node.value);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && find((String) key, 0, ((String) key).length()) != null;
+    }
+
+    @Override
+    public V get(final Object key) {
+        return key instanceof String ? get((String) key, 0, ((String) key).length()) : null;
+    }
+
+    /**
+     * Gets the value for a key held in part of a larger string.
+     *
+     * @param text The text containing the key
+     * @param start The offset of the start of the key
+     * @param end The offset of the end of the key (exclusive)
+     * @return The value for the key, or null if there is none
+     */
+    V get(final CharSequence text, final int start, final int end) {
+        final Node<V> node = find(text, start, end);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(final String key, final V value) {
+        final int hash = hash(key, 0, key.length());
+        final int index = hash & (table.length - 1);
+        for (Node<V> node = table[index]; node != null; node = node.next) {
+            if (node.hash == hash && matches(node.key, key, 0, key.length())) {
+                final V old = node.value;
+                node.key = key;
+                node.value = value;
+                return old;
+            }
+        }
+
+        table[index] = new Node<>(hash, key, value, table[index]);
+        if (++size > table.length - (table.length >> 2)) {
+            resize();
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final Node<V> node = find((String) key, 0, ((String) key).length());
+        if (node == null) {
+            return null;
+        }
+        removeNode(node);
+        return node.value;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            table = newTable(INITIAL_CAPACITY);
+            size = 0;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    /**
+     * Finds the entry for a key.
+     *
+     * @param text The text containing the key
+     * @param start The offset of the start of the key
+     * @param end The offset of the end of the key (exclusive)
+     * @return The entry for the key, or null if there is none
+     */
+    private Node<V> find(final CharSequence text, final int start, final int end) {
+        final int hash = hash(text, start, end);
+        for (Node<V> node = table[hash & (table.length - 1)]; node != null; node = node.next) {
+            if (node.hash == hash && matches(node.key, text, start, end)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes an entry from its bucket.
+     *
+     * @param target The entry to remove
+     */
+    private void removeNode(final Node<V> target) {
+        final int index = target.hash & (table.length - 1);
+        Node<V> previous = null;
+        for (Node<V> node = table[index]; node != null; node = node.next) {
+            if (node == target) {
+                if (previous == null) {
+                    table[index] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+                size--;
+                return;
+            }
+            previous = node;
+        }
+    }
+
+    /**
+     * Adds buckets to the map, if needed, so that it can hold the given
+     * number of entries without growing again.
+     *
+     * @param expectedSize The number of entries the map is expected to hold
+     */
+    void ensureCapacity(final int expectedSize) {
+        int length = table.length;
+        while (expectedSize > length - (length >> 2) && length < MAXIMUM_CAPACITY) {
+            length *= 2;
+        }
+        if (length > table.length) {
+            resize(length);
+        }
+    }
+
+    /**
+     * Doubles the number of buckets in the map.
+     */
+    private void resize() {
+        resize(table.length * 2);
+    }
+
+    /**
+     * Changes the number of buckets in the map.
+     *
+     * @param length The new number of buckets; must be a power of two
+     */
+    private void resize(final int length) {
+        final Node<V>[] oldTable = table;
+        table = newTable(length);
+        final int mask = table.length - 1;
+        for (Node<V> bucket : oldTable) {
+            Node<V> node = bucket;
+            while (node != null) {
+                final Node<V> next = node.next;
+                node.next = table[node.hash & mask];
+                table[node.hash & mask] = node;
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Computes the hash of a key, as folded by the converter.
+     *
+     * @param text The text containing the key
+     * @param start The offset of the start of the key
+     * @param end The offset of the end of the key (exclusive)
+     * @return The hash of the key
+     */
+    private int hash(final CharSequence text, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + converter.toLowerCase(text.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Determines whether a stored key is equal to a key in part of a string,
+     * as folded by the converter.
+     *
+     * @param key The stored key
+     * @param text The text containing the key to compare
+     * @param start The offset of the start of the key to compare
+     * @param end The offset of the end of the key to compare (exclusive)
+     * @return True if the keys are equal
+     */
+    private boolean matches(final String key, final CharSequence text, final int start,
+            final int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (converter.toLowerCase(key.charAt(i))
+                    != converter.toLowerCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a new table of buckets.
+     *
+     * @param capacity The number of buckets
+     * @param <V> The type of value stored in the map
+     * @return A new, empty, table
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newTable(final int capacity) {
+        return (Node<V>[]) new Node<?>[capacity];
+    }
+
+    /**
+     * An entry in the map.
+     *
+     * @param <V> The type of value stored in the map
+     */
+    private static final class Node<V> implements Map.Entry<String, V> {
+
+        /** The hash of the key. */
+        private final int hash;
+        /** The next entry in the same bucket. */
+        private Node<V> next;
+        /** The key of this entry, which may change case when replaced. */
+        private String key;
+        /** The value of this entry. */
+        private V value;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param hash The hash of the key
+         * @param key The key of the entry
+         * @param value The value of the entry
+         * @param next The next entry in the same bucket
+         */
+        Node(final int hash, final String key, final V value, final Node<V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(final V newValue) {
+            final V old = value;
+            value = newValue;
+            return old;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            final Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return Objects.equals(key, other.getKey()) && Objects.equals(value, other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + '=' + value;
+        }
+    }
+
+    /**
+     * A view of the entries in the map.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+
+        @Override
+        public Iterator<Map.Entry<String, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            CaseFoldingMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates over the entries in the map, bucket by bucket.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+        /** The table being iterated over. */
+        private final Node<V>[] iterationTable = table;
+        /** The next entry to return, or null if there are no more. */
+        private Node<V> next;
+        /** The index of the bucket after the one containing {@link #next}. */
+        private int nextBucket;
+        /** The entry most recently returned, or null if it has been removed. */
+        private Node<V> current;
+
+        /**
+         * Creates a new iterator, positioned before the first entry.
+         */
+        EntryIterator() {
+            advance(null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            advance(next.next);
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            removeNode(current);
+            current = null;
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @param candidate The next entry in the current bucket, if any
+         */
+        private void advance(final Node<V> candidate) {
+            next = candidate;
+            while (next == null && nextBucket < iterationTable.length) {
+                next = iterationTable[nextBucket++];
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * An open-addressed hash table keyed by IRC command names, compared without
+ * regard to ASCII case.
+ *
+ * <p>Lookups neither allocate nor case-convert the key, which makes the table
+ * suitable for dispatching every line received from the server. Changes are
+ * expected to be rare, so removal simply rebuilds the table.
+ *
+ * @param <V> The type of value stored in the table
+ */
+final class CommandTable<V> {
+
+    /** The initial number of slots in the table; must be a power of two. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The keys in the table, or null for empty slots. */
+    private String[] keys = new String[INITIAL_CAPACITY];
+    /** The values in the table, in the same slots as their keys. */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    /** The number of entries in the table. */
+    private int size;
+
+    /**
+     * Gets the value for the given key.
+     *
+     * @param key The key to look up
+     * @return The value for the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(final String key) {
+        final int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (equalsIgnoreCase(keys[i], key)) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value for the given key, replacing any existing value.
+     *
+     * @param key The key to set
+     * @param value The value to set
+     */
+    void put(final String key, final V value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (equalsIgnoreCase(keys[i], key)) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * Removes all entries matching the given filter.
+     *
+     * @param filter The filter to apply to each key and value
+     */
+    @SuppressWarnings("unchecked")
+    void removeIf(final BiPredicate<String, V> filter) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new String[oldKeys.length];
+        values = new Object[oldKeys.length];
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null && !filter.test(oldKeys[i], (V) oldValues[i])) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Calls the given action for every entry in the table.
+     *
+     * @param action The action to call with each key and value
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(final BiConsumer<String, V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Resizes the table, re-inserting all existing entries.
+     *
+     * @param capacity The new capacity; must be a power of two
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(final int capacity) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Hashes a key, ignoring ASCII case.
+     *
+     * @param key The key to hash
+     * @return A hash of the key
+     */
+    private static int hash(final String key) {
+        int hash = 0;
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + toLowerCase(key.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compares two keys, ignoring ASCII case.
+     *
+     * @param first The first key
+     * @param second The second key
+     * @return True if the keys are equal ignoring ASCII case, false otherwise
+     */
+    private static boolean equalsIgnoreCase(final String first, final String second) {
+        if (first.length() != second.length()) {
+            return false;
+        }
+        for (int i = 0; i < first.length(); i++) {
+            if (toLowerCase(first.charAt(i)) != toLowerCase(second.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts an ASCII upper case character to lower case.
+     *
+     * @param chr The character to convert
+     * @return The lower case form of the character, or the character itself if
+     * it is not an ASCII upper case letter
+     */
+    private static char toLowerCase(final char chr) {
+        return chr >= 'A' && chr <= 'Z' ? (char) (chr + ('a' - 'A')) : chr;
+    }
+
+}
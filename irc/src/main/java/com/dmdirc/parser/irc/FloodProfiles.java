@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.outputqueue.FloodProfile;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The flood profiles of known server types, based on the flood control each
+ * ircd applies in its default configuration.
+ */
+public final class FloodProfiles {
+
+    /** Profiles for individual server types, checked before the groups. */
+    private static final Map<ServerType, FloodProfile> TYPES = new EnumMap<>(ServerType.class);
+    /** Profiles for groups of server types. */
+    private static final Map<ServerTypeGroup, FloodProfile> GROUPS =
+            new EnumMap<>(ServerTypeGroup.class);
+
+    static {
+        // Penalties of a second per command, with a threshold of ten seconds.
+        TYPES.put(ServerType.INSPIRCD, new FloodProfile(Duration.ofSeconds(10),
+                Duration.ofSeconds(1), Duration.ZERO)
+                .withCommandPenalty("JOIN", Duration.ofSeconds(1)));
+        // Processes two lines a second, after a burst of five.
+        GROUPS.put(ServerTypeGroup.CHARYBDIS, new FloodProfile(Duration.ofMillis(2500),
+                Duration.ofMillis(500), Duration.ZERO));
+        // Processes a line a second, after a burst of five.
+        GROUPS.put(ServerTypeGroup.HYBRID, new FloodProfile(Duration.ofSeconds(5),
+                Duration.ofSeconds(1), Duration.ZERO));
+        GROUPS.put(ServerTypeGroup.IRCU, FloodProfile.DEFAULT);
+        GROUPS.put(ServerTypeGroup.GATEWAY, FloodProfile.UNLIMITED);
+    }
+
+    private FloodProfiles() {
+        // Shouldn't be instantiated.
+    }
+
+    /**
+     * Gets the flood profile to use for a server type. Servers without a
+     * known profile get {@link FloodProfile#DEFAULT}.
+     *
+     * @param type The type of server
+     * @return The flood profile for the server type
+     */
+    public static FloodProfile getFloodProfile(final ServerType type) {
+        final FloodProfile profile = TYPES.get(type);
+        if (profile != null) {
+            return profile;
+        }
+        for (Map.Entry<ServerTypeGroup, FloodProfile> entry : GROUPS.entrySet()) {
+            if (entry.getKey().isMember(type)) {
+                return entry.getValue();
+            }
+        }
+        return FloodProfile.DEFAULT;
+    }
+
+}
@@ -23,7 +23,6 @@
 package com.dmdirc.parser.irc;
 
 import com.dmdirc.parser.interfaces.ChannelClientInfo;
-import com.dmdirc.parser.interfaces.ChannelInfo;
 
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,7 +45,7 @@ public class IRCChannelClientInfo implements ChannelClientInfo {
     /** The parser to use to kick people. */
     private final IRCParser parser;
     /** Reference to the channel object that owns this channel client. */
-    private final ChannelInfo myChannel;
+    private final IRCChannelInfo myChannel;
     /** A Map to allow applications to attach misc data to this object. */
     private Map<Object, Object> myMap;
 
@@ -59,7 +58,7 @@ public class IRCChannelClientInfo implements ChannelClientInfo {
      * @param channel Channel that owns this channelclient
      */
     public IRCChannelClientInfo(final IRCParser tParser, final PrefixModeManager prefixModeManager,
-            final IRCClientInfo client, final ChannelInfo channel) {
+            final IRCClientInfo client, final IRCChannelInfo channel) {
         myMap = new HashMap<>();
         modeManager = prefixModeManager;
         parser = tParser;
@@ -89,7 +88,7 @@ public class IRCChannelClientInfo implements ChannelClientInfo {
     }
 
     @Override
-    public ChannelInfo getChannel() {
+    public IRCChannelInfo getChannel() {
         return myChannel;
     }
 
@@ -33,7 +33,6 @@ import com.dmdirc.parser.interfaces.Parser;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,6 +46,9 @@ import java.util.Queue;
  */
 public class IRCChannelInfo implements ChannelInfo {
 
+    /** The number of characters a name in a names reply is estimated to take up. */
+    private static final int ESTIMATED_NAME_LENGTH = 10;
+
     /**
      * Boolean repreenting the status of names requests.
      * When this is false, any new names reply will cause current known channelclients to be removed.
@@ -76,8 +78,8 @@ public class IRCChannelInfo implements ChannelInfo {
     private final String name;
     /** Channel Key. */
     private String password = "";
-    /** Hashtable containing references to ChannelClients. */
-    private final Map<String, IRCChannelClientInfo> clients = Collections.synchronizedMap(new HashMap<>());
+    /** Map containing references to ChannelClients, keyed by nickname. */
+    private final CaseFoldingMap<IRCChannelClientInfo> clients;
     /** Hashtable storing values for modes set in the channel that use parameters. */
     private final Map<Character, String> paramModes = new HashMap<>();
     /** Hashtable storing list modes. */
@@ -118,6 +120,7 @@ public class IRCChannelInfo implements ChannelInfo {
         this.userModeManager = userModeManager;
         this.chanModeManager = chanModeManager;
         this.name = name;
+        clients = new CaseFoldingMap<>(parser.getStringConverter());
     }
 
     /**
@@ -275,7 +278,9 @@ public class IRCChannelInfo implements ChannelInfo {
 
     @Override
     public int getChannelClientCount() {
-        return clients.size();
+        synchronized (clients) {
+            return clients.size();
+        }
     }
 
     @Override
@@ -298,8 +303,8 @@ public class IRCChannelInfo implements ChannelInfo {
                     parser.removeClient(cTemp);
                 }
             }
+            clients.clear();
         }
-        clients.clear();
     }
 
     @Override
@@ -309,9 +314,13 @@ public class IRCChannelInfo implements ChannelInfo {
 
     @Override
     public IRCChannelClientInfo getChannelClient(final String client, final boolean create) {
-        final String who = parser.getStringConverter().toLowerCase(IRCClientInfo.parseHost(client));
-        if (clients.containsKey(who)) {
-            return clients.get(who);
+        final IRCChannelClientInfo channelClient;
+        synchronized (clients) {
+            channelClient = clients.get(client, IRCClientInfo.getNicknameStart(client),
+                    IRCClientInfo.getNicknameEnd(client));
+        }
+        if (channelClient != null) {
+            return channelClient;
         }
         if (create) {
             return new IRCChannelClientInfo(parser, prefixModeManager,
@@ -324,6 +333,11 @@ public class IRCChannelInfo implements ChannelInfo {
     @Override
     public IRCChannelClientInfo getChannelClient(final ClientInfo client) {
         synchronized (clients) {
+            if (client instanceof IRCClientInfo) {
+                // Clients index their own memberships, so there's no need to search the channel
+                final IRCChannelClientInfo target = ((IRCClientInfo) client).getChannelClientInfo(this);
+                return target != null && clients.get(client.getNickname()) == target ? target : null;
+            }
             for (IRCChannelClientInfo target : clients.values()) {
                 if (target.getClient() == client) {
                     return target;
@@ -340,12 +354,80 @@ public class IRCChannelInfo implements ChannelInfo {
      * @return ChannelClientInfo object added, or an existing object if already known on channel
      */
     public IRCChannelClientInfo addClient(final IRCClientInfo cClient) {
-        IRCChannelClientInfo cTemp = getChannelClient(cClient);
-        if (cTemp == null) {
-            cTemp = new IRCChannelClientInfo(parser, prefixModeManager, cClient, this);
-            clients.put(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()), cTemp);
+        synchronized (clients) {
+            IRCChannelClientInfo cTemp = getChannelClient(cClient);
+            if (cTemp == null) {
+                cTemp = new IRCChannelClientInfo(parser, prefixModeManager, cClient, this);
+                clients.put(cTemp.getClient().getNickname(), cTemp);
+            }
+            return cTemp;
         }
-        return cTemp;
+    }
+
+    /**
+     * Adds the clients listed in a names reply to the channel. Each name may
+     * be preceded by any number of prefix mode characters, and may be a full
+     * hostmask if the server sends them.
+     *
+     * @param names The space-separated names from the reply
+     * @return The number of names in the reply
+     */
+    public int addNames(final String names) {
+        final StringBuilder modes = new StringBuilder();
+        final int length = names.length();
+        int count = 0;
+        synchronized (clients) {
+            clients.ensureCapacity(clients.size() + length / ESTIMATED_NAME_LENGTH);
+
+            int offset = 0;
+            while (offset < length) {
+                // Skip any extra spaces
+                if (names.charAt(offset) == ' ') {
+                    offset++;
+                    continue;
+                }
+
+                // Any ircd may decide to use @+Foo in names
+                modes.setLength(0);
+                while (offset < length && prefixModeManager.isPrefix(names.charAt(offset))) {
+                    modes.append(prefixModeManager.getModeFor(names.charAt(offset)));
+                    offset++;
+                }
+
+                // The name is nick, or nick!ident@host if the server sends UHNAMES
+                final int start = offset;
+                int bang = -1;
+                int at = -1;
+                while (offset < length && names.charAt(offset) != ' ') {
+                    final char chr = names.charAt(offset);
+                    if (chr == '@' && at == -1) {
+                        at = offset;
+                    } else if (chr == '!' && bang == -1 && at == -1) {
+                        bang = offset;
+                    }
+                    offset++;
+                }
+                final int end = offset;
+                final int nickEnd = bang == -1 ? at == -1 ? end : at : bang;
+                if (nickEnd == start) {
+                    continue;
+                }
+                final String ident = bang == -1 ? "" : names.substring(bang + 1, at == -1 ? end : at);
+                final String host = at == -1 ? "" : names.substring(at + 1, end);
+
+                IRCClientInfo client = parser.getKnownClient(names, start, nickEnd);
+                if (client == null) {
+                    client = new IRCClientInfo(parser, userModeManager,
+                            names.substring(start, nickEnd), ident, host);
+                    parser.addClient(client);
+                } else {
+                    client.setIdentAndHost(ident, host);
+                }
+                addClient(client).setChanMode(modes.length() == 0 ? "" : modes.toString());
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -361,7 +443,9 @@ public class IRCChannelInfo implements ChannelInfo {
             if (clTemp != parser.getLocalClient() && !clTemp.checkVisibility()) {
                 parser.removeClient(clTemp);
             }
-            clients.remove(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()));
+            synchronized (clients) {
+                clients.remove(cTemp.getClient().getNickname());
+            }
         }
     }
 
@@ -372,18 +456,29 @@ public class IRCChannelInfo implements ChannelInfo {
      * @param cChannelClient ChannelClient object with updated client object
      */
     public void renameClient(final String oldNickname, final IRCChannelClientInfo cChannelClient) {
-        if (clients.containsKey(oldNickname)) {
-            final IRCChannelClientInfo cTemp = clients.get(oldNickname);
-            if (cTemp == cChannelClient) {
+        synchronized (clients) {
+            if (clients.get(oldNickname) == cChannelClient) {
                 // Remove the old key
                 clients.remove(oldNickname);
                 // Add with the new key. (getNickname will return the new name not the
                 // old one)
-                clients.put(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()), cTemp);
+                clients.put(cChannelClient.getClient().getNickname(), cChannelClient);
             }
         }
     }
 
+    /**
+     * Updates the converter used to compare nicknames in this channel, for
+     * example after the server announces a different casemapping.
+     *
+     * @param converter The new string converter
+     */
+    void setStringConverter(final IRCStringConverter converter) {
+        synchronized (clients) {
+            clients.setConverter(converter);
+        }
+    }
+
     /**
      * Set the create time.
      *
@@ -30,6 +30,7 @@ import com.dmdirc.parser.interfaces.Parser;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -67,8 +68,8 @@ public class IRCClientInfo implements LocalClientInfo {
     private final IRCParser parser;
     /** A Map to allow applications to attach misc data to this object. */
     private final Map<Object, Object> map;
-    /** List of ChannelClientInfos that point to this. */
-    private final Map<String, IRCChannelClientInfo> clients = new HashMap<>();
+    /** ChannelClientInfos that point to this, keyed by channel in the order they were added. */
+    private final Map<IRCChannelInfo, IRCChannelClientInfo> clients = new LinkedHashMap<>();
     /** Modes waiting to be sent to the server. */
     private final Collection<String> modeQueue = new LinkedList<>();
 
@@ -88,6 +89,25 @@ public class IRCClientInfo implements LocalClientInfo {
         setUserBits(sHostmask, true);
     }
 
+    /**
+     * Create a new client object from the parts of its hostmask.
+     *
+     * @param tParser Reference to parser that owns this channelclient (used for modes)
+     * @param userModeManager Mode manager to use for user modes.
+     * @param nickname The client's nickname
+     * @param ident The client's ident, or an empty string if not known
+     * @param host The client's host, or an empty string if not known
+     */
+    IRCClientInfo(final IRCParser tParser, final ModeManager userModeManager,
+            final String nickname, final String ident, final String host) {
+        parser = tParser;
+        this.userModeManager = userModeManager;
+        map = new HashMap<>();
+        this.nickname = nickname;
+        this.ident = ident;
+        this.host = host;
+    }
+
     @Override
     public Map<Object, Object> getMap() {
         return map;
@@ -135,6 +155,35 @@ public class IRCClientInfo implements LocalClientInfo {
         return parseHostFull(sWho)[0];
     }
 
+    /**
+     * Gets the offset at which the nickname starts in a hostmask, matching
+     * {@link #parseHost(String)}.
+     *
+     * @param hostmask Hostname to parse
+     * @return The offset of the start of the nickname
+     */
+    static int getNicknameStart(final String hostmask) {
+        return !hostmask.isEmpty() && hostmask.charAt(0) == ':' ? 1 : 0;
+    }
+
+    /**
+     * Gets the offset at which the nickname ends in a hostmask, matching
+     * {@link #parseHost(String)}.
+     *
+     * @param hostmask Hostname to parse
+     * @return The offset of the end of the nickname (exclusive)
+     */
+    static int getNicknameEnd(final String hostmask) {
+        final int start = getNicknameStart(hostmask);
+        for (int i = start; i < hostmask.length(); i++) {
+            final char chr = hostmask.charAt(i);
+            if (chr == '!' || chr == '@') {
+                return i;
+            }
+        }
+        return hostmask.length();
+    }
+
     /**
      * Get a nick ident and host of a user from a hostmask.
      * Hostmask must match (?:)nick(?!ident)(?@host)
@@ -195,6 +244,24 @@ public class IRCClientInfo implements LocalClientInfo {
         }
     }
 
+    /**
+     * Set the ident and host of this client, leaving either unchanged if the
+     * new value is empty. This matches {@link #setUserBits(String, boolean)}
+     * without the nickname being updated.
+     *
+     * @param newIdent The client's ident, or an empty string if not known
+     * @param newHost The client's host, or an empty string if not known
+     */
+    void setIdentAndHost(final String newIdent, final String newHost) {
+        if (!newHost.isEmpty()) {
+            host = newHost;
+        }
+
+        if (!newIdent.isEmpty()) {
+            ident = newIdent;
+        }
+    }
+
     /**
      * Get a string representation of the user.
      *
@@ -343,10 +410,7 @@ public class IRCClientInfo implements LocalClientInfo {
      * @param cci ChannelClientInfo to add as a known reference
      */
     public void addChannelClientInfo(final IRCChannelClientInfo cci) {
-        final String key = parser.getStringConverter().toLowerCase(cci.getChannel().getName());
-        if (!clients.containsKey(key)) {
-            clients.put(key, cci);
-        }
+        clients.putIfAbsent(cci.getChannel(), cci);
     }
 
     /**
@@ -355,10 +419,28 @@ public class IRCClientInfo implements LocalClientInfo {
      * @param cci ChannelClientInfo to remove as a known reference
      */
     public void delChannelClientInfo(final IRCChannelClientInfo cci) {
-        final String key = parser.getStringConverter().toLowerCase(cci.getChannel().getName());
-        if (clients.containsKey(key)) {
-            clients.remove(key);
-        }
+        clients.remove(cci.getChannel(), cci);
+    }
+
+    /**
+     * Gets the ChannelClientInfo representing this client on the given channel.
+     *
+     * @param channel The channel to look up
+     * @return The ChannelClientInfo for the channel, or null if this client is not known there
+     */
+    public IRCChannelClientInfo getChannelClientInfo(final IRCChannelInfo channel) {
+        return clients.get(channel);
+    }
+
+    /**
+     * Gets the ChannelClientInfos that point to this client, one for each
+     * channel it is known to be on. The returned list is a copy, so channels
+     * may be joined or parted while iterating over it.
+     *
+     * @return List of ChannelClientInfos for this client
+     */
+    public List<IRCChannelClientInfo> getChannelClientInfos() {
+        return new ArrayList<>(clients.values());
     }
 
     /**
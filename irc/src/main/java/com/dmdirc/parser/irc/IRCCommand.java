@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+/**
+ * The commands that the parser treats specially when classifying a line.
+ *
+ * <p>Tokens are classified by comparing them against each known command of
+ * the same length without regard to ASCII case, so classifying a token never
+ * allocates or throws, whether it is held as a string or as undecoded bytes.
+ */
+public enum IRCCommand {
+
+    /** An account change notification. */
+    ACCOUNT,
+    /** An away state change. */
+    AWAY,
+    /** The start or end of a batch of related messages. */
+    BATCH,
+    /** A capability negotiation message. */
+    CAP,
+    /** A fatal error from the server. */
+    ERROR,
+    /** An invitation to a channel. */
+    INVITE,
+    /** A channel join. */
+    JOIN,
+    /** A channel kick. */
+    KICK,
+    /** A mode change. */
+    MODE,
+    /** A nickname change. */
+    NICK,
+    /** A notice. */
+    NOTICE,
+    /** A channel part. */
+    PART,
+    /** A ping request. */
+    PING,
+    /** A ping response. */
+    PONG,
+    /** A message. */
+    PRIVMSG,
+    /** A client quitting. */
+    QUIT,
+    /** A topic change. */
+    TOPIC,
+    /** A TSIRC timestamp announcement. */
+    TSIRC,
+    /** A wallops message. */
+    WALLOPS,
+    /** A numeric reply; see {@link #getNumeric(CharSequence)} for its value. */
+    NUMERIC,
+    /** Any other token. */
+    OTHER;
+
+    /** The maximum number of digits in a token that is treated as a numeric. */
+    private static final int MAX_NUMERIC_DIGITS = 9;
+    /** The named commands, indexed by the length of their name. */
+    private static final IRCCommand[][] BY_LENGTH;
+
+    static {
+        int longest = 0;
+        for (IRCCommand command : values()) {
+            longest = Math.max(longest, command.name().length());
+        }
+
+        BY_LENGTH = new IRCCommand[longest + 1][0];
+        for (IRCCommand command : values()) {
+            if (command != NUMERIC && command != OTHER) {
+                final int length = command.name().length();
+                final IRCCommand[] existing = BY_LENGTH[length];
+                final IRCCommand[] updated = new IRCCommand[existing.length + 1];
+                System.arraycopy(existing, 0, updated, 0, existing.length);
+                updated[existing.length] = command;
+                BY_LENGTH[length] = updated;
+            }
+        }
+    }
+
+    /** The upper-case name of this command. */
+    private final char[] chars = name().toCharArray();
+
+    /**
+     * Classifies the given token.
+     *
+     * @param token The token to classify
+     * @return The command the token represents, {@link #NUMERIC} if it is a
+     * numeric, or {@link #OTHER}
+     */
+    public static IRCCommand lookup(final CharSequence token) {
+        final int length = token.length();
+        if (length < BY_LENGTH.length) {
+            for (IRCCommand command : BY_LENGTH[length]) {
+                if (command.matches(token)) {
+                    return command;
+                }
+            }
+        }
+        return getNumeric(token) == -1 ? OTHER : NUMERIC;
+    }
+
+    /**
+     * Classifies the token held in the given range of bytes. The bytes are
+     * expected to use an ASCII-compatible encoding.
+     *
+     * @param data The bytes holding the token
+     * @param start The offset of the start of the token
+     * @param end The offset of the end of the token (exclusive)
+     * @return The command the token represents, {@link #NUMERIC} if it is a
+     * numeric, or {@link #OTHER}
+     */
+    public static IRCCommand lookup(final byte[] data, final int start, final int end) {
+        final int length = end - start;
+        if (length < BY_LENGTH.length) {
+            for (IRCCommand command : BY_LENGTH[length]) {
+                if (command.matches(data, start)) {
+                    return command;
+                }
+            }
+        }
+        return getNumeric(data, start, end) == -1 ? OTHER : NUMERIC;
+    }
+
+    /**
+     * Gets the value of a token consisting only of digits.
+     *
+     * @param token The token to examine
+     * @return The value of the numeric, or -1 if the token is not numeric
+     */
+    public static int getNumeric(final CharSequence token) {
+        final int length = token.length();
+        if (length == 0 || length > MAX_NUMERIC_DIGITS) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            final char chr = token.charAt(i);
+            if (chr < '0' || chr > '9') {
+                return -1;
+            }
+            value = value * 10 + chr - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of a token consisting only of digits, held in the given
+     * range of bytes.
+     *
+     * @param data The bytes holding the token
+     * @param start The offset of the start of the token
+     * @param end The offset of the end of the token (exclusive)
+     * @return The value of the numeric, or -1 if the token is not numeric
+     */
+    public static int getNumeric(final byte[] data, final int start, final int end) {
+        final int length = end - start;
+        if (length <= 0 || length > MAX_NUMERIC_DIGITS) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final byte chr = data[i];
+            if (chr < '0' || chr > '9') {
+                return -1;
+            }
+            value = value * 10 + chr - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Determines whether the given token, which must be the same length as
+     * this command's name, names this command.
+     *
+     * @param token The token to compare
+     * @return True if the token names this command, ignoring ASCII case
+     */
+    private boolean matches(final CharSequence token) {
+        for (int i = 0; i < chars.length; i++) {
+            if ((token.charAt(i) & ~0x20) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the bytes at the given offset name this command.
+     *
+     * @param data The bytes holding the token
+     * @param start The offset of the start of the token
+     * @return True if the token names this command, ignoring ASCII case
+     */
+    private boolean matches(final byte[] data, final int start) {
+        for (int i = 0; i < chars.length; i++) {
+            if ((data[start + i] & ~0x20) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
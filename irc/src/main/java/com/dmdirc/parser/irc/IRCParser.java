@@ -25,6 +25,7 @@ import com.dmdirc.parser.common.BaseSocketAwareParser;
 import com.dmdirc.parser.common.ChannelJoinRequest;
 import com.dmdirc.parser.common.ChildImplementations;
 import com.dmdirc.parser.common.CompositionState;
+import com.dmdirc.parser.common.DirectCallbackManager;
 import com.dmdirc.parser.common.IgnoreList;
 import com.dmdirc.parser.common.MyInfo;
 import com.dmdirc.parser.common.ParserError;
@@ -47,39 +48,56 @@ import com.dmdirc.parser.interfaces.SecureParser;
 import com.dmdirc.parser.irc.IRCReader.ReadLine;
 import com.dmdirc.parser.irc.events.IRCDataInEvent;
 import com.dmdirc.parser.irc.events.IRCDataOutEvent;
+import com.dmdirc.parser.irc.nio.ConnectionHandler;
+import com.dmdirc.parser.irc.nio.EventLoopGroup;
+import com.dmdirc.parser.irc.nio.NioConnection;
+import com.dmdirc.parser.irc.outputqueue.CommandCoalescer;
+import com.dmdirc.parser.irc.outputqueue.FloodProfile;
 import com.dmdirc.parser.irc.outputqueue.OutputQueue;
 import com.dmdirc.parser.irc.outputqueue.PriorityOutputQueue;
+import com.dmdirc.parser.irc.outputqueue.QueueScheduler;
+import com.dmdirc.parser.irc.outputqueue.TokenBucketOutputQueue;
+import com.dmdirc.parser.irc.processors.IRCProcessor;
+import com.dmdirc.parser.irc.processors.ProcessJoin;
+
+import com.google.common.base.Strings;
 
 import java.io.IOException;
+import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Timer;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -100,6 +118,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
     /** Max length an outgoing line should be (NOT including \r\n). */
     public static final int MAX_LINELENGTH = 510;
+    /** The longest hostname the server may show for us, assumed until ours is known. */
+    private static final int MAX_HOSTNAME_LENGTH = 63;
     /** General Debug Information. */
     public static final int DEBUG_INFO = 1;
     /** Socket Debug Information. */
@@ -118,9 +138,6 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     /** Byte used to show that a non-boolean mode is not a list, and requires a parameter to unset (k). */
     public static final byte MODE_UNSET = 4;
 
-    /** server-time time format */
-    private static final DateTimeFormatter serverTimeFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-
     /**
      * Default channel prefixes if none are specified by the IRCd.
      *
@@ -196,15 +213,17 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     /** Channel Prefixes (ie # + etc). */
     private String chanPrefix = DEFAULT_CHAN_PREFIX;
     /** Hashtable storing all known clients based on nickname (in lowercase). */
-    private final Map<String, IRCClientInfo> clientList = new HashMap<>();
+    private final CaseFoldingMap<IRCClientInfo> clientList;
     /** Hashtable storing all known channels based on chanel name (inc prefix - in lowercase). */
-    private final Map<String, IRCChannelInfo> channelList = new HashMap<>();
+    private final CaseFoldingMap<IRCChannelInfo> channelList;
     /** Reference to the ClientInfo object that references ourself. */
     private IRCClientInfo myself;
     /** Hashtable storing all information gathered from 005. */
     public final Map<String, String> h005Info = new HashMap<>();
     /** difference in ms between our time and the servers time (used for timestampedIRC). */
     private long tsdiff;
+    /** Decoder used for the timestamps attached to lines. */
+    private final TimestampDecoder timestampDecoder = new TimestampDecoder();
     /** Reference to the Processing Manager. */
     private final ProcessingManager myProcessingManager;
     /** Should we automatically disconnect on fatal errors?. */
@@ -220,26 +239,52 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     private Socket socket;
     /** Used for writing to the server. */
     private OutputQueue out;
+    /** The flood profile to use instead of the server type's, or null to use the server type's. */
+    private FloodProfile floodProfile;
+    /** Merges queued commands, limited by what the server supports. */
+    private final CommandCoalescer coalescer = new CommandCoalescer();
+    /** Splitter for long messages, replaced if the charset changes. */
+    private volatile MessageSplitter messageSplitter;
     /** The encoder to use to encode incoming lines. */
     private Encoder encoder = new SystemEncoder();
     /** Used for reading from the server. */
     private IRCReader in;
+    /** The event loops used for non-blocking connections, or null to use blocking sockets. */
+    private EventLoopGroup eventLoopGroup;
+    /** The non-blocking connection to the IRC server, if one is being used. */
+    private volatile NioConnection connection;
     /** This is the default TrustManager for SSL Sockets, it trusts all ssl certs. */
     private final TrustManager[] trustAllCerts = {new TrustingTrustManager()};
     /** Should channels automatically request list modes? */
     private boolean autoListMode = true;
     /** Should part/quit/kick callbacks be fired before removing the user internally? */
     private boolean removeAfterCallback = true;
+    /** The debugging levels that DebugInfo callbacks are raised for, when handled. */
+    private volatile int debugLevels = DEBUG_INFO | DEBUG_SOCKET | DEBUG_PROCESSOR | DEBUG_LMQ;
+    /** Should quit and join callbacks be fired for each user in a netsplit or netjoin? */
+    private boolean netsplitUserEvents = true;
     /** This is the TrustManager used for SSL Sockets. */
     private TrustManager[] myTrustManager = trustAllCerts;
     /** The KeyManagers used for client certificates for SSL sockets. */
     private KeyManager[] myKeyManagers;
     /** This is list containing 001 - 005 inclusive. */
     private final List<String> serverInformationLines = new LinkedList<>();
-    /** Map of capabilities and their state. */
-    private final Map<String, CapabilityState> capabilities = new HashMap<>();
+    /** The server's capabilities and their state. */
+    private final CapabilityRegistry capabilities = new CapabilityRegistry();
+    /** The profile to seed the next connection with, or null to wait for the server. */
+    private ServerProfile serverProfile;
+    /** The profile of the last connection, taken when it was closed. */
+    private ServerProfile lastServerProfile;
+    /** Should the channels in the server profile be joined as soon as 001 is received? */
+    private boolean rejoinProfileChannels;
+    /** ISUPPORT tokens seeded from the server profile that the server has not sent again. */
+    private final Set<String> unconfirmedISupport = new HashSet<>();
+    /** A copy of {@link #h005Info} taken on the parser thread, for use by other threads. */
+    private volatile Map<String, String> iSupportSnapshot = Collections.emptyMap();
     /** Handler for whois responses. */
     private final WhoisResponseHandler whoisHandler;
+    /** Handler for netsplits and netjoins. */
+    private final NetsplitHandler netsplitHandler;
     /** Used to synchronize calls to resetState. */
     private final Object resetStateSync = new Object();
 
@@ -278,6 +323,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     public IRCParser(final MyInfo myDetails, final URI uri) {
         super(uri);
+        clientList = new CaseFoldingMap<>(getStringConverter());
+        channelList = new CaseFoldingMap<>(getStringConverter());
         setCallbackManager(new IRCParserCallbackManager(this::handleCallbackError));
 
         // TODO: There should be a factory or builder for parsers that can construct the graph
@@ -287,11 +334,13 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         myself = new IRCClientInfo(this, userModes, "myself").setFake(true);
 
         out = new PriorityOutputQueue();
+        out.setCoalescer(coalescer);
         if (myDetails != null) {
             this.me = myDetails;
         }
 
         this.whoisHandler = new WhoisResponseHandler(this, getCallbackManager());
+        this.netsplitHandler = new NetsplitHandler(this, getCallbackManager());
 
         setIgnoreList(new IgnoreList());
         setPingTimerInterval(10000);
@@ -322,9 +371,163 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
         if (socket != null) {
             queue.setOutputStream(socket.getOutputStream());
+        } else if (connection != null) {
+            queue.setOutputStream(connection.getOutputStream());
+            queue.setScheduler(new ConnectionScheduler(connection));
         }
 
+        queue.setThreadFactory(getThreadFactory());
+        queue.setCoalescer(coalescer);
         out = queue;
+        applyFloodProfile();
+    }
+
+    /**
+     * Gets the coalescer that merges commands in the output queue.
+     *
+     * @return The coalescer used by the output queue
+     */
+    public CommandCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Updates the limits the coalescer merges commands within, from the
+     * server's TARGMAX, MAXTARGETS and MODES, its channel modes and its
+     * server type.
+     */
+    public void updateCoalescer() {
+        for (String command : new String[]{"PRIVMSG", "NOTICE", "WHO", "NAMES"}) {
+            coalescer.setTargetLimit(command, 0);
+        }
+        coalescer.setTargetLimit("JOIN", Integer.MAX_VALUE);
+        coalescer.setTargetLimit("PART", Integer.MAX_VALUE);
+
+        final int maxTargets = parseLimit(h005Info.get(IrcConstants.ISUPPORT_MAXIMUM_TARGETS), 0);
+        coalescer.setTargetLimit("PRIVMSG", maxTargets);
+        coalescer.setTargetLimit("NOTICE", maxTargets);
+
+        final String targetMax = h005Info.get(IrcConstants.ISUPPORT_TARGET_MAXIMUMS);
+        if (targetMax != null) {
+            // TARGMAX=PRIVMSG:4,NOTICE:4,JOIN:,WHOIS:1 where no number means no limit
+            for (String bit : targetMax.split(",")) {
+                final String[] parts = bit.split(":", 2);
+                if (parts.length == 2 && !parts[0].isEmpty()) {
+                    coalescer.setTargetLimit(parts[0], parseLimit(parts[1], Integer.MAX_VALUE));
+                }
+            }
+        }
+
+        coalescer.setModeLimit(parseLimit(h005Info.get(IrcConstants.ISUPPORT_MODES),
+                CommandCoalescer.DEFAULT_MODE_LIMIT));
+        coalescer.setListModesCombined(!ServerTypeGroup.SINGLE_LISTMODE.isMember(getServerType()));
+        if (!chanModesOther.isEmpty()) {
+            coalescer.setChannelModes(getListChannelModes(),
+                    getDoubleParameterChannelModes() + prefixModes.getModes(),
+                    getParameterChannelModes());
+        }
+    }
+
+    /**
+     * Parses a limit given in a 005 token.
+     *
+     * @param value The value of the token, or null if the server didn't send it
+     * @param fallback The limit to use if the token is missing or has no value
+     * @return The limit
+     */
+    private static int parseLimit(@Nullable final String value, final int fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Gets the flood profile used to pace lines sent to the server. Unless
+     * one has been set for this network, this is the profile of the detected
+     * server type.
+     *
+     * @return The flood profile in use
+     * @see FloodProfiles#getFloodProfile(ServerType)
+     */
+    public FloodProfile getFloodProfile() {
+        final FloodProfile profile = floodProfile;
+        return profile == null ? FloodProfiles.getFloodProfile(getServerType()) : profile;
+    }
+
+    /**
+     * Sets the flood profile to use for this network, instead of the one
+     * for the detected server type.
+     *
+     * <p>Profiles are only followed by a {@link TokenBucketOutputQueue}.
+     *
+     * @param floodProfile The profile to use, or null to use the server type's
+     */
+    public void setFloodProfile(@Nullable final FloodProfile floodProfile) {
+        this.floodProfile = floodProfile;
+        applyFloodProfile();
+    }
+
+    /**
+     * Applies the current flood profile to the output queue, if it supports
+     * flood profiles. Called when the server type may have changed.
+     */
+    public void applyFloodProfile() {
+        final OutputQueue queue = out;
+        if (queue instanceof TokenBucketOutputQueue) {
+            final FloodProfile profile = getFloodProfile();
+            callDebugInfo(DEBUG_INFO, "Using flood profile: %s", profile);
+            ((TokenBucketOutputQueue) queue).setFloodProfile(profile);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The factory is also used for the output queue's sending thread.
+     */
+    @Override
+    public void setThreadFactory(@Nullable final ThreadFactory threadFactory) {
+        super.setThreadFactory(threadFactory);
+        out.setThreadFactory(threadFactory);
+    }
+
+    /**
+     * Gets the event loop group used for non-blocking connections.
+     *
+     * @return The event loop group, or null if blocking sockets are used
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Sets the event loop group used for non-blocking connections.
+     *
+     * <p>By default the parser connects with a blocking socket read by its own thread. If a
+     * group is set before {@link #connect()} is called, the parser instead connects with a
+     * non-blocking channel serviced by one of the group's loops, and no parser thread is
+     * started. Connections made through a proxy always use a blocking socket.
+     *
+     * @param eventLoopGroup The event loop group to use, or null to use blocking sockets
+     */
+    public void setEventLoopGroup(@Nullable final EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * Sets whether event handlers are invoked directly on the publishing
+     * thread, rather than through MBassador. Direct dispatch is off by default;
+     * see {@link DirectCallbackManager} for the handlers it supports.
+     *
+     * @param directCallbacks True to invoke handlers directly, false to use MBassador
+     */
+    public void setDirectCallbacks(final boolean directCallbacks) {
+        ((DirectCallbackManager) getCallbackManager()).setDirectDispatch(directCallbacks);
     }
 
     @Override
@@ -478,6 +681,34 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         removeAfterCallback = newValue;
     }
 
+    /**
+     * Get the current Value of netsplitUserEvents.
+     *
+     * @return Value of netsplitUserEvents (true if quit/join callbacks are fired for each
+     * user in a netsplit or netjoin, as well as the per-channel netsplit/netjoin callbacks)
+     */
+    public boolean getNetsplitUserEvents() {
+        return netsplitUserEvents;
+    }
+
+    /**
+     * Set the current Value of netsplitUserEvents.
+     *
+     * @param newValue New value to set netsplitUserEvents
+     */
+    public void setNetsplitUserEvents(final boolean newValue) {
+        netsplitUserEvents = newValue;
+    }
+
+    /**
+     * Gets the handler that groups the quits and joins caused by netsplits.
+     *
+     * @return This parser's netsplit handler
+     */
+    public NetsplitHandler getNetsplitHandler() {
+        return netsplitHandler;
+    }
+
     /**
      * Get the current Value of addLastLine.
      *
@@ -564,7 +795,10 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param line Incoming Line.
      */
     protected void callDataIn(final ReadLine line) {
-        getCallbackManager().publish(new IRCDataInEvent(this, LocalDateTime.now(), line));
+        if (!isDataHandled(IRCDataInEvent.class)) {
+            return;
+        }
+        getCallbackManager().publish(new IRCDataInEvent(this, System.currentTimeMillis(), line));
     }
 
     /**
@@ -574,7 +808,42 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param fromParser True if parser sent the data, false if sent using .sendLine
      */
     protected void callDataOut(final String data, final boolean fromParser) {
-        getCallbackManager().publish(new IRCDataOutEvent(this, LocalDateTime.now(), data));
+        if (!isDataHandled(IRCDataOutEvent.class)) {
+            return;
+        }
+        getCallbackManager().publish(new IRCDataOutEvent(this, System.currentTimeMillis(), data));
+    }
+
+    /**
+     * Get the debugging levels that DebugInfo callbacks are currently raised
+     * for. This is empty whenever nothing handles DebugInfo callbacks, and
+     * follows handlers being subscribed and unsubscribed.
+     *
+     * @return Bitmask of debugging levels (DEBUG_INFO, DEBUG_SOCKET etc)
+     */
+    public int getDebugMask() {
+        return getCallbackManager().hasHandlers(DebugInfoEvent.class) ? debugLevels : 0;
+    }
+
+    /**
+     * Set the debugging levels that DebugInfo callbacks should be raised for,
+     * when something handles them. By default all levels are raised.
+     *
+     * @param levels Bitmask of debugging levels (DEBUG_INFO, DEBUG_SOCKET etc)
+     */
+    public void setDebugLevels(final int levels) {
+        debugLevels = levels;
+    }
+
+    /**
+     * Check whether DebugInfo callbacks are raised for the given level. Callers
+     * can use this to avoid building expensive debugging information.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @return True if debugging information at the level will be raised
+     */
+    public boolean isDebugging(final int level) {
+        return (getDebugMask() & level) != 0;
     }
 
     /**
@@ -585,7 +854,55 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param args Formatting String Options
      */
     public void callDebugInfo(final int level, final String data, final Object... args) {
-        callDebugInfo(level, args == null || args.length == 0 ? data : String.format(data, args));
+        if (isDebugging(level)) {
+            publishDebugInfo(level, args == null || args.length == 0 ? data : String.format(data, args));
+        }
+    }
+
+    /**
+     * Callback to all objects implementing the DebugInfo Callback. The
+     * fixed-argument forms avoid allocating an argument array for debugging
+     * information that isn't raised.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @param data Debugging Information as a format string
+     * @param arg The formatting argument
+     */
+    public void callDebugInfo(final int level, final String data, final Object arg) {
+        if (isDebugging(level)) {
+            publishDebugInfo(level, String.format(data, arg));
+        }
+    }
+
+    /**
+     * Callback to all objects implementing the DebugInfo Callback.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @param data Debugging Information as a format string
+     * @param arg1 The first formatting argument
+     * @param arg2 The second formatting argument
+     */
+    public void callDebugInfo(final int level, final String data, final Object arg1,
+            final Object arg2) {
+        if (isDebugging(level)) {
+            publishDebugInfo(level, String.format(data, arg1, arg2));
+        }
+    }
+
+    /**
+     * Callback to all objects implementing the DebugInfo Callback.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @param data Debugging Information as a format string
+     * @param arg1 The first formatting argument
+     * @param arg2 The second formatting argument
+     * @param arg3 The third formatting argument
+     */
+    public void callDebugInfo(final int level, final String data, final Object arg1,
+            final Object arg2, final Object arg3) {
+        if (isDebugging(level)) {
+            publishDebugInfo(level, String.format(data, arg1, arg2, arg3));
+        }
     }
 
     /**
@@ -595,7 +912,19 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param data Debugging Information
      */
     protected void callDebugInfo(final int level, final String data) {
-        getCallbackManager().publish(new DebugInfoEvent(this, LocalDateTime.now(), level, data));
+        if (isDebugging(level)) {
+            publishDebugInfo(level, data);
+        }
+    }
+
+    /**
+     * Publishes a DebugInfo event.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @param data Debugging Information
+     */
+    private void publishDebugInfo(final int level, final String data) {
+        getCallbackManager().publish(new DebugInfoEvent(this, System.currentTimeMillis(), level, data));
     }
 
     /**
@@ -658,6 +987,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
         post005 = true;
 
+        validateServerProfile();
+
         if (!h005Info.containsKey(IrcConstants.ISUPPORT_CHANNEL_USER_PREFIXES)) {
             parsePrefixModes();
         }
@@ -667,6 +998,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         if (!h005Info.containsKey(IrcConstants.ISUPPORT_CHANNEL_MODES)) {
             parseChanModes();
         }
+        updateCoalescer();
+        updateISupportSnapshot();
 
         whoisHandler.start();
         getCallbackManager().publish(new ServerReadyEvent(this, LocalDateTime.now()));
@@ -678,6 +1011,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     /** Reset internal state (use before doConnect). */
     private void resetState() {
         synchronized (resetStateSync) {
+            if (got001) {
+                lastServerProfile = createServerProfile();
+            }
             // Reset General State info
             got001 = false;
             post005 = false;
@@ -685,6 +1021,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             channelList.clear();
             clientList.clear();
             h005Info.clear();
+            iSupportSnapshot = Collections.emptyMap();
+            unconfirmedISupport.clear();
+            capabilities.clearRequested();
             prefixModes.clear();
             chanModesOther.clear();
             chanModesBool.clear();
@@ -706,6 +1045,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             setEncoding(IRCEncoding.RFC1459);
 
             whoisHandler.stop();
+            netsplitHandler.reset();
         }
     }
 
@@ -765,14 +1105,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         if (getURI().getScheme().endsWith("s")) {
             callDebugInfo(DEBUG_SOCKET, "Server is SSL.");
 
-            if (myTrustManager == null) {
-                myTrustManager = trustAllCerts;
-            }
-
-            final SSLContext sc = SSLContext.getInstance("SSL");
-            sc.init(myKeyManagers, myTrustManager, new SecureRandom());
-
-            final SSLSocketFactory socketFactory = sc.getSocketFactory();
+            final SSLSocketFactory socketFactory = createSSLContext().getSocketFactory();
             socket = socketFactory.createSocket(rawSocket, getURI().getHost(), getURI()
                     .getPort(), false);
 
@@ -793,19 +1126,91 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         out.setQueueEnabled(true);
         currentSocketState = SocketState.OPEN;
         callDebugInfo(DEBUG_SOCKET, "\t-> Opening socket input stream BufferedReader");
-        in = new IRCReader(socket.getInputStream(), encoder);
+        in = new IRCReader(socket.getInputStream(), encoder, Charset.defaultCharset(),
+                ByteBuffer.allocate(IRCReader.DEFAULT_BUFFER_SIZE));
         callDebugInfo(DEBUG_SOCKET, "\t-> Socket Opened");
     }
 
     /**
-     * Send server connection strings (NICK/USER/PASS).
+     * Creates an SSL context using the configured trust and key managers.
+     *
+     * @return A new SSL context
+     * @throws NoSuchAlgorithmException if SSL is not available
+     * @throws KeyManagementException if the trustManager is invalid
+     */
+    private SSLContext createSSLContext() throws NoSuchAlgorithmException, KeyManagementException {
+        if (myTrustManager == null) {
+            myTrustManager = trustAllCerts;
+        }
+
+        final SSLContext sc = SSLContext.getInstance("SSL");
+        sc.init(myKeyManagers, myTrustManager, new SecureRandom());
+        return sc;
+    }
+
+    /**
+     * Connect to IRC using a non-blocking channel on the event loop group. This resolves the
+     * server's address and then hands the connection over to the group, so it may block.
+     */
+    private void doNonBlockingConnect() {
+        try {
+            if (getURI() == null || getURI().getHost() == null) {
+                throw new UnknownHostException("Unspecified host.");
+            }
+
+            resetState();
+            callDebugInfo(DEBUG_SOCKET, "Connecting to %s:%s", getURI().getHost(), getURI().getPort());
+
+            currentSocketState = SocketState.OPENING;
+
+            final URI connectUri = getConnectURI(getURI());
+            if (connectUri.getPort() <= 0 || connectUri.getPort() > 65535) {
+                throw new IOException("Server port (" + connectUri.getPort() + ") is invalid.");
+            }
+
+            final InetAddress address = InetAddress.getByName(connectUri.getHost());
+            final String bindIp = address instanceof Inet6Address ? getBindIPv6() : getBindIP();
+            final InetSocketAddress localAddress = bindIp == null || bindIp.isEmpty() ? null
+                    : new InetSocketAddress(InetAddress.getByName(bindIp), 0);
+
+            SSLEngine engine = null;
+            if (getURI().getScheme().endsWith("s")) {
+                callDebugInfo(DEBUG_SOCKET, "Server is SSL.");
+                engine = createSSLContext().createSSLEngine(getURI().getHost(), getURI().getPort());
+                engine.setUseClientMode(true);
+            }
+
+            connection = eventLoopGroup.connect(new InetSocketAddress(address, connectUri.getPort()),
+                    localAddress, getConnectTimeout(), engine, encoder, Charset.defaultCharset(),
+                    new NonBlockingConnectionHandler());
+        } catch (IOException e) {
+            handleConnectException(e, true);
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            handleConnectException(e, false);
+        }
+    }
+
+    /**
+     * Send server connection strings (CAP/PASS/NICK/USER).
+     *
+     * <p>The lines are queued together so that they are written to the server
+     * at once, rather than waiting for capability negotiation to finish.
      */
     protected void sendConnectionStrings() {
-        sendString("CAP LS");
+        applyServerProfile();
+        final List<String> lines = new ArrayList<>();
+        lines.add("CAP LS 302");
+        final ServerProfile profile = serverProfile;
+        if (profile != null) {
+            for (String capability : profile.getCapabilities()) {
+                capabilities.setRequested(capability);
+            }
+            lines.addAll(CapabilityRegistry.getRequestLines(profile.getCapabilities()));
+        }
         if (getURI().getUserInfo() != null && !getURI().getUserInfo().isEmpty()) {
-            sendString("PASS " + getURI().getUserInfo());
+            lines.add("PASS " + getURI().getUserInfo());
         }
-        sendString("NICK " + me.getNickname());
+        lines.add("NICK " + me.getNickname());
         thinkNickname = me.getNickname();
         String localhost;
         try {
@@ -813,7 +1218,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         } catch (UnknownHostException uhe) {
             localhost = "*";
         }
-        sendString("USER " + me.getUsername() + ' ' + localhost + ' ' + getURI().getHost() + " :" + me.getRealname());
+        lines.add("USER " + me.getUsername() + ' ' + localhost + ' ' + getURI().getHost() + " :" + me.getRealname());
+        sendStrings(lines, QueuePriority.NORMAL);
     }
 
     /**
@@ -890,8 +1296,42 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         callDebugInfo(DEBUG_INFO, "End Thread Execution");
     }
 
+    @Override
+    public void connect() {
+        if (eventLoopGroup == null || getProxy() != null) {
+            super.connect();
+            return;
+        }
+
+        callDebugInfo(DEBUG_INFO, "Begin Non-Blocking Connection");
+        synchronized (controlThreadLock) {
+            if (hasBegan) {
+                // To ensure correct internal state, parsers must be recreated for
+                // new connections rather than being recycled.
+                throw new UnsupportedOperationException("This parser has already been running.");
+            }
+            hasBegan = true;
+        }
+
+        // Resolving the server's address may block, so keep it off the event loops.
+        final ThreadFactory factory = getThreadFactory();
+        final Thread thread = factory == null
+                ? new Thread(this::doNonBlockingConnect, "IRC Parser connection")
+                : factory.newThread(this::doNonBlockingConnect);
+        thread.start();
+    }
+
+    @Override
+    public int getLocalPort() {
+        final NioConnection nioConnection = connection;
+        return nioConnection == null ? super.getLocalPort() : nioConnection.getLocalPort();
+    }
+
     @Override
     public void shutdown() {
+        if (connection != null) {
+            connection.close();
+        }
         try {
             // See note at disconnect() method for why we close rawSocket.
             if (rawSocket != null) {
@@ -972,24 +1412,42 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
     @Override
     public IRCClientInfo getClient(final String details) {
-        final String sWho = getStringConverter().toLowerCase(IRCClientInfo.parseHost(details));
-
-        if (clientList.containsKey(sWho)) {
-            return clientList.get(sWho);
-        } else {
-            return new IRCClientInfo(this, userModes, details).setFake(true);
-        }
+        final IRCClientInfo client = getKnownClient(details);
+        return client == null ? new IRCClientInfo(this, userModes, details).setFake(true) : client;
     }
 
     public boolean isKnownClient(final String host) {
-        final String sWho = getStringConverter().toLowerCase(IRCClientInfo.parseHost(host));
-        return clientList.containsKey(sWho);
+        return getKnownClient(host) != null;
+    }
+
+    /**
+     * Gets the client with the nickname given in a hostmask, if it is known.
+     *
+     * @param host The nickname or hostmask of the client
+     * @return The known client, or null if the client is not known
+     */
+    public IRCClientInfo getKnownClient(final String host) {
+        return clientList.get(host, IRCClientInfo.getNicknameStart(host),
+                IRCClientInfo.getNicknameEnd(host));
+    }
+
+    /**
+     * Gets the client with the nickname held in part of a larger string, if
+     * it is known.
+     *
+     * @param text The text containing the nickname
+     * @param start The offset of the start of the nickname
+     * @param end The offset of the end of the nickname (exclusive)
+     * @return The known client, or null if the client is not known
+     */
+    IRCClientInfo getKnownClient(final CharSequence text, final int start, final int end) {
+        return clientList.get(text, start, end);
     }
 
     @Override
     public IRCChannelInfo getChannel(final String channel) {
         synchronized (channelList) {
-            return channelList.get(getStringConverter().toLowerCase(channel));
+            return channelList.get(channel);
         }
     }
 
@@ -1060,8 +1518,29 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return false;
         }
         callDataOut(line, fromParser);
-        out.sendLine(line, priority);
         parseOutgoingLine(line);
+        out.sendLine(line, priority);
+
+        return true;
+    }
+
+    /**
+     * Send several lines to the server, queued together so that they stay in
+     * order.
+     *
+     * @param lines Lines to send (\r\n termination is added automatically)
+     * @param priority Priority of the lines.
+     * @return True if the lines were sent, else false.
+     */
+    protected boolean sendStrings(final List<String> lines, final QueuePriority priority) {
+        if (getSocketState() != SocketState.OPEN) {
+            return false;
+        }
+        for (String line : lines) {
+            callDataOut(line, true);
+            parseOutgoingLine(line);
+        }
+        out.sendLines(lines, priority);
 
         return true;
     }
@@ -1073,7 +1552,18 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     private void parseOutgoingLine(final String line) {
         final String[] newLine = tokeniseLine(line);
-        if ("away".equalsIgnoreCase(newLine[0]) && newLine.length > 1) {
+        if ("join".equalsIgnoreCase(newLine[0])) {
+            // This must be seen before any replies to the join are processed, so that the
+            // keys tried can be matched up with them.
+            try {
+                final IRCProcessor processor = myProcessingManager.getProcessor("JOIN");
+                if (processor instanceof ProcessJoin) {
+                    ((ProcessJoin) processor).interceptJoin(newLine);
+                }
+            } catch (ProcessorNotFoundException ex) {
+                // Nothing is tracking joins.
+            }
+        } else if ("away".equalsIgnoreCase(newLine[0]) && newLine.length > 1) {
             myself.setAwayReason(newLine[newLine.length - 1]);
         } else if ("mode".equalsIgnoreCase(newLine[0]) && newLine.length == 3) {
             final IRCChannelInfo channel = getChannel(newLine[1]);
@@ -1124,45 +1614,55 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     @SuppressWarnings("fallthrough")
     protected void processLine(final ReadLine line) {
         callDataIn(line);
-        final String[] token = line.getTokens();
-        LocalDateTime lineTS = LocalDateTime.now();
+        // Lines are routed on their first tokens, so that lines such as PINGs
+        // never need to be decoded in full.
+        final Map<String, String> tags = line.hasTags() ? line.getTags()
+                : Collections.<String, String>emptyMap();
+        long timestamp = TimestampDecoder.INVALID;
 
-        if (line.getTags().containsKey("tsirc date")) {
+        if (tags.containsKey("tsirc date")) {
             try {
-                final long ts = Long.parseLong(line.getTags().get("tsirc date")) - tsdiff;
-                lineTS = LocalDateTime.ofInstant(Instant.ofEpochSecond(ts / 1000L, (int) (ts % 1000L)),
-                        ZoneId.systemDefault());
+                timestamp = Long.parseLong(tags.get("tsirc date")) - tsdiff;
             } catch (final NumberFormatException nfe) { /* Do nothing. */ }
-        } else if (line.getTags().containsKey("time")) {
-            try {
-                lineTS = OffsetDateTime.parse(line.getTags().get("time"), serverTimeFormat)
-                        .atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
-            } catch (final DateTimeParseException pe) { /* Do nothing. */ }
+        } else if (tags.containsKey("time")) {
+            timestamp = timestampDecoder.parseServerTime(tags.get("time"));
         }
+        final LocalDateTime lineTS = timestampDecoder.toLocalDateTime(
+                timestamp == TimestampDecoder.INVALID ? System.currentTimeMillis() : timestamp);
 
         setPingNeeded(false);
 
-        if (token.length < 2) {
+        final int tokenCount = line.getTokenCount();
+        if (tokenCount < 2) {
             return;
         }
 
         try {
-            final String sParam = token[1];
-            if ("PING".equalsIgnoreCase(token[0]) || "PING".equalsIgnoreCase(token[1])) {
-                sendString("PONG :" + sParam, QueuePriority.HIGH);
-            } else if ("PONG".equalsIgnoreCase(token[0]) || "PONG".equalsIgnoreCase(token[1])) {
-                if (!lastPingValue.isEmpty() && lastPingValue.equals(token[token.length - 1])) {
+            final IRCCommand first = line.getCommand(0);
+            final IRCCommand command = line.getCommand(1);
+            netsplitHandler.lineReceived(lineTS, tags, command);
+            if (first == IRCCommand.PING || command == IRCCommand.PING) {
+                sendString("PONG :" + line.getToken(1), QueuePriority.HIGH);
+                return;
+            } else if (first == IRCCommand.PONG || command == IRCCommand.PONG) {
+                if (!lastPingValue.isEmpty()
+                        && lastPingValue.equals(line.getToken(tokenCount - 1))) {
                     lastPingValue = "";
                     serverLag = System.currentTimeMillis() - pingTime;
                     callPingSuccess();
                 }
-            } else if ("ERROR".equalsIgnoreCase(token[0])) {
+                return;
+            }
+
+            final String[] token = line.getTokens();
+            final String sParam = token[1];
+            if (first == IRCCommand.ERROR) {
                 final StringBuilder errorMessage = new StringBuilder();
                 for (int i = 1; i < token.length; ++i) {
                     errorMessage.append(token[i]);
                 }
                 callServerError(errorMessage.toString());
-            } else if ("TSIRC".equalsIgnoreCase(token[1]) && token.length > 3) {
+            } else if (command == IRCCommand.TSIRC && token.length > 3) {
                 if ("1".equals(token[2])) {
                     try {
                         final long ts = Long.parseLong(token[3]);
@@ -1170,28 +1670,17 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
                     } catch (final NumberFormatException nfe) { /* Do nothing. */ }
                 }
             } else {
-                int nParam;
+                final int nParam = IRCCommand.getNumeric(sParam);
                 if (got001) {
                     // Freenode sends a random notice in a stupid place, others might do aswell
                     // These shouldn't cause post005 to be fired, so handle them here.
-                    if ("NOTICE".equalsIgnoreCase(token[0]) ||
-                            token.length > 2 && "NOTICE".equalsIgnoreCase(token[2])) {
-                        try {
-                            myProcessingManager.process(lineTS, "Notice Auth", token);
-                        } catch (ProcessorNotFoundException e) {
-                            // ???
-                        }
-
+                    if (first == IRCCommand.NOTICE ||
+                            token.length > 2 && line.getCommand(2) == IRCCommand.NOTICE) {
+                        myProcessingManager.tryProcess(lineTS, "Notice Auth", token);
                         return;
                     }
 
                     if (!post005) {
-                        try {
-                            nParam = Integer.parseInt(token[1]);
-                        } catch (NumberFormatException e) {
-                            nParam = -1;
-                        }
-
                         if (nParam < 0 || nParam > 5) {
                             callPost005();
                         } else {
@@ -1202,18 +1691,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
                         }
                     }
                     // After 001 we potentially care about everything!
-                    try {
-                        myProcessingManager.process(lineTS, sParam, token);
-                    } catch (ProcessorNotFoundException e) {
-                        // ???
-                    }
+                    myProcessingManager.tryProcess(lineTS, command, sParam, token);
                 } else {
                     // Before 001 we don't care about much.
-                    try {
-                        nParam = Integer.parseInt(token[1]);
-                    } catch (NumberFormatException e) {
-                        nParam = -1;
-                    }
                     switch (nParam) {
                         case 1: // 001 - Welcome to IRC
                             synchronized (serverInformationLines) {
@@ -1222,37 +1702,28 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
                             // Fallthrough
                         case IrcConstants.NUMERIC_ERROR_PASSWORD_MISMATCH:
                         case IrcConstants.NUMERIC_ERROR_NICKNAME_IN_USE:
-                            try {
-                                myProcessingManager.process(lineTS, sParam, token);
-                            } catch (ProcessorNotFoundException e) {
-                            }
+                            myProcessingManager.tryProcess(lineTS, command, sParam, token);
                             break;
                         default: // Unknown - Send to Notice Auth
                             // Some networks send a CTCP during the auth process, handle it
                             if (token.length > 3 && !token[3].isEmpty() && token[3].charAt(0) == (char) 1 && token[3].charAt(token[3].length() - 1) == (char) 1) {
-                                try {
-                                    myProcessingManager.process(lineTS, sParam, token);
-                                } catch (ProcessorNotFoundException e) {
-                                }
+                                myProcessingManager.tryProcess(lineTS, command, sParam, token);
                                 break;
                             }
                             // Some networks may send a NICK message if you nick change before 001
                             // Eat it up so that it isn't treated as a notice auth.
-                            if ("NICK".equalsIgnoreCase(token[1])) {
+                            if (command == IRCCommand.NICK) {
                                 break;
                             }
 
                             // CAP also happens here, so try that.
-                            if ("CAP".equalsIgnoreCase(token[1])) {
+                            if (command == IRCCommand.CAP) {
                                 myProcessingManager.process(lineTS, sParam, token);
                                 break;
                             }
 
                             // Otherwise, send to Notice Auth
-                            try {
-                                myProcessingManager.process(lineTS, "Notice Auth", token);
-                            } catch (ProcessorNotFoundException e) {
-                            }
+                            myProcessingManager.tryProcess(lineTS, "Notice Auth", token);
                             break;
                     }
                 }
@@ -1282,6 +1753,13 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     public void setEncoding(final IRCEncoding encoding) {
         stringConverter = new IRCStringConverter(encoding);
+        clientList.setConverter(stringConverter);
+        synchronized (channelList) {
+            channelList.setConverter(stringConverter);
+            for (IRCChannelInfo channel : channelList.values()) {
+                channel.setStringConverter(stringConverter);
+            }
+        }
     }
 
     /**
@@ -1291,13 +1769,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @return State of the requested capability.
      */
     public CapabilityState getCapabilityState(final String capability) {
-        synchronized (capabilities) {
-            if (capabilities.containsKey(capability.toLowerCase())) {
-                return capabilities.get(capability.toLowerCase());
-            } else {
-                return CapabilityState.INVALID;
-            }
-        }
+        return capabilities.getState(capability);
     }
 
     /**
@@ -1307,11 +1779,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param state State to set for capability
      */
     public void setCapabilityState(final String capability, final CapabilityState state) {
-        synchronized (capabilities) {
-            if (capabilities.containsKey(capability.toLowerCase())) {
-                capabilities.put(capability.toLowerCase(), state);
-            }
-        }
+        capabilities.setState(capability, state);
     }
 
     /**
@@ -1320,9 +1788,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param capability Requested capability
      */
     public void addCapability(final String capability) {
-        synchronized (capabilities) {
-            capabilities.put(capability.toLowerCase(), CapabilityState.DISABLED);
-        }
+        capabilities.addCapability(capability, null);
     }
 
     /**
@@ -1331,11 +1797,200 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @return Server capabilities and their current state.
      */
     public Map<String, CapabilityState> getCapabilities() {
-        synchronized (capabilities) {
-            return new HashMap<>(capabilities);
+        return capabilities.getStates();
+    }
+
+    /**
+     * Gets the registry of the server's capabilities, their values and
+     * states, and the capabilities to enable when the server offers them.
+     *
+     * @return The capability registry
+     */
+    public CapabilityRegistry getCapabilityRegistry() {
+        return capabilities;
+    }
+
+    /**
+     * Gets a profile of what has been negotiated with the server. While
+     * connected this describes the current connection, otherwise it describes
+     * the last connection.
+     *
+     * <p>A client can keep the profile for the network, and give it to the
+     * parser for its next connection using
+     * {@link #setServerProfile(ServerProfile)}.
+     *
+     * @return The server profile, or null if the parser has never registered
+     * with a server
+     */
+    @Nullable
+    public ServerProfile getServerProfile() {
+        synchronized (resetStateSync) {
+            return got001 ? createServerProfile() : lastServerProfile;
         }
     }
 
+    /**
+     * Sets a profile from a previous connection to the same network, to be
+     * used until the server sends its own details.
+     *
+     * <p>When connecting, the profile's ISUPPORT tokens are used straight
+     * away for mode tables, channel prefixes, flood control and command
+     * coalescing, and its capabilities are requested along with the
+     * registration. Tokens the server doesn't send again are discarded once
+     * it has finished sending them.
+     *
+     * @param serverProfile The profile to use, or null to wait for the server
+     */
+    public void setServerProfile(@Nullable final ServerProfile serverProfile) {
+        this.serverProfile = serverProfile;
+    }
+
+    /**
+     * Sets whether the channels in the server profile should be joined as
+     * soon as the server accepts the registration, rather than waiting for
+     * the client to join them once the server is ready.
+     *
+     * @param rejoinProfileChannels True to join the profile's channels on 001
+     */
+    public void setRejoinProfileChannels(final boolean rejoinProfileChannels) {
+        this.rejoinProfileChannels = rejoinProfileChannels;
+    }
+
+    /**
+     * Gets whether the channels in the server profile are joined as soon as
+     * the server accepts the registration.
+     *
+     * @return True if the profile's channels are joined on 001
+     */
+    public boolean isRejoinProfileChannels() {
+        return rejoinProfileChannels;
+    }
+
+    /**
+     * Gets the channels from the server profile that should be joined as soon
+     * as the server accepts the registration.
+     *
+     * @return The channels to join, empty if there are none or they shouldn't
+     * be rejoined
+     */
+    public List<ChannelJoinRequest> getProfileChannels() {
+        final ServerProfile profile = serverProfile;
+        if (profile == null || !rejoinProfileChannels) {
+            return Collections.emptyList();
+        }
+        return profile.getChannelJoinRequests();
+    }
+
+    /**
+     * Notes that the server has sent an ISUPPORT token, or a line of version
+     * information, so that any value seeded from the server profile is kept.
+     *
+     * @param key The token's name
+     */
+    public void confirmISupport(final String key) {
+        unconfirmedISupport.remove(key);
+    }
+
+    /**
+     * Takes a copy of the server's ISUPPORT tokens and version information,
+     * to be used in server profiles. {@link #h005Info} is only updated on the
+     * parser thread, so this must be called there once the server's details
+     * have been processed.
+     */
+    public void updateISupportSnapshot() {
+        iSupportSnapshot = Collections.unmodifiableMap(new HashMap<>(h005Info));
+    }
+
+    /**
+     * Takes a profile of the current connection. This may be called from any
+     * thread, so uses the last ISUPPORT snapshot rather than {@link #h005Info}.
+     *
+     * @return A new server profile
+     */
+    private ServerProfile createServerProfile() {
+        final Map<String, String> channels = new LinkedHashMap<>();
+        synchronized (channelList) {
+            for (IRCChannelInfo channel : channelList.values()) {
+                channels.put(channel.getName(), channel.getPassword());
+            }
+        }
+
+        return new ServerProfile(networkName, iSupportSnapshot, capabilities.getEnabled(), channels);
+    }
+
+    /**
+     * Seeds the server's details from the server profile, if there is one.
+     * Nothing is sent to the server.
+     */
+    private void applyServerProfile() {
+        final ServerProfile profile = serverProfile;
+        if (profile == null) {
+            return;
+        }
+
+        callDebugInfo(DEBUG_INFO, "Using server profile: %s", profile);
+        h005Info.putAll(profile.getISupport());
+        unconfirmedISupport.addAll(profile.getISupport().keySet());
+        networkName = profile.getNetworkName();
+
+        final String chanTypes = h005Info.get(IrcConstants.ISUPPORT_CHANNEL_TYPES);
+        if (chanTypes != null) {
+            setChanPrefix(chanTypes);
+        }
+        final String caseMapping = h005Info.get(IrcConstants.ISUPPORT_CASE_MAPPING);
+        if (caseMapping != null) {
+            try {
+                setEncoding(IRCEncoding.valueOf(caseMapping.toUpperCase().replace('-', '_')));
+            } catch (IllegalArgumentException ex) {
+                // The server will warn about it when it is sent again.
+            }
+        }
+
+        parsePrefixModes();
+        parseUserModes();
+        parseChanModes();
+        applyFloodProfile();
+        updateCoalescer();
+        updateISupportSnapshot();
+    }
+
+    /**
+     * Discards anything seeded from the server profile that the server didn't
+     * send again, once it has sent its details.
+     */
+    private void validateServerProfile() {
+        if (unconfirmedISupport.isEmpty()) {
+            return;
+        }
+
+        callDebugInfo(DEBUG_INFO, "Discarding server profile tokens not sent by the server: %s",
+                unconfirmedISupport);
+        h005Info.keySet().removeAll(unconfirmedISupport);
+        unconfirmedISupport.clear();
+
+        if (!h005Info.containsKey(IrcConstants.ISUPPORT_CHANNEL_TYPES)) {
+            resetChanPrefix();
+        }
+        if (!h005Info.containsKey(IrcConstants.ISUPPORT_CASE_MAPPING)
+                && getStringConverter().getEncoding() != IRCEncoding.RFC1459) {
+            setEncoding(IRCEncoding.RFC1459);
+            if (knownClients() == 1) {
+                // Only we are known so far, so the client list can be fixed easily.
+                removeClient(myself);
+                addClient(myself);
+            }
+        }
+        if (!h005Info.containsKey("NETWORK")) {
+            networkName = "";
+        }
+
+        parsePrefixModes();
+        parseUserModes();
+        parseChanModes();
+        applyFloodProfile();
+        updateCoalescer();
+    }
+
     /**
      * Process CHANMODES from 005.
      */
@@ -1613,35 +2268,109 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         thinkNickname = nickname;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The length is in bytes, encoded in the charset used for the target.
+     */
     @Override
     public int getMaxLength(final String type, final String target) {
         // If my host is "nick!user@host" and we are sending "#Channel"
         // a "PRIVMSG" this will find the length of ":nick!user@host PRIVMSG #channel :"
-        // and subtract it from the MAX_LINELENGTH. This should be sufficient in most cases.
-        // Lint = the 2 ":" at the start and end and the 3 separating " "s
-        int length = 0;
+        // and subtract it from the MAX_LINELENGTH.
+        // The relay prefix already includes its leading ":" and trailing " ",
+        // so the remaining 3 bytes are the " " after the type, the " " after
+        // the target and the ":" before the message.
+        final MessageSplitter splitter = getMessageSplitter(target);
+        int length = splitter.getLength(getRelayPrefix());
         if (type != null) {
-            length += type.length();
+            length += splitter.getLength(type);
         }
         if (target != null) {
-            length += target.length();
+            length += splitter.getLength(target);
         }
-        return getMaxLength(length);
+        return MAX_LINELENGTH - length - 3;
     }
 
     /**
-     * Get the max length a message can be.
+     * Get the max length a message can be, in bytes.
      *
      * @param length Length of stuff. (Ie "PRIVMSG"+"#Channel")
      * @return Max Length message should be.
      */
     public int getMaxLength(final int length) {
-        final int lineLint = 5;
-        if (myself.isFake()) {
-            callErrorInfo(new ParserError(ParserError.ERROR_ERROR + ParserError.ERROR_USER, "getMaxLength() called, but I don't know who I am?", getLastLine()));
-            return MAX_LINELENGTH - length - lineLint;
+        return MAX_LINELENGTH - getMessageSplitter(null).getLength(getRelayPrefix()) - length - 3;
+    }
+
+    /**
+     * Gets the prefix the server adds to our lines when relaying them to
+     * others. Until our username and hostname are known, the longest ones
+     * the server is likely to show are assumed.
+     *
+     * @return Our prefix, such as ":nick!user@host ", or a longer one
+     */
+    private String getRelayPrefix() {
+        String ident = myself.isFake() ? "" : myself.getUsername();
+        String host = myself.isFake() ? "" : myself.getHostname();
+        if (ident.isEmpty()) {
+            ident = '~' + me.getUsername();
+        }
+        if (host.isEmpty()) {
+            host = Strings.repeat("x", MAX_HOSTNAME_LENGTH);
+        }
+        return ':' + getMyNickname() + '!' + ident + '@' + host + ' ';
+    }
+
+    /**
+     * Gets a splitter that measures messages in the charset used for a
+     * target.
+     *
+     * @param target The target of the messages, or null if not applicable
+     * @return A splitter for the target's charset
+     */
+    private MessageSplitter getMessageSplitter(@Nullable final String target) {
+        final Charset charset = out.getCharset(target);
+        MessageSplitter splitter = messageSplitter;
+        if (splitter == null || !splitter.getCharset().equals(charset)) {
+            splitter = new MessageSplitter(charset);
+            messageSplitter = splitter;
+        }
+        return splitter;
+    }
+
+    /**
+     * Splits a message into parts that can each be sent in a single line,
+     * without the server having to truncate them when relaying them.
+     *
+     * @param type Type of message (eg PRIVMSG)
+     * @param target Target of message (eg channel name)
+     * @param message The message to split
+     * @return The parts of the message, in order
+     * @see MessageSplitter
+     */
+    public List<String> splitMessage(final String type, final String target,
+            final String message) {
+        return getMessageSplitter(target).split(message, getMaxLength(type, target));
+    }
+
+    /**
+     * Sends a message, split over as many lines as it needs.
+     *
+     * @param type Type of message (eg PRIVMSG)
+     * @param target Target of message (eg channel name)
+     * @param message The message to send
+     */
+    private void sendSplitMessage(final String type, final String target, final String message) {
+        final List<String> parts = message.isEmpty()
+                ? Collections.singletonList(message) : splitMessage(type, target, message);
+        if (parts.size() == 1) {
+            sendString(type + ' ' + target, message);
         } else {
-            return MAX_LINELENGTH - myself.toString().length() - length - lineLint;
+            final List<String> lines = new ArrayList<>(parts.size());
+            for (String part : parts) {
+                lines.add(type + ' ' + target + " :" + part);
+            }
+            sendStrings(lines, QueuePriority.NORMAL);
         }
     }
 
@@ -1662,7 +2391,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             final String[] bits = maxlist.split(",");
             for (String bit : bits) {
                 final String[] parts = bit.split(":", 2);
-                callDebugInfo(DEBUG_INFO, "Bit: %s | parts.length = %s (%s -> %s)", bit, parts.length, parts[0], parts[0].indexOf(mode));
+                if (isDebugging(DEBUG_INFO)) {
+                    callDebugInfo(DEBUG_INFO, "Bit: %s | parts.length = %s (%s -> %s)", bit, parts.length, parts[0], parts[0].indexOf(mode));
+                }
                 if (parts.length == 2 && parts[0].indexOf(mode) > -1) {
                     callDebugInfo(DEBUG_INFO, "parts[0] = '%s' | parts[1] = '%s'", parts[0], parts[1]);
                     try {
@@ -1705,7 +2436,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return;
         }
 
-        sendString("PRIVMSG " + target, message);
+        sendSplitMessage("PRIVMSG", target, message);
     }
 
     @Override
@@ -1717,7 +2448,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return;
         }
 
-        sendString("NOTICE " + target, message);
+        sendSplitMessage("NOTICE", target, message);
     }
 
     @Override
@@ -1734,7 +2465,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return;
         }
         final char char1 = (char) 1;
-        sendString("PRIVMSG " + target, char1 + type.toUpperCase() + ' ' + message + char1);
+        sendSplitMessage("PRIVMSG", target, char1 + type.toUpperCase() + ' ' + message + char1);
     }
 
     @Override
@@ -1746,7 +2477,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return;
         }
         final char char1 = (char) 1;
-        sendString("NOTICE " + target, char1 + type.toUpperCase() + ' ' + message + char1);
+        sendSplitMessage("NOTICE", target, char1 + type.toUpperCase() + ' ' + message + char1);
     }
 
     @Override
@@ -1782,6 +2513,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             if (rawSocket != null) {
                 rawSocket.close();
             }
+            if (connection != null) {
+                connection.close();
+            }
         } catch (IOException e) {
             /* Do Nothing */
         } finally {
@@ -1947,6 +2681,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             return;
         }
 
+        // Reports a netsplit that the server hasn't followed with any other lines.
+        netsplitHandler.checkIdle();
+
         if (getPingNeeded()) {
             callPingFailed();
         } else {
@@ -2061,7 +2798,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param client Client to add
      */
     public void addClient(final IRCClientInfo client) {
-        clientList.put(getStringConverter().toLowerCase(client.getRealNickname()), client);
+        clientList.put(client.getRealNickname(), client);
     }
 
     /**
@@ -2083,7 +2820,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param client Client to remove
      */
     public void forceRemoveClient(final IRCClientInfo client) {
-        clientList.remove(getStringConverter().toLowerCase(client.getRealNickname()));
+        clientList.remove(client.getRealNickname());
     }
 
     /**
@@ -2119,7 +2856,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     public void addChannel(final IRCChannelInfo channel) {
         synchronized (channelList) {
-            channelList.put(getStringConverter().toLowerCase(channel.getName()), channel);
+            channelList.put(channel.getName(), channel);
         }
     }
 
@@ -2130,7 +2867,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     public void removeChannel(final ChannelInfo channel) {
         synchronized (channelList) {
-            channelList.remove(getStringConverter().toLowerCase(channel.getName()));
+            channelList.remove(channel.getName());
         }
     }
 
@@ -2194,4 +2931,80 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         super.handleSocketDebug(message);
         callDebugInfo(DEBUG_SOCKET, message);
     }
+
+    /**
+     * Handles events from a non-blocking connection, mirroring the behaviour of {@link #run()}.
+     */
+    private class NonBlockingConnectionHandler implements ConnectionHandler {
+
+        @Override
+        public void onConnect(final NioConnection nioConnection) {
+            callDebugInfo(DEBUG_SOCKET, "\t-> Opening socket output stream PrintWriter");
+            out.setOutputStream(nioConnection.getOutputStream());
+            out.setScheduler(new ConnectionScheduler(nioConnection));
+            out.setQueueEnabled(true);
+            currentSocketState = SocketState.OPEN;
+            callDebugInfo(DEBUG_SOCKET, "Socket Connected");
+
+            sendConnectionStrings();
+        }
+
+        @Override
+        public void onLine(final ReadLine line) {
+            lastLine = line;
+            if (currentSocketState != SocketState.CLOSING) {
+                processLine(line);
+            }
+        }
+
+        @Override
+        public void onClose(@Nullable final IOException cause) {
+            if (cause != null && currentSocketState == SocketState.OPENING) {
+                handleConnectException(cause, true);
+                return;
+            }
+
+            if (cause != null) {
+                callDebugInfo(DEBUG_SOCKET, "Exception in main loop (%s), Aborted",
+                        cause.getMessage());
+            }
+            if (currentSocketState != SocketState.CLOSED) {
+                currentSocketState = SocketState.CLOSED;
+                callSocketClosed();
+            }
+            resetState();
+        }
+
+    }
+
+    /**
+     * Sends the output queue's lines on a non-blocking connection's event
+     * loop, rather than on a thread for each connection.
+     */
+    private static class ConnectionScheduler implements QueueScheduler {
+
+        /** The connection whose loop lines are sent on. */
+        private final NioConnection connection;
+
+        /**
+         * Creates a new scheduler for the given connection.
+         *
+         * @param connection The connection whose loop lines are sent on
+         */
+        ConnectionScheduler(final NioConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            connection.execute(task);
+        }
+
+        @Override
+        public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+            connection.schedule(task, delay, unit);
+        }
+
+    }
+
 }
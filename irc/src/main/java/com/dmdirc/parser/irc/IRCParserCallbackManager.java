@@ -22,11 +22,9 @@
 
 package com.dmdirc.parser.irc;
 
-import com.dmdirc.parser.common.CallbackManager;
+import com.dmdirc.parser.common.DirectCallbackManager;
 import com.dmdirc.parser.events.ParserEvent;
 import net.engio.mbassy.bus.IMessagePublication;
-import net.engio.mbassy.bus.config.BusConfiguration;
-import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.bus.error.IPublicationErrorHandler;
 
 import java.util.concurrent.TimeUnit;
@@ -36,17 +34,15 @@ import java.util.concurrent.TimeUnit;
  * Manages adding/removing/calling callbacks.
  *
  * Because IRCParser was designed for synchronous callbacks not async events, we enforce synchronous publish only
- * in this CallbackManager for now.
+ * in this CallbackManager for now. Events are published through MBassador unless direct dispatch is turned on,
+ * see {@link DirectCallbackManager}.
  *
  * This may change in future.
  */
-public class IRCParserCallbackManager extends CallbackManager {
+public class IRCParserCallbackManager extends DirectCallbackManager {
     public IRCParserCallbackManager(final IPublicationErrorHandler errorHandler) {
-        super(new BusConfiguration().addFeature(Feature.SyncPubSub.Default())
-                .addFeature(Feature.AsynchronousHandlerInvocation.Default(1, 1))
-                .addFeature(Feature.AsynchronousMessageDispatch.Default()
-                        .setNumberOfMessageDispatchers(0))
-                .addPublicationErrorHandler(errorHandler));
+        super(errorHandler);
+        setDirectDispatch(false);
     }
 
     @Override
@@ -28,29 +28,65 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.CharacterCodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * A {@link java.io.BufferedReader}-style reader that is aware of the IRC
  * protocol and can transcode text appropriately.
  *
+ * <p>By default the reader pulls a single byte at a time from the underlying
+ * stream. Readers constructed with a {@link ByteBuffer} instead read input in
+ * large blocks, frame lines directly within that buffer, and hand the framed
+ * slice to the encoder without copying it.
+ *
  * @since 0.6.5
  */
 public class IRCReader implements Closeable {
 
     /** Maximum length for an IRC line in bytes. */
     private static final int LINE_LENGTH = 1024;
-    /** The input stream to read input from. */
+    /** Default capacity of the buffer used for block-oriented reads. */
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+    /** The input stream to read input from, if any. */
     private final InputStream stream;
+    /** The channel to read input from when not reading from a stream. */
+    private final ReadableByteChannel channel;
+    /** The buffer that input is read into, or null to read a byte at a time. */
+    private final ByteBuffer buffer;
+    /** Array that lines are framed into when the buffer has no backing array. */
+    private final byte[] lineBuffer;
     /** The encoder to use to encode lines. */
     private final Encoder encoder;
-    /** Decoder to use for parts not handled by the encoder. */
-    private final CharsetDecoder decoder;
+    /** Charset to use for parts not handled by the encoder. */
+    private final Charset charset;
+
+    /** The number of bytes framed so far in the current line. */
+    private int lineLength;
+    /** The offset of the trailing parameter in the current line, or -1. */
+    private int paramOffset;
+    /** The previous byte framed in the current line. */
+    private int lastChr;
+    /** Whether the current line started with a tag prefix. */
+    private boolean hasTags;
+    /** Whether the end of the current line's tags has been found. */
+    private boolean endOfTags;
+    /** Whether the current line has IRCv3 message tags. */
+    private boolean hasV3Tags;
+    /** Whether the space following the current line's IRCv3 tags was found. */
+    private boolean foundFirstSpace;
+    /** Whether a partial line is held in the buffer waiting for more input. */
+    private boolean partial;
+    /** Whether the end of the input has been reached. */
+    private boolean ended;
 
     /**
      * Creates a new IRCReader which will read from the specified stream.
@@ -73,11 +109,66 @@ public class IRCReader implements Closeable {
      */
     public IRCReader(final InputStream inputStream, final Encoder encoder,
             final Charset charset) {
+        this(inputStream, null, encoder, charset, null);
+    }
+
+    /**
+     * Creates a new IRCReader which will read from the specified stream in
+     * blocks, using the given buffer.
+     *
+     * <p>Heap buffers are filled directly from the stream. Direct buffers are
+     * filled through a channel wrapping the stream, and each line is framed
+     * into a reusable array as it is scanned.
+     *
+     * @param inputStream The stream to read input from
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     * @param buffer The buffer to read input into
+     */
+    public IRCReader(final InputStream inputStream, final Encoder encoder,
+            final Charset charset, final ByteBuffer buffer) {
+        this(inputStream, checkNotNull(buffer).hasArray() ? null : Channels.newChannel(inputStream),
+                encoder, charset, buffer);
+    }
+
+    /**
+     * Creates a new IRCReader which will read from the specified channel in
+     * blocks, using the given buffer.
+     *
+     * @param inputChannel The channel to read input from
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     * @param buffer The buffer to read input into
+     */
+    public IRCReader(final ReadableByteChannel inputChannel, final Encoder encoder,
+            final Charset charset, final ByteBuffer buffer) {
+        this(null, checkNotNull(inputChannel), encoder, charset, checkNotNull(buffer));
+    }
+
+    /**
+     * Creates a new IRCReader.
+     *
+     * @param inputStream The stream to read input from, if any
+     * @param inputChannel The channel to read input from, if any
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     * @param buffer The buffer to read input into, or null to read per-byte
+     */
+    private IRCReader(final InputStream inputStream, final ReadableByteChannel inputChannel,
+            final Encoder encoder, final Charset charset, final ByteBuffer buffer) {
+        checkArgument(buffer == null || buffer.capacity() > LINE_LENGTH,
+                "Buffer must be larger than the maximum line length");
         this.stream = inputStream;
+        this.channel = inputChannel;
+        this.buffer = buffer;
+        this.lineBuffer = buffer == null || buffer.hasArray() ? null : new byte[LINE_LENGTH];
         this.encoder = encoder;
-        this.decoder = charset.newDecoder();
-        this.decoder.onMalformedInput(CodingErrorAction.REPLACE);
-        this.decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.charset = charset;
+
+        if (buffer != null) {
+            buffer.clear();
+            buffer.limit(0);
+        }
     }
 
     /**
@@ -90,155 +181,328 @@ public class IRCReader implements Closeable {
      * underlying stream
      */
     public ReadLine readLine() throws IOException {
-        final byte[] line = new byte[LINE_LENGTH];
-        int offset = 0;
-        int paramOffset = -1;
-        int chr = 0, lastChr = 0;
-
-        boolean hasTags = false;
-        boolean endOfTags = false;
-        boolean hasV3Tags = false;
-        boolean foundFirstSpace = false;
-
-        while (offset < LINE_LENGTH && (chr = stream.read()) > -1) {
-            if (chr == '\r') {
-                continue;
-            } else if (chr == '\n') {
-                // End of the line
-                break;
-            }
-
-            if (hasTags && !endOfTags) {
-                // Tags end either at the first @ for non-v3 tags or space for v3
-                if (offset > 0 && ((chr == '@' && !hasV3Tags) || chr == ' ')) {
-                    endOfTags = true;
-                    hasV3Tags = (chr == ' ');
-                }
-                // If we are still possibly looking at tags, and we find a non-numeric
-                // character, then we probably have v3Tags
-                if (!endOfTags && (chr < '0' || chr > '9')) {
-                    hasV3Tags = true;
-                }
-            } else if (offset == 0 && chr == '@') {
-                hasTags = true;
-            } else if (offset == 0) {
-                endOfTags = true;
-            }
-
-            line[offset++] = (byte) chr;
+        if (buffer != null) {
+            return readBufferedLine(true);
+        }
 
-            if (lastChr == ' ' && chr == ':' && paramOffset == -1) {
-                // We've found the last param
-                if (!hasV3Tags || foundFirstSpace) {
-                    paramOffset = offset;
-                } else if (hasV3Tags) {
-                    foundFirstSpace = true;
-                }
-            }
+        final byte[] line = new byte[LINE_LENGTH];
+        int chr = 0;
 
-            lastChr = chr;
+        resetLine();
+        while (lineLength < LINE_LENGTH && (chr = stream.read()) > -1 && frame(line, 0, chr)) {
+            // Keep framing until the end of the line.
         }
 
         if (chr == -1) {
             // Hit the end of the stream
+            ended = true;
             return null;
         }
 
-        return processLine(line, offset, paramOffset);
+        return processLine(line, 0, lineLength, paramOffset);
     }
 
     /**
-     * Processes the specified line into a wrapped {@link ReadLine} instance.
+     * Reads a line if one can be read without blocking.
      *
-     * @param line The line as read from the wire
-     * @param length The length of the line in bytes
-     * @param paramOffset The offset of the first byte of the trailing parameter
-     * (i.e., the first byte following the ASCII sequence ' :'), or -1 if no
-     * such parameter exists.
-     * @return A corresponding {@link ReadLine} instance
+     * <p>This is intended for readers over a channel in non-blocking mode. If
+     * the channel has no more input available, the partial line framed so far
+     * is kept until the next call and null is returned; {@link #isEndOfInput()}
+     * can be used to tell this apart from the input ending.
+     *
+     * @return A wrapped line tokenised per RFC1459, or null if no complete
+     * line is available
+     * @throws IOException If an IOException is encountered reading the input
+     */
+    public ReadLine pollLine() throws IOException {
+        checkState(buffer != null, "Only buffered readers can be polled");
+        return readBufferedLine(false);
+    }
+
+    /**
+     * Determines whether the end of the input has been reached.
+     *
+     * @return True if the input has ended, false otherwise
+     */
+    public boolean isEndOfInput() {
+        return ended;
+    }
+
+    /**
+     * Reads a line from the underlying buffer, refilling it from the stream or
+     * channel as required.
+     *
+     * <p>For heap buffers the line is framed in place: bytes are only moved if
+     * a stray carriage return has to be dropped from the middle of the line,
+     * or if a partial line has to be compacted to make room for more input.
+     *
+     * @param block Whether to wait for input if none is available
+     * @return A wrapped line tokenised per RFC1459, or null if the input ends
+     * or no input is available without blocking
+     * @throws IOException If an IOException is encountered reading the input
      */
-    private ReadLine processLine(final byte[] line, final int length, final int paramOffset) {
-        try {
-            final String firstPart = this.decoder.decode(ByteBuffer.wrap(line,
-                    0, paramOffset == -1 ? length : paramOffset - 2)).toString();
-
-            final String[] firstTokens = firstPart.split("[ ]+");
-
-            final String[] tokens;
-            if (paramOffset > -1) {
-                final String source = getSource(firstTokens);
-                final String destination = getDestination(firstTokens);
-
-                final String lastPart = encoder.encode(source, destination,
-                        line, paramOffset, length - paramOffset);
-                tokens = new String[firstTokens.length + 1];
-                System.arraycopy(firstTokens, 0, tokens, 0, firstTokens.length);
-                tokens[firstTokens.length] = lastPart;
+    private ReadLine readBufferedLine(final boolean block) throws IOException {
+        final boolean heap = buffer.hasArray();
+        final byte[] data = heap ? buffer.array() : lineBuffer;
+        final int base = heap ? buffer.arrayOffset() : 0;
+        int lineStart;
+
+        if (partial) {
+            // Resume framing the line held at the start of the buffer.
+            partial = false;
+            lineStart = base;
+        } else {
+            resetLine();
+            lineStart = heap ? base + buffer.position() : 0;
+        }
+
+        while (true) {
+            int pos = buffer.position();
+            final int limit = buffer.limit();
+
+            while (pos < limit && lineLength < LINE_LENGTH) {
+                if (paramOffset > -1) {
+                    // Only line endings matter once the trailing parameter has
+                    // been found, so skip straight to the next CR or LF.
+                    final int end = Math.min(limit, pos + LINE_LENGTH - lineLength);
+                    final int found = heap ? indexOfLineEnd(data, base + pos, base + end) - base
+                            : indexOfLineEnd(buffer, pos, end);
+                    final int count = found - pos;
+                    if (count > 0) {
+                        if (!heap) {
+                            buffer.position(pos);
+                            buffer.get(data, lineLength, count);
+                        } else if (lineStart + lineLength != base + pos) {
+                            System.arraycopy(data, base + pos, data, lineStart + lineLength, count);
+                        }
+                        lineLength += count;
+                        pos = found;
+                    }
+                    if (pos == end) {
+                        continue;
+                    }
+                }
+
+                final int chr = (heap ? data[base + pos] : buffer.get(pos)) & 0xff;
+                pos++;
+                if (!frame(data, lineStart, chr)) {
+                    buffer.position(pos);
+                    return processLine(data, lineStart, lineLength, paramOffset);
+                }
+            }
+
+            buffer.position(pos);
+            if (lineLength >= LINE_LENGTH) {
+                return processLine(data, lineStart, lineLength, paramOffset);
+            }
+
+            final int read = fill(lineStart, block);
+            lineStart = base;
+            if (read < 0) {
+                // Hit the end of the stream
+                ended = true;
+                return null;
+            } else if (read == 0) {
+                // Nothing more to read for now
+                partial = true;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Refills the buffer after all buffered input has been consumed. For heap
+     * buffers the partial line framed so far is first moved to the start of
+     * the buffer.
+     *
+     * @param lineStart The offset within the backing array of the partial line
+     * @param block Whether to keep reading until some input is available
+     * @return The number of bytes read, or -1 if the input has ended
+     * @throws IOException If an IOException is encountered reading the input
+     */
+    private int fill(final int lineStart, final boolean block) throws IOException {
+        final int start;
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), lineStart, buffer.array(), buffer.arrayOffset(),
+                    lineLength);
+            start = lineLength;
+        } else {
+            start = 0;
+        }
+
+        int read;
+        do {
+            buffer.limit(buffer.capacity());
+            buffer.position(start);
+            if (channel == null) {
+                read = stream.read(buffer.array(), buffer.arrayOffset() + start,
+                        buffer.capacity() - start);
             } else {
-                tokens = firstTokens;
+                read = channel.read(buffer);
             }
+        } while (read == 0 && block);
 
-            return new ReadLine(new String(line, 0, length), tokens);
-        } catch (CharacterCodingException ex) {
-            // Shouldn't happen, as we're replacing errors.
-            return null;
+        buffer.limit(read < 0 ? start : start + read);
+        buffer.position(start);
+        return read;
+    }
+
+    /**
+     * Finds the first CR or LF byte within the given range of an array.
+     *
+     * @param data The array to search
+     * @param from The first index to search (inclusive)
+     * @param to The last index to search (exclusive)
+     * @return The index of the first CR or LF, or {@code to} if none is found
+     */
+    private static int indexOfLineEnd(final byte[] data, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final byte chr = data[i];
+            if (chr == '\n' || chr == '\r') {
+                return i;
+            }
         }
+        return to;
     }
 
     /**
-     * Determines the 'source' of a line made up of the specified tokens. A
-     * source is described by the first token if and only if that token starts
-     * with a colon.
+     * Finds the first CR or LF byte within the given range of a buffer.
      *
-     * @param tokens The tokens to extract a source from
-     * @return The relevant source or null if none specified
+     * @param data The buffer to search
+     * @param from The first index to search (inclusive)
+     * @param to The last index to search (exclusive)
+     * @return The index of the first CR or LF, or {@code to} if none is found
      */
-    private String getSource(final String... tokens) {
-        if (tokens.length > 0 && tokens[0].length() > 1 && tokens[0].charAt(0) == ':') {
-            return tokens[0].substring(1);
+    private static int indexOfLineEnd(final ByteBuffer data, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final byte chr = data.get(i);
+            if (chr == '\n' || chr == '\r') {
+                return i;
+            }
         }
+        return to;
+    }
 
-        return null;
+    /**
+     * Resets the framing state ready to frame a new line.
+     */
+    private void resetLine() {
+        lineLength = 0;
+        paramOffset = -1;
+        lastChr = 0;
+        hasTags = false;
+        endOfTags = false;
+        hasV3Tags = false;
+        foundFirstSpace = false;
     }
 
     /**
-     * Determines the 'destination' of a line made up of the specified tokens.
-     * A destination exists only if a source exists
-     * (see {@link #getSource(java.lang.String[])}), and is contained within
-     * the third argument for non-numeric lines, and fourth for numerics.
+     * Frames a single byte into the current line, tracking where any tags
+     * end and where the trailing parameter starts.
      *
-     * @param tokens The tokens to extract a destination from
-     * @return The relevant destination or null if none specified
+     * @param line The array the line is being framed into
+     * @param lineStart The offset of the start of the line within the array
+     * @param chr The byte read from the input
+     * @return False if the byte terminated the line, true otherwise
      */
-    private String getDestination(final String... tokens) {
-        if (tokens.length > 0 && tokens[0].length() >= 3 && tokens[0].charAt(0) == ':') {
-            final int target = tokens[1].matches("^[0-9]+$") ? 3 : 2;
+    private boolean frame(final byte[] line, final int lineStart, final int chr) {
+        if (chr == '\r') {
+            return true;
+        } else if (chr == '\n') {
+            // End of the line
+            return false;
+        }
+
+        if (hasTags && !endOfTags) {
+            // Tags end either at the first @ for non-v3 tags or space for v3
+            if (lineLength > 0 && ((chr == '@' && !hasV3Tags) || chr == ' ')) {
+                endOfTags = true;
+                hasV3Tags = (chr == ' ');
+            }
+            // If we are still possibly looking at tags, and we find a non-numeric
+            // character, then we probably have v3Tags
+            if (!endOfTags && (chr < '0' || chr > '9')) {
+                hasV3Tags = true;
+            }
+        } else if (lineLength == 0 && chr == '@') {
+            hasTags = true;
+        } else if (lineLength == 0) {
+            endOfTags = true;
+        }
+
+        line[lineStart + lineLength++] = (byte) chr;
 
-            if (tokens.length > target) {
-                return tokens[target];
+        if (lastChr == ' ' && chr == ':' && paramOffset == -1) {
+            // We've found the last param
+            if (!hasV3Tags || foundFirstSpace) {
+                paramOffset = lineLength;
+            } else if (hasV3Tags) {
+                foundFirstSpace = true;
             }
         }
 
-        return null;
+        lastChr = chr;
+        return true;
+    }
+
+    /**
+     * Processes the specified line into a wrapped {@link ReadLine} instance.
+     *
+     * <p>The line is copied out of the read buffer, but is otherwise left
+     * undecoded: the returned {@link ReadLine} only records where each token
+     * starts and ends, and decodes tokens, tags and the line itself the first
+     * time they are requested.
+     *
+     * @param line The array holding the line as read from the wire
+     * @param offset The offset of the line within the array
+     * @param length The length of the line in bytes
+     * @param paramOffset The offset of the first byte of the trailing parameter
+     * (i.e., the first byte following the ASCII sequence ' :') relative to the
+     * start of the line, or -1 if no such parameter exists.
+     * @return A corresponding {@link ReadLine} instance
+     */
+    private ReadLine processLine(final byte[] line, final int offset, final int length,
+            final int paramOffset) {
+        final RawLine raw = new RawLine(Arrays.copyOfRange(line, offset, offset + length),
+                paramOffset, charset, encoder);
+
+        if (raw.isAmbiguous()) {
+            // Tag handling would have to look inside the trailing parameter,
+            // so fall back to decoding everything up front.
+            return new ReadLine(raw.getLine(), raw.getRawTokens());
+        }
+
+        return new ReadLine(raw);
     }
 
     @Override
     public void close() throws IOException {
-        stream.close();
+        if (stream == null) {
+            channel.close();
+        } else {
+            stream.close();
+        }
     }
 
     /**
      * Represents a line that has been read from the IRC server and encoded
      * appropriately.
+     *
+     * <p>Lines created by an {@link IRCReader} are decoded lazily: individual
+     * tokens can be retrieved with {@link #getToken(int)} without decoding the
+     * rest of the line, and the line's string form and tags are only built if
+     * they are requested.
      */
     public static class ReadLine {
 
+        /** The undecoded line, or null if the line was created from strings. */
+        private final RawLine raw;
         /** A representation of the read-line using a default encoding. */
-        private final String line;
+        private String line;
         /** The tokens found in the line, individually encoded as appropriate. */
-        private final String[] tokens;
+        private String[] tokens;
         /** The tags (if any) found in the line, individually encoded as appropriate. */
-        private final Map<String,String> tags = new HashMap<>();
+        private Map<String,String> tags;
 
         /**
          * Creates a new instance of {@link ReadLine} with the specified line
@@ -248,7 +512,9 @@ public class IRCReader implements Closeable {
          * @param lineTokens The tokens which make up the line
          */
         public ReadLine(final String line, final String... lineTokens) {
+            this.raw = null;
             this.line = line;
+            this.tags = new MessageTags();
 
             // In the case where TSIRC and message tags are used, the TSIRC tag can appear in 1 of 2 places depending
             // on interpretation of the spec - Either right at the start of the line, or as part of the actual message.
@@ -264,6 +530,16 @@ public class IRCReader implements Closeable {
             this.tokens = checkTSIRC(checkMessageTags(checkTSIRC(lineTokens)));
         }
 
+        /**
+         * Creates a new instance of {@link ReadLine} that lazily decodes the
+         * given raw line.
+         *
+         * @param raw The raw line read from the wire
+         */
+        private ReadLine(final RawLine raw) {
+            this.raw = raw;
+        }
+
         /**
          * Look for TSIRC Timestamp.
          *
@@ -297,13 +573,7 @@ public class IRCReader implements Closeable {
         private String[] checkMessageTags(final String[] lineTokens) {
             String[] tokens = lineTokens;
             if (tokens.length > 0 && !tokens[0].isEmpty() && tokens[0].charAt(0) == '@') {
-                final String[] lineTags = tokens[0].substring(1).split(";");
-                for (final String keyVal : lineTags) {
-                    if (!keyVal.isEmpty()) {
-                        final String[] keyValue = keyVal.split("=", 2);
-                        tags.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
-                    }
-                }
+                MessageTags.parse(tokens[0].substring(1), tags);
 
                 tokens = new String[lineTokens.length - 1];
                 System.arraycopy(lineTokens, 1, tokens, 0, lineTokens.length - 1);
@@ -321,9 +591,45 @@ public class IRCReader implements Closeable {
          * @return A string representation of the line
          */
         public String getLine() {
+            if (line == null) {
+                line = raw.getLine();
+            }
             return line;
         }
 
+        /**
+         * Retrieves the number of tokens in the line, without decoding them.
+         *
+         * @return The number of tokens in the line
+         */
+        public int getTokenCount() {
+            return tokens == null ? raw.getTokenCount() : tokens.length;
+        }
+
+        /**
+         * Retrieves a single token from the line, decoding only that token if
+         * the line has not already been fully decoded.
+         *
+         * @param index The index of the token to retrieve
+         * @return The token at the given index
+         * @throws ArrayIndexOutOfBoundsException if there is no such token
+         */
+        public String getToken(final int index) {
+            return tokens == null ? raw.getToken(index) : tokens[index];
+        }
+
+        /**
+         * Classifies a single token from the line. Tokens that have not been
+         * decoded are classified directly from the bytes read from the wire.
+         *
+         * @param index The index of the token to classify
+         * @return The command the token represents
+         * @throws ArrayIndexOutOfBoundsException if there is no such token
+         */
+        public IRCCommand getCommand(final int index) {
+            return raw == null ? IRCCommand.lookup(tokens[index]) : raw.getCommand(index);
+        }
+
         /**
          * Retrieves an array of tokens extracted from the specified line.
          * Each token may have a different encoding.
@@ -331,16 +637,418 @@ public class IRCReader implements Closeable {
          * @return The line's tokens
          */
         public String[] getTokens() {
+            if (tokens == null) {
+                tokens = raw.getTokens();
+            }
             return tokens;
         }
 
+        /**
+         * Determines whether the line has any tags, including a TSIRC
+         * timestamp, without decoding them.
+         *
+         * @return True if {@link #getTags()} would return any tags
+         */
+        public boolean hasTags() {
+            return tags == null ? raw.hasTags() : !tags.isEmpty();
+        }
+
         /**
          * Retrieves a map of tags extracted from the specified line.
          *
          * @return The line's tags
          */
         public Map<String,String> getTags() {
+            if (tags == null) {
+                tags = raw.getTags();
+            }
+            return tags;
+        }
+    }
+
+    /**
+     * The undecoded form of a {@link ReadLine}: the bytes read from the wire,
+     * and the offsets of each token within them.
+     *
+     * <p>Tokens are split the same way as {@code String.split("[ ]+")} and the
+     * TSIRC and message tag prefixes are located by scanning the bytes, so no
+     * text is decoded until it is asked for.
+     */
+    private static final class RawLine {
+
+        /** Marker for a range that does not exist. */
+        private static final int NONE = -1;
+
+        /** The bytes of the line, excluding any line ending. */
+        private final byte[] data;
+        /** The offset of the trailing parameter, or -1 if there is none. */
+        private final int paramOffset;
+        /** The charset to use for protocol-level elements. */
+        private final Charset charset;
+        /** The encoder to use for the trailing parameter. */
+        private final Encoder encoder;
+        /** The start offset of each space-separated token before the trailing parameter. */
+        private int[] starts = new int[16];
+        /** The end offset of each space-separated token before the trailing parameter. */
+        private int[] ends = new int[16];
+        /** The number of space-separated tokens before the trailing parameter. */
+        private int count;
+        /** The number of leading tokens that held message tags. */
+        private int dropped;
+        /** The start of the first token, after removing any TSIRC timestamp. */
+        private int firstStart;
+        /** The range of a TSIRC timestamp found before any message tags. */
+        private int tsircStart = NONE;
+        private int tsircEnd;
+        /** The range of the message tags, excluding the leading '@'. */
+        private int tagsStart = NONE;
+        private int tagsEnd;
+        /** The range of a TSIRC timestamp found after any message tags. */
+        private int lateTsircStart = NONE;
+        private int lateTsircEnd;
+        /** The tokens that have been decoded so far. */
+        private String[] decoded;
+
+        /**
+         * Creates a new raw line, locating its tokens and tags.
+         *
+         * @param data The bytes of the line
+         * @param paramOffset The offset of the trailing parameter, or -1
+         * @param charset The charset to use for protocol-level elements
+         * @param encoder The encoder to use for the trailing parameter
+         */
+        RawLine(final byte[] data, final int paramOffset, final Charset charset,
+                final Encoder encoder) {
+            this.data = data;
+            this.paramOffset = paramOffset;
+            this.charset = charset;
+            this.encoder = encoder;
+
+            split(paramOffset == -1 ? data.length : paramOffset - 2);
+
+            if (count > 0) {
+                firstStart = starts[0];
+                int tsEnd = findTSIRC(firstStart, ends[0]);
+                if (tsEnd != NONE) {
+                    tsircStart = firstStart + 1;
+                    tsircEnd = tsEnd;
+                    firstStart = tsEnd + 1;
+                }
+
+                if (firstStart < ends[0] && data[firstStart] == '@') {
+                    tagsStart = firstStart + 1;
+                    tagsEnd = ends[0];
+                    dropped = 1;
+                    if (count > 1) {
+                        firstStart = starts[1];
+                        tsEnd = findTSIRC(firstStart, ends[1]);
+                        if (tsEnd != NONE) {
+                            lateTsircStart = firstStart + 1;
+                            lateTsircEnd = tsEnd;
+                            firstStart = tsEnd + 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Splits the given prefix of the line on runs of spaces, following
+         * the semantics of {@code String.split("[ ]+")}.
+         *
+         * @param end The end of the prefix to split
+         */
+        private void split(final int end) {
+            int start = 0;
+            boolean matched = false;
+            int i = 0;
+            while (i < end) {
+                if (data[i] == ' ') {
+                    addToken(start, i);
+                    matched = true;
+                    while (i < end && data[i] == ' ') {
+                        i++;
+                    }
+                    start = i;
+                } else {
+                    i++;
+                }
+            }
+
+            if (start < end || !matched) {
+                addToken(start, end);
+            } else if (count == 1 && ends[0] == 0) {
+                // A line of nothing but spaces has no tokens at all.
+                count = 0;
+            }
+        }
+
+        /**
+         * Records a token.
+         *
+         * @param start The start offset of the token
+         * @param end The end offset of the token
+         */
+        private void addToken(final int start, final int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        /**
+         * Looks for a TSIRC timestamp ("@123@") at the start of a token.
+         *
+         * @param start The start of the token
+         * @param end The end of the token
+         * @return The offset of the closing '@', or {@link #NONE}
+         */
+        private int findTSIRC(final int start, final int end) {
+            if (start >= end || data[start] != '@') {
+                return NONE;
+            }
+
+            for (int i = start + 1; i < end; i++) {
+                if (data[i] == '@') {
+                    return isLong(start + 1, i) ? i : NONE;
+                }
+            }
+
+            return NONE;
+        }
+
+        /**
+         * Determines if a range would be accepted by {@link Long#parseLong},
+         * without throwing an exception for the common non-numeric case.
+         *
+         * @param start The start of the range
+         * @param end The end of the range
+         * @return True if the range holds a valid long
+         */
+        private boolean isLong(final int start, final int end) {
+            int digits = 0;
+            for (int i = start; i < end; i++) {
+                final byte chr = data[i];
+                if (chr < 0) {
+                    // Long.parseLong also accepts non-ASCII digits, so defer to it.
+                    return parsesAsLong(start, end);
+                } else if (chr >= '0' && chr <= '9') {
+                    digits++;
+                } else if (i != start || chr != '-' && chr != '+') {
+                    return false;
+                }
+            }
+
+            return digits > 0 && (digits < 19 || parsesAsLong(start, end));
+        }
+
+        /**
+         * Attempts to parse a range as a long.
+         *
+         * @param start The start of the range
+         * @param end The end of the range
+         * @return True if the range holds a valid long
+         */
+        private boolean parsesAsLong(final int start, final int end) {
+            try {
+                Long.parseLong(decode(start, end));
+                return true;
+            } catch (final NumberFormatException nfe) {
+                return false;
+            }
+        }
+
+        /**
+         * Determines whether the tags of this line can only be found by looking
+         * in the trailing parameter, in which case it can't be lazily decoded.
+         *
+         * @return True if the line must be decoded up front
+         */
+        boolean isAmbiguous() {
+            return paramOffset != -1 && count - dropped <= 0;
+        }
+
+        /**
+         * Decodes a range of the line using the protocol-level charset.
+         *
+         * @param start The start of the range
+         * @param end The end of the range
+         * @return The decoded text
+         */
+        private String decode(final int start, final int end) {
+            return new String(data, start, end - start, charset);
+        }
+
+        /**
+         * Gets a string representation of the whole line.
+         *
+         * @return The line decoded using the default charset
+         */
+        String getLine() {
+            return new String(data);
+        }
+
+        /**
+         * Determines whether the line has message tags or a TSIRC timestamp.
+         *
+         * @return True if the line has tags
+         */
+        boolean hasTags() {
+            return tsircStart != NONE || tagsStart != NONE || lateTsircStart != NONE;
+        }
+
+        /**
+         * Gets the number of tokens in the line once any tags are removed.
+         *
+         * @return The number of tokens
+         */
+        int getTokenCount() {
+            return count - dropped + (paramOffset == -1 ? 0 : 1);
+        }
+
+        /**
+         * Gets a single token, decoding it if required.
+         *
+         * @param index The index of the token
+         * @return The decoded token
+         */
+        String getToken(final int index) {
+            final int tokenCount = getTokenCount();
+            if (index < 0 || index >= tokenCount) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+            if (decoded == null) {
+                decoded = new String[tokenCount];
+            }
+            if (decoded[index] == null) {
+                if (index == count - dropped) {
+                    decoded[index] = encodeTrailing();
+                } else {
+                    final int token = index + dropped;
+                    decoded[index] = decode(index == 0 ? firstStart : starts[token],
+                            ends[token]);
+                }
+            }
+            return decoded[index];
+        }
+
+        /**
+         * Classifies a single token without decoding it, unless it is the
+         * trailing parameter.
+         *
+         * @param index The index of the token
+         * @return The command the token represents
+         */
+        IRCCommand getCommand(final int index) {
+            if (index < 0 || index >= getTokenCount()) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+            if (index == count - dropped) {
+                return IRCCommand.lookup(getToken(index));
+            }
+            final int token = index + dropped;
+            return IRCCommand.lookup(data, index == 0 ? firstStart : starts[token], ends[token]);
+        }
+
+        /**
+         * Gets all tokens in the line, decoding any that haven't been already.
+         *
+         * @return The line's tokens
+         */
+        String[] getTokens() {
+            final int tokenCount = getTokenCount();
+            for (int i = 0; i < tokenCount; i++) {
+                getToken(i);
+            }
+            return decoded == null ? new String[0] : decoded;
+        }
+
+        /**
+         * Gets the tokens of the line as split from the wire, with tags and
+         * timestamps left in place.
+         *
+         * @return The line's undecorated tokens
+         */
+        String[] getRawTokens() {
+            final String[] tokens = new String[count + (paramOffset == -1 ? 0 : 1)];
+            for (int i = 0; i < count; i++) {
+                tokens[i] = decode(starts[i], ends[i]);
+            }
+            if (paramOffset != -1) {
+                tokens[count] = encodeTrailing();
+            }
+            return tokens;
+        }
+
+        /**
+         * Builds the map of tags found on the line.
+         *
+         * @return The line's tags
+         */
+        Map<String, String> getTags() {
+            if (tsircStart == NONE && tagsStart == NONE) {
+                return Collections.emptyMap();
+            }
+
+            final Map<String, String> tags = new MessageTags();
+            if (tsircStart != NONE) {
+                tags.put("tsirc date", decode(tsircStart, tsircEnd));
+            }
+            if (tagsStart != NONE) {
+                MessageTags.parse(data, tagsStart, tagsEnd, charset, tags);
+            }
+            if (lateTsircStart != NONE) {
+                tags.put("tsirc date", decode(lateTsircStart, lateTsircEnd));
+            }
             return tags;
         }
+
+        /**
+         * Encodes the trailing parameter of the line using the encoder.
+         *
+         * <p>A 'source' is only passed if the first token starts with a colon.
+         * A 'destination' is only passed if a source exists, and is contained
+         * within the third token for non-numeric lines, and fourth for
+         * numerics.
+         *
+         * @return The encoded trailing parameter
+         */
+        private String encodeTrailing() {
+            String source = null;
+            String destination = null;
+
+            if (count > 0 && ends[0] - starts[0] > 1 && data[starts[0]] == ':') {
+                source = decode(starts[0] + 1, ends[0]);
+
+                if (source.length() >= 2 && count > 1) {
+                    final int target = isNumeric(starts[1], ends[1]) ? 3 : 2;
+                    if (count > target) {
+                        destination = decode(starts[target], ends[target]);
+                    }
+                }
+            }
+
+            return encoder.encode(source, destination, data, paramOffset,
+                    data.length - paramOffset);
+        }
+
+        /**
+         * Determines if a range consists only of ASCII digits.
+         *
+         * @param start The start of the range
+         * @param end The end of the range
+         * @return True if the range is non-empty and entirely numeric
+         */
+        private boolean isNumeric(final int start, final int end) {
+            for (int i = start; i < end; i++) {
+                if (data[i] < '0' || data[i] > '9') {
+                    return false;
+                }
+            }
+            return end > start;
+        }
     }
 }
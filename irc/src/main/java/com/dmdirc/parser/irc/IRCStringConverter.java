@@ -78,32 +78,22 @@ public class IRCStringConverter implements StringConverter {
 
     @Override
     public String toLowerCase(final String input) {
-        final char[] result = input.toCharArray();
-
-        for (int i = 0; i < input.length(); ++i) {
-            if (result[i] >= 0 && result[i] < lowercase.length) {
-                result[i] = lowercase[result[i]];
-            } else {
-                result[i] = result[i];
-            }
-        }
-
-        return new String(result);
+        return convert(input, lowercase);
     }
 
     @Override
     public String toUpperCase(final String input) {
-        final char[] result = input.toCharArray();
-
-        for (int i = 0; i < input.length(); ++i) {
-            if (result[i] >= 0 && result[i] < uppercase.length) {
-                result[i] = uppercase[result[i]];
-            } else {
-                result[i] = result[i];
-            }
-        }
+        return convert(input, uppercase);
+    }
 
-        return new String(result);
+    /**
+     * Converts a single character to lower case.
+     *
+     * @param input The character to convert
+     * @return The lower-case form of the character
+     */
+    public char toLowerCase(final char input) {
+        return input < lowercase.length ? lowercase[input] : input;
     }
 
     @Override
@@ -112,29 +102,54 @@ public class IRCStringConverter implements StringConverter {
             return true;
         }
 
-        if (first == null || second == null) {
+        if (first == null || second == null || first.length() != second.length()) {
             return false;
         }
 
-        boolean result = first.length() == second.length();
+        for (int i = 0; i < first.length(); ++i) {
+            if (toLowerCase(first.charAt(i)) != toLowerCase(second.charAt(i))) {
+                return false;
+            }
+        }
 
-        if (result) {
-            final char[] firstChar = first.toCharArray();
-            final char[] secondChar = second.toCharArray();
+        return true;
+    }
 
-            for (int i = 0; i < first.length(); ++i) {
-                if (firstChar[i] < lowercase.length && secondChar[i] < lowercase.length) {
-                    result = lowercase[firstChar[i]] == lowercase[secondChar[i]];
-                } else {
-                    result = firstChar[i] == secondChar[i];
-                }
+    /**
+     * Converts a string using the given table, returning the input if no
+     * characters need to change.
+     *
+     * @param input The string to convert
+     * @param table The table mapping each character to its converted form
+     * @return The converted string
+     */
+    private static String convert(final String input, final char[] table) {
+        final int length = input.length();
+        int first = 0;
+        while (first < length && !changes(input.charAt(first), table)) {
+            first++;
+        }
+        if (first == length) {
+            return input;
+        }
 
-                if (!result) {
-                    break;
-                }
+        final char[] result = input.toCharArray();
+        for (int i = first; i < length; ++i) {
+            if (result[i] < table.length) {
+                result[i] = table[result[i]];
             }
         }
+        return new String(result);
+    }
 
-        return result;
+    /**
+     * Determines whether a character is changed by a conversion table.
+     *
+     * @param chr The character to check
+     * @param table The conversion table
+     * @return True if the character would be converted to a different one
+     */
+    private static boolean changes(final char chr, final char[] table) {
+        return chr < table.length && table[chr] != chr;
     }
 }
@@ -30,10 +30,15 @@ public final class IrcConstants {
     public static final int DEFAULT_PORT = 6667;
     public static final int DEFAULT_SSL_PORT = 6697;
 
+    public static final String ISUPPORT_CASE_MAPPING = "CASEMAPPING";
     public static final String ISUPPORT_CHANNEL_MODES = "CHANMODES";
+    public static final String ISUPPORT_CHANNEL_TYPES = "CHANTYPES";
     public static final String ISUPPORT_CHANNEL_USER_PREFIXES = "PREFIX";
     public static final String ISUPPORT_MAXIMUM_BANS = "MAXBANS";
     public static final String ISUPPORT_MAXIMUM_LIST_MODES = "MAXLIST";
+    public static final String ISUPPORT_MAXIMUM_TARGETS = "MAXTARGETS";
+    public static final String ISUPPORT_MODES = "MODES";
+    public static final String ISUPPORT_TARGET_MAXIMUMS = "TARGMAX";
     public static final String ISUPPORT_USER_CHANNEL_MODES = "USERCHANMODES";
     public static final String ISUPPORT_USER_MODES = "USERMODES";
     public static final String ISUPPORT_TOPIC_LENGTH = "TOPICLEN";
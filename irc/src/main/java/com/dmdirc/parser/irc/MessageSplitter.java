@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Splits messages that are too long to send in one line, measuring them in
+ * the bytes they will be encoded as.
+ *
+ * <p>Messages are split at the last space that fits, or between characters
+ * if a word is too long for a line by itself. Surrogate pairs and formatting
+ * codes (including the colours that follow them) are never split, and any
+ * formatting that is in effect at the end of a line is repeated at the start
+ * of the next. A CTCP message keeps its framing and type on every line.
+ */
+public class MessageSplitter {
+
+    /** Character that starts and ends CTCP messages. */
+    private static final char CTCP = 1;
+    /** Character that starts a colour code. */
+    private static final char COLOUR = 3;
+    /** Character that starts a hexadecimal colour code. */
+    private static final char HEX_COLOUR = 4;
+    /** Character that resets all formatting. */
+    private static final char RESET = 15;
+    /** Characters that toggle formatting on and off. */
+    private static final String TOGGLES = "\u0002\u001D\u001F\u001E\u0011\u0016";
+
+    /** The charset messages will be encoded with. */
+    private final Charset charset;
+    /** Whether the charset is UTF-8, which is measured without encoding. */
+    private final boolean utf8;
+    /** Whether the charset encodes every character as a single byte. */
+    private final boolean singleByte;
+
+    /**
+     * Creates a new splitter.
+     *
+     * @param charset The charset messages will be encoded with
+     */
+    public MessageSplitter(final Charset charset) {
+        this.charset = checkNotNull(charset);
+        utf8 = StandardCharsets.UTF_8.equals(charset);
+        singleByte = !utf8 && charset.canEncode()
+                && charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    /**
+     * Gets the charset messages are measured in.
+     *
+     * @return The charset messages will be encoded with
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the number of bytes text will be encoded as.
+     *
+     * @param text The text to measure
+     * @return The encoded length of the text
+     */
+    public int getLength(final CharSequence text) {
+        return getLength(text, 0, text.length());
+    }
+
+    /**
+     * Splits a message into parts that each fit within a number of bytes.
+     *
+     * @param message The message to split
+     * @param budget The maximum encoded length of each part
+     * @return The parts of the message, in order. This is just the message if
+     * it already fits, or if it can't be split to fit.
+     */
+    public List<String> split(final String message, final int budget) {
+        if (getLength(message) <= budget) {
+            return Collections.singletonList(message);
+        }
+
+        final int length = message.length();
+        if (length > 2 && message.charAt(0) == CTCP && message.charAt(length - 1) == CTCP) {
+            final int space = message.indexOf(' ');
+            if (space > 0 && space < length - 1) {
+                final String header = message.substring(0, space + 1);
+                final List<String> parts = splitText(message.substring(space + 1, length - 1),
+                        budget - getLength(header) - 1);
+                final List<String> framed = new ArrayList<>(parts.size());
+                for (String part : parts) {
+                    framed.add(header + part + CTCP);
+                }
+                return framed;
+            }
+        }
+
+        return splitText(message, budget);
+    }
+
+    /**
+     * Splits text into parts that each fit within a number of bytes.
+     *
+     * @param text The text to split
+     * @param budget The maximum encoded length of each part
+     * @return The parts of the text, in order
+     */
+    private List<String> splitText(final String text, final int budget) {
+        if (budget <= 0) {
+            return Collections.singletonList(text);
+        }
+
+        final List<String> parts = new ArrayList<>();
+        final Formatting formatting = new Formatting();
+        final int length = text.length();
+        int start = 0;
+        while (start < length) {
+            String carried = formatting.toString();
+            int used = getLength(carried);
+            if (used >= budget) {
+                carried = "";
+                used = 0;
+            }
+
+            int index = start;
+            int space = -1;
+            Formatting atSpace = null;
+            while (index < length) {
+                final int end = getUnitEnd(text, index);
+                final int size = getLength(text, index, end);
+                if (text.charAt(index) == ' ' && index > start) {
+                    space = index;
+                    atSpace = formatting.copy();
+                }
+                if (used + size > budget) {
+                    if (index == start) {
+                        // Nothing fits, so send a single unit over budget rather than stall.
+                        formatting.apply(text, index, end);
+                        index = end;
+                    }
+                    break;
+                }
+                formatting.apply(text, index, end);
+                used += size;
+                index = end;
+            }
+
+            if (index >= length) {
+                parts.add(carried + text.substring(start));
+                break;
+            }
+            if (space == -1) {
+                parts.add(carried + text.substring(start, index));
+                start = index;
+            } else {
+                parts.add(carried + text.substring(start, space));
+                formatting.set(atSpace);
+                start = space + 1;
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Finds the end of the unit of text starting at the given index, which is
+     * a formatting code and its arguments, a surrogate pair, or a single
+     * character.
+     *
+     * @param text The text being split
+     * @param start The index of the start of the unit
+     * @return The index after the end of the unit
+     */
+    private static int getUnitEnd(final String text, final int start) {
+        final char c = text.charAt(start);
+        if (c == COLOUR) {
+            int end = skipDigits(text, start + 1, 2, false);
+            if (end > start + 1 && end + 1 < text.length() && text.charAt(end) == ','
+                    && Character.isDigit(text.charAt(end + 1))) {
+                end = skipDigits(text, end + 1, 2, false);
+            }
+            return end;
+        } else if (c == HEX_COLOUR) {
+            int end = skipDigits(text, start + 1, 6, true);
+            if (end == start + 7 && skipDigits(text, end + 1, 6, true) == end + 7
+                    && text.charAt(end) == ',') {
+                end += 7;
+            }
+            return end;
+        } else if (Character.isHighSurrogate(c) && start + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(start + 1))) {
+            return start + 2;
+        } else {
+            return start + 1;
+        }
+    }
+
+    /**
+     * Skips over the digits of a colour code.
+     *
+     * @param text The text being split
+     * @param start The index of the first possible digit
+     * @param max The maximum number of digits
+     * @param hex True to allow hexadecimal digits
+     * @return The index after the last digit
+     */
+    private static int skipDigits(final String text, final int start, final int max,
+            final boolean hex) {
+        int end = start;
+        while (end < text.length() && end - start < max
+                && Character.digit(text.charAt(end), hex ? 16 : 10) != -1) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Gets the number of bytes part of some text will be encoded as.
+     *
+     * @param text The text to measure
+     * @param start The index of the first character to measure
+     * @param end The index after the last character to measure
+     * @return The encoded length of the characters
+     */
+    private int getLength(final CharSequence text, final int start, final int end) {
+        if (utf8) {
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                final char c = text.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // Replaced with a single byte.
+                    length++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        } else if (singleByte) {
+            return Character.codePointCount(text, start, end);
+        } else {
+            return charset.encode(CharBuffer.wrap(text, start, end)).remaining();
+        }
+    }
+
+    /**
+     * The formatting in effect at some point in a message.
+     */
+    private static class Formatting {
+
+        /** The toggles that are switched on, in the order of {@link #TOGGLES}. */
+        private int toggles;
+        /** The colour code in effect, or an empty string for none. */
+        private String colour = "";
+        /** The hexadecimal colour code in effect, or an empty string for none. */
+        private String hexColour = "";
+
+        /**
+         * Updates the formatting with a unit of text.
+         *
+         * @param text The text being split
+         * @param start The index of the start of the unit
+         * @param end The index after the end of the unit
+         */
+        void apply(final String text, final int start, final int end) {
+            final char c = text.charAt(start);
+            final int toggle = TOGGLES.indexOf(c);
+            if (toggle != -1) {
+                toggles ^= 1 << toggle;
+            } else if (c == COLOUR) {
+                colour = end > start + 1 ? normaliseColour(text.substring(start + 1, end)) : "";
+            } else if (c == HEX_COLOUR) {
+                hexColour = end > start + 1 ? text.substring(start, end) : "";
+            } else if (c == RESET) {
+                toggles = 0;
+                colour = "";
+                hexColour = "";
+            }
+        }
+
+        /**
+         * Pads the numbers of a colour code to two digits, so that it can't
+         * run into digits at the start of a part.
+         *
+         * @param numbers The foreground colour, and optionally a comma and background colour
+         * @return The colour code with two digit numbers
+         */
+        private static String normaliseColour(final String numbers) {
+            final StringBuilder builder = new StringBuilder().append(COLOUR);
+            final int comma = numbers.indexOf(',');
+            final String foreground = comma == -1 ? numbers : numbers.substring(0, comma);
+            builder.append(foreground.length() < 2 ? "0" : "").append(foreground);
+            if (comma != -1) {
+                final String background = numbers.substring(comma + 1);
+                builder.append(',').append(background.length() < 2 ? "0" : "").append(background);
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Copies this formatting.
+         *
+         * @return A new copy of the formatting
+         */
+        Formatting copy() {
+            final Formatting copy = new Formatting();
+            copy.set(this);
+            return copy;
+        }
+
+        /**
+         * Replaces this formatting with another.
+         *
+         * @param other The formatting to copy
+         */
+        void set(final Formatting other) {
+            toggles = other.toggles;
+            colour = other.colour;
+            hexColour = other.hexColour;
+        }
+
+        /**
+         * Gets the codes that start text with this formatting.
+         *
+         * @return The formatting codes, which are empty for no formatting
+         */
+        @Override
+        public String toString() {
+            if (toggles == 0 && colour.isEmpty() && hexColour.isEmpty()) {
+                return "";
+            }
+            final StringBuilder builder = new StringBuilder(colour).append(hexColour);
+            for (int i = 0; i < TOGGLES.length(); i++) {
+                if ((toggles & 1 << i) != 0) {
+                    builder.append(TOGGLES.charAt(i));
+                }
+            }
+            return builder.toString();
+        }
+
+    }
+
+}
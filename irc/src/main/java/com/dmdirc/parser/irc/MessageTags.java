@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small map of the message tags attached to a line.
+ *
+ * <p>Lines rarely carry more than a handful of tags, so rather than hashing
+ * the keys are kept in an array and searched linearly. Commonly used keys are
+ * shared between all instances rather than being decoded for every line.
+ */
+final class MessageTags extends AbstractMap<String, String> {
+
+    /** Keys which are shared rather than being decoded for each line. */
+    private static final String[] COMMON_KEYS = {
+        "time", "msgid", "account", "batch", "label",
+    };
+    /** The ASCII bytes of each of the {@link #COMMON_KEYS}. */
+    private static final byte[][] COMMON_KEY_BYTES = new byte[COMMON_KEYS.length][];
+
+    static {
+        for (int i = 0; i < COMMON_KEYS.length; i++) {
+            COMMON_KEY_BYTES[i] = COMMON_KEYS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** The keys of the tags, the first {@link #size} of which are in use. */
+    private String[] keys = new String[4];
+    /** The values of the tags, the first {@link #size} of which are in use. */
+    private String[] values = new String[4];
+    /** The number of tags in the map. */
+    private int size;
+
+    /**
+     * Parses a string of message tags, without the leading '@', adding them to
+     * the given map.
+     *
+     * @param tags The tags to parse
+     * @param into The map to add the tags to
+     */
+    static void parse(final String tags, final Map<String, String> into) {
+        final byte[] data = tags.getBytes(StandardCharsets.UTF_8);
+        parse(data, 0, data.length, StandardCharsets.UTF_8, into);
+    }
+
+    /**
+     * Parses message tags from the given range of bytes, adding them to the
+     * given map. Later tags replace earlier ones with the same key.
+     *
+     * <p>Tags are separated by ';', and keys are separated from their
+     * optional values by '='. Values are unescaped as described by the IRCv3
+     * message-tags specification. Tags with empty keys are ignored.
+     *
+     * @param data The array holding the tags
+     * @param start The start of the tags, excluding the leading '@'
+     * @param end The end of the tags
+     * @param charset The charset to decode keys and values with
+     * @param into The map to add the tags to
+     */
+    static void parse(final byte[] data, final int start, final int end,
+            final Charset charset, final Map<String, String> into) {
+        int tagStart = start;
+        while (tagStart < end) {
+            int keyEnd = tagStart;
+            while (keyEnd < end && data[keyEnd] != ';' && data[keyEnd] != '=') {
+                keyEnd++;
+            }
+
+            int tagEnd = keyEnd;
+            boolean escaped = false;
+            while (tagEnd < end && data[tagEnd] != ';') {
+                escaped |= data[tagEnd] == '\\';
+                tagEnd++;
+            }
+
+            if (keyEnd > tagStart) {
+                final String value;
+                if (keyEnd + 1 >= tagEnd) {
+                    value = "";
+                } else if (escaped) {
+                    value = unescape(data, keyEnd + 1, tagEnd, charset);
+                } else {
+                    value = new String(data, keyEnd + 1, tagEnd - keyEnd - 1, charset);
+                }
+                into.put(getKey(data, tagStart, keyEnd, charset), value);
+            }
+
+            tagStart = tagEnd + 1;
+        }
+    }
+
+    /**
+     * Gets the key in the given range, using a shared instance if it is one of
+     * the {@link #COMMON_KEYS}.
+     *
+     * @param data The array holding the key
+     * @param start The start of the key
+     * @param end The end of the key
+     * @param charset The charset to decode uncommon keys with
+     * @return The key
+     */
+    private static String getKey(final byte[] data, final int start, final int end,
+            final Charset charset) {
+        for (int i = 0; i < COMMON_KEY_BYTES.length; i++) {
+            final byte[] key = COMMON_KEY_BYTES[i];
+            if (key.length == end - start && regionMatches(data, start, key)) {
+                return COMMON_KEYS[i];
+            }
+        }
+        return new String(data, start, end - start, charset);
+    }
+
+    /**
+     * Checks whether the given array contains the given key at an offset.
+     *
+     * @param data The array to check
+     * @param start The offset to check at
+     * @param key The key to look for
+     * @return True if the key is present at the offset
+     */
+    private static boolean regionMatches(final byte[] data, final int start, final byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (data[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unescapes a tag value.
+     *
+     * <p>"\:" becomes ';', "\s" becomes ' ', "\\" becomes '\', and "\r" and
+     * "\n" become CR and LF. A backslash before any other character is
+     * dropped, as is a trailing backslash.
+     *
+     * @param data The array holding the value
+     * @param start The start of the escaped value
+     * @param end The end of the escaped value
+     * @param charset The charset to decode the value with
+     * @return The unescaped value
+     */
+    private static String unescape(final byte[] data, final int start, final int end,
+            final Charset charset) {
+        final byte[] result = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (data[i] != '\\') {
+                result[length++] = data[i];
+            } else if (++i < end) {
+                switch (data[i]) {
+                    case ':':
+                        result[length++] = ';';
+                        break;
+                    case 's':
+                        result[length++] = ' ';
+                        break;
+                    case 'r':
+                        result[length++] = '\r';
+                        break;
+                    case 'n':
+                        result[length++] = '\n';
+                        break;
+                    default:
+                        result[length++] = data[i];
+                        break;
+                }
+            }
+        }
+        return new String(result, 0, length, charset);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the index of the given key.
+     *
+     * @param key The key to look for
+     * @return The index of the key, or -1 if it is not present
+     */
+    private int indexOf(final Object key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) > -1;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = indexOf(key);
+        return index > -1 ? values[index] : null;
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        final int index = indexOf(key);
+        if (index > -1) {
+            final String old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public String remove(final Object key) {
+        final int index = indexOf(key);
+        if (index > -1) {
+            final String old = values[index];
+            removeAt(index);
+            return old;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the tag at the given index.
+     *
+     * @param index The index of the tag to remove
+     */
+    private void removeAt(final int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the tags in the order they were added.
+     */
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+
+        /** The index of the next tag to return. */
+        private int next;
+        /** The index of the last tag returned, or -1 if it has been removed. */
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new SimpleImmutableEntry<>(keys[last], values[last]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
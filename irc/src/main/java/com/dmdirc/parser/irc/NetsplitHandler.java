@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.CallbackManager;
+import com.dmdirc.parser.events.NetjoinEvent;
+import com.dmdirc.parser.events.NetsplitEvent;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Groups the quits and joins caused by a netsplit or netjoin, and raises a
+ * single {@link NetsplitEvent} or {@link NetjoinEvent} for each channel once
+ * it is over.
+ *
+ * <p>Splits and joins are recognised from IRCv3 {@code netsplit} and
+ * {@code netjoin} batches. Servers that don't send batches are still
+ * checked for splits: consecutive quits whose reason names two servers are
+ * treated as one netsplit, which ends at the next line that isn't part of it,
+ * or once no more quits have arrived for it between two calls to
+ * {@link #checkIdle()}. Joins can only be recognised when they are batched.
+ */
+public class NetsplitHandler {
+
+    /** The batch type used by servers for netsplits. */
+    private static final String NETSPLIT_BATCH = "netsplit";
+    /** The batch type used by servers for netjoins. */
+    private static final String NETJOIN_BATCH = "netjoin";
+
+    /** The parser that owns this handler. */
+    private final Parser parser;
+    /** The manager to publish events with. */
+    private final CallbackManager manager;
+    /** Open netsplit and netjoin batches, keyed by their reference. */
+    private final Map<String, Split> batches = new HashMap<>();
+    /** The unbatched netsplit currently in progress, if any. */
+    @Nullable private Split pending;
+    /** Whether the pending netsplit has had no quits since the last idle check. */
+    private boolean pendingIdle;
+    /** The batch that the line being processed belongs to, if any. */
+    @Nullable private String currentBatch;
+
+    /**
+     * Creates a new netsplit handler.
+     *
+     * @param parser The parser that owns this handler
+     * @param manager The manager to publish events with
+     */
+    public NetsplitHandler(final Parser parser, final CallbackManager manager) {
+        this.parser = parser;
+        this.manager = manager;
+    }
+
+    /**
+     * Notes the arrival of a new line, before it is processed. A line that
+     * isn't a quit ends any unbatched netsplit in progress.
+     *
+     * @param date The time the line was received
+     * @param tags The tags of the line
+     * @param command The line's command
+     */
+    public void lineReceived(final LocalDateTime date,
+            final Map<String, String> tags, final IRCCommand command) {
+        Split ended = null;
+        synchronized (this) {
+            currentBatch = tags.get("batch");
+            if (pending != null && (command != IRCCommand.QUIT || currentBatch != null)) {
+                ended = pending;
+                pending = null;
+            }
+        }
+        if (ended != null) {
+            publish(date, ended);
+        }
+    }
+
+    /**
+     * Opens a batch. Batches other than netsplits and netjoins are ignored.
+     *
+     * @param reference The reference the server gave the batch
+     * @param type The type of the batch
+     * @param parameters The batch's parameters; netsplits and netjoins name the two servers
+     */
+    public synchronized void startBatch(final String reference, final String type, final String... parameters) {
+        final boolean isSplit = NETSPLIT_BATCH.equalsIgnoreCase(type);
+        if ((isSplit || NETJOIN_BATCH.equalsIgnoreCase(type)) && parameters.length >= 2) {
+            batches.put(reference, new Split(isSplit, parameters[0], parameters[1]));
+        }
+    }
+
+    /**
+     * Closes a batch, raising events for any netsplit or netjoin it held.
+     *
+     * @param date The time the batch ended
+     * @param reference The reference the server gave the batch
+     */
+    public void endBatch(final LocalDateTime date, final String reference) {
+        final Split split;
+        synchronized (this) {
+            split = batches.remove(reference);
+        }
+        if (split != null) {
+            publish(date, split);
+        }
+    }
+
+    /**
+     * Records a client quitting, if the quit is part of a netsplit. This must
+     * be called before the client is removed from its channels.
+     *
+     * @param date The time the client quit
+     * @param client The client that quit
+     * @param reason The quit reason
+     * @return True if the quit is part of a netsplit, false otherwise
+     */
+    public boolean clientQuit(final LocalDateTime date,
+            final IRCClientInfo client, final String reason) {
+        Split ended = null;
+        final boolean isSplit;
+        synchronized (this) {
+            Split split = currentBatch == null ? null : batches.get(currentBatch);
+            if (split == null && currentBatch == null) {
+                final int space = getSplitReasonSpace(reason);
+                if (space == -1) {
+                    ended = pending;
+                    pending = null;
+                } else {
+                    if (pending == null || !pending.hasReason(reason, space)) {
+                        ended = pending;
+                        pending = new Split(true, reason.substring(0, space),
+                                reason.substring(space + 1));
+                    }
+                    pending.lastQuit = date;
+                    pendingIdle = false;
+                    split = pending;
+                }
+            }
+            isSplit = split != null && split.isSplit;
+            if (isSplit) {
+                for (IRCChannelClientInfo channelClient : client.getChannelClientInfos()) {
+                    split.add(channelClient);
+                }
+            }
+        }
+        // Published outside the lock, as listeners may call back into the parser.
+        if (ended != null) {
+            publish(date, ended);
+        }
+        return isSplit;
+    }
+
+    /**
+     * Records a client joining a channel, if the join is part of a netjoin.
+     *
+     * @param channelClient The client that joined, on the channel it joined
+     * @return True if the join is part of a netjoin, false otherwise
+     */
+    public synchronized boolean clientJoined(final IRCChannelClientInfo channelClient) {
+        final Split split = currentBatch == null ? null : batches.get(currentBatch);
+        if (split == null || split.isSplit) {
+            return false;
+        }
+        split.add(channelClient);
+        return true;
+    }
+
+    /**
+     * Ends an unbatched netsplit that has had no quits since the previous
+     * call, raising events for it. This should be called periodically, so
+     * that a netsplit is reported even if no other lines follow it.
+     */
+    public void checkIdle() {
+        final Split split;
+        synchronized (this) {
+            if (pending == null || !pendingIdle) {
+                pendingIdle = true;
+                return;
+            }
+            split = pending;
+            pending = null;
+        }
+        publish(split.lastQuit, split);
+    }
+
+    /**
+     * Ends any unbatched netsplit in progress, raising events for it, and
+     * forgets about any netsplit or netjoin batches that are still open.
+     */
+    public void reset() {
+        final Split split;
+        synchronized (this) {
+            split = pending;
+            batches.clear();
+            pending = null;
+            currentBatch = null;
+        }
+        if (split != null) {
+            publish(split.lastQuit, split);
+        }
+    }
+
+    /**
+     * Raises an event for each channel affected by a split or join. This must
+     * not be called with this handler's lock held, as listeners may take a
+     * while or call back into the parser.
+     *
+     * @param date The time the split or join ended
+     * @param split The split or join that has ended
+     */
+    private void publish(final LocalDateTime date, final Split split) {
+        for (Map.Entry<IRCChannelInfo, List<IRCChannelClientInfo>> entry
+                : split.channels.entrySet()) {
+            if (split.isSplit) {
+                manager.publish(new NetsplitEvent(parser, date, entry.getKey(), split.server,
+                        split.remoteServer, entry.getValue()));
+            } else {
+                manager.publish(new NetjoinEvent(parser, date, entry.getKey(), split.server,
+                        split.remoteServer, entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a quit reason looks like it was caused by a netsplit,
+     * which servers indicate by giving the names of the two servers that
+     * split, separated by a space.
+     *
+     * @param reason The quit reason to check
+     * @return The offset of the space between the two server names, or -1 if
+     * the reason does not look like a netsplit
+     */
+    static int getSplitReasonSpace(final String reason) {
+        int space = -1;
+        boolean dotted = false;
+        for (int i = 0; i < reason.length(); i++) {
+            final char c = reason.charAt(i);
+            if (c == ' ') {
+                if (space != -1 || !dotted) {
+                    return -1;
+                }
+                space = i;
+                dotted = false;
+            } else if (c == '.') {
+                dotted = true;
+            } else if (!isServerNameChar(c)) {
+                return -1;
+            }
+        }
+        if (space == -1 || !dotted) {
+            return -1;
+        }
+        final boolean sameServer = reason.length() == 2 * space + 1
+                && reason.regionMatches(true, 0, reason, space + 1, space);
+        return sameServer ? -1 : space;
+    }
+
+    /**
+     * Checks whether a character may appear in a server name, other than a
+     * dot.
+     *
+     * @param c The character to check
+     * @return True if the character may appear in a server name
+     */
+    private static boolean isServerNameChar(final char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || c == '-' || c == '*' || c == '_';
+    }
+
+    /**
+     * The users affected by a single netsplit or netjoin.
+     */
+    private static class Split {
+
+        /** True if this is a netsplit, false if it is a netjoin. */
+        private final boolean isSplit;
+        /** The first server named by the split. */
+        private final String server;
+        /** The second server named by the split. */
+        private final String remoteServer;
+        /** The affected users, grouped by channel. */
+        private final Map<IRCChannelInfo, List<IRCChannelClientInfo>> channels =
+                new LinkedHashMap<>();
+        /** The time of the most recent quit in an unbatched split. */
+        private LocalDateTime lastQuit;
+
+        /**
+         * Creates a new split.
+         *
+         * @param isSplit True if this is a netsplit, false if it is a netjoin
+         * @param server The first server named by the split
+         * @param remoteServer The second server named by the split
+         */
+        Split(final boolean isSplit, final String server, final String remoteServer) {
+            this.isSplit = isSplit;
+            this.server = server;
+            this.remoteServer = remoteServer;
+        }
+
+        /**
+         * Adds a user to the split.
+         *
+         * @param channelClient The user, on one of the channels affected by the split
+         */
+        void add(final IRCChannelClientInfo channelClient) {
+            channels.computeIfAbsent(channelClient.getChannel(), k -> new ArrayList<>())
+                    .add(channelClient);
+        }
+
+        /**
+         * Checks whether a split quit reason names the same servers as this split.
+         *
+         * @param reason The quit reason
+         * @param space The offset of the space between the server names in the reason
+         * @return True if the reason names this split's servers
+         */
+        boolean hasReason(final String reason, final int space) {
+            return space == server.length()
+                    && reason.regionMatches(true, 0, server, 0, space)
+                    && reason.regionMatches(true, space + 1, remoteServer, 0,
+                            remoteServer.length())
+                    && reason.length() == space + 1 + remoteServer.length();
+        }
+    }
+
+}
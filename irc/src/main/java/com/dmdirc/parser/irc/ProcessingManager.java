@@ -27,8 +27,6 @@ import com.dmdirc.parser.events.NumericEvent;
 import com.dmdirc.parser.irc.processors.IRCProcessor;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -36,13 +34,25 @@ import javax.inject.Inject;
 /**
  * IRC Parser Processing Manager.
  * Manages adding/removing/calling processing stuff.
+ *
+ * <p>Processors for three-digit numerics are held in an array indexed by the
+ * numeric, processors for each {@link IRCCommand} in an array indexed by the
+ * command, and all other processors in a case-insensitive table, so finding
+ * the processor for a line never allocates or throws.
  */
 public class ProcessingManager {
 
+    /** The number of distinct three-digit numerics. */
+    private static final int NUMERIC_COUNT = 1000;
+
     /** Reference to the parser object that owns this ProcessingManager. */
     private final IRCParser parser;
-    /** Hashtable used to store the different types of IRCProcessor known. */
-    private final Map<String, IRCProcessor> processHash = new HashMap<>();
+    /** The processors for each three-digit numeric, indexed by numeric. */
+    private final IRCProcessor[] numericProcessors = new IRCProcessor[NUMERIC_COUNT];
+    /** The processors for each named command, indexed by the command's ordinal. */
+    private final IRCProcessor[] commandProcessorsByName = new IRCProcessor[IRCCommand.values().length];
+    /** The processors for all other tokens. */
+    private final CommandTable<IRCProcessor> commandProcessors = new CommandTable<>();
 
     /**
      * Constructor to create a ProcessingManager.
@@ -84,12 +94,18 @@ public class ProcessingManager {
         doDebug("Adding processor: " + processor.getName());
 
         for (String handle : handles) {
-            if (processHash.containsKey(handle.toLowerCase())) {
-                // New Processors take priority over old ones
-                processHash.remove(handle.toLowerCase());
+            // New Processors take priority over old ones
+            final int numeric = getThreeDigitNumeric(handle);
+            if (numeric == -1) {
+                commandProcessors.put(handle, processor);
+                final IRCCommand command = IRCCommand.lookup(handle);
+                if (command != IRCCommand.NUMERIC && command != IRCCommand.OTHER) {
+                    commandProcessorsByName[command.ordinal()] = processor;
+                }
+            } else {
+                numericProcessors[numeric] = processor;
             }
             doDebug("\t Added handler for: " + handle);
-            processHash.put(handle.toLowerCase(), processor);
         }
     }
 
@@ -100,16 +116,40 @@ public class ProcessingManager {
      */
     public void delProcessor(final IRCProcessor processor) {
         doDebug("Deleting processor: " + processor.getName());
-        for (String elementName : processHash.keySet()) {
-            doDebug("\t Checking handler for: " + elementName);
-            final IRCProcessor testProcessor = processHash.get(elementName);
-            if (testProcessor.getName().equalsIgnoreCase(processor.getName())) {
-                doDebug("\t Removed handler for: " + elementName);
-                processHash.remove(elementName);
+        for (int numeric = 0; numeric < NUMERIC_COUNT; numeric++) {
+            if (numericProcessors[numeric] != null && isSameProcessor(
+                    String.format("%03d", numeric), numericProcessors[numeric], processor)) {
+                numericProcessors[numeric] = null;
+            }
+        }
+        commandProcessors.removeIf((elementName, testProcessor) ->
+                isSameProcessor(elementName, testProcessor, processor));
+        for (int i = 0; i < commandProcessorsByName.length; i++) {
+            if (commandProcessorsByName[i] != null
+                    && commandProcessorsByName[i].getName().equalsIgnoreCase(processor.getName())) {
+                commandProcessorsByName[i] = null;
             }
         }
     }
 
+    /**
+     * Checks whether a registered processor is the one being deleted.
+     *
+     * @param elementName The token the registered processor handles
+     * @param testProcessor The registered processor
+     * @param processor The processor being deleted
+     * @return True if the registered processor should be removed
+     */
+    private boolean isSameProcessor(final String elementName, final IRCProcessor testProcessor,
+            final IRCProcessor processor) {
+        doDebug("\t Checking handler for: " + elementName);
+        if (testProcessor.getName().equalsIgnoreCase(processor.getName())) {
+            doDebug("\t Removed handler for: " + elementName);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Get the processor used for a specified token.
      *
@@ -118,11 +158,30 @@ public class ProcessingManager {
      * @throws ProcessorNotFoundException if no processer exists for the param
      */
     public IRCProcessor getProcessor(final String sParam) throws ProcessorNotFoundException {
-        if (processHash.containsKey(sParam.toLowerCase())) {
-            return processHash.get(sParam.toLowerCase());
-        } else {
+        final IRCProcessor processor = findProcessor(IRCCommand.lookup(sParam), sParam);
+        if (processor == null) {
             throw new ProcessorNotFoundException("No processors will handle " + sParam);
         }
+        return processor;
+    }
+
+    /**
+     * Finds the processor used for a specified token.
+     *
+     * @param command The classification of the token
+     * @param sParam Type of line to process ("005", "PRIVMSG" etc)
+     * @return IRCProcessor for the given param, or null if there is none
+     */
+    private IRCProcessor findProcessor(final IRCCommand command, final String sParam) {
+        switch (command) {
+            case NUMERIC:
+                final int numeric = getThreeDigitNumeric(sParam);
+                return numeric == -1 ? commandProcessors.get(sParam) : numericProcessors[numeric];
+            case OTHER:
+                return commandProcessors.get(sParam);
+            default:
+                return commandProcessorsByName[command.ordinal()];
+        }
     }
 
     /**
@@ -135,12 +194,41 @@ public class ProcessingManager {
      */
     public void process(final LocalDateTime date, final String sParam, final String... token)
             throws ProcessorNotFoundException {
-        IRCProcessor messageProcessor = null;
+        if (!tryProcess(date, IRCCommand.lookup(sParam), sParam, token)) {
+            throw new ProcessorNotFoundException("No processors will handle " + sParam);
+        }
+    }
+
+    /**
+     * Process a Line, if there is a processor for it.
+     *
+     * @param date Date of line.
+     * @param sParam Type of line to process ("005", "PRIVMSG" etc)
+     * @param token IRCTokenised line to process
+     * @return True if a processor handled the line, false if none exists
+     */
+    public boolean tryProcess(final LocalDateTime date, final String sParam,
+            final String... token) {
+        return tryProcess(date, IRCCommand.lookup(sParam), sParam, token);
+    }
+
+    /**
+     * Process a Line whose type has already been classified, if there is a
+     * processor for it.
+     *
+     * @param date Date of line.
+     * @param command The classification of {@code sParam}
+     * @param sParam Type of line to process ("005", "PRIVMSG" etc)
+     * @param token IRCTokenised line to process
+     * @return True if a processor handled the line, false if none exists
+     */
+    public boolean tryProcess(final LocalDateTime date, final IRCCommand command,
+            final String sParam, final String... token) {
+        final IRCProcessor messageProcessor = findProcessor(command, sParam);
         try {
-            messageProcessor = getProcessor(sParam);
-            messageProcessor.process(date, sParam, token);
-        } catch (ProcessorNotFoundException p) {
-            throw p;
+            if (messageProcessor != null) {
+                messageProcessor.process(date, sParam, token);
+            }
         } catch (Exception e) {
             final ParserError ei = new ParserError(ParserError.ERROR_ERROR,
                     "Exception in Processor. [" + messageProcessor + "]: "
@@ -148,13 +236,22 @@ public class ProcessingManager {
             ei.setException(e);
             parser.callErrorInfo(ei);
         } finally {
-            // Try to call callNumeric. We don't want this to work if sParam is a non
-            // integer param, hence the empty catch
-            try {
-                callNumeric(date, Integer.parseInt(sParam), token);
-            } catch (NumberFormatException e) {
+            // Only numeric params trigger callNumeric.
+            if (command == IRCCommand.NUMERIC) {
+                callNumeric(date, IRCCommand.getNumeric(sParam), token);
             }
         }
+        return messageProcessor != null;
+    }
+
+    /**
+     * Gets the value of a token consisting of exactly three digits.
+     *
+     * @param token The token to examine
+     * @return The value of the numeric, or -1 if the token is not a three-digit numeric
+     */
+    private static int getThreeDigitNumeric(final String token) {
+        return token.length() == 3 ? IRCCommand.getNumeric(token) : -1;
     }
 
     /**
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.ChannelJoinRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A snapshot of what was negotiated with a network: the server's ISUPPORT
+ * tokens and version information, the capabilities that were enabled, and
+ * the channels that had been joined.
+ *
+ * <p>A client may keep the profile of each network it connects to and give
+ * it to the parser for the next connection, so that mode tables, flood
+ * limits and capabilities are in place before the server has sent them
+ * again. See {@link IRCParser#setServerProfile(ServerProfile)}.
+ */
+public final class ServerProfile {
+
+    /** The name of the network, or "" if it was not known. */
+    private final String networkName;
+    /** The ISUPPORT tokens and version information, as held in {@link IRCParser#h005Info}. */
+    private final Map<String, String> isupport;
+    /** The capabilities that were enabled, in lower case. */
+    private final Set<String> capabilities;
+    /** The channels that had been joined, mapped to their keys. */
+    private final Map<String, String> channels;
+
+    /**
+     * Creates a new server profile.
+     *
+     * @param networkName The name of the network, or "" if it is not known
+     * @param isupport The ISUPPORT tokens and version information
+     * @param capabilities The capabilities that were enabled
+     * @param channels The channels that had been joined, mapped to their keys
+     */
+    public ServerProfile(final String networkName, final Map<String, String> isupport,
+            final Collection<String> capabilities, final Map<String, String> channels) {
+        this.networkName = checkNotNull(networkName);
+        this.isupport = Collections.unmodifiableMap(new HashMap<>(isupport));
+        this.capabilities = Collections.unmodifiableSet(new HashSet<>(capabilities));
+        this.channels = Collections.unmodifiableMap(new LinkedHashMap<>(channels));
+    }
+
+    /**
+     * Gets the name of the network.
+     *
+     * @return The network name, or "" if it was not known
+     */
+    public String getNetworkName() {
+        return networkName;
+    }
+
+    /**
+     * Gets the ISUPPORT tokens the server sent, along with the version
+     * information from its 002, 003 and 004 lines.
+     *
+     * @return An unmodifiable map of token names to values
+     */
+    public Map<String, String> getISupport() {
+        return isupport;
+    }
+
+    /**
+     * Gets the capabilities that were enabled.
+     *
+     * @return An unmodifiable set of lower case capability names
+     */
+    public Set<String> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Gets the channels that had been joined.
+     *
+     * @return An unmodifiable map of channel names to keys, "" where a
+     * channel had no key
+     */
+    public Map<String, String> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets requests to join the channels that had been joined, with their
+     * keys.
+     *
+     * @return A list of join requests, in the order the channels were joined
+     */
+    public List<ChannelJoinRequest> getChannelJoinRequests() {
+        final List<ChannelJoinRequest> requests = new ArrayList<>(channels.size());
+        for (Map.Entry<String, String> channel : channels.entrySet()) {
+            requests.add(new ChannelJoinRequest(channel.getKey(), channel.getValue()));
+        }
+        return requests;
+    }
+
+    /**
+     * Gets the type of server the profile was taken from.
+     *
+     * @return The server type
+     */
+    public ServerType getServerType() {
+        return ServerType.findServerType(isupport.get("004IRCD"), networkName,
+                isupport.get("003IRCD"), isupport.get("002IRCD"));
+    }
+
+    @Override
+    public String toString() {
+        return "ServerProfile{network=" + networkName + ", isupport=" + isupport.size()
+                + ", capabilities=" + capabilities + ", channels=" + channels.keySet() + '}';
+    }
+
+}
@@ -51,7 +51,24 @@ public enum ServerTypeGroup {
     /**
      * Group for ircds that require list modes to be sent one at a time.
      */
-    SINGLE_LISTMODE("Single List Modes", ServerType.EUIRCD, ServerType.UNREAL, ServerType.IRSEE);
+    SINGLE_LISTMODE("Single List Modes", ServerType.EUIRCD, ServerType.UNREAL, ServerType.IRSEE),
+    /**
+     * IRCU Group.
+     */
+    IRCU("IRCU-esque IRCDs", ServerType.NEFARIOUS, ServerType.ASUKA, ServerType.SNIRCD,
+            ServerType.BIRCD, ServerType.IRCHISPANO, ServerType.IRCU2, ServerType.IRCU_GENERIC),
+    /**
+     * Hybrid Group, excluding the Charybdis group.
+     */
+    HYBRID("Hybrid-esque IRCDs", ServerType.IRCD_RIZON, ServerType.PLEXUS,
+            ServerType.SCOUTLINK_HYBRID, ServerType.OFTC_HYBRID, ServerType.HYBRID7,
+            ServerType.HYBRID, ServerType.RATBOX, ServerType.HYPERION, ServerType.DANCER,
+            ServerType.SHADOW),
+    /**
+     * Group for gateways to other networks, which run locally and don't apply
+     * flood control.
+     */
+    GATEWAY("Gateways", ServerType.BITLBEE, ServerType.BITLBEE_OLD, ServerType.PASTICHE);
 
     /** Name of the group. */
     final String name;
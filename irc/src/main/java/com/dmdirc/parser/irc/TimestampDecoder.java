@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Decodes the timestamps attached to lines by the server, and converts them
+ * to local date times.
+ *
+ * <p>Server-time tags always use the fixed layout
+ * {@code yyyy-MM-ddTHH:mm:ss.SSSZ}, so they are decoded by hand rather than
+ * through a {@link java.time.format.DateTimeFormatter}. The local offset is
+ * looked up once and reused until the system time zone's next transition,
+ * so converting a timestamp only allocates the resulting date.
+ *
+ * <p>Instances are not thread safe; each parser has its own.
+ */
+final class TimestampDecoder {
+
+    /** Value returned when a timestamp can't be decoded. */
+    static final long INVALID = Long.MIN_VALUE;
+    /** The largest zone offset allowed, in seconds. */
+    private static final int MAX_OFFSET_SECONDS = 18 * 3_600;
+
+    /** The time zone that dates are converted to. */
+    private final ZoneRules rules = ZoneId.systemDefault().getRules();
+    /** The first second, since the epoch, that the cached offset applies to. */
+    private long offsetValidFrom = Long.MAX_VALUE;
+    /** The first second, since the epoch, that the cached offset no longer applies to. */
+    private long offsetValidUntil = Long.MIN_VALUE;
+    /** The cached offset of the system time zone. */
+    private ZoneOffset offset;
+
+    /**
+     * Decodes a server-time timestamp such as
+     * {@code 2011-10-19T16:40:51.620Z}. The offset may be given as {@code Z},
+     * {@code +hh}, {@code +hhmm} or {@code +hh:mm}.
+     *
+     * @param value The value of the "time" tag
+     * @return The timestamp in milliseconds since the epoch, or
+     * {@link #INVALID} if the value is not a valid timestamp
+     */
+    long parseServerTime(final CharSequence value) {
+        final int length = value.length();
+        if (length < 24 || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || value.charAt(10) != 'T' || value.charAt(13) != ':'
+                || value.charAt(16) != ':' || value.charAt(19) != '.') {
+            return INVALID;
+        }
+
+        final int year = parseDigits(value, 0, 4);
+        final int month = parseDigits(value, 5, 7);
+        final int day = parseDigits(value, 8, 10);
+        final int hour = parseDigits(value, 11, 13);
+        final int minute = parseDigits(value, 14, 16);
+        final int second = parseDigits(value, 17, 19);
+        final int millis = parseDigits(value, 20, 23);
+        final int offsetSeconds = parseOffset(value, 23);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0
+                || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || millis < 0 || offsetSeconds == Integer.MIN_VALUE) {
+            return INVALID;
+        }
+
+        // Days that don't exist resolve to the end of the month, as they would in java.time.
+        final long epochDay = getEpochDay(year, month, Math.min(day, getMonthLength(year, month)));
+        final long epochSecond = epochDay * 86_400L + hour * 3_600 + minute * 60 + second
+                - offsetSeconds;
+        return epochSecond * 1_000L + millis;
+    }
+
+    /**
+     * Converts a timestamp to a date in the system time zone.
+     *
+     * @param epochMillis The timestamp in milliseconds since the epoch
+     * @return The corresponding local date and time
+     */
+    LocalDateTime toLocalDateTime(final long epochMillis) {
+        final long epochSecond = Math.floorDiv(epochMillis, 1_000L);
+        if (epochSecond < offsetValidFrom || epochSecond >= offsetValidUntil) {
+            final Instant instant = Instant.ofEpochSecond(epochSecond);
+            final ZoneOffsetTransition next = rules.nextTransition(instant);
+            offset = rules.getOffset(instant);
+            offsetValidFrom = epochSecond;
+            offsetValidUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond,
+                (int) Math.floorMod(epochMillis, 1_000L) * 1_000_000, offset);
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     *
+     * @param value The text to parse
+     * @param start The offset of the first digit
+     * @param end The offset after the last digit
+     * @return The value of the digits, or -1 if any character is not a digit
+     */
+    private static int parseDigits(final CharSequence value, final int start, final int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            final char chr = value.charAt(i);
+            if (chr < '0' || chr > '9') {
+                return -1;
+            }
+            result = result * 10 + chr - '0';
+        }
+        return result;
+    }
+
+    /**
+     * Parses the offset at the end of a server-time timestamp.
+     *
+     * @param value The timestamp
+     * @param start The offset of the start of the zone offset
+     * @return The zone offset in seconds, or {@link Integer#MIN_VALUE} if it
+     * is not valid
+     */
+    private static int parseOffset(final CharSequence value, final int start) {
+        final int length = value.length() - start;
+        final char sign = value.charAt(start);
+        if (sign == 'Z') {
+            return length == 1 ? 0 : Integer.MIN_VALUE;
+        } else if (sign != '+' && sign != '-') {
+            return Integer.MIN_VALUE;
+        }
+
+        final int hours = length >= 3 ? parseDigits(value, start + 1, start + 3) : -1;
+        final int minutes;
+        if (length == 3) {
+            minutes = 0;
+        } else if (length == 5) {
+            minutes = parseDigits(value, start + 3, start + 5);
+        } else if (length == 6 && value.charAt(start + 3) == ':') {
+            minutes = parseDigits(value, start + 4, start + 6);
+        } else {
+            return Integer.MIN_VALUE;
+        }
+
+        final int seconds = hours * 3_600 + minutes * 60;
+        if (hours < 0 || minutes < 0 || minutes > 59 || seconds > MAX_OFFSET_SECONDS) {
+            return Integer.MIN_VALUE;
+        }
+        return sign == '-' ? -seconds : seconds;
+    }
+
+    /**
+     * Gets the number of days in a month.
+     *
+     * @param year The year
+     * @param month The month, from 1 to 12
+     * @return The number of days in the month
+     */
+    private static int getMonthLength(final int year, final int month) {
+        switch (month) {
+            case 2:
+                final boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Gets the number of days between the epoch and a date in the proleptic
+     * Gregorian calendar.
+     *
+     * @param year The year, from 1
+     * @param month The month, from 1 to 12
+     * @param day The day of the month, from 1
+     * @return The number of days since 1970-01-01
+     */
+    private static long getEpochDay(final int year, final int month, final int day) {
+        // Count from March, so that any leap day falls at the end of the year.
+        final int marchYear = month <= 2 ? year - 1 : year;
+        final int era = marchYear / 400;
+        final int yearOfEra = marchYear - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+}
@@ -23,6 +23,7 @@
 package com.dmdirc.parser.irc.events;
 
 import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.irc.IRCCommand;
 import com.dmdirc.parser.irc.IRCParser;
 import com.dmdirc.parser.irc.IRCReader.ReadLine;
 
@@ -44,31 +45,59 @@ public class IRCDataInEvent extends DataInEvent {
     private final boolean isNumeric;
 
     public IRCDataInEvent(final IRCParser parser, final LocalDateTime date, final ReadLine line) {
-        super(parser, date, checkNotNull(line).getLine());
-        this.line = line;
+        super(parser, date);
+        this.line = checkNotNull(line);
         tokenisedData = line.getTokens();
+        action = getAction(parser, tokenisedData);
+        numeric = IRCCommand.getNumeric(action);
+        isNumeric = (numeric != -1);
+    }
+
+    /**
+     * Creates a new event for a line received at the given time.
+     *
+     * @param parser The parser that received the line
+     * @param timestamp The time the line was received, in milliseconds since the epoch
+     * @param line The line that was received
+     */
+    public IRCDataInEvent(final IRCParser parser, final long timestamp, final ReadLine line) {
+        super(parser, timestamp);
+        this.line = checkNotNull(line);
+        tokenisedData = line.getTokens();
+        action = getAction(parser, tokenisedData);
+        numeric = IRCCommand.getNumeric(action);
+        isNumeric = (numeric != -1);
+    }
 
+    /**
+     * Determines the action of a line.
+     *
+     * @param parser The parser that received the line
+     * @param tokenisedData The tokens of the line
+     * @return The action of the line
+     */
+    private static String getAction(final IRCParser parser, final String... tokenisedData) {
         // Action is slightly more complicated than for DataOut
         if (tokenisedData.length > 1) {
             if (tokenisedData[0].length() > 0 && tokenisedData[0].charAt(0) == ':') {
                 if (tokenisedData[1].equalsIgnoreCase("NOTICE") && !parser.got001) {
-                    action = "NOTICE AUTH";
+                    return "NOTICE AUTH";
                 } else {
-                    action = tokenisedData[1].toUpperCase();
+                    return tokenisedData[1].toUpperCase();
                 }
             } else if (tokenisedData[0].equalsIgnoreCase("NOTICE")) {
-                action = "NOTICE AUTH";
+                return "NOTICE AUTH";
             } else {
-                action = tokenisedData[0].toUpperCase();
+                return tokenisedData[0].toUpperCase();
             }
         } else {
-            action = "";
+            return "";
         }
+    }
 
-        int num = -1;
-        try { num = Integer.parseInt(action); } catch (final NumberFormatException e) { }
-        numeric = num;
-        isNumeric = (numeric != -1);
+    @Override
+    public String getData() {
+        return line.getLine();
     }
 
     public String[] getTokenisedData() {
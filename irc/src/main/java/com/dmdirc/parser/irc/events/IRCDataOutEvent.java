@@ -46,6 +46,19 @@ public class IRCDataOutEvent extends DataOutEvent {
         action = tokenisedData[0].toUpperCase();
     }
 
+    /**
+     * Creates a new event for data sent at the given time.
+     *
+     * @param parser The parser sending the data
+     * @param timestamp The time the data was sent, in milliseconds since the epoch
+     * @param data The data being sent
+     */
+    public IRCDataOutEvent(final Parser parser, final long timestamp, final String data) {
+        super(parser, timestamp, data);
+        tokenisedData = IRCParser.tokeniseLine(checkNotNull(data));
+        action = tokenisedData[0].toUpperCase();
+    }
+
     public String[] getTokenisedData() {
         return tokenisedData;
     }
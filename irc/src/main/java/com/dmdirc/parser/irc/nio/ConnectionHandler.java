@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives the events of a {@link NioConnection}. All methods are called on the
+ * connection's event loop thread, so they should not block.
+ */
+public interface ConnectionHandler {
+
+    /**
+     * Called once the connection has been established, and any TLS handshake
+     * has completed.
+     *
+     * @param connection The connection that has been established
+     */
+    void onConnect(NioConnection connection);
+
+    /**
+     * Called for each line read from the connection.
+     *
+     * @param line The line that was read
+     */
+    void onLine(ReadLine line);
+
+    /**
+     * Called once when the connection closes, whether or not it was ever
+     * established.
+     *
+     * @param cause The exception that caused the connection to close, or null
+     * if it was closed normally or by the other end
+     */
+    void onClose(@Nullable IOException cause);
+
+}
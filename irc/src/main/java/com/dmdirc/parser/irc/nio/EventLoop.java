@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single thread that multiplexes many connections using a {@link Selector}.
+ *
+ * <p>All channel operations and connection callbacks happen on the loop's
+ * thread. Other threads hand work to the loop using {@link #execute(Runnable)}.
+ */
+class EventLoop implements Runnable {
+
+    /** The selector used to wait for channels to become ready. */
+    private final Selector selector;
+    /** Tasks submitted from other threads, waiting to be run on the loop. */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /** Timers waiting to fire, ordered by deadline. Only used on the loop. */
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    /** The thread running this loop, once it has started. */
+    private volatile Thread thread;
+    /** Whether the loop has been asked to stop. */
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new event loop with its own selector.
+     *
+     * @throws IOException If the selector can not be opened
+     */
+    EventLoop() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Determines whether the calling thread is this loop's thread.
+     *
+     * @return True if called from the loop, false otherwise
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the given task on the loop. Tasks submitted from the loop itself are
+     * run immediately.
+     *
+     * @param task The task to run
+     */
+    void execute(final Runnable task) {
+        if (inLoop()) {
+            task.run();
+        } else {
+            tasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the given task on a later iteration of the loop, after any channels
+     * that are currently ready have been serviced.
+     *
+     * @param task The task to run
+     */
+    void defer(final Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Schedules a task to run on the loop after the given delay. Must be
+     * called from the loop.
+     *
+     * @param task The task to run
+     * @param delay The delay, in milliseconds
+     * @return A timer which can be cancelled
+     */
+    Timer schedule(final Runnable task, final long delay) {
+        final Timer timer = new Timer(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Registers a channel with this loop's selector. Must be called from the
+     * loop.
+     *
+     * @param channel The channel to register
+     * @param ops The interest set for the channel
+     * @param handler The handler to call when the channel becomes ready
+     * @return The channel's selection key
+     * @throws ClosedChannelException If the channel has been closed
+     */
+    SelectionKey register(final SelectableChannel channel, final int ops,
+            final Handler handler) throws ClosedChannelException {
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Asks the loop to stop. Any channels still registered are closed.
+     */
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (!stopped) {
+                runTasks();
+                final long timeout = runTimers();
+                if (tasks.isEmpty()) {
+                    selector.select(timeout);
+                } else {
+                    selector.selectNow();
+                }
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        ((Handler) key.attachment()).ready(key);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            // Selector has broken, nothing more can be done.
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((Handler) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks that were waiting when the method was called. Tasks
+     * deferred while they run are left for the next iteration.
+     */
+    private void runTasks() {
+        for (int i = tasks.size(); i > 0; i--) {
+            final Runnable task = tasks.poll();
+            if (task == null) {
+                break;
+            }
+            runSafely(task);
+        }
+    }
+
+    /**
+     * Runs any timers that have expired.
+     *
+     * @return The number of milliseconds until the next timer expires, or 0
+     * if there are no timers
+     */
+    private long runTimers() {
+        while (!timers.isEmpty()) {
+            final Timer timer = timers.peek();
+            final long remaining = timer.deadline - System.nanoTime();
+            if (timer.cancelled) {
+                timers.poll();
+            } else if (remaining <= 0) {
+                timers.poll();
+                runSafely(timer.task);
+            } else {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs a task, ignoring any runtime exception it throws. Connections
+     * report their own failures, and one failing task must not stop the loop
+     * for every other connection sharing it.
+     *
+     * @param task The task to run
+     */
+    private static void runSafely(final Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Handles readiness events for a registered channel.
+     */
+    interface Handler {
+
+        /**
+         * Called when the channel is ready for one of its interested operations.
+         *
+         * @param key The channel's selection key
+         */
+        void ready(SelectionKey key);
+
+        /**
+         * Called when the loop stops while the channel is still registered.
+         */
+        void close();
+
+    }
+
+    /**
+     * A task scheduled to run after a delay.
+     */
+    static final class Timer implements Comparable<Timer> {
+
+        /** The task to run. */
+        private final Runnable task;
+        /** The {@link System#nanoTime()} at which to run the task. */
+        private final long deadline;
+        /** Whether the timer has been cancelled. */
+        private boolean cancelled;
+
+        /**
+         * Creates a new timer.
+         *
+         * @param task The task to run
+         * @param deadline The {@link System#nanoTime()} at which to run the task
+         */
+        private Timer(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timer, if it has not already run.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(final Timer other) {
+            return Long.compare(deadline, other.deadline);
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.interfaces.Encoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLEngine;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A pool of event loop threads which can be shared by many connections.
+ *
+ * <p>Each connection is assigned to one of the group's loops when it is created
+ * and stays on that loop's thread for its lifetime. This allows a process to
+ * hold thousands of connections on a handful of threads, rather than using a
+ * dedicated thread (or two) for each connection.
+ */
+public class EventLoopGroup implements Closeable {
+
+    /** The loops in this group. */
+    private final EventLoop[] loops;
+    /** Counter used to assign connections to loops in turn. */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     * Creates a new group with the given number of loops.
+     *
+     * @param threads The number of loops (and therefore threads) to use
+     * @throws IOException If a selector can not be opened
+     */
+    public EventLoopGroup(final int threads) throws IOException {
+        this(threads, new ThreadFactory() {
+            /** Counter used to name threads. */
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, "IRC Parser event loop " + count.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * Creates a new group with the given number of loops, whose threads are
+     * created by the given factory.
+     *
+     * @param threads The number of loops (and therefore threads) to use
+     * @param threadFactory The factory to use to create loop threads
+     * @throws IOException If a selector can not be opened
+     */
+    public EventLoopGroup(final int threads, final ThreadFactory threadFactory)
+            throws IOException {
+        checkArgument(threads > 0, "At least one thread is required");
+        checkNotNull(threadFactory);
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop();
+        }
+        for (EventLoop loop : loops) {
+            threadFactory.newThread(loop).start();
+        }
+    }
+
+    /**
+     * Starts a new connection on one of the group's loops. This method does
+     * not block: the outcome is reported to the handler.
+     *
+     * @param remote The resolved address to connect to
+     * @param local The address to bind to, or null to not bind
+     * @param connectTimeout The time to allow for the connection to be
+     * established, in milliseconds
+     * @param engine The engine to use for TLS, or null for a plain connection
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     * @param handler The handler to pass the connection's events to
+     * @return The new connection
+     */
+    public NioConnection connect(final SocketAddress remote, @Nullable final SocketAddress local,
+            final int connectTimeout, @Nullable final SSLEngine engine, final Encoder encoder,
+            final Charset charset, final ConnectionHandler handler) {
+        checkNotNull(remote);
+        final EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        final NioConnection connection = new NioConnection(loop, engine, checkNotNull(encoder),
+                checkNotNull(charset), checkNotNull(handler));
+        loop.execute(() -> connection.start(remote, local, connectTimeout));
+        return connection;
+    }
+
+    /**
+     * Stops all of the group's loops, closing any connections that are still
+     * open.
+     */
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.interfaces.Encoder;
+import com.dmdirc.parser.irc.IRCReader;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * A non-blocking connection to an IRC server, driven by an {@link EventLoop}.
+ *
+ * <p>Lines are framed by an {@link IRCReader} as data arrives and passed to the
+ * connection's {@link ConnectionHandler}. Data written to the connection's
+ * {@link #getOutputStream() output stream} is buffered and written by the
+ * event loop when the socket can accept it.
+ */
+public class NioConnection {
+
+    /** Time to allow for a TLS handshake to complete, in milliseconds. */
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+    /** Lines to read before letting other connections on the loop have a turn. */
+    private static final int MAX_LINES_PER_READ = 100;
+    /** Maximum number of bytes to buffer waiting to be written. */
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+    /** The loop this connection belongs to. */
+    private final EventLoop loop;
+    /** The engine to use for TLS, or null for a plain text connection. */
+    @Nullable
+    private final SSLEngine engine;
+    /** The encoder to use to encode lines. */
+    private final Encoder encoder;
+    /** Charset to use for parts not handled by the encoder. */
+    private final Charset charset;
+    /** The handler to pass events to. */
+    private final ConnectionHandler handler;
+    /** The stream that lines are written to. */
+    private final OutputStream outputStream = new ChannelOutputStream();
+    /** Object to use to lock access to {@link #output}. */
+    private final Object outputLock = new Object();
+    /** Whether a flush of the output buffer has been scheduled on the loop. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** Data waiting to be written, in write mode. */
+    private ByteBuffer output = ByteBuffer.allocate(4096);
+    /** The underlying socket. */
+    private SocketChannel socket;
+    /** The channel that data is read from and written to. */
+    private ByteChannel channel;
+    /** The TLS channel wrapping the socket, if any. */
+    private SslChannel sslChannel;
+    /** The reader used to frame lines. */
+    private IRCReader reader;
+    /** The socket's selection key. */
+    private SelectionKey key;
+    /** The timer that will abort the connection if it takes too long. */
+    private EventLoop.Timer timeout;
+    /** Whether the connection has been established. */
+    private boolean established;
+    /** Whether the connection has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new connection.
+     *
+     * @param loop The loop the connection will belong to
+     * @param engine The engine to use for TLS, or null for a plain connection
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     * @param handler The handler to pass events to
+     */
+    NioConnection(final EventLoop loop, @Nullable final SSLEngine engine, final Encoder encoder,
+            final Charset charset, final ConnectionHandler handler) {
+        this.loop = loop;
+        this.engine = engine;
+        this.encoder = encoder;
+        this.charset = charset;
+        this.handler = handler;
+    }
+
+    /**
+     * Gets the stream which can be used to send data over this connection.
+     * Data written before the connection is established is sent once it is.
+     *
+     * @return The connection's output stream
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Gets the local port the connection is bound to.
+     *
+     * @return The local port, or -1 if the connection is not yet bound
+     */
+    public int getLocalPort() {
+        final SocketChannel channel = socket;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+    /**
+     * Determines whether the connection has been closed.
+     *
+     * @return True if the connection is closed, false otherwise
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Runs a task on the connection's event loop, after anything the loop is
+     * currently doing. The task must not block. If the task throws an
+     * exception, the connection is closed.
+     *
+     * @param task The task to run
+     */
+    public void execute(final Runnable task) {
+        loop.defer(() -> run(task::run));
+    }
+
+    /**
+     * Runs a task on the connection's event loop after a delay. The task must
+     * not block. If the task throws an exception, the connection is closed.
+     *
+     * @param task The task to run
+     * @param delay The delay before running the task
+     * @param unit The unit of the delay
+     */
+    public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        // Rounded up, so that the task doesn't run before it is due.
+        final long millis = TimeUnit.NANOSECONDS.toMillis(unit.toNanos(delay) + 999_999);
+        loop.execute(() -> loop.schedule(() -> run(task::run), millis));
+    }
+
+    /**
+     * Closes the connection. The handler's {@link ConnectionHandler#onClose}
+     * method will be called on the event loop.
+     */
+    public void close() {
+        loop.execute(() -> close(null));
+    }
+
+    /**
+     * Opens the socket and starts connecting. Must be called on the loop.
+     *
+     * @param remote The address to connect to
+     * @param local The address to bind to, or null to not bind
+     * @param connectTimeout The time to allow for the connection to be
+     * established, in milliseconds
+     */
+    void start(final SocketAddress remote, @Nullable final SocketAddress local,
+            final int connectTimeout) {
+        try {
+            socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            if (local != null) {
+                try {
+                    socket.bind(local);
+                } catch (IOException ex) {
+                    // Bind failed; continue trying to connect anyway.
+                }
+            }
+
+            key = loop.register(socket, 0, new KeyHandler());
+            timeout = loop.schedule(() -> close(new SocketTimeoutException("Connect timed out")),
+                    connectTimeout);
+            if (socket.connect(remote)) {
+                connected();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (UnresolvedAddressException ex) {
+            close(new UnknownHostException(remote.toString()));
+        } catch (IOException ex) {
+            close(ex);
+        }
+    }
+
+    /**
+     * Called when the socket has connected, to start any TLS handshake.
+     *
+     * @throws IOException If the handshake can not be started
+     */
+    private void connected() throws IOException {
+        timeout.cancel();
+        if (engine == null) {
+            channel = socket;
+            established();
+        } else {
+            sslChannel = new SslChannel(socket, engine);
+            channel = sslChannel;
+            timeout = loop.schedule(() -> close(new SocketTimeoutException("Handshake timed out")),
+                    HANDSHAKE_TIMEOUT);
+            handshake();
+        }
+    }
+
+    /**
+     * Makes progress with the TLS handshake.
+     *
+     * @throws IOException If the handshake fails
+     */
+    private void handshake() throws IOException {
+        if (sslChannel.handshake()) {
+            timeout.cancel();
+            established();
+        } else {
+            updateInterest();
+        }
+    }
+
+    /**
+     * Called once the connection is ready to carry lines.
+     *
+     * @throws IOException If any initial data can not be read or written
+     */
+    private void established() throws IOException {
+        established = true;
+        reader = new IRCReader(channel, encoder, charset,
+                ByteBuffer.allocate(IRCReader.DEFAULT_BUFFER_SIZE));
+        handler.onConnect(this);
+        flush();
+        // The server may already have sent data along with the handshake.
+        read();
+    }
+
+    /**
+     * Reads and handles lines until no more data is available without blocking.
+     *
+     * @throws IOException If the socket can not be read
+     */
+    private void read() throws IOException {
+        for (int i = 0; i < MAX_LINES_PER_READ; i++) {
+            if (closed) {
+                return;
+            }
+
+            final ReadLine line = reader.pollLine();
+            if (line == null) {
+                if (reader.isEndOfInput()) {
+                    close(null);
+                } else {
+                    updateInterest();
+                }
+                return;
+            }
+
+            handler.onLine(line);
+        }
+
+        // Give other connections a turn before carrying on.
+        loop.defer(() -> run(this::read));
+    }
+
+    /**
+     * Writes as much buffered output as the socket will accept.
+     *
+     * @throws IOException If the socket can not be written to
+     */
+    private void flush() throws IOException {
+        flushScheduled.set(false);
+        if (!established || closed) {
+            return;
+        }
+
+        synchronized (outputLock) {
+            output.flip();
+            try {
+                channel.write(output);
+            } finally {
+                output.compact();
+            }
+        }
+        updateInterest();
+    }
+
+    /**
+     * Updates the operations the loop waits for, based on whether there is any
+     * output that could not be written immediately.
+     */
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+
+        final boolean pendingOutput;
+        synchronized (outputLock) {
+            pendingOutput = established && output.position() > 0;
+        }
+
+        if (pendingOutput || sslChannel != null && sslChannel.hasPendingOutput()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Closes the connection and notifies the handler, if it is not already
+     * closed. Must be called on the loop.
+     *
+     * @param cause The exception that caused the connection to close, if any
+     */
+    private void close(@Nullable final IOException cause) {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ex) {
+            // Ignore
+        }
+        handler.onClose(cause);
+    }
+
+    /**
+     * Runs an action on the loop, closing the connection if it fails.
+     *
+     * @param action The action to run
+     */
+    private void run(final Action action) {
+        try {
+            action.run();
+        } catch (IOException ex) {
+            close(ex);
+        } catch (RuntimeException ex) {
+            close(new IOException(ex));
+        }
+    }
+
+    /**
+     * An action which may fail with an {@link IOException}.
+     */
+    private interface Action {
+
+        /**
+         * Runs the action.
+         *
+         * @throws IOException If the action fails
+         */
+        void run() throws IOException;
+
+    }
+
+    /**
+     * Handles readiness events from the loop.
+     */
+    private class KeyHandler implements EventLoop.Handler {
+
+        @Override
+        public void ready(final SelectionKey key) {
+            run(() -> {
+                final int ready = key.readyOps();
+                if ((ready & SelectionKey.OP_CONNECT) != 0) {
+                    if (socket.finishConnect()) {
+                        connected();
+                    }
+                } else if (!established) {
+                    handshake();
+                } else {
+                    if ((ready & SelectionKey.OP_WRITE) != 0) {
+                        flush();
+                    }
+                    if ((ready & SelectionKey.OP_READ) != 0) {
+                        read();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close(new IOException("Event loop has stopped"));
+        }
+
+    }
+
+    /**
+     * Buffers data to be written by the loop.
+     */
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Connection has been closed");
+            }
+
+            synchronized (outputLock) {
+                if (output.remaining() < len) {
+                    final int required = output.position() + len;
+                    if (required > MAX_PENDING_OUTPUT) {
+                        throw new IOException("Too much output is waiting to be sent");
+                    }
+                    final ByteBuffer larger = ByteBuffer.allocate(
+                            Math.min(MAX_PENDING_OUTPUT, Math.max(required, output.capacity() * 2)));
+                    output.flip();
+                    larger.put(output);
+                    output = larger;
+                }
+                output.put(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(() -> run(NioConnection.this::flush));
+            }
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A non-blocking channel which encrypts and decrypts data sent over a socket
+ * using an {@link SSLEngine}.
+ *
+ * <p>Reads and writes never block: {@link #read(ByteBuffer)} returns 0 when no
+ * complete TLS record is available, and encrypted output that could not be
+ * written immediately is held until {@link #flush()} succeeds.
+ */
+class SslChannel implements ByteChannel {
+
+    /** An empty buffer used when wrapping handshake messages. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** The underlying socket. */
+    private final SocketChannel socket;
+    /** The engine used to encrypt and decrypt data. */
+    private final SSLEngine engine;
+    /** Encrypted data read from the socket, in write mode. */
+    private ByteBuffer netIn;
+    /** Encrypted data waiting to be written to the socket, in read mode. */
+    private final ByteBuffer netOut;
+    /** Decrypted data waiting to be read, in read mode. */
+    private ByteBuffer appIn;
+    /** Whether the socket or the TLS session has been closed by the peer. */
+    private boolean inputEnded;
+
+    /**
+     * Creates a new channel and begins the handshake.
+     *
+     * @param socket The underlying socket, in non-blocking mode
+     * @param engine The engine to use, configured for client mode
+     * @throws SSLException If the handshake can not be started
+     */
+    SslChannel(final SocketChannel socket, final SSLEngine engine) throws SSLException {
+        this.socket = socket;
+        this.engine = engine;
+        netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        netOut.flip();
+        appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        appIn.flip();
+        engine.beginHandshake();
+    }
+
+    /**
+     * Makes as much progress with the handshake as possible without blocking.
+     *
+     * @return True if the handshake has completed, false if it is waiting for
+     * the socket
+     * @throws IOException If the handshake fails
+     */
+    boolean handshake() throws IOException {
+        while (flush()) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case NEED_WRAP:
+                    if (wrap(EMPTY) == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed during handshake");
+                    }
+                    break;
+                case NEED_UNWRAP:
+                    final SSLEngineResult.Status status = unwrap();
+                    if (status == SSLEngineResult.Status.CLOSED) {
+                        throw new EOFException("Connection closed during handshake");
+                    } else if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether there is encrypted output waiting to be written.
+     *
+     * @return True if there is output waiting, false otherwise
+     */
+    boolean hasPendingOutput() {
+        return netOut.hasRemaining();
+    }
+
+    /**
+     * Writes as much pending encrypted output to the socket as possible.
+     *
+     * @return True if all pending output has been written, false otherwise
+     * @throws IOException If the socket can not be written to
+     */
+    boolean flush() throws IOException {
+        if (netOut.hasRemaining()) {
+            socket.write(netOut);
+        }
+        return !netOut.hasRemaining();
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        while (!appIn.hasRemaining()) {
+            if (inputEnded) {
+                return -1;
+            }
+
+            final SSLEngineResult.Status status = unwrap();
+            if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK
+                    || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                // Post-handshake messages such as key updates need a reply.
+                handshake();
+            }
+
+            if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                return 0;
+            } else if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                appIn = ByteBuffer.allocate(appIn.capacity() * 2);
+                appIn.flip();
+            }
+        }
+
+        final int count = Math.min(appIn.remaining(), dst.remaining());
+        final int limit = appIn.limit();
+        appIn.limit(appIn.position() + count);
+        dst.put(appIn);
+        appIn.limit(limit);
+        return count;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        int written = 0;
+        while (src.hasRemaining() && flush()) {
+            final int position = src.position();
+            if (wrap(src) == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("Connection has been closed");
+            }
+            written += src.position() - position;
+        }
+        flush();
+        return written;
+    }
+
+    /**
+     * Encrypts data into the network output buffer.
+     *
+     * @param src The data to encrypt
+     * @return The status of the operation
+     * @throws SSLException If the data can not be encrypted
+     */
+    private SSLEngineResult.Status wrap(final ByteBuffer src) throws SSLException {
+        netOut.compact();
+        try {
+            return engine.wrap(src, netOut).getStatus();
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    /**
+     * Decrypts buffered network data, reading more from the socket if a
+     * complete TLS record has not yet been received.
+     *
+     * @return The status of the operation, which is
+     * {@link SSLEngineResult.Status#BUFFER_UNDERFLOW} if no more data can be
+     * read without blocking
+     * @throws IOException If the data can not be read or decrypted
+     */
+    private SSLEngineResult.Status unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            appIn.compact();
+            final SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+                appIn.flip();
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                inputEnded = true;
+            }
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                return result.getStatus();
+            }
+
+            if (!netIn.hasRemaining()) {
+                final ByteBuffer larger = ByteBuffer.allocate(netIn.capacity() * 2);
+                netIn.flip();
+                larger.put(netIn);
+                netIn = larger;
+            }
+
+            final int read = socket.read(netIn);
+            if (read < 0) {
+                inputEnded = true;
+                return SSLEngineResult.Status.CLOSED;
+            } else if (read == 0) {
+                return SSLEngineResult.Status.BUFFER_UNDERFLOW;
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+}
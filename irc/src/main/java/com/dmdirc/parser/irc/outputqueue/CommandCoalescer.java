@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Merges commands waiting to be sent into fewer lines, where the server will
+ * treat the merged line the same as the separate ones.
+ *
+ * <p>The following can be merged:
+ * <ul>
+ * <li>JOINs, as long as channel keys still line up with their channels.</li>
+ * <li>PRIVMSGs, NOTICEs, PARTs, WHOs and NAMES with the same parameters and
+ * different targets, into a comma separated list of targets.</li>
+ * <li>MODE changes to the same target, and list mode requests for the same
+ * channel, up to the number of modes with parameters allowed per line. A
+ * list mode sent without a parameter is a request, even with a sign, so it
+ * is only merged with other requests.</li>
+ * <li>CAP REQs, if enabled.</li>
+ * </ul>
+ *
+ * <p>Lines with tags or a prefix are never merged. Target lists are only
+ * merged up to the limit set for the command, and commands without a limit
+ * are not merged at all. The output queue checks the merged line fits in
+ * the maximum line length.
+ */
+public class CommandCoalescer {
+
+    /** The number of modes with parameters allowed in one MODE line by default. */
+    public static final int DEFAULT_MODE_LIMIT = 3;
+    /** The list modes assumed until the server's are known, from RFC 2811. */
+    private static final String DEFAULT_LIST_MODES = "beI";
+    /** The modes that always take a parameter assumed until the server's are known. */
+    private static final String DEFAULT_PARAMETER_MODES = "kov";
+    /** The modes that take a parameter when set assumed until the server's are known. */
+    private static final String DEFAULT_SET_PARAMETER_MODES = "l";
+    /** Commands whose first parameter may be a comma separated list of targets. */
+    private static final Set<String> TARGET_LIST_COMMANDS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("JOIN", "PART", "PRIVMSG", "NOTICE", "WHO", "NAMES")));
+
+    /** Maximum number of targets for each command, keyed by upper case command. */
+    private final Map<String, Integer> targetLimits = new ConcurrentHashMap<>();
+    /** Maximum number of modes with parameters in one MODE line. */
+    private volatile int modeLimit = DEFAULT_MODE_LIMIT;
+    /** Whether several list modes can be requested in one MODE line. */
+    private volatile boolean listModesCombined = true;
+    /** The channel modes that hold lists. */
+    private volatile String listModes = DEFAULT_LIST_MODES;
+    /** The modes other than list modes that always take a parameter. */
+    private volatile String parameterModes = DEFAULT_PARAMETER_MODES;
+    /** The modes that only take a parameter when they are set. */
+    private volatile String setParameterModes = DEFAULT_SET_PARAMETER_MODES;
+    /** Whether several capabilities can be requested in one CAP REQ line. */
+    private volatile boolean capabilitiesCombined;
+
+    /**
+     * Creates a new coalescer. JOINs and PARTs are merged without a target
+     * limit, as RFC 1459 allows, and other target lists aren't merged until
+     * a limit is set.
+     */
+    public CommandCoalescer() {
+        targetLimits.put("JOIN", Integer.MAX_VALUE);
+        targetLimits.put("PART", Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the maximum number of targets a command is merged up to.
+     *
+     * @param command The command, such as "PRIVMSG"
+     * @return The maximum number of targets, or zero if the command isn't merged
+     */
+    public int getTargetLimit(final String command) {
+        return targetLimits.getOrDefault(command.toUpperCase(Locale.ENGLISH), 0);
+    }
+
+    /**
+     * Sets the maximum number of targets a command is merged up to, such as
+     * from the server's TARGMAX or MAXTARGETS.
+     *
+     * @param command The command, such as "PRIVMSG"
+     * @param limit The maximum number of targets, or zero to stop merging the command
+     */
+    public void setTargetLimit(final String command, final int limit) {
+        final String key = command.toUpperCase(Locale.ENGLISH);
+        if (limit <= 0) {
+            targetLimits.remove(key);
+        } else {
+            targetLimits.put(key, limit);
+        }
+    }
+
+    /**
+     * Gets the maximum number of modes with parameters in one MODE line.
+     *
+     * @return The maximum number of modes with parameters
+     */
+    public int getModeLimit() {
+        return modeLimit;
+    }
+
+    /**
+     * Sets the maximum number of modes with parameters in one MODE line, such
+     * as from the server's MODES.
+     *
+     * @param modeLimit The maximum number of modes with parameters
+     */
+    public void setModeLimit(final int modeLimit) {
+        this.modeLimit = modeLimit;
+    }
+
+    /**
+     * Sets whether several list modes can be requested in one MODE line.
+     *
+     * @param listModesCombined True if list mode requests can be merged
+     */
+    public void setListModesCombined(final boolean listModesCombined) {
+        this.listModesCombined = listModesCombined;
+    }
+
+    /**
+     * Sets the server's channel modes that take parameters, such as from its
+     * CHANMODES and PREFIX. These are used to tell which list modes in a MODE
+     * line are requests rather than changes.
+     *
+     * @param listModes The modes that hold lists
+     * @param parameterModes The other modes that always take a parameter,
+     * including prefix modes
+     * @param setParameterModes The modes that only take a parameter when set
+     */
+    public void setChannelModes(final String listModes, final String parameterModes,
+            final String setParameterModes) {
+        this.listModes = listModes;
+        this.parameterModes = parameterModes;
+        this.setParameterModes = setParameterModes;
+    }
+
+    /**
+     * Sets whether several capabilities can be requested in one CAP REQ line.
+     * This is off by default, as some servers only accept one at a time, and
+     * a server rejects every capability in a request if it can't enable one.
+     *
+     * @param capabilitiesCombined True if capability requests can be merged
+     */
+    public void setCapabilitiesCombined(final boolean capabilitiesCombined) {
+        this.capabilitiesCombined = capabilitiesCombined;
+    }
+
+    /**
+     * Merges two lines that are to be sent one after the other.
+     *
+     * @param first The line that would be sent first
+     * @param second The line that would be sent next
+     * @return A line with the same effect as both, or null if they can't be merged
+     */
+    @Nullable
+    public String merge(final String first, final String second) {
+        final List<String> firstParams = parse(first);
+        final List<String> secondParams = parse(second);
+        if (firstParams == null || secondParams == null || firstParams.size() < 2
+                || secondParams.size() < 2
+                || !firstParams.get(0).equalsIgnoreCase(secondParams.get(0))) {
+            return null;
+        }
+
+        final String command = firstParams.get(0).toUpperCase(Locale.ENGLISH);
+        if ("JOIN".equals(command)) {
+            return mergeJoins(firstParams, secondParams);
+        } else if ("MODE".equals(command)) {
+            return mergeModes(firstParams, secondParams);
+        } else if ("CAP".equals(command)) {
+            return mergeCapabilities(first, firstParams, secondParams);
+        } else if (TARGET_LIST_COMMANDS.contains(command)) {
+            return mergeTargets(first, second, command, firstParams, secondParams);
+        }
+        return null;
+    }
+
+    /**
+     * Merges two JOINs, as long as the keys in the second don't need to move
+     * to line up with their channels.
+     *
+     * @param first The parameters of the first line
+     * @param second The parameters of the second line
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeJoins(final List<String> first, final List<String> second) {
+        if (first.size() > 3 || second.size() > 3 || "0".equals(first.get(1))
+                || "0".equals(second.get(1))) {
+            return null;
+        }
+
+        final List<String> channels = split(first.get(1));
+        final List<String> secondChannels = split(second.get(1));
+        final List<String> keys = first.size() > 2 ? split(first.get(2)) : new ArrayList<>();
+        final List<String> secondKeys = second.size() > 2
+                ? split(second.get(2)) : Collections.emptyList();
+        if (!secondKeys.isEmpty() && keys.size() != channels.size()
+                || !addTargets(channels, secondChannels, getTargetLimit("JOIN"))) {
+            return null;
+        }
+        keys.addAll(secondKeys);
+        return "JOIN " + String.join(",", channels)
+                + (keys.isEmpty() ? "" : ' ' + String.join(",", keys));
+    }
+
+    /**
+     * Merges two MODE lines for the same target, if they are both changes or
+     * both list mode requests.
+     *
+     * @param first The parameters of the first line
+     * @param second The parameters of the second line
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeModes(final List<String> first, final List<String> second) {
+        if (first.size() < 3 || second.size() < 3
+                || !first.get(1).equalsIgnoreCase(second.get(1))) {
+            return null;
+        }
+
+        final String firstModes = first.get(2);
+        final String secondModes = second.get(2);
+        final ModeLine firstType = getModeLine(first);
+        if (firstType == null || firstType != getModeLine(second)) {
+            return null;
+        }
+
+        final String target = "MODE " + first.get(1) + ' ';
+        if (firstType == ModeLine.LIST) {
+            final String lists = removeSigns(firstModes) + removeSigns(secondModes);
+            if (!listModesCombined || lists.length() > modeLimit) {
+                return null;
+            }
+            return target + lists;
+        }
+
+        if (first.size() - 3 + second.size() - 3 > modeLimit
+                || !isPlain(first) || !isPlain(second)) {
+            return null;
+        }
+        final StringBuilder line = new StringBuilder(target).append(firstModes);
+        final char lastSign = firstModes.charAt(Math.max(firstModes.lastIndexOf('+'),
+                firstModes.lastIndexOf('-')));
+        line.append(secondModes.charAt(0) == lastSign ? secondModes.substring(1) : secondModes);
+        for (String param : first.subList(3, first.size())) {
+            line.append(' ').append(param);
+        }
+        for (String param : second.subList(3, second.size())) {
+            line.append(' ').append(param);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Merges two CAP REQs, if enabled.
+     *
+     * @param line The first line
+     * @param first The parameters of the first line
+     * @param second The parameters of the second line
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeCapabilities(final String line, final List<String> first,
+            final List<String> second) {
+        if (!capabilitiesCombined || first.size() != 3 || second.size() != 3
+                || !"REQ".equalsIgnoreCase(first.get(1))
+                || !"REQ".equalsIgnoreCase(second.get(1))
+                || first.get(2).trim().isEmpty() || second.get(2).trim().isEmpty()) {
+            return null;
+        }
+        return "CAP REQ :" + first.get(2).trim() + ' ' + second.get(2).trim();
+    }
+
+    /**
+     * Merges two lines that differ only in their targets.
+     *
+     * @param firstLine The first line
+     * @param secondLine The second line
+     * @param command The upper case command
+     * @param first The parameters of the first line
+     * @param second The parameters of the second line
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeTargets(final String firstLine, final String secondLine,
+            final String command, final List<String> first, final List<String> second) {
+        final String firstRest = getRest(firstLine);
+        if (firstRest == null || !firstRest.equals(getRest(secondLine))) {
+            return null;
+        }
+
+        final List<String> targets = split(first.get(1));
+        if (!addTargets(targets, split(second.get(1)), getTargetLimit(command))) {
+            return null;
+        }
+        return command + ' ' + String.join(",", targets) + firstRest;
+    }
+
+    /**
+     * Adds targets to a list, as long as none are already in it and the limit
+     * isn't exceeded.
+     *
+     * @param targets The targets of the first line, which are added to
+     * @param extra The targets of the second line
+     * @param limit The maximum number of targets
+     * @return True if the targets were added, false if the lines can't be merged
+     */
+    private static boolean addTargets(final List<String> targets, final List<String> extra,
+            final int limit) {
+        if (targets.size() + extra.size() > limit) {
+            return false;
+        }
+        for (String target : extra) {
+            for (String existing : targets) {
+                if (existing.equalsIgnoreCase(target)) {
+                    // Servers disagree on whether duplicates are sent twice.
+                    return false;
+                }
+            }
+        }
+        targets.addAll(extra);
+        return true;
+    }
+
+    /**
+     * Checks whether parameters can be sent without a trailing parameter.
+     *
+     * @param params The command and its parameters
+     * @return True if no parameter is empty or contains a space
+     */
+    private static boolean isPlain(final List<String> params) {
+        for (String param : params) {
+            if (param.isEmpty() || param.indexOf(' ') != -1 || param.charAt(0) == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out whether a MODE line changes modes or requests lists. A mode
+     * string without a sign requests lists, as does a list mode that is left
+     * without a parameter once the other modes have taken theirs.
+     *
+     * @param params The command and its parameters, including a mode string
+     * @return The kind of MODE line, or null if it does both or can't be merged
+     */
+    @Nullable
+    private ModeLine getModeLine(final List<String> params) {
+        final String modes = params.get(2);
+        if (modes.isEmpty()) {
+            return null;
+        } else if (modes.charAt(0) != '+' && modes.charAt(0) != '-') {
+            return params.size() == 3 ? ModeLine.LIST : null;
+        }
+
+        int param = 3;
+        boolean adding = true;
+        boolean changes = false;
+        boolean requests = false;
+        for (int i = 0; i < modes.length(); i++) {
+            final char mode = modes.charAt(i);
+            if (mode == '+' || mode == '-') {
+                adding = mode == '+';
+            } else if (listModes.indexOf(mode) != -1 && param == params.size()) {
+                requests = true;
+            } else {
+                if (listModes.indexOf(mode) != -1 || parameterModes.indexOf(mode) != -1
+                        || adding && setParameterModes.indexOf(mode) != -1) {
+                    param = Math.min(param + 1, params.size());
+                }
+                changes = true;
+            }
+        }
+        if (requests) {
+            return changes ? null : ModeLine.LIST;
+        }
+        return ModeLine.CHANGE;
+    }
+
+    /**
+     * Removes the signs from a mode string.
+     *
+     * @param modes The mode string
+     * @return The modes without any signs
+     */
+    private static String removeSigns(final String modes) {
+        return modes.replace("+", "").replace("-", "");
+    }
+
+    /**
+     * Gets everything in a line after its first parameter.
+     *
+     * @param line The line
+     * @return The rest of the line, including the space before it, or null if
+     * the line has no first parameter or it is a trailing parameter
+     */
+    @Nullable
+    private static String getRest(final String line) {
+        final int command = line.indexOf(' ');
+        if (command == -1 || command + 1 >= line.length() || line.charAt(command + 1) == ':') {
+            return null;
+        }
+        final int target = line.indexOf(' ', command + 1);
+        return target == -1 ? "" : line.substring(target);
+    }
+
+    /**
+     * Splits a comma separated list.
+     *
+     * @param list The list
+     * @return A modifiable list of the items
+     */
+    private static List<String> split(final String list) {
+        return new ArrayList<>(Arrays.asList(list.split(",", -1)));
+    }
+
+    /**
+     * Splits a line into its command and parameters.
+     *
+     * @param line The line
+     * @return The command followed by the parameters, with any trailing
+     * parameter last and without its colon, or null if the line has tags or
+     * a prefix, or an empty parameter
+     */
+    @Nullable
+    private static List<String> parse(final String line) {
+        if (line.isEmpty() || line.charAt(0) == '@' || line.charAt(0) == ':') {
+            return null;
+        }
+
+        final List<String> params = new ArrayList<>();
+        int start = 0;
+        while (start < line.length()) {
+            if (line.charAt(start) == ':' && !params.isEmpty()) {
+                params.add(line.substring(start + 1));
+                return params;
+            }
+            int end = line.indexOf(' ', start);
+            if (end == -1) {
+                end = line.length();
+            }
+            if (end == start) {
+                return null;
+            }
+            params.add(line.substring(start, end));
+            start = end + 1;
+        }
+        return params;
+    }
+
+    /**
+     * The kinds of MODE line that can be merged with each other.
+     */
+    private enum ModeLine {
+        /** A line that changes modes. */
+        CHANGE,
+        /** A line that requests list modes. */
+        LIST
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes the flood control a server applies to its clients, so that a
+ * {@link TokenBucketOutputQueue} can send as quickly as the server allows.
+ *
+ * <p>A profile has a burst allowance, a fixed cost for each line, a cost for
+ * each byte, and extra penalties for particular commands. See
+ * {@link TokenBucketOutputQueue} for how these are applied.
+ */
+public final class FloodProfile {
+
+    /**
+     * The flood control of ircd 2.x derived servers, such as ircu: 2 seconds
+     * per line plus 1 second per 120 bytes, with a 10 second burst.
+     */
+    public static final FloodProfile DEFAULT = new FloodProfile(
+            TokenBucketOutputQueue.DEFAULT_BURST, TokenBucketOutputQueue.DEFAULT_LINE_COST,
+            Duration.ofSeconds(1).dividedBy(TokenBucketOutputQueue.DEFAULT_BYTES_PER_SECOND));
+    /** A profile that never holds lines back, for servers without flood control. */
+    public static final FloodProfile UNLIMITED = new FloodProfile(Duration.ZERO, Duration.ZERO,
+            Duration.ZERO);
+
+    /** How long a burst of lines can be sent without waiting. */
+    private final Duration burst;
+    /** The fixed cost of each line. */
+    private final Duration lineCost;
+    /** The cost of each byte. */
+    private final Duration byteCost;
+    /** Extra cost of particular commands, keyed by upper case command. */
+    private final Map<String, Duration> commandPenalties;
+
+    /**
+     * Creates a new flood profile without any command penalties.
+     *
+     * @param burst How long a burst of lines can be sent without waiting
+     * @param lineCost The fixed cost of each line
+     * @param byteCost The cost of each byte, including line terminators
+     */
+    public FloodProfile(final Duration burst, final Duration lineCost, final Duration byteCost) {
+        this(burst, lineCost, byteCost, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a new flood profile.
+     *
+     * @param burst How long a burst of lines can be sent without waiting
+     * @param lineCost The fixed cost of each line
+     * @param byteCost The cost of each byte, including line terminators
+     * @param commandPenalties Extra cost of particular commands, keyed by command
+     */
+    private FloodProfile(final Duration burst, final Duration lineCost, final Duration byteCost,
+            final Map<String, Duration> commandPenalties) {
+        checkArgument(!burst.isNegative(), "Burst must not be negative");
+        checkArgument(!lineCost.isNegative(), "Line cost must not be negative");
+        checkArgument(!byteCost.isNegative(), "Byte cost must not be negative");
+        this.burst = burst;
+        this.lineCost = lineCost;
+        this.byteCost = byteCost;
+        this.commandPenalties = commandPenalties;
+    }
+
+    /**
+     * Gets how long a burst of lines can be sent without waiting.
+     *
+     * @return The burst allowance
+     */
+    public Duration getBurst() {
+        return burst;
+    }
+
+    /**
+     * Gets the fixed cost of each line.
+     *
+     * @return The cost of each line
+     */
+    public Duration getLineCost() {
+        return lineCost;
+    }
+
+    /**
+     * Gets the cost of each byte sent, including line terminators.
+     *
+     * @return The cost of each byte
+     */
+    public Duration getByteCost() {
+        return byteCost;
+    }
+
+    /**
+     * Gets the extra cost of particular commands.
+     *
+     * @return An unmodifiable map of upper case commands to their penalties
+     */
+    public Map<String, Duration> getCommandPenalties() {
+        return commandPenalties;
+    }
+
+    /**
+     * Creates a copy of this profile with an extra cost for a command.
+     *
+     * @param command The command, such as "JOIN"
+     * @param penalty The penalty for the command, or zero to remove it
+     * @return A new profile with the given penalty
+     */
+    public FloodProfile withCommandPenalty(final String command, final Duration penalty) {
+        checkNotNull(penalty);
+        checkArgument(!penalty.isNegative(), "Penalty must not be negative");
+        final Map<String, Duration> penalties = new HashMap<>(commandPenalties);
+        final String key = command.toUpperCase(Locale.ENGLISH);
+        if (penalty.isZero()) {
+            penalties.remove(key);
+        } else {
+            penalties.put(key, penalty);
+        }
+        return new FloodProfile(burst, lineCost, byteCost, Collections.unmodifiableMap(penalties));
+    }
+
+    /**
+     * Checks whether this profile ever holds lines back.
+     *
+     * @return True if lines are never held back
+     */
+    public boolean isUnlimited() {
+        return lineCost.isZero() && byteCost.isZero() && commandPenalties.isEmpty();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FloodProfile)) {
+            return false;
+        }
+        final FloodProfile other = (FloodProfile) obj;
+        return burst.equals(other.burst) && lineCost.equals(other.lineCost)
+                && byteCost.equals(other.byteCost)
+                && commandPenalties.equals(other.commandPenalties);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(burst, lineCost, byteCost, commandPenalties);
+    }
+
+    @Override
+    public String toString() {
+        return "FloodProfile{burst=" + burst + ", lineCost=" + lineCost + ", byteCost="
+                + byteCost + ", commandPenalties=" + commandPenalties + '}';
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue of encoded lines that any number of threads may add to
+ * without locking, and a single thread takes from.
+ *
+ * <p>Producers claim a slot by advancing the tail, then fill it in; the
+ * consumer only takes a slot once it has been filled, and frees it by
+ * advancing the head.
+ */
+class LineRingBuffer {
+
+    /** The slots holding encoded lines, null when free or not yet filled. */
+    private final AtomicReferenceArray<byte[]> slots;
+    /** Mask to turn a position into a slot index. */
+    private final int mask;
+    /** Position of the next slot to be claimed by a producer. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Position of the next slot to be taken by the consumer. */
+    private volatile long head;
+
+    /**
+     * Creates a new ring buffer.
+     *
+     * @param capacity The number of lines it can hold, rounded up to a power of two
+     */
+    LineRingBuffer(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a line to the buffer, if there is space.
+     *
+     * @param line The encoded line
+     * @return True if the line was added, false if the buffer is full
+     */
+    boolean offer(final byte[] line) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        slots.lazySet((int) position & mask, line);
+        return true;
+    }
+
+    /**
+     * Gets the oldest line in the buffer without taking it. Must only be
+     * called by the consumer.
+     *
+     * @return The line, or null if there is no line ready
+     */
+    byte[] peek() {
+        return slots.get((int) head & mask);
+    }
+
+    /**
+     * Takes the oldest line from the buffer. Must only be called by the
+     * consumer.
+     *
+     * @return The line, or null if there is no line ready
+     */
+    byte[] poll() {
+        final long position = head;
+        final int index = (int) position & mask;
+        final byte[] line = slots.get(index);
+        if (line != null) {
+            slots.lazySet(index, null);
+            head = position + 1;
+        }
+        return line;
+    }
+
+    /**
+     * Gets the number of lines that have been added and not yet taken.
+     *
+     * @return The number of lines in the buffer
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.interfaces.OutboundEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encodes lines and writes them to the server, terminated by CRLF.
+ *
+ * <p>Lines are encoded straight into a reusable buffer, and several lines
+ * may be written before they are flushed to the server together. Each line is
+ * encoded with the writer's charset, unless an {@link OutboundEncoder} picks
+ * one for the line's target.
+ *
+ * <p>Characters that can't be encoded are replaced, as with
+ * {@link String#getBytes(Charset)}.
+ */
+public class LineWriter {
+
+    /** The number of buffered bytes above which they are written without waiting to flush. */
+    private static final int BUFFER_SIZE = 8192;
+    /** The line terminator sent after each line. */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /** Reusable encoders for each charset used. */
+    private final Map<Charset, CharsetEncoder> encoders = new HashMap<>();
+    /** Buffer lines are encoded into. */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** The charset to encode lines with, unless the outbound encoder picks another. */
+    private Charset charset;
+    /** The encoder used to pick a charset for each target, or null to always use the charset. */
+    private OutboundEncoder outboundEncoder;
+    /** The stream to write lines to. */
+    private OutputStream outputStream;
+
+    /**
+     * Creates a new writer without an output stream.
+     *
+     * @param charset The charset to encode lines with
+     */
+    public LineWriter(final Charset charset) {
+        this.charset = checkNotNull(charset);
+    }
+
+    /**
+     * Sets the stream to write lines to. Any lines that haven't been flushed
+     * are discarded.
+     *
+     * @param outputStream The stream to write to, or null to stop writing
+     */
+    public synchronized void setOutputStream(@Nullable final OutputStream outputStream) {
+        this.outputStream = outputStream;
+        buffer.clear();
+    }
+
+    /**
+     * Checks whether there is a stream to write lines to.
+     *
+     * @return True if an output stream has been set
+     */
+    public synchronized boolean hasOutputStream() {
+        return outputStream != null;
+    }
+
+    /**
+     * Gets the charset lines are encoded with, unless the outbound encoder
+     * picks another.
+     *
+     * @return The default charset for lines
+     */
+    public synchronized Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset lines are encoded with, unless the outbound encoder
+     * picks another.
+     *
+     * @param charset The default charset for lines
+     */
+    public synchronized void setCharset(final Charset charset) {
+        this.charset = checkNotNull(charset);
+    }
+
+    /**
+     * Gets the charset a line sent to the given target is encoded with.
+     *
+     * @param target The target of the line, or null if not applicable
+     * @return The charset the outbound encoder picks, or the default charset
+     */
+    public synchronized Charset getCharset(@Nullable final String target) {
+        return outboundEncoder == null ? charset : outboundEncoder.getCharset(target);
+    }
+
+    /**
+     * Sets the encoder used to pick a charset for each line, based on its
+     * target.
+     *
+     * @param outboundEncoder The encoder to use, or null to always use the charset
+     */
+    public synchronized void setOutboundEncoder(@Nullable final OutboundEncoder outboundEncoder) {
+        this.outboundEncoder = outboundEncoder;
+    }
+
+    /**
+     * Gets the number of bytes a line takes up on the wire, including its
+     * line terminator.
+     *
+     * @param line The line to measure
+     * @return The encoded length of the line
+     */
+    public synchronized int getLength(final String line) {
+        final int position = buffer.position();
+        final int length = encode(line);
+        buffer.position(position);
+        return length;
+    }
+
+    /**
+     * Writes a line, without flushing it.
+     *
+     * @param line The line to write, without its line terminator
+     * @return The number of bytes the line takes up on the wire
+     * @throws IOException If the line couldn't be written
+     */
+    public synchronized int write(final String line) throws IOException {
+        if (outputStream == null) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+
+        final int length = encode(line);
+        if (buffer.position() > BUFFER_SIZE) {
+            drain();
+        }
+        return length;
+    }
+
+    /**
+     * Writes any buffered lines and flushes the output stream.
+     *
+     * @throws IOException If the lines couldn't be written
+     */
+    public synchronized void flush() throws IOException {
+        if (outputStream == null) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+
+        drain();
+        outputStream.flush();
+    }
+
+    /**
+     * Writes any buffered lines to the output stream, without flushing it.
+     *
+     * @throws IOException If the lines couldn't be written
+     */
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            try {
+                outputStream.write(buffer.array(), 0, buffer.position());
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Encodes a line and its terminator at the end of the buffer.
+     *
+     * @param line The line to encode
+     * @return The number of bytes added to the buffer
+     */
+    private int encode(final String line) {
+        final CharsetEncoder encoder = getEncoder(outboundEncoder == null
+                ? charset : getCharset(getTarget(line)));
+        final CharBuffer chars = CharBuffer.wrap(line);
+        final int start = buffer.position();
+
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            grow();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            grow();
+        }
+        if (buffer.remaining() < CRLF.length) {
+            grow();
+        }
+        buffer.put(CRLF);
+        return buffer.position() - start;
+    }
+
+    /**
+     * Doubles the size of the buffer, keeping its contents.
+     */
+    private void grow() {
+        final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    /**
+     * Gets a reusable encoder for a charset.
+     *
+     * @param charset The charset to encode with
+     * @return An encoder that replaces characters it can't encode
+     */
+    private CharsetEncoder getEncoder(final Charset charset) {
+        return encoders.computeIfAbsent(charset, c -> c.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    }
+
+    /**
+     * Finds the target of a line: the first parameter after the command,
+     * skipping any tags and prefix.
+     *
+     * @param line The line to examine
+     * @return The target of the line, or null if it has none
+     */
+    @Nullable
+    private static String getTarget(final String line) {
+        int start = 0;
+        while (start < line.length() && (line.charAt(start) == '@' || line.charAt(start) == ':')) {
+            start = skipWord(line, start);
+        }
+        start = skipWord(line, start);
+        if (start >= line.length() || line.charAt(start) == ':') {
+            return null;
+        }
+        final int end = line.indexOf(' ', start);
+        return end == -1 ? line.substring(start) : line.substring(start, end);
+    }
+
+    /**
+     * Skips over a word and the spaces following it.
+     *
+     * @param line The line being examined
+     * @param start The index of the start of the word
+     * @return The index of the start of the next word
+     */
+    private static int skipWord(final String line, final int start) {
+        int index = start;
+        while (index < line.length() && line.charAt(index) != ' ') {
+            index++;
+        }
+        while (index < line.length() && line.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+}
@@ -23,20 +23,31 @@
 package com.dmdirc.parser.irc.outputqueue;
 
 import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.interfaces.OutboundEncoder;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
 
 /**
  * This class handles the Parser output Queue.
  */
 public abstract class OutputQueue {
 
-    /** PrintWriter for sending output. */
-    private PrintWriter out;
+    /** The maximum number of bytes in a line, including its terminator. */
+    private static final int MAX_LINE_BYTES = 512;
+
+    /** Writer for sending output. */
+    private final LineWriter out = new LineWriter(Charset.defaultCharset());
     /** Is queueing enabled? */
     private boolean queueEnabled = true;
     /** Are we discarding all futher input? */
@@ -45,6 +56,16 @@ public abstract class OutputQueue {
     private final BlockingQueue<QueueItem> queue;
     /** The thread on which we will send items. */
     private Thread sendingThread;
+    /** Factory used to create the sending thread, or null to use a platform thread. */
+    private ThreadFactory threadFactory;
+    /** Scheduler that sends queued items instead of a sending thread, or null to use a thread. */
+    private volatile QueueScheduler scheduler;
+    /** Whether the scheduler has been asked to send queued items and hasn't yet. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    /** Lock held while lines are being queued, so that groups of lines stay together. */
+    private final Object sendLock = new Object();
+    /** Merges queued lines before they are sent, or null to send them as they are. */
+    private volatile CommandCoalescer coalescer;
 
     /**
      * Creates a new instance of {@link OutputQueue} that will sort items using the given
@@ -62,7 +83,101 @@ public abstract class OutputQueue {
      * @param outputStream Output Stream to use.
      */
     public void setOutputStream(final OutputStream outputStream) {
-        out = new PrintWriter(outputStream, true);
+        out.setOutputStream(outputStream);
+    }
+
+    /**
+     * Gets the charset lines are encoded with, unless an outbound encoder
+     * picks another. This is the platform's default charset unless set.
+     *
+     * @return The default charset for lines
+     */
+    public Charset getCharset() {
+        return out.getCharset();
+    }
+
+    /**
+     * Sets the charset lines are encoded with, unless an outbound encoder
+     * picks another.
+     *
+     * @param charset The default charset for lines
+     */
+    public void setCharset(final Charset charset) {
+        out.setCharset(charset);
+    }
+
+    /**
+     * Gets the charset a line sent to the given target will be encoded with.
+     *
+     * @param target The target of the line, or null if not applicable
+     * @return The charset an outbound encoder picks, or the default charset
+     */
+    public Charset getCharset(@Nullable final String target) {
+        return out.getCharset(target);
+    }
+
+    /**
+     * Sets the encoder used to pick a charset for each line, based on its
+     * target.
+     *
+     * @param outboundEncoder The encoder to use, or null to always use the default charset
+     */
+    public void setOutboundEncoder(@Nullable final OutboundEncoder outboundEncoder) {
+        out.setOutboundEncoder(outboundEncoder);
+    }
+
+    /**
+     * Gets the coalescer used to merge queued lines before they are sent.
+     *
+     * @return The coalescer, or null if lines are sent as they are
+     */
+    @Nullable
+    public CommandCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Sets the coalescer used to merge queued lines before they are sent.
+     * Only lines that would be sent one after the other are merged, so lines
+     * are still sent in order.
+     *
+     * @param coalescer The coalescer, or null to send lines as they are
+     */
+    public void setCoalescer(@Nullable final CommandCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Gets the number of bytes a line will take up when sent, including its
+     * line terminator.
+     *
+     * @param line The line to measure
+     * @return The encoded length of the line
+     */
+    public int getWireLength(final String line) {
+        return out.getLength(line);
+    }
+
+    /**
+     * Sets the factory used to create the thread that sends queued items. This takes effect
+     * the next time a sending thread is started.
+     *
+     * @param threadFactory The thread factory to use, or null to create platform threads
+     */
+    public void setThreadFactory(@Nullable final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Sets the scheduler used to send queued items, such as the event loop of
+     * a non-blocking connection. While a scheduler is set, no sending thread
+     * is started, and queued items are sent by {@link #drainQueue()} on the
+     * scheduler instead.
+     *
+     * @param scheduler The scheduler to use, or null to use a sending thread
+     */
+    public void setScheduler(@Nullable final QueueScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 
     /**
@@ -82,7 +197,7 @@ public abstract class OutputQueue {
      * @param queueEnabled new value for queueEnabled
      */
     public void setQueueEnabled(final boolean queueEnabled) {
-        if (out == null) {
+        if (!out.hasOutputStream()) {
             throw new NullPointerException("No output stream has been set.");
         }
 
@@ -97,13 +212,11 @@ public abstract class OutputQueue {
                 sendingThread = null;
             }
 
-            while (!queue.isEmpty()) {
-                try {
-                    out.printf("%s\r\n", queue.take().getLine());
-                } catch (InterruptedException ex) {
-                    // Do nothing, we'll try again.
-                }
+            String line;
+            while ((line = pollLine()) != null) {
+                write(line);
             }
+            flush();
         }
     }
 
@@ -170,6 +283,8 @@ public abstract class OutputQueue {
      * Send the given line.
      *
      * <p>If queueing is enabled, this will queue it, else it will send it immediately.
+     * Lines with {@link QueuePriority#IMMEDIATE} priority are written on the calling thread,
+     * without holding up other threads queueing lines while the write blocks.
      *
      * @param line Line to send
      * @param priority Priority of item (ignored if queue is disabled)
@@ -181,13 +296,51 @@ public abstract class OutputQueue {
 
         if (queueEnabled && priority == QueuePriority.IMMEDIATE) {
             send(line);
-        } else {
-            if (sendingThread == null || !sendingThread.isAlive()) {
-                sendingThread = new Thread(this::handleQueuedItems, "IRC Parser queue handler");
-                sendingThread.start();
+            return;
+        }
+
+        synchronized (sendLock) {
+            final QueueScheduler current = scheduler;
+            if (current != null) {
+                enqueue(line, priority);
+                if (drainScheduled.compareAndSet(false, true)) {
+                    current.execute(this::drain);
+                }
+            } else {
+                if (sendingThread == null || !sendingThread.isAlive()) {
+                    sendingThread = threadFactory == null
+                            ? new Thread(this::handleQueuedItems, "IRC Parser queue handler")
+                            : threadFactory.newThread(this::handleQueuedItems);
+                    sendingThread.start();
+                }
+
+                enqueue(line, priority);
+            }
+        }
+    }
+
+    /**
+     * Send the given lines, one after another. Lines sent from other threads
+     * at the same time are not queued between them, so lines at the same
+     * priority are sent together and in order. Lines with
+     * {@link QueuePriority#IMMEDIATE} priority are written straight away, in
+     * order, but immediate lines from other threads may be written between them.
+     *
+     * @param lines Lines to send
+     * @param priority Priority of the lines (ignored if queue is disabled)
+     */
+    public void sendLines(final List<String> lines, final QueuePriority priority) {
+        if (queueEnabled && priority == QueuePriority.IMMEDIATE) {
+            for (String line : lines) {
+                sendLine(line, priority);
             }
+            return;
+        }
 
-            enqueue(line, priority);
+        synchronized (sendLock) {
+            for (String line : lines) {
+                sendLine(line, priority);
+            }
         }
     }
 
@@ -198,6 +351,107 @@ public abstract class OutputQueue {
      */
     protected abstract void handleQueuedItems();
 
+    /**
+     * Sends the queued items that may be sent now, without blocking. Used
+     * instead of {@link #handleQueuedItems()} when a scheduler is set.
+     *
+     * <p>The default implementation sends every queued item.
+     *
+     * @return The number of nanoseconds until more items may be sent, or zero
+     * if no items have to wait
+     */
+    protected long drainQueue() {
+        String line;
+        while ((line = pollLine()) != null) {
+            write(line);
+        }
+        flush();
+        return 0;
+    }
+
+    /**
+     * Sends queued items on the scheduler, and schedules another attempt if
+     * some have to wait.
+     */
+    private void drain() {
+        // Cleared first, so that items queued while draining schedule another drain.
+        drainScheduled.set(false);
+        final QueueScheduler current = scheduler;
+        if (current == null || !queueEnabled) {
+            return;
+        }
+
+        final long wait = drainQueue();
+        if (wait > 0 && drainScheduled.compareAndSet(false, true)) {
+            current.schedule(this::drain, wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Takes the next line from the queue, waiting for one if necessary, and
+     * merges it with any lines queued after it that the coalescer can merge.
+     *
+     * @return The line to send
+     * @throws InterruptedException If interrupted while waiting
+     */
+    protected String takeLine() throws InterruptedException {
+        return coalesceQueued(queue.take().getLine());
+    }
+
+    /**
+     * Takes the next line from the queue, if there is one, and merges it
+     * with any lines queued after it that the coalescer can merge.
+     *
+     * @return The line to send, or null if the queue is empty
+     */
+    @Nullable
+    protected String pollLine() {
+        final QueueItem item = queue.poll();
+        return item == null ? null : coalesceQueued(item.getLine());
+    }
+
+    /**
+     * Merges a line with the lines at the head of the queue, for as long as
+     * the coalescer can merge them.
+     *
+     * @param line The line taken from the queue
+     * @return The line to send
+     */
+    private String coalesceQueued(final String line) {
+        if (coalescer == null) {
+            return line;
+        }
+
+        String merged = line;
+        QueueItem next;
+        while ((next = queue.peek()) != null) {
+            final String candidate = coalesce(merged, next.getLine());
+            if (candidate == null || !queue.remove(next)) {
+                break;
+            }
+            merged = candidate;
+        }
+        return merged;
+    }
+
+    /**
+     * Merges two lines that would be sent one after the other, if the
+     * coalescer can merge them and the result fits in a line.
+     *
+     * @param first The line that would be sent first
+     * @param second The line that would be sent next
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    protected String coalesce(final String first, final String second) {
+        final CommandCoalescer current = coalescer;
+        if (current == null) {
+            return null;
+        }
+        final String merged = current.merge(first, second);
+        return merged == null || getWireLength(merged) > MAX_LINE_BYTES ? null : merged;
+    }
+
     /**
      * Enqueues a new line to be sent.
      *
@@ -209,17 +463,51 @@ public abstract class OutputQueue {
     }
 
     /**
-     * Sends a line immediately to the server.
+     * Sends a line immediately to the server. This is called without the send
+     * lock held, so may be called from several threads at once.
      *
      * @param line The line to be sent.
      */
     protected void send(final String line) {
-        if (out == null) {
+        synchronized (out) {
+            write(line);
+            flush();
+        }
+    }
+
+    /**
+     * Writes a line without flushing it, so that several lines can be sent
+     * to the server together by {@link #flush()}.
+     *
+     * @param line The line to be sent.
+     * @return The number of bytes the line takes up when sent.
+     */
+    protected int write(final String line) {
+        if (!out.hasOutputStream()) {
             throw new IllegalStateException("No output stream has been set.");
         }
 
-        out.printf("%s\r\n", line);
+        try {
+            return out.write(line);
+        } catch (IOException ex) {
+            // The connection has gone; the parser will notice when reading.
+            return 0;
+        }
     }
 
+    /**
+     * Sends any lines that have been written but not flushed.
+     */
+    protected void flush() {
+        if (!out.hasOutputStream()) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            // The connection has gone; the parser will notice when reading.
+        }
+    }
 
 }
@@ -40,7 +40,13 @@ public class PriorityOutputQueue extends OutputQueue {
     protected void handleQueuedItems() {
         try {
             while (isQueueEnabled()) {
-                send(getQueue().take().getLine());
+                write(takeLine());
+                // Send everything else that's ready along with it.
+                String line;
+                while ((line = pollLine()) != null) {
+                    write(line);
+                }
+                flush();
             }
         } catch (InterruptedException ex) {
             // Do nothing
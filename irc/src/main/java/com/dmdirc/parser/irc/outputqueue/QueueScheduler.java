@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an {@link OutputQueue}'s sending on a shared executor, such as the
+ * event loop of a non-blocking connection, instead of on a thread of the
+ * queue's own.
+ *
+ * <p>Tasks given to a scheduler must not run at the same time as each other.
+ */
+public interface QueueScheduler {
+
+    /**
+     * Runs a task as soon as possible, after the calling code has finished.
+     *
+     * @param task The task to run
+     */
+    void execute(Runnable task);
+
+    /**
+     * Runs a task after a delay.
+     *
+     * @param task The task to run
+     * @param delay The delay before running the task
+     * @param unit The unit of the delay
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit);
+
+}
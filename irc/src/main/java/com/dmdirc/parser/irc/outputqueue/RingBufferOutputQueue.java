@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+/**
+ * An output queue that holds lines already encoded, in one lock-free bounded
+ * ring buffer per {@link QueuePriority}.
+ *
+ * <p>Lines are sent strictly in priority order, and in the order they were
+ * queued within a priority. Whenever it is allowed to, the sending thread
+ * takes every line that is ready and writes them all to the server at once.
+ * Subclasses may hold lines back, for example to avoid flooding, by
+ * overriding {@link #reserve(byte[])}. Lines are merged by the coalescer as
+ * they are taken to be sent, so a line that is held back is merged with any
+ * lines queued after it while it waits.
+ *
+ * <p>Queueing a line never blocks: lines that don't fit in a priority's
+ * buffer are held in an unbounded overflow list until the buffer has been
+ * drained. While queueing is disabled, lines are sent straight away.
+ *
+ * <p>Unlike the other queues, lines are not held in {@link #getQueue()}.
+ */
+public class RingBufferOutputQueue extends OutputQueue {
+
+    /** The default number of lines that may be queued at each priority. */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** The size of the buffer lines are gathered into before being written. */
+    private static final int WRITE_BUFFER_SIZE = 8192;
+    /** The line terminator sent after each line. */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /** The queued lines for each priority, in the order of {@link QueuePriority}. */
+    private final LineRingBuffer[] buffers;
+    /** Lines queued at each priority after its buffer filled up, sent once it has drained. */
+    private final List<Queue<byte[]>> overflow;
+    /** Lines taken from each buffer, and possibly merged, that are waiting to be sent. */
+    private final AtomicReferenceArray<byte[]> heldLines;
+    /** The charset lines are encoded with. */
+    private volatile Charset charset;
+    /** Lock held while writing to the output stream. */
+    private final Object writeLock = new Object();
+    /** Lock held while taking lines from the buffers. */
+    private final Object consumerLock = new Object();
+    /** Buffer lines are gathered into before being written. */
+    private byte[] writeBuffer = new byte[WRITE_BUFFER_SIZE];
+    /** The stream to write lines to. */
+    private volatile OutputStream outputStream;
+    /** The thread sending queued lines, while it is waiting for more. */
+    private volatile Thread waitingThread;
+
+    /**
+     * Creates a new queue that can hold {@link #DEFAULT_CAPACITY} lines at
+     * each priority, encoded in the platform's default charset.
+     */
+    public RingBufferOutputQueue() {
+        this(DEFAULT_CAPACITY, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a new queue.
+     *
+     * @param capacity The number of lines that may be queued at each priority
+     * @param charset The charset to encode lines with
+     */
+    public RingBufferOutputQueue(final int capacity, final Charset charset) {
+        super(QueueComparators.byPriorityThenNumber());
+        setCharset(charset);
+        buffers = new LineRingBuffer[QueuePriority.values().length];
+        overflow = new ArrayList<>(buffers.length);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new LineRingBuffer(capacity);
+            overflow.add(new ConcurrentLinkedQueue<>());
+        }
+        heldLines = new AtomicReferenceArray<>(buffers.length);
+    }
+
+    @Override
+    public void setOutputStream(final OutputStream outputStream) {
+        super.setOutputStream(outputStream);
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Lines are encoded as they are queued, so lines already queued keep
+     * their old encoding. Outbound encoders are not used by this queue.
+     */
+    @Override
+    public void setCharset(final Charset charset) {
+        super.setCharset(charset);
+        this.charset = charset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>As outbound encoders are not used by this queue, this is always the
+     * queue's own charset.
+     */
+    @Override
+    public Charset getCharset(@Nullable final String target) {
+        return charset;
+    }
+
+    @Override
+    public int getWireLength(final String line) {
+        return line.getBytes(charset).length + CRLF.length;
+    }
+
+    @Override
+    public void setQueueEnabled(final boolean queueEnabled) {
+        final boolean flush = isQueueEnabled() && !queueEnabled;
+        super.setQueueEnabled(queueEnabled);
+        if (flush) {
+            synchronized (consumerLock) {
+                sendReady(false);
+            }
+        }
+    }
+
+    @Override
+    public void clearQueue() {
+        super.clearQueue();
+        synchronized (consumerLock) {
+            for (int i = 0; i < buffers.length; i++) {
+                heldLines.set(i, null);
+                while (buffers[i].poll() != null) {
+                    // Discard the line.
+                }
+                overflow.get(i).clear();
+            }
+        }
+    }
+
+    @Override
+    public int queueCount() {
+        int count = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            count += buffers[i].size() + overflow.get(i).size()
+                    + (heldLines.get(i) == null ? 0 : 1);
+        }
+        return count;
+    }
+
+    @Override
+    protected void enqueue(final String line, final QueuePriority priority) {
+        if (!isQueueEnabled()) {
+            send(line);
+            return;
+        }
+
+        // Once a line has overflowed, later lines follow it so they stay in order.
+        final byte[] encoded = line.getBytes(charset);
+        final Queue<byte[]> spilled = overflow.get(priority.ordinal());
+        if (!spilled.isEmpty() || !buffers[priority.ordinal()].offer(encoded)) {
+            spilled.add(encoded);
+        }
+
+        final Thread waiting = waitingThread;
+        if (waiting != null) {
+            waitingThread = null;
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    @Override
+    protected void send(final String line) {
+        if (outputStream == null) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+
+        final byte[] encoded = line.getBytes(charset);
+        synchronized (writeLock) {
+            try {
+                outputStream.write(encoded);
+                outputStream.write(CRLF);
+                outputStream.flush();
+            } catch (IOException ex) {
+                // The connection has gone; the parser will notice when reading.
+            }
+        }
+    }
+
+    @Override
+    protected void handleQueuedItems() {
+        final Thread thread = Thread.currentThread();
+        while (isQueueEnabled() && !thread.isInterrupted()) {
+            if (queueCount() == 0) {
+                waitingThread = thread;
+                if (queueCount() == 0) {
+                    LockSupport.park(this);
+                }
+                waitingThread = null;
+                continue;
+            }
+
+            final long wait;
+            synchronized (consumerLock) {
+                wait = sendReady(true);
+            }
+            if (wait > 0) {
+                // Woken early if another line is queued, in case it may be sent sooner.
+                waitingThread = thread;
+                LockSupport.parkNanos(this, wait);
+                waitingThread = null;
+            }
+        }
+    }
+
+    @Override
+    protected long drainQueue() {
+        synchronized (consumerLock) {
+            return sendReady(true);
+        }
+    }
+
+    /**
+     * Determines whether a line may be sent now, and if so accounts for it
+     * being sent. Called by the sending thread for each line, highest priority
+     * first, until one may not be sent.
+     *
+     * <p>The default implementation doesn't limit sending, so every line that
+     * is waiting is sent straight away.
+     *
+     * @param line The encoded line, without its line terminator
+     * @return Zero if the line may be sent now, or the number of nanoseconds
+     * until it may be sent
+     */
+    protected long reserve(final byte[] line) {
+        return 0;
+    }
+
+    /**
+     * Takes the waiting lines, highest priority first, and writes them to the
+     * server. Must be called with the consumer lock held.
+     *
+     * @param limited True to stop at the first line that {@link #reserve(byte[])}
+     * doesn't allow to be sent, false to send every line
+     * @return The number of nanoseconds until the next line may be sent, or
+     * zero if no line had to wait
+     */
+    private long sendReady(final boolean limited) {
+        final OutputStream stream = outputStream;
+        if (stream == null) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+
+        long wait = 0;
+        int length = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            byte[] line;
+            while (wait == 0 && (line = takeLine(i)) != null) {
+                if (limited) {
+                    wait = reserve(line);
+                    if (wait > 0) {
+                        heldLines.set(i, line);
+                        break;
+                    }
+                }
+
+                final int needed = length + line.length + CRLF.length;
+                if (needed > writeBuffer.length) {
+                    if (length > 0) {
+                        write(stream, length);
+                        length = 0;
+                    }
+                    if (line.length + CRLF.length > writeBuffer.length) {
+                        writeBuffer = Arrays.copyOf(writeBuffer, line.length + CRLF.length);
+                    }
+                }
+                System.arraycopy(line, 0, writeBuffer, length, line.length);
+                length += line.length;
+                writeBuffer[length++] = '\r';
+                writeBuffer[length++] = '\n';
+            }
+        }
+        if (length > 0) {
+            write(stream, length);
+        }
+        return wait;
+    }
+
+    /**
+     * Takes the next line at a priority, merged with any lines queued after it
+     * that the coalescer can merge. Must be called with the consumer lock
+     * held.
+     *
+     * @param priority The ordinal of the priority to take a line from
+     * @return The encoded line, or null if there are none at the priority
+     */
+    private byte[] takeLine(final int priority) {
+        byte[] line = heldLines.getAndSet(priority, null);
+        if (line == null) {
+            line = pollQueued(priority);
+        }
+        if (line == null || getCoalescer() == null) {
+            return line;
+        }
+
+        String merged = null;
+        byte[] next;
+        while ((next = peekQueued(priority)) != null) {
+            final String candidate = coalesce(merged == null ? new String(line, charset) : merged,
+                    new String(next, charset));
+            if (candidate == null) {
+                break;
+            }
+            pollQueued(priority);
+            merged = candidate;
+        }
+        return merged == null ? line : merged.getBytes(charset);
+    }
+
+    /**
+     * Gets the oldest line queued at a priority without taking it. Lines in
+     * the overflow list were queued after every line in the buffer, so are
+     * only looked at once the buffer is empty. Must be called with the
+     * consumer lock held.
+     *
+     * @param priority The ordinal of the priority to look at
+     * @return The encoded line, or null if there are none ready
+     */
+    private byte[] peekQueued(final int priority) {
+        final byte[] line = buffers[priority].peek();
+        return line != null || buffers[priority].size() > 0 ? line : overflow.get(priority).peek();
+    }
+
+    /**
+     * Takes the oldest line queued at a priority, from its buffer or, once
+     * that is empty, its overflow list. Must be called with the consumer lock
+     * held.
+     *
+     * @param priority The ordinal of the priority to take a line from
+     * @return The encoded line, or null if there are none ready
+     */
+    private byte[] pollQueued(final int priority) {
+        final byte[] line = buffers[priority].poll();
+        return line != null || buffers[priority].size() > 0 ? line : overflow.get(priority).poll();
+    }
+
+    /**
+     * Writes the gathered lines to the server.
+     *
+     * @param stream The stream to write to
+     * @param length The number of bytes of the write buffer to write
+     */
+    private void write(final OutputStream stream, final int length) {
+        synchronized (writeLock) {
+            try {
+                stream.write(writeBuffer, 0, length);
+                stream.flush();
+            } catch (IOException ex) {
+                // The connection has gone; the parser will notice when reading.
+            }
+        }
+    }
+
+}
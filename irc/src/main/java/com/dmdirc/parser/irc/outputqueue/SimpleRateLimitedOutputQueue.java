@@ -24,6 +24,8 @@ package com.dmdirc.parser.irc.outputqueue;
 
 import com.dmdirc.parser.common.QueuePriority;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * This is a simple rate limiting queue.
  * If more than 4 items are added in 4 seconds it will start limiting.
@@ -180,11 +182,29 @@ public class SimpleRateLimitedOutputQueue extends OutputQueue {
         super.enqueue(line, priority);
     }
 
+    @Override
+    protected long drainQueue() {
+        String line;
+        while ((line = pollLine()) != null) {
+            send(line);
+
+            synchronized (this) {
+                if (isLimiting) {
+                    if (getQueue().isEmpty()) {
+                        isLimiting = false;
+                    }
+                    return TimeUnit.MILLISECONDS.toNanos(waitTime);
+                }
+            }
+        }
+        return 0;
+    }
+
     @Override
     protected void handleQueuedItems() {
         try {
             while (isQueueEnabled()) {
-                send(getQueue().take().getLine());
+                send(takeLine());
 
                 final boolean doSleep;
                 synchronized (this) {
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An output queue that paces lines with a token bucket, in the way that ircds
+ * apply flood control to their clients.
+ *
+ * <p>Each line has a cost: a fixed cost per line, a cost per byte sent, and
+ * optionally a penalty for particular commands. Sending a line moves a
+ * "since" time forward by its cost (but never behind the current time), and
+ * lines are only sent while that time is no more than the burst allowance
+ * ahead of the current time. With the defaults of 2 seconds per line, 1
+ * second per 120 bytes and a 10 second burst, this follows the flood control
+ * of ircd 2.x derived servers such as ircu, hybrid and charybdis, so a client
+ * can send a short burst of lines and is then held to the rate at which the
+ * server would process them.
+ *
+ * <p>When a line can't be sent, the queue waits for exactly as long as it
+ * takes for enough credit to build up, rather than a fixed time.
+ */
+public class TokenBucketOutputQueue extends RingBufferOutputQueue {
+
+    /** The default cost of each line. */
+    public static final Duration DEFAULT_LINE_COST = Duration.ofSeconds(2);
+    /** The default number of bytes that cost one second. */
+    public static final int DEFAULT_BYTES_PER_SECOND = 120;
+    /** The default burst allowance. */
+    public static final Duration DEFAULT_BURST = Duration.ofSeconds(10);
+
+    /** Source of the current time, in nanoseconds. */
+    private final LongSupplier clock;
+    /** Extra cost of particular commands, in nanoseconds, keyed by upper case command. */
+    private final Map<String, Long> commandPenalties = new ConcurrentHashMap<>();
+    /** The cost of each line, in nanoseconds. */
+    private volatile long lineCost = DEFAULT_LINE_COST.toNanos();
+    /** The cost of each byte, in nanoseconds. */
+    private volatile long byteCost = Duration.ofSeconds(1).toNanos() / DEFAULT_BYTES_PER_SECOND;
+    /** How far ahead of the current time sending may get, in nanoseconds. */
+    private volatile long burst = DEFAULT_BURST.toNanos();
+    /** The time up to which sent lines have used up credit, in nanoseconds. */
+    private volatile long since;
+
+    /**
+     * Creates a new token bucket output queue with the default capacity and
+     * charset.
+     */
+    public TokenBucketOutputQueue() {
+        this(DEFAULT_CAPACITY, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a new token bucket output queue.
+     *
+     * @param capacity The number of lines that may be queued at each priority
+     * @param charset The charset to encode lines with
+     */
+    public TokenBucketOutputQueue(final int capacity, final Charset charset) {
+        this(capacity, charset, System::nanoTime);
+    }
+
+    /**
+     * Creates a new token bucket output queue using the given clock.
+     *
+     * @param capacity The number of lines that may be queued at each priority
+     * @param charset The charset to encode lines with
+     * @param clock Source of the current time, in nanoseconds
+     */
+    TokenBucketOutputQueue(final int capacity, final Charset charset, final LongSupplier clock) {
+        super(capacity, charset);
+        this.clock = clock;
+        this.since = clock.getAsLong();
+    }
+
+    /**
+     * Gets the fixed cost of each line.
+     *
+     * @return The cost of each line
+     */
+    public Duration getLineCost() {
+        return Duration.ofNanos(lineCost);
+    }
+
+    /**
+     * Sets the fixed cost of each line.
+     *
+     * @param lineCost The cost of each line
+     */
+    public void setLineCost(final Duration lineCost) {
+        this.lineCost = lineCost.toNanos();
+    }
+
+    /**
+     * Gets the cost of each byte sent, including line terminators.
+     *
+     * @return The cost of each byte
+     */
+    public Duration getByteCost() {
+        return Duration.ofNanos(byteCost);
+    }
+
+    /**
+     * Sets the cost of each byte sent, including line terminators.
+     *
+     * @param byteCost The cost of each byte
+     */
+    public void setByteCost(final Duration byteCost) {
+        this.byteCost = byteCost.toNanos();
+    }
+
+    /**
+     * Gets how much credit can build up while nothing is sent, and so how
+     * long a burst of lines can be sent without waiting.
+     *
+     * @return The burst allowance
+     */
+    public Duration getBurst() {
+        return Duration.ofNanos(burst);
+    }
+
+    /**
+     * Sets how much credit can build up while nothing is sent.
+     *
+     * @param burst The burst allowance
+     */
+    public void setBurst(final Duration burst) {
+        this.burst = burst.toNanos();
+    }
+
+    /**
+     * Gets the extra cost of sending a command.
+     *
+     * @param command The command, such as "JOIN"
+     * @return The penalty for the command, which is zero unless one has been set
+     */
+    public Duration getCommandPenalty(final String command) {
+        return Duration.ofNanos(commandPenalties.getOrDefault(
+                command.toUpperCase(Locale.ENGLISH), 0L));
+    }
+
+    /**
+     * Sets an extra cost for sending a command, on top of the line and byte
+     * costs.
+     *
+     * @param command The command, such as "JOIN"
+     * @param penalty The penalty for the command, or zero to remove it
+     */
+    public void setCommandPenalty(final String command, final Duration penalty) {
+        checkNotNull(penalty);
+        final String key = command.toUpperCase(Locale.ENGLISH);
+        if (penalty.isZero()) {
+            commandPenalties.remove(key);
+        } else {
+            commandPenalties.put(key, penalty.toNanos());
+        }
+    }
+
+    /**
+     * Gets the flood profile this queue is currently following.
+     *
+     * @return A profile with the queue's current costs and allowance
+     */
+    public FloodProfile getFloodProfile() {
+        FloodProfile profile = new FloodProfile(getBurst(), getLineCost(), getByteCost());
+        for (Map.Entry<String, Long> entry : commandPenalties.entrySet()) {
+            profile = profile.withCommandPenalty(entry.getKey(), Duration.ofNanos(entry.getValue()));
+        }
+        return profile;
+    }
+
+    /**
+     * Sets all of the costs and the burst allowance from a flood profile,
+     * replacing any command penalties set previously.
+     *
+     * @param profile The profile to follow
+     */
+    public void setFloodProfile(final FloodProfile profile) {
+        setBurst(profile.getBurst());
+        setLineCost(profile.getLineCost());
+        setByteCost(profile.getByteCost());
+        commandPenalties.keySet().retainAll(profile.getCommandPenalties().keySet());
+        profile.getCommandPenalties().forEach(this::setCommandPenalty);
+    }
+
+    /**
+     * Gets the credit currently available. A line may be sent as soon as
+     * its cost is within the burst allowance of this.
+     *
+     * @return The available credit, between zero and the burst allowance
+     */
+    public Duration getCredit() {
+        final long used = since - clock.getAsLong();
+        return Duration.ofNanos(Math.max(0, burst - Math.max(0, used)));
+    }
+
+    /**
+     * Gets the cost of sending a line.
+     *
+     * @param line The encoded line, without its line terminator
+     * @return The cost of the line, in nanoseconds
+     */
+    long getCost(final byte[] line) {
+        long cost = lineCost + (line.length + 2) * byteCost;
+        if (!commandPenalties.isEmpty()) {
+            final String command = getCommand(line);
+            if (command != null) {
+                cost += commandPenalties.getOrDefault(command, 0L);
+            }
+        }
+        return cost;
+    }
+
+    @Override
+    protected long reserve(final byte[] line) {
+        final long now = clock.getAsLong();
+        final long start = Math.max(since, now);
+        final long end = start + getCost(line);
+        final long excess = end - now - burst;
+        if (excess > 0 && start > now) {
+            return excess;
+        }
+        // A line that costs more than the whole allowance is sent once credit is full.
+        since = end;
+        return 0;
+    }
+
+    /**
+     * Finds the command of an encoded line, skipping any tags and prefix.
+     *
+     * @param line The encoded line
+     * @return The command in upper case, or null if the line has none
+     */
+    private static String getCommand(final byte[] line) {
+        int start = 0;
+        while (start < line.length && (line[start] == '@' || line[start] == ':')) {
+            while (start < line.length && line[start] != ' ') {
+                start++;
+            }
+            while (start < line.length && line[start] == ' ') {
+                start++;
+            }
+        }
+        int end = start;
+        while (end < line.length && line[end] != ' ') {
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        final char[] command = new char[end - start];
+        for (int i = 0; i < command.length; i++) {
+            final byte b = line[start + i];
+            command[i] = (char) (b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b & 0xff);
+        }
+        return new String(command);
+    }
+
+}
@@ -75,6 +75,44 @@ public abstract class IRCProcessor {
         parser.callDebugInfo(level, data, args);
     }
 
+    /**
+     * Callback to all objects implementing the DebugInfo Callback.
+     *
+     * @param level Debugging Level (DEBUG_INFO, ndSocket etc)
+     * @param data Debugging Information
+     * @param arg Formatting String Option
+     */
+    protected final void callDebugInfo(final int level, final String data, final Object arg) {
+        parser.callDebugInfo(level, data, arg);
+    }
+
+    /**
+     * Callback to all objects implementing the DebugInfo Callback.
+     *
+     * @param level Debugging Level (DEBUG_INFO, ndSocket etc)
+     * @param data Debugging Information
+     * @param arg1 First Formatting String Option
+     * @param arg2 Second Formatting String Option
+     */
+    protected final void callDebugInfo(final int level, final String data, final Object arg1,
+            final Object arg2) {
+        parser.callDebugInfo(level, data, arg1, arg2);
+    }
+
+    /**
+     * Callback to all objects implementing the DebugInfo Callback.
+     *
+     * @param level Debugging Level (DEBUG_INFO, ndSocket etc)
+     * @param data Debugging Information
+     * @param arg1 First Formatting String Option
+     * @param arg2 Second Formatting String Option
+     * @param arg3 Third Formatting String Option
+     */
+    protected final void callDebugInfo(final int level, final String data, final Object arg1,
+            final Object arg2, final Object arg3) {
+        parser.callDebugInfo(level, data, arg1, arg2, arg3);
+    }
+
     /**
      * Callback to all objects implementing the DebugInfo Callback.
      *
@@ -102,7 +140,7 @@ public abstract class IRCProcessor {
      * @return ClientInfo Object for the client, or null
      */
     protected final IRCClientInfo getClientInfo(final String sWho) {
-        return parser.isKnownClient(sWho) ? parser.getClient(sWho) : null;
+        return parser.getKnownClient(sWho);
     }
 
     /**
@@ -27,7 +27,8 @@ import com.dmdirc.parser.common.ParserError;
 import com.dmdirc.parser.irc.IRCParser;
 
 import java.time.LocalDateTime;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -84,8 +85,14 @@ public class Process001 extends IRCProcessor {
         }
 
         parser.startPingTimer();
-        final Collection<? extends ChannelJoinRequest> requests = parser.extractChannels(
-                parser.getURI());
+        final List<ChannelJoinRequest> requests = new ArrayList<>(parser.extractChannels(
+                parser.getURI()));
+        for (ChannelJoinRequest channel : parser.getProfileChannels()) {
+            if (requests.stream().noneMatch(r -> parser.getStringConverter()
+                    .equalsIgnoreCase(r.getName(), channel.getName()))) {
+                requests.add(channel);
+            }
+        }
         parser.joinChannels(requests.toArray(new ChannelJoinRequest[requests.size()]));
     }
 
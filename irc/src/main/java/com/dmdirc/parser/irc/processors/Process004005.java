@@ -73,6 +73,7 @@ public class Process004005 extends IRCProcessor {
                 process005(token);
                 break;
         }
+        parser.updateISupportSnapshot();
     }
 
     /**
@@ -97,6 +98,7 @@ public class Process004005 extends IRCProcessor {
         final Matcher matcher = pattern.matcher(parser.getLastLine());
         if (matcher.find()) {
             parser.h005Info.put("002IRCD", matcher.group(1));
+            parser.confirmISupport("002IRCD");
         }
     }
 
@@ -107,6 +109,7 @@ public class Process004005 extends IRCProcessor {
      */
     private void process003(final String... token) {
         parser.h005Info.put("003IRCD", token[token.length - 1]);
+        parser.confirmISupport("003IRCD");
     }
 
     /**
@@ -121,6 +124,7 @@ public class Process004005 extends IRCProcessor {
 
         if (bits.length > i) {
             parser.h005Info.put("004IRCD", bits[i]);
+            parser.confirmISupport("004IRCD");
             i++;
         }
 
@@ -134,15 +138,20 @@ public class Process004005 extends IRCProcessor {
         if (bits.length > i + 1) {
             parser.h005Info.put("USERMODES", bits[i]);
             parser.h005Info.put("USERCHANMODES", bits[i + 1]);
+            parser.confirmISupport("USERMODES");
+            parser.confirmISupport("USERCHANMODES");
             i += 2;
         }
 
         if (bits.length > i) {
             // INSPIRCD includes an extra param
             parser.h005Info.put("USERCHANPARAMMODES", bits[i]);
+            parser.confirmISupport("USERCHANPARAMMODES");
         }
 
         parser.parseUserModes();
+        parser.applyFloodProfile();
+        parser.updateCoalescer();
     }
 
     /**
@@ -169,6 +178,7 @@ public class Process004005 extends IRCProcessor {
             } else {
                 parser.h005Info.put(key, value);
             }
+            parser.confirmISupport(key);
 
             switch (key) {
                 case "NETWORK":
@@ -198,6 +208,11 @@ public class Process004005 extends IRCProcessor {
                 case "TIMESTAMPEDIRC":
                     processTimestampedIrcToken();
                     break;
+                case "MODES":
+                case "MAXTARGETS":
+                case "TARGMAX":
+                    parser.updateCoalescer();
+                    break;
             }
         }
     }
@@ -211,6 +226,7 @@ public class Process004005 extends IRCProcessor {
     private void processNetworkToken(final boolean isNegation, final String value) {
         if (!isNegation) {
             parser.networkName = value;
+            parser.applyFloodProfile();
             callGotNetwork();
         }
     }
@@ -265,6 +281,7 @@ public class Process004005 extends IRCProcessor {
      */
     private void processPrefixToken() {
         parser.parsePrefixModes();
+        parser.updateCoalescer();
     }
 
     /**
@@ -272,6 +289,7 @@ public class Process004005 extends IRCProcessor {
      */
     private void processChanModesToken() {
         parser.parseChanModes();
+        parser.updateCoalescer();
     }
 
     /**
@@ -22,12 +22,14 @@
 
 package com.dmdirc.parser.irc.processors;
 
+import com.dmdirc.parser.irc.CapabilityRegistry;
 import com.dmdirc.parser.irc.CapabilityState;
 import com.dmdirc.parser.irc.IRCParser;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -40,14 +42,20 @@ import javax.inject.Inject;
  * either with or without the capability enabled, so we don't actually need to
  * keep much/any state here, which makes this easy.
  *
+ * The capabilities to enable are taken from the parser's
+ * {@link CapabilityRegistry}. They are requested together, in as few lines as
+ * possible, once the server has finished listing them, and as the server
+ * offers new ones (cap-notify).
+ *
  * See: http://www.leeh.co.uk/draft-mitchell-irc-capabilities-02.html
  * See: http://ircv3.atheme.org/specification/capability-negotiation-3.1
+ * See: https://ircv3.net/specs/core/capability-negotiation.html
  */
 public class ProcessCap extends IRCProcessor {
     /** Have we handled the pre-connect cap request? */
     private boolean hasCapped;
-    /** List of supported capabilities. */
-    private final Collection<String> supportedCapabilities = new ArrayList<>();
+    /** Capabilities to request once the server has finished listing them. */
+    private final List<String> pendingRequests = new ArrayList<>();
 
     /**
      * Create a new instance of the IRCProcessor Object.
@@ -57,21 +65,6 @@ public class ProcessCap extends IRCProcessor {
     @Inject
     public ProcessCap(final IRCParser parser) {
         super(parser, "CAP");
-
-        // IRCv3.1 Standard
-        supportedCapabilities.add("multi-prefix");
-        supportedCapabilities.add("userhost-in-names");
-        supportedCapabilities.add("away-notify");
-        supportedCapabilities.add("account-notify");
-        supportedCapabilities.add("extended-join");
-        supportedCapabilities.add("self-message");
-        supportedCapabilities.add("server-time");
-
-        // Freenode
-        // supportedCapabilities.add("identify-msg");
-
-        // DFBnc
-        supportedCapabilities.add("dfbnc.com/tsirc");
     }
 
     /**
@@ -87,19 +80,7 @@ public class ProcessCap extends IRCProcessor {
         // After that, the user may be sending stuff themselves so we do
         // nothing.
         if (!hasCapped && !parser.got001 && token.length > 4 && "LS".equalsIgnoreCase(token[3])) {
-            final String[] caps = token[token.length - 1].split(" ");
-            for (final String cap : caps) {
-                if (cap.isEmpty()) { continue; }
-                final String capability = cap.charAt(0) == '=' ? cap.substring(1).toLowerCase() : cap.toLowerCase();
-
-                parser.addCapability(capability);
-
-                if (supportedCapabilities.contains(capability)) {
-                    // Send cap requests as individual lines, as some servers
-                    // only appear to accept them one at a time.
-                    parser.sendRawMessage("CAP REQ :" + capability);
-                }
-            }
+            addCapabilities(token[token.length - 1], pendingRequests);
 
             // If this is the last of the LS responses, set hasCapped to true
             // so that we don't try this again, and send "CAP END"
@@ -110,8 +91,22 @@ public class ProcessCap extends IRCProcessor {
             //     :DFBnc.Server CAP Dataforce LS *
             if (token.length == 4 || token.length == 5 && !"*".equals(token[4])) {
                 hasCapped = true;
+                requestCapabilities(pendingRequests);
+                pendingRequests.clear();
                 parser.sendRawMessage("CAP END");
             }
+        } else if ("NEW".equalsIgnoreCase(token[3])) {
+            final List<String> requests = new ArrayList<>();
+            addCapabilities(token[token.length - 1], requests);
+            requestCapabilities(requests);
+        } else if ("DEL".equalsIgnoreCase(token[3])) {
+            for (final String cap : token[token.length - 1].split(" ")) {
+                if (!cap.isEmpty()) {
+                    parser.getCapabilityRegistry().removeCapability(cap);
+                }
+            }
+        } else if ("NAK".equalsIgnoreCase(token[3])) {
+            processNak(token[token.length - 1]);
         } else if ("ACK".equalsIgnoreCase(token[3]) || "CLEAR".equalsIgnoreCase(token[3])) {
             // Process the list.
             final String[] caps = token[token.length - 1].split(" ");
@@ -132,4 +127,63 @@ public class ProcessCap extends IRCProcessor {
         }
     }
 
+    /**
+     * Adds the capabilities the server has listed to the registry, noting any
+     * that should be requested.
+     *
+     * @param list The list of capabilities, with their values where given
+     * @param requests The list to add capabilities that should be requested to
+     */
+    private void addCapabilities(final String list, final Collection<String> requests) {
+        final CapabilityRegistry registry = parser.getCapabilityRegistry();
+        for (final String cap : list.split(" ")) {
+            if (cap.isEmpty()) { continue; }
+            // Older servers mark sticky capabilities with a leading '='; as
+            // of CAP 302 a '=' separates the capability from its value.
+            final String[] bits = (cap.charAt(0) == '=' ? cap.substring(1) : cap).split("=", 2);
+            final String capability = bits[0].toLowerCase();
+
+            registry.addCapability(capability, bits.length == 2 ? bits[1] : null);
+
+            if (registry.isWanted(capability)
+                    && registry.getState(capability) != CapabilityState.ENABLED
+                    && registry.setRequested(capability)) {
+                requests.add(capability);
+            }
+        }
+    }
+
+    /**
+     * Requests capabilities from the server, with as many on each line as
+     * will fit.
+     *
+     * @param capabilities The capabilities to request
+     */
+    private void requestCapabilities(final Collection<String> capabilities) {
+        for (String line : CapabilityRegistry.getRequestLines(capabilities)) {
+            parser.sendRawMessage(line);
+        }
+    }
+
+    /**
+     * Processes a refused capability request. A request is refused entirely
+     * if any one of its capabilities is unavailable, so when several were
+     * requested together, each one the server offers is requested again on
+     * its own.
+     *
+     * @param list The capabilities that were refused
+     */
+    private void processNak(final String list) {
+        final String[] refused = list.trim().split(" ");
+        if (refused.length < 2) {
+            return;
+        }
+
+        for (final String cap : refused) {
+            if (!cap.isEmpty() && parser.getCapabilityState(cap) != CapabilityState.INVALID) {
+                parser.sendRawMessage("CAP REQ :" + cap.toLowerCase());
+            }
+        }
+    }
+
 }
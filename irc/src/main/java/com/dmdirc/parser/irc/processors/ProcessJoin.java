@@ -36,8 +36,6 @@ import com.dmdirc.parser.irc.IRCParser;
 import com.dmdirc.parser.irc.ModeManager;
 import com.dmdirc.parser.irc.PrefixModeManager;
 import com.dmdirc.parser.irc.ProcessorNotFoundException;
-import com.dmdirc.parser.irc.events.IRCDataOutEvent;
-import net.engio.mbassy.listener.Handler;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -77,8 +75,6 @@ public class ProcessJoin extends IRCProcessor {
         this.prefixModeManager = prefixModeManager;
         this.userModeManager = userModeManager;
         this.chanModeManager = chanModeManager;
-
-        getCallbackManager().subscribe(this);
     }
 
     /**
@@ -90,7 +86,9 @@ public class ProcessJoin extends IRCProcessor {
      */
     @Override
     public void process(final LocalDateTime date, final String sParam, final String... token) {
-        callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: %s | %s", sParam, Arrays.toString(token));
+        if (parser.isDebugging(IRCParser.DEBUG_INFO)) {
+            callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: %s | %s", sParam, Arrays.toString(token));
+        }
 
         if ("329".equals(sParam)) {
             if (token.length < 5) {
@@ -163,7 +161,11 @@ public class ProcessJoin extends IRCProcessor {
                     // joined.
                     callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: Adding client to channel.");
                     final IRCChannelClientInfo iChannelClient = iChannel.addClient(iClient);
-                    callChannelJoin(date, iChannel, iChannelClient);
+                    // Joins caused by a netjoin are also reported together once the join is over
+                    if (!parser.getNetsplitHandler().clientJoined(iChannelClient)
+                            || parser.getNetsplitUserEvents()) {
+                        callChannelJoin(date, iChannel, iChannelClient);
+                    }
                     callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: Added client to channel.");
                     return;
                 } else {
@@ -173,6 +175,10 @@ public class ProcessJoin extends IRCProcessor {
                 }
             }
 
+            if (iChannel != null) {
+                // Clients still index their membership of the channel we're replacing
+                iChannel.emptyChannel();
+            }
             iChannel = new IRCChannelInfo(parser, prefixModeManager, userModeManager,
                     chanModeManager, channelName);
             // Add ourself to the channel, this will be overridden by the NAMES reply
@@ -204,13 +210,17 @@ public class ProcessJoin extends IRCProcessor {
         }
     }
 
-    @Handler(condition = "msg.action == 'JOIN'")
-    public void handleDataOut(final IRCDataOutEvent event) {
+    /**
+     * Intercepts a JOIN line sent to the server, remembering the keys it tried so they can
+     * be matched up with the replies.
+     *
+     * @param newLine Tokenised JOIN line that is being sent
+     */
+    public void interceptJoin(final String... newLine) {
         // As long as this is called before the resulting DataIn
         // Processors fire then this will work, otherwise we'll end
         // up with an out-of-sync pendingJoins list.
 
-        final String[] newLine = event.getTokenisedData();
         if (newLine.length > 1) {
             final Queue<String> keys = new LinkedList<>();
 
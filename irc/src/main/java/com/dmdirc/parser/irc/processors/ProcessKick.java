@@ -60,7 +60,9 @@ public class ProcessKick extends IRCProcessor {
      */
     @Override
     public void process(final LocalDateTime date, final String sParam, final String... token) {
-        callDebugInfo(IRCParser.DEBUG_INFO, "processKick: %s | %s", sParam, Arrays.toString(token));
+        if (parser.isDebugging(IRCParser.DEBUG_INFO)) {
+            callDebugInfo(IRCParser.DEBUG_INFO, "processKick: %s | %s", sParam, Arrays.toString(token));
+        }
 
         final IRCClientInfo iClient = getClientInfo(token[3]);
         final IRCClientInfo iKicker = getClientInfo(token[0]);
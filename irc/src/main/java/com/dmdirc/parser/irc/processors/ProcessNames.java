@@ -25,41 +25,26 @@ package com.dmdirc.parser.irc.processors;
 import com.dmdirc.parser.events.ChannelNamesEvent;
 import com.dmdirc.parser.events.ChannelTopicEvent;
 import com.dmdirc.parser.interfaces.ChannelInfo;
-import com.dmdirc.parser.irc.IRCChannelClientInfo;
 import com.dmdirc.parser.irc.IRCChannelInfo;
-import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
-import com.dmdirc.parser.irc.ModeManager;
-import com.dmdirc.parser.irc.PrefixModeManager;
 
 import java.time.LocalDateTime;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 
 /**
  * Process a Names reply.
  */
 public class ProcessNames extends IRCProcessor {
 
-    /** The manager to use to access prefix modes. */
-    private final PrefixModeManager prefixModeManager;
-    /** Mode manager to use for user modes. */
-    private final ModeManager userModeManager;
-
     /**
      * Create a new instance of the IRCProcessor Object.
      *
      * @param parser IRCParser That owns this IRCProcessor
-     * @param prefixModeManager The manager to use to access prefix modes.
-     * @param userModeManager Mode manager to use for user modes.
      */
     @Inject
-    public ProcessNames(final IRCParser parser, final PrefixModeManager prefixModeManager,
-            @Named("user") final ModeManager userModeManager) {
+    public ProcessNames(final IRCParser parser) {
         super(parser, "353", "366");
-        this.prefixModeManager = prefixModeManager;
-        this.userModeManager = userModeManager;
     }
 
     /**
@@ -104,39 +89,9 @@ public class ProcessNames extends IRCProcessor {
             }
             iChannel.setAddingNames(true);
 
-            final String[] sNames = token[token.length - 1].split(" ");
-            String sName = "";
-            StringBuilder sModes = new StringBuilder();
-            for (String sName1 : sNames) {
-                // If name is empty (ie there was an extra space) ignore it.
-                if (sName1.isEmpty()) {
-                    continue;
-                }
-                // This next bit of code allows for any ircd which decides to use @+Foo in names
-                for (int i = 0; i < sName1.length(); i++) {
-                    final char cMode = sName1.charAt(i);
-                    if (prefixModeManager.isPrefix(cMode)) {
-                        sModes.append(prefixModeManager.getModeFor(cMode));
-                    } else {
-                        sName = sName1.substring(i);
-                        break;
-                    }
-                }
-                callDebugInfo(IRCParser.DEBUG_INFO, "Name: %s Modes: \"%s\"", sName,
-                        sModes.toString());
-
-                IRCClientInfo iClient = getClientInfo(sName);
-                if (iClient == null) {
-                    iClient = new IRCClientInfo(parser, userModeManager, sName);
-                    parser.addClient(iClient);
-                }
-                iClient.setUserBits(sName, false); // Will do nothing if this isn't UHNAMES
-                final IRCChannelClientInfo iChannelClient = iChannel.addClient(iClient);
-                iChannelClient.setChanMode(sModes.toString());
-
-                sName = "";
-                sModes = new StringBuilder();
-            }
+            final int count = iChannel.addNames(token[token.length - 1]);
+            callDebugInfo(IRCParser.DEBUG_INFO, "Names: %d names added to %s", count,
+                    iChannel.getName());
         }
     }
 
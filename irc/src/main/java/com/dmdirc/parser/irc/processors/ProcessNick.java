@@ -66,7 +66,7 @@ public class ProcessNick extends IRCProcessor {
         if (iClient == null) {
             return;
         }
-        final String oldNickname = parser.getStringConverter().toLowerCase(iClient.getNickname());
+        final String oldNickname = iClient.getNickname();
         // Remove the client from the known clients list
         final boolean isSameNick = parser.getStringConverter().equalsIgnoreCase(oldNickname, token[token.length - 1]);
 
@@ -83,18 +83,15 @@ public class ProcessNick extends IRCProcessor {
                 parser.addClient(iClient);
             }
 
-            for (IRCChannelInfo iChannel : parser.getChannels()) {
-                // Find the user (using the old nickname)
-                final IRCChannelClientInfo iChannelClient = iChannel.getChannelClient(oldNickname);
-                if (iChannelClient != null) {
-                    // Rename them. This uses the old nickname (the key in the hashtable)
-                    // and the channelClient object has access to the new nickname (by way
-                    // of the ClientInfo object we updated above)
-                    if (!isSameNick) {
-                        iChannel.renameClient(oldNickname, iChannelClient);
-                    }
-                    callChannelNickChanged(date, iChannel, iChannelClient, IRCClientInfo.parseHost(token[0]));
+            for (IRCChannelClientInfo iChannelClient : iClient.getChannelClientInfos()) {
+                final IRCChannelInfo iChannel = iChannelClient.getChannel();
+                // Rename them. This uses the old nickname (the key in the hashtable)
+                // and the channelClient object has access to the new nickname (by way
+                // of the ClientInfo object we updated above)
+                if (!isSameNick) {
+                    iChannel.renameClient(oldNickname, iChannelClient);
                 }
+                callChannelNickChanged(date, iChannel, iChannelClient, IRCClientInfo.parseHost(token[0]));
             }
 
             callNickChanged(date, iClient, IRCClientInfo.parseHost(token[0]));
@@ -33,7 +33,6 @@ import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 
 import javax.inject.Inject;
 
@@ -81,26 +80,31 @@ public class ProcessQuit extends IRCProcessor {
             sReason = token[token.length - 1];
         }
 
-        final Iterable<IRCChannelInfo> channelList = new ArrayList<>(parser.getChannels());
-        for (IRCChannelInfo iChannel : channelList) {
-            final IRCChannelClientInfo iChannelClient = iChannel.getChannelClient(iClient);
-            if (iChannelClient != null) {
-                if (parser.getRemoveAfterCallback()) {
-                    callChannelQuit(date, iChannel, iChannelClient, sReason);
-                }
-                if (iClient == parser.getLocalClient()) {
-                    iChannel.emptyChannel();
-                    parser.removeChannel(iChannel);
-                } else {
-                    iChannel.delClient(iClient);
-                }
-                if (!parser.getRemoveAfterCallback()) {
-                    callChannelQuit(date, iChannel, iChannelClient, sReason);
-                }
+        // Quits caused by a netsplit are also reported together once the split is over
+        final boolean isSplit = iClient != parser.getLocalClient()
+                && parser.getNetsplitHandler().clientQuit(date, iClient, sReason);
+        final boolean callBefore = parser.getRemoveAfterCallback()
+                && (!isSplit || parser.getNetsplitUserEvents());
+        final boolean callAfter = !parser.getRemoveAfterCallback()
+                && (!isSplit || parser.getNetsplitUserEvents());
+
+        for (IRCChannelClientInfo iChannelClient : iClient.getChannelClientInfos()) {
+            final IRCChannelInfo iChannel = iChannelClient.getChannel();
+            if (callBefore) {
+                callChannelQuit(date, iChannel, iChannelClient, sReason);
+            }
+            if (iClient == parser.getLocalClient()) {
+                iChannel.emptyChannel();
+                parser.removeChannel(iChannel);
+            } else {
+                iChannel.delClient(iClient);
+            }
+            if (callAfter) {
+                callChannelQuit(date, iChannel, iChannelClient, sReason);
             }
         }
 
-        if (parser.getRemoveAfterCallback()) {
+        if (callBefore) {
             callQuit(date, iClient, sReason);
         }
         if (iClient == parser.getLocalClient()) {
@@ -108,7 +112,7 @@ public class ProcessQuit extends IRCProcessor {
         } else {
             parser.removeClient(iClient);
         }
-        if (!parser.getRemoveAfterCallback()) {
+        if (callAfter) {
             callQuit(date, iClient, sReason);
         }
     }
@@ -29,6 +29,7 @@ import com.dmdirc.parser.events.OtherAwayStateEvent;
 import com.dmdirc.parser.interfaces.ChannelClientInfo;
 import com.dmdirc.parser.interfaces.ChannelInfo;
 import com.dmdirc.parser.interfaces.ClientInfo;
+import com.dmdirc.parser.irc.IRCChannelClientInfo;
 import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
 
@@ -88,11 +89,9 @@ public class ProcessWho extends IRCProcessor {
                 } else {
                     callAwayStateOther(time, client, oldState, isAway);
 
-                    for (ChannelInfo iChannel : parser.getChannels()) {
-                        final ChannelClientInfo iChannelClient = iChannel.getChannelClient(client);
-                        if (iChannelClient != null) {
-                            callChannelAwayStateOther(time, iChannel, iChannelClient, oldState, isAway);
-                        }
+                    for (IRCChannelClientInfo iChannelClient : client.getChannelClientInfos()) {
+                        callChannelAwayStateOther(time, iChannelClient.getChannel(), iChannelClient,
+                                oldState, isAway);
                     }
                 }
             }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.NetsplitEvent;
+import com.dmdirc.parser.irc.events.IRCDataOutEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CapabilityNegotiationTest {
+
+    private final TestParser parser = new TestParser(URI.create("irc://server.example/"));
+    private final List<String> sent = new ArrayList<>();
+    private final List<NetsplitEvent> netsplits = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        parser.getOutputQueue().setOutputStream(new ByteArrayOutputStream());
+        parser.currentSocketState = SocketState.OPEN;
+        parser.getCallbackManager().subscribe(this);
+    }
+
+    @Test
+    public void testRegistrationIsPipelined() {
+        parser.sendConnectionStrings();
+
+        assertEquals(3, sent.size());
+        assertEquals("CAP LS 302", sent.get(0));
+        assertTrue(sent.get(1).startsWith("NICK "));
+        assertTrue(sent.get(2).startsWith("USER "));
+    }
+
+    @Test
+    public void testRequestsAreBatched() {
+        parser.feed(":server CAP * LS * :multi-prefix sasl=PLAIN,EXTERNAL",
+                ":server CAP * LS :server-time example.com/unknown");
+
+        assertEquals(Arrays.asList("CAP REQ :multi-prefix server-time", "CAP END"), sent);
+        assertEquals("PLAIN,EXTERNAL", parser.getCapabilityRegistry().getValue("sasl"));
+        assertEquals(CapabilityState.DISABLED, parser.getCapabilityState("example.com/unknown"));
+
+        parser.feed(":server CAP nick ACK :multi-prefix server-time");
+        assertEquals(CapabilityState.ENABLED, parser.getCapabilityState("multi-prefix"));
+        assertEquals(CapabilityState.ENABLED, parser.getCapabilityState("server-time"));
+    }
+
+    @Test
+    public void testRefusedBatchIsRetriedSingly() {
+        parser.feed(":server CAP * LS :multi-prefix server-time",
+                ":server CAP nick NAK :multi-prefix server-time");
+        assertEquals(Arrays.asList("CAP REQ :multi-prefix server-time", "CAP END",
+                "CAP REQ :multi-prefix", "CAP REQ :server-time"), sent);
+
+        sent.clear();
+        parser.feed(":server CAP nick NAK :server-time");
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testCapNotify() {
+        parser.feed(":server CAP * LS :multi-prefix",
+                ":server CAP nick ACK :multi-prefix",
+                ":server 001 nick :Welcome");
+        sent.clear();
+
+        parser.feed(":server CAP nick NEW :away-notify example.com/unknown");
+        // The ping timer may also have sent a PING by now.
+        assertEquals(Arrays.asList("CAP REQ :away-notify"), sent.stream()
+                .filter(line -> line.startsWith("CAP ")).collect(Collectors.toList()));
+        parser.feed(":server CAP nick ACK :away-notify");
+        assertEquals(CapabilityState.ENABLED, parser.getCapabilityState("away-notify"));
+
+        parser.feed(":server CAP nick DEL :away-notify");
+        assertEquals(CapabilityState.INVALID, parser.getCapabilityState("away-notify"));
+        assertEquals(CapabilityState.ENABLED, parser.getCapabilityState("multi-prefix"));
+    }
+
+    @Test
+    public void testNegotiatedBatch() {
+        parser.feed(":server CAP * LS :batch multi-prefix");
+        assertEquals(Arrays.asList("CAP REQ :batch multi-prefix", "CAP END"), sent);
+
+        parser.feed(":server CAP nick ACK :multi-prefix batch",
+                ":server 001 nick :Welcome",
+                ":nick!nick@host JOIN #chan",
+                ":server 353 nick = #chan :nick alice bob",
+                ":server 366 nick #chan :End of /NAMES list.",
+                ":server BATCH +x netsplit hub.example.net leaf.example.net",
+                "@batch=x :alice!alice@host QUIT :hub.example.net leaf.example.net",
+                "@batch=x :bob!bob@host QUIT :hub.example.net leaf.example.net");
+        assertEquals(CapabilityState.ENABLED, parser.getCapabilityState("batch"));
+        assertTrue(netsplits.isEmpty());
+
+        parser.feed(":server BATCH -x");
+        assertEquals(1, netsplits.size());
+        assertEquals("leaf.example.net", netsplits.get(0).getRemoteServer());
+        assertEquals(2, netsplits.get(0).getClients().size());
+    }
+
+    @Handler
+    public void handleNetsplit(final NetsplitEvent event) {
+        netsplits.add(event);
+    }
+
+    @Handler
+    public void handleDataOut(final IRCDataOutEvent event) {
+        sent.add(event.getData());
+    }
+
+}
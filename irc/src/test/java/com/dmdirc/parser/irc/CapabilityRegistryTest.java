@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CapabilityRegistryTest {
+
+    private final CapabilityRegistry registry = new CapabilityRegistry();
+
+    @Test
+    public void testStates() {
+        assertEquals(CapabilityState.INVALID, registry.getState("away-notify"));
+        registry.setState("away-notify", CapabilityState.ENABLED);
+        assertEquals(CapabilityState.INVALID, registry.getState("away-notify"));
+
+        registry.addCapability("Away-Notify", null);
+        assertEquals(CapabilityState.DISABLED, registry.getState("away-notify"));
+        registry.setState("away-notify", CapabilityState.ENABLED);
+        registry.addCapability("away-notify", null);
+        assertEquals(CapabilityState.ENABLED, registry.getState("AWAY-NOTIFY"));
+        assertEquals(Collections.singleton("away-notify"), registry.getEnabled());
+
+        registry.removeCapability("away-notify");
+        assertEquals(CapabilityState.INVALID, registry.getState("away-notify"));
+        assertTrue(registry.getEnabled().isEmpty());
+    }
+
+    @Test
+    public void testValues() {
+        registry.addCapability("sasl", "PLAIN,EXTERNAL");
+        assertEquals("PLAIN,EXTERNAL", registry.getValue("SASL"));
+        registry.addCapability("sasl", null);
+        assertNull(registry.getValue("sasl"));
+    }
+
+    @Test
+    public void testWanted() {
+        assertTrue(registry.isWanted("multi-prefix"));
+        assertTrue(registry.isWanted("cap-notify"));
+        assertTrue(registry.isWanted("batch"));
+        assertFalse(registry.isWanted("sasl"));
+
+        registry.setWanted("SASL", true);
+        assertTrue(registry.isWanted("sasl"));
+        registry.setWanted("multi-prefix", false);
+        assertFalse(registry.getWanted().contains("multi-prefix"));
+    }
+
+    @Test
+    public void testRequested() {
+        assertTrue(registry.setRequested("server-time"));
+        assertFalse(registry.setRequested("Server-Time"));
+        assertTrue(registry.isRequested("server-time"));
+
+        registry.clearRequested();
+        assertFalse(registry.isRequested("server-time"));
+    }
+
+    @Test
+    public void testRequestLines() {
+        assertTrue(CapabilityRegistry.getRequestLines(Collections.emptyList()).isEmpty());
+        assertEquals(Collections.singletonList("CAP REQ :multi-prefix server-time"),
+                CapabilityRegistry.getRequestLines(Arrays.asList("multi-prefix", "server-time")));
+    }
+
+    @Test
+    public void testLongRequestsAreSplit() {
+        final List<String> capabilities = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            capabilities.add("example.com/capability-" + i);
+        }
+
+        final List<String> lines = CapabilityRegistry.getRequestLines(capabilities);
+        assertTrue(lines.size() > 1);
+        final List<String> requested = new ArrayList<>();
+        for (String line : lines) {
+            assertTrue(line.length() <= 510);
+            assertTrue(line.startsWith("CAP REQ :"));
+            requested.addAll(Arrays.asList(line.substring(9).split(" ")));
+        }
+        assertEquals(capabilities, requested);
+    }
+
+}
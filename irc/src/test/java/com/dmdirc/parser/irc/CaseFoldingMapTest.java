@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CaseFoldingMapTest {
+
+    private CaseFoldingMap<String> map;
+
+    @Before
+    public void setUp() {
+        map = new CaseFoldingMap<>(new IRCStringConverter(IRCEncoding.RFC1459));
+    }
+
+    @Test
+    public void testGetIgnoresCase() {
+        map.put("Nick[away]", "value");
+
+        assertEquals("value", map.get("nick[away]"));
+        assertEquals("value", map.get("NICK{AWAY}"));
+        assertTrue(map.containsKey("nick{away}"));
+        assertNull(map.get("nick"));
+    }
+
+    @Test
+    public void testStrictMappingKeepsCaret() {
+        map = new CaseFoldingMap<>(new IRCStringConverter(IRCEncoding.STRICT_RFC1459));
+        map.put("nick^", "value");
+
+        assertNull(map.get("nick~"));
+        assertEquals("value", map.get("NICK^"));
+    }
+
+    @Test
+    public void testAsciiMappingKeepsBrackets() {
+        map = new CaseFoldingMap<>(new IRCStringConverter(IRCEncoding.ASCII));
+        map.put("nick[a]", "value");
+
+        assertNull(map.get("nick{a}"));
+        assertEquals("value", map.get("NICK[A]"));
+    }
+
+    @Test
+    public void testGetRange() {
+        final String hostmask = ":Nick!user@host";
+        map.put("nick", "value");
+
+        assertEquals("value", map.get(hostmask, IRCClientInfo.getNicknameStart(hostmask),
+                IRCClientInfo.getNicknameEnd(hostmask)));
+        assertNull(map.get(hostmask, 1, 4));
+    }
+
+    @Test
+    public void testPutReplacesKey() {
+        assertNull(map.put("nick", "first"));
+        assertEquals("first", map.put("NICK", "second"));
+
+        assertEquals(1, map.size());
+        final Map.Entry<String, String> entry = map.entrySet().iterator().next();
+        assertEquals("NICK", entry.getKey());
+        assertEquals("second", entry.getValue());
+    }
+
+    @Test
+    public void testRemove() {
+        map.put("nick", "value");
+
+        assertEquals("value", map.remove("Nick"));
+        assertNull(map.remove("nick"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        map.put("one", "1");
+        map.put("two", "2");
+        map.put("three", "3");
+
+        final Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if ("2".equals(iterator.next().getValue())) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("two"));
+        assertEquals("1", map.get("ONE"));
+        assertEquals("3", map.get("THREE"));
+    }
+
+    @Test
+    public void testManyEntries() {
+        for (int i = 0; i < 1000; i++) {
+            map.put("Nick" + i, String.valueOf(i));
+        }
+
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), map.get("nick" + i));
+        }
+    }
+
+    @Test
+    public void testEnsureCapacity() {
+        map.put("nick", "value");
+        map.ensureCapacity(10000);
+
+        assertEquals(1, map.size());
+        assertEquals("value", map.get("NICK"));
+    }
+
+    @Test
+    public void testSetConverterRehashes() {
+        map = new CaseFoldingMap<>(new IRCStringConverter(IRCEncoding.ASCII));
+        map.put("nick[a]", "value");
+
+        map.setConverter(new IRCStringConverter(IRCEncoding.RFC1459));
+
+        assertEquals("value", map.get("nick{a}"));
+    }
+
+    @Test
+    public void testValueIdentity() {
+        final String value = "value";
+        map.put("nick", value);
+
+        assertSame(value, map.get("NICK"));
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.events.DataOutEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataEventsTest {
+
+    private final TestParser parser = new TestParser();
+    private final List<DataInEvent> events = new ArrayList<>();
+    private final List<DataOutEvent> outEvents = new ArrayList<>();
+
+    @Handler
+    public void handleDataIn(final DataInEvent event) {
+        events.add(event);
+    }
+
+    @Handler
+    public void handleDataOut(final DataOutEvent event) {
+        outEvents.add(event);
+    }
+
+    @Test
+    public void testDataInElidedWithoutHandlers() {
+        parser.feed(":server 001 nick :Welcome", ":server NOTICE nick :Hello");
+
+        assertEquals(2, parser.getElidedDataEvents());
+    }
+
+    @Test
+    public void testDataInRaisedWithHandlers() {
+        parser.feed(":server 001 nick :Welcome");
+        parser.getCallbackManager().subscribe(this);
+        parser.feed(":server NOTICE nick :Hello");
+
+        assertEquals(1, events.size());
+        assertEquals(":server NOTICE nick :Hello", events.get(0).getData());
+        assertEquals(1, parser.getElidedDataEvents());
+    }
+
+    @Test
+    public void testDataInElidedAfterUnsubscribing() {
+        parser.getCallbackManager().subscribe(this);
+        parser.feed(":server 001 nick :Welcome");
+        parser.getCallbackManager().unsubscribe(this);
+        parser.feed(":server NOTICE nick :Hello");
+
+        assertEquals(1, events.size());
+        assertEquals(1, parser.getElidedDataEvents());
+    }
+
+    @Test
+    public void testDataOutElidedWithoutHandlers() {
+        parser.getOutputQueue().setOutputStream(new ByteArrayOutputStream());
+        parser.currentSocketState = SocketState.OPEN;
+        parser.sendRawMessage("PRIVMSG #chan :Hello");
+
+        assertEquals(1, parser.getElidedDataEvents());
+    }
+
+    @Test
+    public void testDataOutRaisedWithHandlers() {
+        parser.getOutputQueue().setOutputStream(new ByteArrayOutputStream());
+        parser.currentSocketState = SocketState.OPEN;
+        parser.getCallbackManager().subscribe(this);
+        parser.sendRawMessage("PRIVMSG #chan :Hello");
+
+        assertEquals(1, outEvents.size());
+        assertEquals("PRIVMSG #chan :Hello", outEvents.get(0).getData());
+        assertEquals(0, parser.getElidedDataEvents());
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DebugInfoTest {
+
+    private final IRCParser parser = new IRCParser();
+    private final List<DebugInfoEvent> events = new ArrayList<>();
+
+    @Handler
+    public void handleDebugInfo(final DebugInfoEvent event) {
+        events.add(event);
+    }
+
+    @Test
+    public void testNotDebuggingWithoutHandlers() {
+        assertEquals(0, parser.getDebugMask());
+        assertFalse(parser.isDebugging(IRCParser.DEBUG_INFO));
+    }
+
+    @Test
+    public void testMaskFollowsSubscriptions() {
+        parser.getCallbackManager().subscribe(this);
+        assertTrue(parser.isDebugging(IRCParser.DEBUG_INFO));
+        assertTrue(parser.isDebugging(IRCParser.DEBUG_SOCKET));
+
+        parser.getCallbackManager().unsubscribe(this);
+        assertFalse(parser.isDebugging(IRCParser.DEBUG_INFO));
+    }
+
+    @Test
+    public void testDebugLevels() {
+        parser.getCallbackManager().subscribe(this);
+        parser.setDebugLevels(IRCParser.DEBUG_SOCKET);
+
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "Info %s", "ignored");
+        parser.callDebugInfo(IRCParser.DEBUG_SOCKET, "Socket %s %s", "is", "raised");
+
+        assertEquals(1, events.size());
+        assertEquals("Socket is raised", events.get(0).getData());
+        assertEquals(IRCParser.DEBUG_SOCKET, parser.getDebugMask());
+    }
+
+    @Test
+    public void testFormatting() {
+        parser.getCallbackManager().subscribe(this);
+
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "No arguments %s");
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "One: %c", 'a');
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "Three: %s %d %b", "a", 1, true);
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "Four: %s %s %s %s", "a", "b", "c", "d");
+
+        assertEquals("No arguments %s", events.get(0).getData());
+        assertEquals("One: a", events.get(1).getData());
+        assertEquals("Three: a 1 true", events.get(2).getData());
+        assertEquals("Four: a b c d", events.get(3).getData());
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.outputqueue.FloodProfile;
+import com.dmdirc.parser.irc.outputqueue.TokenBucketOutputQueue;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class FloodProfilesTest {
+
+    private final TestParser parser = new TestParser();
+    private final TokenBucketOutputQueue outputQueue = new TokenBucketOutputQueue();
+
+    @Before
+    public void setup() throws IOException {
+        parser.setOutputQueue(outputQueue);
+        parser.feed(":server 001 nick :Welcome");
+    }
+
+    @Test
+    public void testGroupProfiles() {
+        assertEquals(FloodProfile.DEFAULT, FloodProfiles.getFloodProfile(ServerType.SNIRCD));
+        assertEquals(FloodProfile.UNLIMITED, FloodProfiles.getFloodProfile(ServerType.BITLBEE));
+        assertEquals(FloodProfiles.getFloodProfile(ServerType.RATBOX),
+                FloodProfiles.getFloodProfile(ServerType.HYBRID7));
+        assertNotEquals(FloodProfile.DEFAULT, FloodProfiles.getFloodProfile(ServerType.CHARYBDIS));
+    }
+
+    @Test
+    public void testBursts() {
+        assertEquals(5, getBurstLines(FloodProfiles.getFloodProfile(ServerType.CHARYBDIS)));
+        assertEquals(5, getBurstLines(FloodProfiles.getFloodProfile(ServerType.HYBRID7)));
+        assertEquals(10, getBurstLines(FloodProfiles.getFloodProfile(ServerType.INSPIRCD)));
+    }
+
+    @Test
+    public void testTypeProfiles() {
+        assertEquals(Duration.ofSeconds(1), FloodProfiles.getFloodProfile(ServerType.INSPIRCD)
+                .getCommandPenalties().get("JOIN"));
+    }
+
+    @Test
+    public void testUnknownServers() {
+        assertEquals(FloodProfile.DEFAULT, FloodProfiles.getFloodProfile(ServerType.GENERIC));
+        assertEquals(FloodProfile.DEFAULT, FloodProfiles.getFloodProfile(ServerType.NGIRCD));
+    }
+
+    @Test
+    public void testAppliedWhenServerDetected() {
+        parser.feed(":server 004 nick irc.example.com charybdis-3.5.5 DQRSZagiloswz CFILPQTbcefgijklmnopqrstvz bkloveqjfI");
+
+        assertEquals(FloodProfiles.getFloodProfile(ServerType.CHARYBDIS),
+                outputQueue.getFloodProfile());
+    }
+
+    @Test
+    public void testAppliedWhenNetworkDetected() {
+        parser.feed(":server 004 nick irc.example.com 3.4.0 o ntSkl",
+                ":server 005 nick NETWORK=BitlBee :are supported by this server");
+
+        assertEquals(FloodProfile.UNLIMITED, outputQueue.getFloodProfile());
+    }
+
+    @Test
+    public void testOverride() {
+        final FloodProfile profile = new FloodProfile(Duration.ofSeconds(3),
+                Duration.ofSeconds(1), Duration.ZERO);
+        parser.setFloodProfile(profile);
+        assertEquals(profile, outputQueue.getFloodProfile());
+
+        parser.feed(":server 004 nick irc.example.com charybdis-3.5.5 DQRSZagiloswz CFILPQTbcefgijklmnopqrstvz bkloveqjfI");
+        assertEquals(profile, parser.getFloodProfile());
+        assertEquals(profile, outputQueue.getFloodProfile());
+
+        parser.setFloodProfile(null);
+        assertEquals(FloodProfiles.getFloodProfile(ServerType.CHARYBDIS),
+                outputQueue.getFloodProfile());
+    }
+
+    @Test
+    public void testAppliedToNewQueue() throws IOException {
+        parser.feed(":server 004 nick irc.example.com u2.10.12.10 dioswkgx biklmnopstv bklov");
+        final TokenBucketOutputQueue queue = new TokenBucketOutputQueue();
+        queue.setFloodProfile(FloodProfile.UNLIMITED);
+        parser.setOutputQueue(queue);
+
+        assertEquals(FloodProfile.DEFAULT, queue.getFloodProfile());
+    }
+
+    private static long getBurstLines(final FloodProfile profile) {
+        return profile.getBurst().toNanos() / profile.getLineCost().toNanos();
+    }
+
+}
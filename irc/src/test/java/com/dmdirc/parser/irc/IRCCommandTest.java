@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IRCCommandTest {
+
+    @Test
+    public void testLookupIgnoresCase() {
+        assertEquals(IRCCommand.PRIVMSG, IRCCommand.lookup("PRIVMSG"));
+        assertEquals(IRCCommand.PRIVMSG, IRCCommand.lookup("privmsg"));
+        assertEquals(IRCCommand.PING, IRCCommand.lookup("PiNg"));
+        assertEquals(IRCCommand.TSIRC, IRCCommand.lookup("tsirc"));
+    }
+
+    @Test
+    public void testLookupOther() {
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(""));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("PRIVMSGS"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("PIN"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(":server.example.com"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("PŉNG"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("NUMERIC"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("OTHER"));
+    }
+
+    @Test
+    public void testLookupNumeric() {
+        assertEquals(IRCCommand.NUMERIC, IRCCommand.lookup("001"));
+        assertEquals(IRCCommand.NUMERIC, IRCCommand.lookup("12345"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("00a"));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup("1234567890"));
+    }
+
+    @Test
+    public void testLookupBytes() {
+        final byte[] data = ":nick!user@host privmsg #chan :001 PINGé"
+                .getBytes(StandardCharsets.UTF_8);
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(data, 0, 15));
+        assertEquals(IRCCommand.PRIVMSG, IRCCommand.lookup(data, 16, 23));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(data, 24, 29));
+        assertEquals(IRCCommand.NUMERIC, IRCCommand.lookup(data, 31, 34));
+        assertEquals(IRCCommand.PING, IRCCommand.lookup(data, 35, 39));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(data, 36, 40));
+        assertEquals(IRCCommand.OTHER, IRCCommand.lookup(data, 39, 39));
+    }
+
+    @Test
+    public void testGetNumeric() {
+        assertEquals(1, IRCCommand.getNumeric("001"));
+        assertEquals(999, IRCCommand.getNumeric("999"));
+        assertEquals(12345, IRCCommand.getNumeric("12345"));
+        assertEquals(-1, IRCCommand.getNumeric(""));
+        assertEquals(-1, IRCCommand.getNumeric("PRIVMSG"));
+        assertEquals(-1, IRCCommand.getNumeric("00a"));
+        assertEquals(-1, IRCCommand.getNumeric("1234567890"));
+    }
+
+    @Test
+    public void testGetNumericBytes() {
+        final byte[] data = ":server 433 * nick".getBytes(StandardCharsets.UTF_8);
+        assertEquals(433, IRCCommand.getNumeric(data, 8, 11));
+        assertEquals(-1, IRCCommand.getNumeric(data, 0, 7));
+        assertEquals(-1, IRCCommand.getNumeric(data, 8, 8));
+    }
+
+}
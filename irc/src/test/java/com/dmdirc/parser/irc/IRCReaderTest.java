@@ -22,11 +22,14 @@
 
 package com.dmdirc.parser.irc;
 
+import com.dmdirc.parser.common.SystemEncoder;
 import com.dmdirc.parser.interfaces.Encoder;
 import com.dmdirc.parser.irc.IRCReader.ReadLine;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -35,6 +38,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
@@ -43,6 +47,7 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -109,7 +114,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream(":src x :o\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(eq("src"), isNull(), any(), anyInt(), anyInt());
     }
@@ -120,7 +125,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream(": rc x :o\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(isNull(), isNull(), any(), anyInt(), anyInt());
     }
@@ -131,7 +136,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream(":src x y :z\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(anyString(), eq("y"), any(), anyInt(), anyInt());
     }
@@ -142,7 +147,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream("_src x y :z\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(isNull(), isNull(), any(), anyInt(), anyInt());
     }
@@ -153,7 +158,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream(":src x :abz\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(anyString(), isNull(), any(), anyInt(), anyInt());
     }
@@ -164,7 +169,7 @@ public class IRCReaderTest {
         final InputStream stream = new ByteArrayInputStream(":src 1 x y z :x\r\n".getBytes());
         final Encoder encoder = mock(Encoder.class);
 
-        new IRCReader(stream, encoder).readLine();
+        new IRCReader(stream, encoder).readLine().getTokens();
 
         verify(encoder).encode(anyString(), eq("y"), any(), anyInt(), anyInt());
     }
@@ -298,4 +303,220 @@ public class IRCReaderTest {
         assertEquals("ing", line.getTokens()[1]);
         assertTrue(line.getTags().containsKey("123"));
     }
+
+    /** Reads several lines delivered in a single block. */
+    @Test
+    public void testBufferedReadsMultipleLines() throws IOException {
+        final InputStream stream = new ByteArrayInputStream("a b :c d\r\ne f\n:g h :i\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        assertArrayEquals(new String[]{"a", "b", "c d"}, reader.readLine().getTokens());
+        assertArrayEquals(new String[]{"e", "f"}, reader.readLine().getTokens());
+        assertArrayEquals(new String[]{":g", "h", "i"}, reader.readLine().getTokens());
+        assertNull(reader.readLine());
+    }
+
+    /** Reads lines that arrive split across many small reads. */
+    @Test
+    public void testBufferedReadsSplitLines() throws IOException {
+        final InputStream stream = new TricklingInputStream(
+                ":src PRIVMSG #chan :hello there\r\n:src NOTICE you :hi\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        assertArrayEquals(new String[]{":src", "PRIVMSG", "#chan", "hello there"},
+                reader.readLine().getTokens());
+        assertArrayEquals(new String[]{":src", "NOTICE", "you", "hi"},
+                reader.readLine().getTokens());
+        assertNull(reader.readLine());
+    }
+
+    /** Verifies that stray carriage returns are dropped from buffered lines. */
+    @Test
+    public void testBufferedDropsCarriageReturns() throws IOException {
+        final InputStream stream = new ByteArrayInputStream("te\rst :fo\ro\r\nbar\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        assertEquals("test :foo", reader.readLine().getLine());
+        assertEquals("bar", reader.readLine().getLine());
+    }
+
+    /** Verifies that buffered lines keep TSIRC and message tag detection. */
+    @Test
+    public void testBufferedTSIRCAndTags() throws IOException {
+        final InputStream stream = new TricklingInputStream(
+                "@123@:test ing :trailing\r\n@a=b;c :src X :y z\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        final ReadLine first = reader.readLine();
+        assertArrayEquals(new String[]{":test", "ing", "trailing"}, first.getTokens());
+        assertEquals("123", first.getTags().get("tsirc date"));
+
+        final ReadLine second = reader.readLine();
+        assertArrayEquals(new String[]{":src", "X", "y z"}, second.getTokens());
+        assertEquals("b", second.getTags().get("a"));
+        assertEquals("", second.getTags().get("c"));
+    }
+
+    /** Verifies that lines can be framed from a direct buffer. */
+    @Test
+    public void testBufferedDirectBuffer() throws IOException {
+        final InputStream stream = new TricklingInputStream(
+                ":src 001 me :Welcome\r\n:src PING :123\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocateDirect(2048));
+
+        assertArrayEquals(new String[]{":src", "001", "me", "Welcome"},
+                reader.readLine().getTokens());
+        assertArrayEquals(new String[]{":src", "PING", "123"}, reader.readLine().getTokens());
+        assertNull(reader.readLine());
+    }
+
+    /** Verifies that over-long buffered lines are split at the maximum length. */
+    @Test
+    public void testBufferedLongLine() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            builder.append('a');
+        }
+        final InputStream stream = new TricklingInputStream((builder + "\r\n").getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(1100));
+
+        assertEquals(1024, reader.readLine().getLine().length());
+        assertEquals(476, reader.readLine().getLine().length());
+        assertNull(reader.readLine());
+    }
+
+    /** Verifies that a partial buffered line at the end of the stream is discarded. */
+    @Test
+    public void testBufferedPartialLine() throws IOException {
+        final InputStream stream = new ByteArrayInputStream("foo\r\nbar".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        assertEquals("foo", reader.readLine().getLine());
+        assertNull(reader.readLine());
+    }
+
+    /** Verifies that polling a non-blocking channel keeps partial lines until they complete. */
+    @Test
+    public void testPollLine() throws IOException {
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final IRCReader reader = new IRCReader(pipe.source(), new SystemEncoder(),
+                Charset.forName("UTF-8"), ByteBuffer.allocate(2048));
+
+        assertNull(reader.pollLine());
+        pipe.sink().write(ByteBuffer.wrap("@a=b :src PRIV".getBytes()));
+        assertNull(reader.pollLine());
+        pipe.sink().write(ByteBuffer.wrap("MSG #chan :hi\r\nPING".getBytes()));
+
+        final ReadLine line = reader.pollLine();
+        assertEquals("@a=b :src PRIVMSG #chan :hi", line.getLine());
+        assertArrayEquals(new String[]{":src", "PRIVMSG", "#chan", "hi"}, line.getTokens());
+        assertEquals("b", line.getTags().get("a"));
+        assertNull(reader.pollLine());
+        assertFalse(reader.isEndOfInput());
+
+        pipe.sink().close();
+        assertNull(reader.pollLine());
+        assertTrue(reader.isEndOfInput());
+    }
+
+    /** Verifies that individual tokens can be read without decoding the whole line. */
+    @Test
+    public void testGetTokenLazily() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(
+                ":src PRIVMSG  #chan :hello there\r\n".getBytes());
+        final Encoder encoder = mock(Encoder.class);
+        when(encoder.encode(eq("src"), eq("#chan"), any(), anyInt(), eq(11))).thenReturn("hi");
+
+        final ReadLine line = new IRCReader(stream, encoder).readLine();
+
+        assertEquals(4, line.getTokenCount());
+        assertEquals("PRIVMSG", line.getToken(1));
+        verify(encoder, never()).encode(anyString(), anyString(), any(), anyInt(), anyInt());
+        assertEquals("hi", line.getToken(3));
+        assertArrayEquals(new String[]{":src", "PRIVMSG", "#chan", "hi"}, line.getTokens());
+    }
+
+    /** Verifies that tokens can be classified without decoding them. */
+    @Test
+    public void testGetCommand() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(
+                "@time=now :src privmsg #chan :PING\r\n:server 433 * nick :In use\r\n".getBytes());
+
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder());
+        final ReadLine message = reader.readLine();
+        final ReadLine numeric = reader.readLine();
+
+        assertEquals(IRCCommand.OTHER, message.getCommand(0));
+        assertEquals(IRCCommand.PRIVMSG, message.getCommand(1));
+        assertEquals(IRCCommand.OTHER, message.getCommand(2));
+        assertEquals(IRCCommand.PING, message.getCommand(3));
+        assertEquals(IRCCommand.NUMERIC, numeric.getCommand(1));
+        assertEquals(IRCCommand.NUMERIC, new ReadLine("", ":server", "005").getCommand(1));
+        assertEquals(IRCCommand.PING, new ReadLine("", "@a=b", "PING", "x").getCommand(0));
+    }
+
+    /** Verifies that lines without tags have an empty set of tags. */
+    @Test
+    public void testNoTags() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(":src PING :123\r\n".getBytes());
+
+        final ReadLine line = new IRCReader(stream, new SystemEncoder()).readLine();
+
+        assertTrue(line.getTags().isEmpty());
+        assertEquals(":src PING :123", line.getLine());
+    }
+
+    /** Verifies that tags are detected without being decoded. */
+    @Test
+    public void testHasTags() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(
+                ":src PING :123\r\n@time=2017-01-01T00:00:00.000Z :src PING :123\r\n@123@:src PING :1\r\n"
+                        .getBytes());
+        final IRCReader reader = new IRCReader(stream, new SystemEncoder());
+
+        assertFalse(reader.readLine().hasTags());
+        assertTrue(reader.readLine().hasTags());
+        assertTrue(reader.readLine().hasTags());
+        assertFalse(new ReadLine("", "PING", "x").hasTags());
+        assertTrue(new ReadLine("", "@a=b", "PING", "x").hasTags());
+    }
+
+    /** Verifies that a source with no other parameters is handled. */
+    @Test
+    public void testSourceOnly() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(":src :foo\r\n".getBytes());
+        final Encoder encoder = mock(Encoder.class);
+
+        new IRCReader(stream, encoder).readLine().getTokens();
+
+        verify(encoder).encode(eq("src"), isNull(), any(), anyInt(), anyInt());
+    }
+
+    /** An input stream that returns at most three bytes per read. */
+    private static class TricklingInputStream extends ByteArrayInputStream {
+
+        TricklingInputStream(final byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
 }
@@ -83,4 +83,30 @@ public class IRCStringConverterTest {
         assertFalse(ircsc.equalsIgnoreCase(null, "null"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCharacterConversion() {
+        final IRCStringConverter ircsc = new IRCStringConverter(IRCEncoding.RFC1459);
+
+        assertEquals('a', ircsc.toLowerCase('A'));
+        assertEquals('{', ircsc.toLowerCase('['));
+        assertEquals('~', ircsc.toLowerCase('^'));
+        assertEquals('\u00AB', ircsc.toLowerCase('\u00AB'));
+    }
+
+    @Test
+    public void testUnchangedStringIsReturned() {
+        final IRCStringConverter ircsc = new IRCStringConverter(IRCEncoding.RFC1459);
+        final String lower = "already{lower}";
+
+        assertSame(lower, ircsc.toLowerCase(lower));
+    }
+
+    @Test
+    public void testEqualsDifferentLengths() {
+        final IRCStringConverter ircsc = new IRCStringConverter(IRCEncoding.RFC1459);
+
+        assertFalse(ircsc.equalsIgnoreCase("nick", "nick2"));
+        assertTrue(ircsc.equalsIgnoreCase("Nick[a]", "nick{A}"));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the channel memberships each client indexes agree with the
+ * clients each channel knows about.
+ */
+final class MembershipIndexChecker {
+
+    private MembershipIndexChecker() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Asserts that the parser's channels and clients agree on who is where.
+     *
+     * @param parser The parser to check
+     */
+    static void check(final IRCParser parser) {
+        final Collection<IRCChannelInfo> channels = parser.getChannels();
+        final Map<IRCChannelClientInfo, IRCChannelInfo> seen = new IdentityHashMap<>();
+
+        for (IRCChannelInfo channel : channels) {
+            assertSame("Channel " + channel.getName() + " is not stored under its name",
+                    channel, parser.getChannel(channel.getName()));
+            for (Object member : channel.getChannelClients()) {
+                final IRCChannelClientInfo channelClient = (IRCChannelClientInfo) member;
+                final IRCClientInfo client = channelClient.getClient();
+                final String where = client.getNickname() + " on " + channel.getName();
+                assertSame("Wrong channel for " + where, channel, channelClient.getChannel());
+                assertSame("Client index is missing " + where,
+                        channelClient, client.getChannelClientInfo(channel));
+                assertSame("Channel does not find " + where + " by nickname",
+                        channelClient, channel.getChannelClient(client.getNickname()));
+                assertSame("Client " + client.getNickname() + " is not known to the parser",
+                        client, parser.getKnownClient(client.getNickname()));
+                seen.put(channelClient, channel);
+            }
+        }
+
+        for (IRCChannelInfo channel : channels) {
+            for (Object member : channel.getChannelClients()) {
+                final IRCClientInfo client = ((IRCChannelClientInfo) member).getClient();
+                for (IRCChannelClientInfo channelClient : client.getChannelClientInfos()) {
+                    assertTrue("Client " + client.getNickname() + " indexes "
+                            + channelClient.getChannel().getName() + " but isn't on it",
+                            seen.containsKey(channelClient));
+                }
+                assertEquals(client.getChannelClientInfos().size(), client.getChannelCount());
+            }
+        }
+    }
+
+}
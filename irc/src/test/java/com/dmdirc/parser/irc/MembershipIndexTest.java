@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.AwayState;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MembershipIndexTest {
+
+    private TestParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new TestParser();
+        parser.feed(":server 001 me :Welcome",
+                ":server 005 me CHANTYPES=# PREFIX=(ov)@+ CASEMAPPING=rfc1459 :are supported",
+                ":me!me@host JOIN #one",
+                ":server 353 me = #one :me @alice +bob carol",
+                ":server 366 me #one :End of /NAMES list.",
+                ":me!me@host JOIN #two",
+                ":server 353 me = #two :me alice dave",
+                ":server 366 me #two :End of /NAMES list.");
+    }
+
+    @Test
+    public void testNamesAreIndexed() {
+        final IRCClientInfo alice = parser.getKnownClient("alice");
+
+        assertEquals(2, alice.getChannelCount());
+        assertSame(parser.getChannel("#one"), alice.getChannelClientInfos().get(0).getChannel());
+        assertSame(parser.getChannel("#two"), alice.getChannelClientInfos().get(1).getChannel());
+        assertEquals(1, parser.getKnownClient("bob").getChannelCount());
+    }
+
+    @Test
+    public void testNickChangeRenamesEveryMembership() {
+        final IRCClientInfo alice = parser.getKnownClient("alice");
+
+        parser.feed(":alice!alice@host NICK Alice[away]");
+
+        assertSame(alice, parser.getKnownClient("alice{away}"));
+        assertSame(alice, parser.getChannel("#one").getChannelClient("ALICE{AWAY}").getClient());
+        assertSame(alice, parser.getChannel("#two").getChannelClient("alice[away]").getClient());
+        assertNull(parser.getChannel("#one").getChannelClient("alice"));
+    }
+
+    @Test
+    public void testWhoUpdatesAwayState() {
+        parser.feed(":server 352 me #one alice host server alice G :0 Alice");
+
+        assertEquals(AwayState.AWAY, parser.getKnownClient("alice").getAwayState());
+    }
+
+    @Test
+    public void testQuitRemovesEveryMembership() {
+        final IRCClientInfo alice = parser.getKnownClient("alice");
+
+        parser.feed(":alice!alice@host QUIT :Gone");
+
+        assertNull(parser.getKnownClient("alice"));
+        assertEquals(0, alice.getChannelCount());
+        assertNull(parser.getChannel("#one").getChannelClient("alice"));
+        assertNull(parser.getChannel("#two").getChannelClient("alice"));
+    }
+
+    @Test
+    public void testPartAndKick() {
+        parser.feed(":bob!bob@host PART #one",
+                ":me!me@host KICK #two dave :Bye");
+
+        assertNull(parser.getKnownClient("bob"));
+        assertNull(parser.getKnownClient("dave"));
+        assertEquals(3, parser.getChannel("#one").getChannelClientCount());
+        assertEquals(2, parser.getChannel("#two").getChannelClientCount());
+    }
+
+    @Test
+    public void testLocalPartForgetsChannel() {
+        final IRCChannelInfo two = parser.getChannel("#two");
+
+        parser.feed(":me!me@host PART #two");
+
+        assertNull(parser.getChannel("#two"));
+        assertEquals(1, parser.getKnownClient("alice").getChannelCount());
+        assertNull(parser.getKnownClient("dave"));
+        assertNull(parser.getLocalClient().getChannelClientInfo(two));
+    }
+
+    @Test
+    public void testJoinAfterReconnectingToChannel() {
+        parser.feed(":erin!erin@host JOIN #one",
+                ":me!me@host JOIN #one",
+                ":server 353 me = #one :me erin",
+                ":server 366 me #one :End of /NAMES list.");
+
+        final IRCChannelInfo one = parser.getChannel("#one");
+        assertNotNull(one);
+        assertEquals(2, one.getChannelClientCount());
+        assertEquals(1, parser.getKnownClient("alice").getChannelCount());
+        assertFalse(parser.isKnownClient("bob"));
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageSplitterTest {
+
+    private final MessageSplitter splitter = new MessageSplitter(StandardCharsets.UTF_8);
+
+    @Test
+    public void testShortMessagesUnchanged() {
+        assertEquals(Collections.singletonList("hello world"), splitter.split("hello world", 11));
+    }
+
+    @Test
+    public void testSplitsAtSpaces() {
+        assertEquals(Arrays.asList("hello", "world", "again"),
+                splitter.split("hello world again", 10));
+        assertEquals(Arrays.asList("a b c", "d"), splitter.split("a b c d", 5));
+    }
+
+    @Test
+    public void testSplitsLongWords() {
+        assertEquals(Arrays.asList("abcd", "efgh", "ij"), splitter.split("abcdefghij", 4));
+    }
+
+    @Test
+    public void testMeasuresEncodedBytes() {
+        assertEquals(10, splitter.getLength("ééééé"));
+        assertEquals(Arrays.asList("éé", "éé", "é"),
+                splitter.split("ééééé", 5));
+        assertEquals(5, new MessageSplitter(StandardCharsets.ISO_8859_1)
+                .getLength("ééééé"));
+    }
+
+    @Test
+    public void testDoesNotSplitSurrogatePairs() {
+        final String smile = "😀";
+        assertEquals(Arrays.asList(smile, smile, smile), splitter.split(smile + smile + smile, 5));
+        assertEquals(3, new MessageSplitter(StandardCharsets.ISO_8859_1)
+                .getLength(smile + smile + smile));
+        assertEquals(12, new MessageSplitter(StandardCharsets.UTF_16LE)
+                .getLength(smile + smile + smile));
+    }
+
+    @Test
+    public void testCarriesFormatting() {
+        assertEquals(Arrays.asList("\u0002bold text", "\u0002here"),
+                splitter.split("\u0002bold text here", 10));
+        assertEquals(Arrays.asList("\u0002a\u0002 b", "c"),
+                splitter.split("\u0002a\u0002 b c", 5));
+        assertEquals(Arrays.asList("\u0002\u001Fab\u000F", "cd"),
+                splitter.split("\u0002\u001Fab\u000Fcd", 5));
+    }
+
+    @Test
+    public void testDoesNotSplitColours() {
+        assertEquals(Arrays.asList("\u00034,12abc", "\u000304,12de", "\u000304,12f"),
+                splitter.split("\u00034,12abcdef", 8));
+        assertEquals(Arrays.asList("\u0004FF0000ab", "\u0004FF0000cd"),
+                splitter.split("\u0004FF0000abcd", 9));
+        assertEquals(Arrays.asList("\u00033ab", "\u000303c"), splitter.split("\u00033abc", 4));
+    }
+
+    @Test
+    public void testKeepsCtcpFraming() {
+        assertEquals(Arrays.asList("\u0001ACTION waves at\u0001", "\u0001ACTION everyone\u0001",
+                "\u0001ACTION here\u0001"),
+                splitter.split("\u0001ACTION waves at everyone here\u0001", 20));
+    }
+
+    @Test
+    public void testParserBudget() {
+        final TestParser parser = new TestParser();
+        parser.getOutputQueue().setCharset(StandardCharsets.UTF_8);
+        parser.feed(":server 001 nick :Welcome");
+
+        final String prefix = ":nick!~" + parser.getMyInfo().getUsername() + '@'
+                + new String(new char[63]).replace('\0', 'x') + ' ';
+        assertEquals(510 - prefix.length() - "PRIVMSG #chan :".length(),
+                parser.getMaxLength("PRIVMSG", "#chan"));
+
+        parser.getLocalClient().setUserBits("nick!ident@host.example", true);
+        assertEquals(510 - ":nick!ident@host.example PRIVMSG #chané :".length() - 1,
+                parser.getMaxLength("PRIVMSG", "#chané"));
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageTagsTest {
+
+    /**
+     * Lines with their expected first token, followed by pairs of the tag
+     * keys and values expected to be found on them.
+     */
+    private static final String[][] CORPUS = {
+        {":src PRIVMSG #chan :hi", ":src"},
+        {"@123@:src PRIVMSG #chan :hi", ":src", "tsirc date", "123"},
+        {"@123@@tag=value :src X", ":src", "tsirc date", "123", "tag", "value"},
+        {"@tag=value @123@:src X", ":src", "tag", "value", "tsirc date", "123"},
+        {"@123@@tsirc\\sdate=x @456@:src X", ":src", "tsirc date", "456", "tsirc\\sdate", "x"},
+        {"@time=2016-01-01T00:00:00.000Z :src X", ":src", "time", "2016-01-01T00:00:00.000Z"},
+        {"@a=b;c=d;e :src X", ":src", "a", "b", "c", "d", "e", ""},
+        {"@a=;b= :src X", ":src", "a", "", "b", ""},
+        {"@a;;b;=c; :src X", ":src", "a", "", "b", ""},
+        {"@a=1;a=2 :src X", ":src", "a", "2"},
+        {"@a=b=c :src X", ":src", "a", "b=c"},
+        {"@123 :src X", ":src", "123", ""},
+        {"@+example.com/foo=bar :src X", ":src", "+example.com/foo", "bar"},
+        {"@a=semi\\:colon :src X", ":src", "a", "semi;colon"},
+        {"@a=sp\\sace :src X", ":src", "a", "sp ace"},
+        {"@a=back\\\\slash :src X", ":src", "a", "back\\slash"},
+        {"@a=cr\\rlf\\n :src X", ":src", "a", "cr\rlf\n"},
+        {"@a=un\\known :src X", ":src", "a", "unknown"},
+        {"@a=trailing\\ :src X", ":src", "a", "trailing"},
+        {"@a=\\\\s;b=\\: :src X", ":src", "a", "\\s", "b", ";"},
+        {"@a=café :src X", ":src", "a", "café"},
+        {"@msgid=abc;account=nick;batch=1;label=2 :src X", ":src",
+                "msgid", "abc", "account", "nick", "batch", "1", "label", "2"},
+    };
+
+    @Test
+    public void testEagerReadLine() {
+        for (String[] testcase : CORPUS) {
+            final ReadLine line = new ReadLine(testcase[0], IRCParser.tokeniseLine(testcase[0]));
+
+            assertEquals(testcase[0], testcase[1], line.getTokens()[0]);
+            assertEquals(testcase[0], getExpectedTags(testcase), line.getTags());
+        }
+    }
+
+    @Test
+    public void testReaderReadLine() throws IOException {
+        for (String[] testcase : CORPUS) {
+            final IRCReader reader = new IRCReader(
+                    new ByteArrayInputStream((testcase[0] + "\r\n").getBytes(StandardCharsets.UTF_8)),
+                    new SystemEncoder(), StandardCharsets.UTF_8, ByteBuffer.allocate(2048));
+
+            assertEquals(testcase[0], getExpectedTags(testcase), reader.readLine().getTags());
+        }
+    }
+
+    @Test
+    public void testCommonKeysAreShared() {
+        final Map<String, String> tags = new MessageTags();
+        MessageTags.parse("time=1;account=2", tags);
+
+        final Iterator<String> keys = tags.keySet().iterator();
+        assertSame("time", keys.next());
+        assertSame("account", keys.next());
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        final Map<String, String> tags = new MessageTags();
+
+        assertNull(tags.put("a", "1"));
+        assertEquals("1", tags.put("a", "2"));
+        assertEquals(1, tags.size());
+        assertEquals("2", tags.get("a"));
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() {
+        final Map<String, String> tags = new MessageTags();
+        MessageTags.parse("a=1;b=2;c=3;d=4;e=5;f=6", tags);
+
+        assertEquals(6, tags.size());
+        assertEquals("6", tags.get("f"));
+    }
+
+    @Test
+    public void testRemove() {
+        final Map<String, String> tags = new MessageTags();
+        MessageTags.parse("a=1;b=2;c=3", tags);
+
+        assertEquals("2", tags.remove("b"));
+        assertNull(tags.remove("b"));
+        assertFalse(tags.containsKey("b"));
+        assertEquals(2, tags.size());
+        assertEquals("3", tags.get("c"));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        final Map<String, String> tags = new MessageTags();
+        MessageTags.parse("a=1;b=2;c=3", tags);
+
+        final Iterator<String> keys = tags.keySet().iterator();
+        keys.next();
+        keys.remove();
+
+        assertEquals("b", keys.next());
+        assertEquals(2, tags.size());
+        assertFalse(tags.containsKey("a"));
+    }
+
+    @Test
+    public void testUntaggedLineHasEmptyTags() throws IOException {
+        final IRCReader reader = new IRCReader(
+                new ByteArrayInputStream(":src X\r\n".getBytes(StandardCharsets.UTF_8)),
+                new SystemEncoder(), StandardCharsets.UTF_8, ByteBuffer.allocate(2048));
+
+        assertTrue(reader.readLine().getTags().isEmpty());
+    }
+
+    private static Map<String, String> getExpectedTags(final String... testcase) {
+        final Map<String, String> expected = new HashMap<>();
+        for (int i = 2; i < testcase.length; i += 2) {
+            expected.put(testcase[i], testcase[i + 1]);
+        }
+        return expected;
+    }
+
+}
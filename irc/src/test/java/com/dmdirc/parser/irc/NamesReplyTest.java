@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NamesReplyTest {
+
+    private TestParser parser;
+    private IRCChannelInfo channel;
+
+    @Before
+    public void setUp() {
+        parser = new TestParser();
+        parser.feed(":server 001 me :Welcome",
+                ":server 005 me CHANTYPES=# PREFIX=(qov)~@+ CASEMAPPING=rfc1459 :are supported",
+                ":me!me@host JOIN #chan");
+        channel = parser.getChannel("#chan");
+    }
+
+    @Test
+    public void testPlainNames() {
+        parser.feed(":server 353 me = #chan :me @alice +bob  carol ",
+                ":server 366 me #chan :End of /NAMES list.");
+
+        assertEquals(4, channel.getChannelClientCount());
+        assertEquals("o", channel.getChannelClient("alice").getAllModes());
+        assertEquals("v", channel.getChannelClient("bob").getAllModes());
+        assertEquals("", channel.getChannelClient("carol").getAllModes());
+        assertEquals("", parser.getKnownClient("carol").getHostname());
+    }
+
+    @Test
+    public void testMultiPrefix() {
+        parser.feed(":server 353 me = #chan :me ~@+alice @+bob",
+                ":server 366 me #chan :End of /NAMES list.");
+
+        assertEquals("qov", channel.getChannelClient("alice").getAllModes());
+        assertEquals("ov", channel.getChannelClient("bob").getAllModes());
+    }
+
+    @Test
+    public void testUserhostInNames() {
+        parser.feed(":server 353 me = #chan :me @alice!ali@alice.example.com bob@bob.example.com",
+                ":server 366 me #chan :End of /NAMES list.");
+
+        final IRCClientInfo alice = parser.getKnownClient("alice");
+        assertEquals("alice", alice.getNickname());
+        assertEquals("ali", alice.getUsername());
+        assertEquals("alice.example.com", alice.getHostname());
+        assertEquals("o", channel.getChannelClient("alice").getAllModes());
+
+        final IRCClientInfo bob = parser.getKnownClient("bob");
+        assertEquals("", bob.getUsername());
+        assertEquals("bob.example.com", bob.getHostname());
+    }
+
+    @Test
+    public void testKnownClientsAreReused() {
+        parser.feed(":me!me@host JOIN #other",
+                ":server 353 me = #other :me alice",
+                ":server 366 me #other :End of /NAMES list.",
+                ":server 353 me = #chan :me +ALICE!ali@alice.example.com",
+                ":server 366 me #chan :End of /NAMES list.");
+
+        final IRCClientInfo alice = parser.getKnownClient("alice");
+        assertEquals(2, alice.getChannelCount());
+        assertSame(alice, channel.getChannelClient("alice").getClient());
+        assertEquals("alice", alice.getNickname());
+        assertEquals("alice.example.com", alice.getHostname());
+    }
+
+    @Test
+    public void testRepeatedNamesReplaceMembers() {
+        parser.feed(":server 353 me = #chan :me alice bob",
+                ":server 366 me #chan :End of /NAMES list.",
+                ":server 353 me = #chan :me @bob",
+                ":server 366 me #chan :End of /NAMES list.");
+
+        assertEquals(2, channel.getChannelClientCount());
+        assertNull(channel.getChannelClient("alice"));
+        assertNull(parser.getKnownClient("alice"));
+        assertEquals("o", channel.getChannelClient("bob").getAllModes());
+    }
+
+    @Test
+    public void testLargeChannel() {
+        final StringBuilder names = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            names.append(i % 10 == 0 ? "@" : "").append("user").append(i).append(' ');
+            if (names.length() > 400) {
+                parser.feed(":server 353 me = #chan :" + names);
+                names.setLength(0);
+            }
+        }
+        parser.feed(":server 353 me = #chan :" + names,
+                ":server 366 me #chan :End of /NAMES list.");
+
+        assertEquals(5001, channel.getChannelClientCount());
+        assertEquals("o", channel.getChannelClient("USER4990").getAllModes());
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.ChannelJoinEvent;
+import com.dmdirc.parser.events.ChannelQuitEvent;
+import com.dmdirc.parser.events.NetjoinEvent;
+import com.dmdirc.parser.events.NetsplitEvent;
+import com.dmdirc.parser.events.QuitEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NetsplitHandlerTest {
+
+    private TestParser parser;
+    private final List<NetsplitEvent> netsplits = new ArrayList<>();
+    private final List<NetjoinEvent> netjoins = new ArrayList<>();
+    private final List<ChannelQuitEvent> channelQuits = new ArrayList<>();
+    private final List<QuitEvent> quits = new ArrayList<>();
+    private final List<ChannelJoinEvent> channelJoins = new ArrayList<>();
+    private boolean publishedUnderLock;
+
+    @Before
+    public void setUp() {
+        parser = new TestParser();
+        parser.getCallbackManager().subscribe(this);
+        parser.feed(":server 001 me :Welcome",
+                ":server 005 me CHANTYPES=# PREFIX=(ov)@+ CASEMAPPING=rfc1459 :are supported",
+                ":me!me@host JOIN #one",
+                ":server 353 me = #one :me alice bob carol",
+                ":server 366 me #one :End of /NAMES list.",
+                ":me!me@host JOIN #two",
+                ":server 353 me = #two :me alice dave",
+                ":server 366 me #two :End of /NAMES list.");
+    }
+
+    @Handler
+    public void handleNetsplit(final NetsplitEvent event) {
+        netsplits.add(event);
+        publishedUnderLock |= Thread.holdsLock(parser.getNetsplitHandler());
+    }
+
+    @Handler
+    public void handleNetjoin(final NetjoinEvent event) {
+        netjoins.add(event);
+        publishedUnderLock |= Thread.holdsLock(parser.getNetsplitHandler());
+    }
+
+    @Handler
+    public void handleChannelQuit(final ChannelQuitEvent event) {
+        channelQuits.add(event);
+    }
+
+    @Handler
+    public void handleQuit(final QuitEvent event) {
+        quits.add(event);
+    }
+
+    @Handler
+    public void handleChannelJoin(final ChannelJoinEvent event) {
+        channelJoins.add(event);
+    }
+
+    @Test
+    public void testSplitReason() {
+        assertEquals(7, NetsplitHandler.getSplitReasonSpace("hub.net leaf.hub.net"));
+        assertEquals(5, NetsplitHandler.getSplitReasonSpace("*.net *.split"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("Quit: bye"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("Read error"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("see you.later"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("a.b c.d e.f"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("hub.net hub.net"));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace("hub.net "));
+        assertEquals(-1, NetsplitHandler.getSplitReasonSpace(""));
+    }
+
+    @Test
+    public void testUnbatchedSplitEndsAtNextLine() {
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net",
+                ":bob!bob@host QUIT :hub.example.net leaf.example.net",
+                ":dave!dave@host QUIT :hub.example.net leaf.example.net");
+
+        assertTrue(netsplits.isEmpty());
+        assertNull(parser.getKnownClient("alice"));
+
+        parser.feed("PING :server");
+
+        assertEquals(2, netsplits.size());
+        final NetsplitEvent one = netsplits.get(0);
+        assertSame(parser.getChannel("#one"), one.getChannel());
+        assertEquals("hub.example.net", one.getServer());
+        assertEquals("leaf.example.net", one.getRemoteServer());
+        assertEquals(2, one.getClients().size());
+        assertSame(parser.getChannel("#two"), netsplits.get(1).getChannel());
+        assertEquals(2, netsplits.get(1).getClients().size());
+    }
+
+    @Test
+    public void testIdleSplitIsPublished() {
+        parser.stopPingTimer();
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net");
+
+        parser.getNetsplitHandler().checkIdle();
+        assertTrue(netsplits.isEmpty());
+
+        parser.feed(":bob!bob@host QUIT :hub.example.net leaf.example.net");
+        parser.getNetsplitHandler().checkIdle();
+        assertTrue(netsplits.isEmpty());
+
+        parser.getNetsplitHandler().checkIdle();
+        assertEquals(2, netsplits.size());
+        assertEquals(2, netsplits.get(0).getClients().size());
+
+        parser.getNetsplitHandler().checkIdle();
+        parser.feed("PING :server");
+        assertEquals(2, netsplits.size());
+    }
+
+    @Test
+    public void testResetPublishesSplit() {
+        parser.stopPingTimer();
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net");
+
+        parser.getNetsplitHandler().reset();
+        assertEquals(2, netsplits.size());
+
+        parser.getNetsplitHandler().reset();
+        assertEquals(2, netsplits.size());
+    }
+
+    @Test
+    public void testDifferentSplitsAreSeparate() {
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net",
+                ":bob!bob@host QUIT :hub.example.net other.example.net",
+                ":carol!carol@host QUIT :Bye");
+
+        assertEquals(3, netsplits.size());
+        assertEquals("leaf.example.net", netsplits.get(0).getRemoteServer());
+        assertEquals("other.example.net", netsplits.get(2).getRemoteServer());
+        assertEquals(1, netsplits.get(2).getClients().size());
+    }
+
+    @Test
+    public void testNormalQuitIsNotSplit() {
+        parser.feed(":alice!alice@host QUIT :Bye", "PING :server");
+
+        assertTrue(netsplits.isEmpty());
+        assertEquals(2, channelQuits.size());
+        assertEquals(1, quits.size());
+    }
+
+    @Test
+    public void testUserEventsCanBeDisabled() {
+        parser.setNetsplitUserEvents(false);
+
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net",
+                ":carol!carol@host QUIT :Bye");
+
+        assertEquals(2, netsplits.size());
+        assertEquals(1, channelQuits.size());
+        assertEquals(1, quits.size());
+        assertSame(parser.getChannel("#one"), channelQuits.get(0).getChannel());
+    }
+
+    @Test
+    public void testUserEventsByDefault() {
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net");
+
+        assertEquals(2, channelQuits.size());
+        assertEquals(1, quits.size());
+    }
+
+    @Test
+    public void testBatchedSplitAndJoin() {
+        parser.setNetsplitUserEvents(false);
+
+        parser.feed(":server BATCH +split netsplit hub.example.net leaf.example.net",
+                "@batch=split :alice!alice@host QUIT :hub.example.net leaf.example.net",
+                "@batch=split :bob!bob@host QUIT :Gone",
+                ":server PING :server");
+
+        assertTrue(netsplits.isEmpty());
+        assertFalse(parser.isKnownClient("bob"));
+
+        parser.feed(":server BATCH -split");
+
+        assertEquals(2, netsplits.size());
+        assertEquals(2, netsplits.get(0).getClients().size());
+        assertTrue(channelQuits.isEmpty());
+
+        parser.feed(":server BATCH +join netjoin hub.example.net leaf.example.net",
+                "@batch=join :alice!alice@host JOIN #one",
+                "@batch=join :alice!alice@host JOIN #two",
+                "@batch=join :bob!bob@host JOIN #one",
+                ":server BATCH -join");
+
+        assertEquals(2, netjoins.size());
+        assertSame(parser.getChannel("#one"), netjoins.get(0).getChannel());
+        assertEquals(2, netjoins.get(0).getClients().size());
+        assertEquals(1, netjoins.get(1).getClients().size());
+        assertTrue(channelJoins.isEmpty());
+        assertEquals(2, parser.getKnownClient("alice").getChannelCount());
+    }
+
+    @Test
+    public void testOtherBatchesIgnored() {
+        parser.feed(":server BATCH +other chathistory #one",
+                "@batch=other :alice!alice@host QUIT :hub.example.net leaf.example.net",
+                ":server BATCH -other");
+
+        assertTrue(netsplits.isEmpty());
+        assertEquals(2, channelQuits.size());
+    }
+
+    @Test
+    public void testEventsPublishedOutsideLock() {
+        parser.feed(":alice!alice@host QUIT :hub.example.net leaf.example.net",
+                ":bob!bob@host QUIT :hub.example.net other.example.net",
+                ":carol!carol@host QUIT :Bye",
+                ":dave!dave@host QUIT :hub.example.net leaf.example.net",
+                "PING :server",
+                ":server BATCH +join netjoin hub.example.net leaf.example.net",
+                "@batch=join :alice!alice@host JOIN #one",
+                ":server BATCH -join");
+
+        assertEquals(4, netsplits.size());
+        assertEquals(1, netjoins.size());
+        assertFalse(publishedUnderLock);
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.processors.IRCProcessor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProcessingManagerTest {
+
+    private RecordingProcessingManager manager;
+    private IRCParser parser;
+
+    @Before
+    public void setup() {
+        parser = new IRCParser();
+        manager = new RecordingProcessingManager(parser);
+    }
+
+    @Test
+    public void testFindsProcessorForNumeric() throws ProcessorNotFoundException {
+        final IRCProcessor processor = new FirstProcessor(parser, "001", "005");
+        manager.addProcessor(processor);
+
+        assertSame(processor, manager.getProcessor("001"));
+        assertSame(processor, manager.getProcessor("005"));
+    }
+
+    @Test
+    public void testFindsProcessorIgnoringCase() throws ProcessorNotFoundException {
+        final IRCProcessor processor = new FirstProcessor(parser, "PRIVMSG", "Notice Auth");
+        manager.addProcessor(processor);
+
+        assertSame(processor, manager.getProcessor("PRIVMSG"));
+        assertSame(processor, manager.getProcessor("privmsg"));
+        assertSame(processor, manager.getProcessor("PrivMsg"));
+        assertSame(processor, manager.getProcessor("notice auth"));
+    }
+
+    @Test(expected = ProcessorNotFoundException.class)
+    public void testUnknownVerb() throws ProcessorNotFoundException {
+        manager.addProcessor(new FirstProcessor(parser, "PRIVMSG"));
+        manager.getProcessor("PRIVMSGS");
+    }
+
+    @Test(expected = ProcessorNotFoundException.class)
+    public void testUnknownNumeric() throws ProcessorNotFoundException {
+        manager.addProcessor(new FirstProcessor(parser, "001"));
+        manager.getProcessor("002");
+    }
+
+    @Test
+    public void testNewProcessorsTakePriority() throws ProcessorNotFoundException {
+        final IRCProcessor first = new FirstProcessor(parser, "001", "JOIN");
+        final IRCProcessor second = new SecondProcessor(parser, "001", "join");
+        manager.addProcessor(first);
+        manager.addProcessor(second);
+
+        assertSame(second, manager.getProcessor("001"));
+        assertSame(second, manager.getProcessor("JOIN"));
+    }
+
+    @Test
+    public void testDelProcessor() throws ProcessorNotFoundException {
+        final IRCProcessor first = new FirstProcessor(parser, "001", "JOIN");
+        final IRCProcessor second = new SecondProcessor(parser, "002", "PART");
+        manager.addProcessor(first);
+        manager.addProcessor(second);
+        manager.delProcessor(first);
+
+        assertSame(second, manager.getProcessor("002"));
+        assertSame(second, manager.getProcessor("PART"));
+        assertNotFound("001");
+        assertNotFound("JOIN");
+    }
+
+    @Test
+    public void testAddProcessorWithHandles() throws ProcessorNotFoundException {
+        final IRCProcessor processor = new FirstProcessor(parser);
+        manager.addProcessor(new String[]{"__LISTMODE__", "367"}, processor);
+
+        assertSame(processor, manager.getProcessor("__listmode__"));
+        assertSame(processor, manager.getProcessor("367"));
+    }
+
+    @Test
+    public void testManyProcessors() throws ProcessorNotFoundException {
+        final IRCProcessor processor = new FirstProcessor(parser);
+        final String[] handles = new String[200];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = "VERB" + i;
+        }
+        manager.addProcessor(handles, processor);
+
+        for (String handle : handles) {
+            assertSame(processor, manager.getProcessor(handle.toLowerCase()));
+        }
+    }
+
+    @Test
+    public void testProcessCallsProcessorAndNumeric() throws ProcessorNotFoundException {
+        final FirstProcessor processor = new FirstProcessor(parser, "001", "PRIVMSG");
+        manager.addProcessor(processor);
+
+        manager.process(LocalDateTime.now(), "001", ":server", "001", "nick", "Welcome");
+        manager.process(LocalDateTime.now(), "PRIVMSG", ":a", "PRIVMSG", "#b", "c");
+
+        assertEquals(2, processor.processed.size());
+        assertEquals(Collections.singletonList(1), manager.numerics);
+    }
+
+    @Test
+    public void testUnhandledNumericStillCallsNumeric() {
+        assertNotFound("372", ":server", "372", "nick", "motd");
+        assertEquals(Collections.singletonList(372), manager.numerics);
+    }
+
+    @Test
+    public void testTryProcessWithoutProcessor() {
+        assertFalse(manager.tryProcess(LocalDateTime.now(), "PRIVMSG", ":a", "PRIVMSG", "#b", "c"));
+        assertFalse(manager.tryProcess(LocalDateTime.now(), IRCCommand.NUMERIC, "372",
+                ":server", "372", "nick", "motd"));
+        assertEquals(Collections.singletonList(372), manager.numerics);
+    }
+
+    @Test
+    public void testTryProcessWithClassifiedCommand() {
+        final FirstProcessor processor = new FirstProcessor(parser, "privmsg", "Notice Auth");
+        manager.addProcessor(processor);
+
+        assertTrue(manager.tryProcess(LocalDateTime.now(), IRCCommand.PRIVMSG, "PRIVMSG",
+                ":a", "PRIVMSG", "#b", "c"));
+        assertTrue(manager.tryProcess(LocalDateTime.now(), "Notice Auth", ":a", "NOTICE", "AUTH"));
+        assertEquals(Arrays.asList("PRIVMSG", "Notice Auth"), processor.processed);
+    }
+
+    @Test
+    public void testDelProcessorRemovesClassifiedCommand() {
+        final FirstProcessor processor = new FirstProcessor(parser, "PRIVMSG");
+        manager.addProcessor(processor);
+        manager.delProcessor(processor);
+
+        assertFalse(manager.tryProcess(LocalDateTime.now(), IRCCommand.PRIVMSG, "PRIVMSG",
+                ":a", "PRIVMSG", "#b", "c"));
+        assertTrue(processor.processed.isEmpty());
+    }
+
+    private void assertNotFound(final String sParam, final String... token) {
+        try {
+            if (token.length == 0) {
+                manager.getProcessor(sParam);
+            } else {
+                manager.process(LocalDateTime.now(), sParam, token);
+            }
+        } catch (ProcessorNotFoundException ex) {
+            return;
+        }
+        fail("Expected no processor for " + sParam);
+    }
+
+    private static class RecordingProcessingManager extends ProcessingManager {
+
+        private final List<Integer> numerics = new ArrayList<>();
+
+        RecordingProcessingManager(final IRCParser parser) {
+            super(parser, Collections.emptySet());
+        }
+
+        @Override
+        protected void callNumeric(final LocalDateTime time, final int numeric,
+                final String... token) {
+            numerics.add(numeric);
+        }
+    }
+
+    private static class FirstProcessor extends IRCProcessor {
+
+        private final List<String> processed = new ArrayList<>();
+
+        FirstProcessor(final IRCParser parser, final String... handledTokens) {
+            super(parser, handledTokens);
+        }
+
+        @Override
+        public void process(final LocalDateTime date, final String sParam,
+                final String... token) {
+            processed.add(sParam);
+        }
+    }
+
+    private static class SecondProcessor extends FirstProcessor {
+
+        SecondProcessor(final IRCParser parser, final String... handledTokens) {
+            super(parser, handledTokens);
+        }
+    }
+
+}
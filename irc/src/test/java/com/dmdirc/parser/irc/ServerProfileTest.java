@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.events.IRCDataOutEvent;
+import com.dmdirc.parser.irc.outputqueue.TokenBucketOutputQueue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.engio.mbassy.listener.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServerProfileTest {
+
+    private final TestParser parser = new TestParser(URI.create("irc://server.example/"));
+    private final List<String> sent = new ArrayList<>();
+    private ServerProfile profile;
+
+    @Before
+    public void setup() {
+        parser.getOutputQueue().setOutputStream(new ByteArrayOutputStream());
+        parser.currentSocketState = SocketState.OPEN;
+        parser.getCallbackManager().subscribe(this);
+
+        final Map<String, String> isupport = new HashMap<>();
+        isupport.put("004IRCD", "InspIRCd-2.0");
+        isupport.put("NETWORK", "Example");
+        isupport.put("CHANTYPES", "#&");
+        isupport.put("PREFIX", "(qov)~@+");
+        final Map<String, String> channels = new LinkedHashMap<>();
+        channels.put("#one", "");
+        channels.put("#two", "secret");
+        profile = new ServerProfile("Example", isupport, Collections.singleton("away-notify"),
+                channels);
+    }
+
+    @Test
+    public void testNoProfileBeforeRegistration() {
+        assertNull(new TestParser().getServerProfile());
+    }
+
+    @Test
+    public void testCapturesProfile() {
+        parser.addCapability("away-notify");
+        parser.addCapability("multi-prefix");
+        parser.setCapabilityState("away-notify", CapabilityState.ENABLED);
+        parser.feed(":server 001 nick :Welcome",
+                ":server 004 nick server.example InspIRCd-2.0 iosw biklmnopstv",
+                ":server 005 nick NETWORK=Example PREFIX=(qov)~@+ :are supported",
+                ":nick!user@host JOIN #chan");
+
+        final ServerProfile captured = parser.getServerProfile();
+        assertEquals("Example", captured.getNetworkName());
+        assertEquals("(qov)~@+", captured.getISupport().get("PREFIX"));
+        assertEquals(ServerType.INSPIRCD, captured.getServerType());
+        assertEquals(Collections.singleton("away-notify"), captured.getCapabilities());
+        assertEquals(Collections.singleton("#chan"), captured.getChannels().keySet());
+    }
+
+    @Test
+    public void testSeedsProfileOnConnect() throws IOException {
+        parser.setOutputQueue(new TokenBucketOutputQueue());
+        parser.getOutputQueue().setOutputStream(new ByteArrayOutputStream());
+        parser.setServerProfile(profile);
+        parser.sendConnectionStrings();
+
+        assertEquals("#&", parser.getChannelPrefixes());
+        assertEquals("Example", parser.networkName);
+        assertEquals(ServerType.INSPIRCD, parser.getServerType());
+        assertEquals(FloodProfiles.getFloodProfile(ServerType.INSPIRCD),
+                ((TokenBucketOutputQueue) parser.getOutputQueue()).getFloodProfile());
+        assertTrue(parser.getCapabilityRegistry().isRequested("away-notify"));
+        assertEquals(sent.indexOf("CAP LS 302") + 1, sent.indexOf("CAP REQ :away-notify"));
+    }
+
+    @Test
+    public void testDiscardsTokensNotSentAgain() {
+        parser.setServerProfile(profile);
+        parser.sendConnectionStrings();
+        parser.feed(":server 001 nick :Welcome",
+                ":server 004 nick server.example InspIRCd-2.0 iosw biklmnopstv",
+                ":server 005 nick NETWORK=Example PREFIX=(ov)@+ :are supported",
+                ":server 376 nick :End of /MOTD command.");
+
+        assertFalse(parser.h005Info.containsKey("CHANTYPES"));
+        assertEquals("#&!+", parser.getChannelPrefixes());
+        assertEquals("(ov)@+", parser.h005Info.get("PREFIX"));
+        assertEquals("+@", parser.getChannelUserModes());
+    }
+
+    @Test
+    public void testRejoinsProfileChannels() {
+        parser.setServerProfile(profile);
+        parser.setRejoinProfileChannels(true);
+        parser.feed(":server 001 nick :Welcome");
+
+        assertTrue(sent.contains("JOIN #one"));
+        assertTrue(sent.contains("JOIN #two secret"));
+    }
+
+    @Test
+    public void testDoesNotRejoinByDefault() {
+        parser.setServerProfile(profile);
+        parser.feed(":server 001 nick :Welcome");
+
+        assertTrue(sent.stream().noneMatch(line -> line.startsWith("JOIN")));
+    }
+
+    @Handler
+    public void handleDataOut(final IRCDataOutEvent event) {
+        sent.add(event.getData());
+    }
+
+}
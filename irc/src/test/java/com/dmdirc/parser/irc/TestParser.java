@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.net.URI;
+
+/**
+ * A parser that is fed lines directly rather than reading them from a
+ * socket, checking its channel memberships after each one.
+ */
+class TestParser extends IRCParser {
+
+    /**
+     * Creates a new parser without a server to connect to.
+     */
+    TestParser() {
+        super();
+    }
+
+    /**
+     * Creates a new parser for the given server.
+     *
+     * @param uri The URI of the server
+     */
+    TestParser(final URI uri) {
+        super(uri);
+    }
+
+    /**
+     * Processes lines as if they had been read from the server.
+     *
+     * @param lines The lines to process
+     */
+    void feed(final String... lines) {
+        for (String line : lines) {
+            processLine(new ReadLine(line, IRCParser.tokeniseLine(line)));
+            MembershipIndexChecker.check(this);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampDecoderTest {
+
+    private final TimestampDecoder decoder = new TimestampDecoder();
+
+    @Test
+    public void testParsesUtc() {
+        assertEquals(1319042451620L, decoder.parseServerTime("2011-10-19T16:40:51.620Z"));
+        assertEquals(0L, decoder.parseServerTime("1970-01-01T00:00:00.000Z"));
+        assertEquals(951782400000L, decoder.parseServerTime("2000-02-29T00:00:00.000Z"));
+    }
+
+    @Test
+    public void testParsesOffsets() {
+        assertEquals(1319042451620L, decoder.parseServerTime("2011-10-19T17:40:51.620+01"));
+        assertEquals(1319042451620L, decoder.parseServerTime("2011-10-19T18:10:51.620+0130"));
+        assertEquals(1319042451620L, decoder.parseServerTime("2011-10-19T15:10:51.620-01:30"));
+    }
+
+    @Test
+    public void testRejectsInvalid() {
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime(""));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51Z"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19 16:40:51.620Z"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-13-19T16:40:51.620Z"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T24:40:51.620Z"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51.62aZ"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51.620"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51.620+1"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51.620ZZ"));
+        assertEquals(TimestampDecoder.INVALID, decoder.parseServerTime("2011-10-19T16:40:51.620+1801"));
+    }
+
+    @Test
+    public void testMatchesFormatter() {
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final String value = String.format("%04d-%02d-%02dT%02d:%02d:%02d.%03d%s",
+                    1 + random.nextInt(9999), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000), random.nextBoolean() ? "Z"
+                            : String.format("%s%02d%02d", random.nextBoolean() ? "+" : "-",
+                                    random.nextInt(18), random.nextInt(60)));
+            assertEquals(value, OffsetDateTime.parse(value, formatter).toInstant().toEpochMilli(),
+                    decoder.parseServerTime(value));
+        }
+    }
+
+    @Test
+    public void testToLocalDateTime() {
+        final Random random = new Random(42);
+        long millis = 1319042451620L;
+        for (int i = 0; i < 10000; i++) {
+            millis += random.nextInt(100_000_000) - 10_000_000;
+            assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+                    ZoneId.systemDefault()), decoder.toLocalDateTime(millis));
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NioConnectionTest {
+
+    private EventLoopGroup group;
+    private ServerSocket server;
+    private RecordingHandler handler;
+
+    @Before
+    public void setup() throws IOException {
+        group = new EventLoopGroup(1);
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        handler = new RecordingHandler();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        group.close();
+        server.close();
+    }
+
+    private NioConnection connect() {
+        return group.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                server.getLocalPort()), null, 5000, null, new SystemEncoder(),
+                StandardCharsets.UTF_8, handler);
+    }
+
+    @Test
+    public void testReadsLines() throws Exception {
+        connect();
+        try (Socket client = server.accept()) {
+            assertEquals("connect", handler.events.poll(5, TimeUnit.SECONDS));
+
+            final OutputStream stream = client.getOutputStream();
+            stream.write(":server 001 nick :Welcome\r\nPI".getBytes(StandardCharsets.UTF_8));
+            stream.flush();
+            assertEquals(":server 001 nick :Welcome", handler.events.poll(5, TimeUnit.SECONDS));
+
+            stream.write("NG :123\r\n".getBytes(StandardCharsets.UTF_8));
+            stream.flush();
+            assertEquals("PING :123", handler.events.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testWritesOutput() throws Exception {
+        final NioConnection connection = connect();
+        // Output written before the connection is established is held until it is.
+        connection.getOutputStream().write("NICK test\r\n".getBytes(StandardCharsets.UTF_8));
+        connection.getOutputStream().flush();
+
+        try (Socket client = server.accept()) {
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("NICK test", reader.readLine());
+
+            connection.getOutputStream().write("USER a b c :d\r\n".getBytes(StandardCharsets.UTF_8));
+            connection.getOutputStream().flush();
+            assertEquals("USER a b c :d", reader.readLine());
+        }
+    }
+
+    @Test
+    public void testRemoteClose() throws Exception {
+        final NioConnection connection = connect();
+        server.accept().close();
+
+        assertEquals("connect", handler.events.poll(5, TimeUnit.SECONDS));
+        assertEquals("close", handler.events.poll(5, TimeUnit.SECONDS));
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testLocalClose() throws Exception {
+        final NioConnection connection = connect();
+        try (Socket client = server.accept()) {
+            assertEquals("connect", handler.events.poll(5, TimeUnit.SECONDS));
+            connection.close();
+
+            assertEquals("close", handler.events.poll(5, TimeUnit.SECONDS));
+            assertEquals(-1, client.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void testConnectFailure() throws Exception {
+        final int port = server.getLocalPort();
+        server.close();
+        group.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), null, 5000,
+                null, new SystemEncoder(), StandardCharsets.UTF_8, handler);
+
+        assertEquals("close", handler.events.poll(5, TimeUnit.SECONDS));
+        assertNotNull(handler.cause);
+    }
+
+    @Test
+    public void testFailingTaskClosesOnlyItsConnection() throws Exception {
+        final NioConnection connection = connect();
+        try (Socket client = server.accept()) {
+            assertEquals("connect", handler.events.poll(5, TimeUnit.SECONDS));
+            connection.execute(() -> {
+                throw new IllegalStateException("Task failed");
+            });
+
+            assertEquals("close", handler.events.poll(5, TimeUnit.SECONDS));
+            assertTrue(handler.cause.getCause() instanceof IllegalStateException);
+        }
+
+        // The loop is shared, so must still be able to service new connections.
+        connect();
+        try (Socket client = server.accept()) {
+            assertEquals("connect", handler.events.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static class RecordingHandler implements ConnectionHandler {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private volatile IOException cause;
+
+        @Override
+        public void onConnect(final NioConnection connection) {
+            events.add("connect");
+        }
+
+        @Override
+        public void onLine(final ReadLine line) {
+            events.add(line.getLine());
+        }
+
+        @Override
+        public void onClose(final IOException cause) {
+            this.cause = cause;
+            events.add("close");
+        }
+
+    }
+
+}
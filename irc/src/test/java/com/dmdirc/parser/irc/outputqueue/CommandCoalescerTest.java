@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommandCoalescerTest {
+
+    private final CommandCoalescer coalescer = new CommandCoalescer();
+
+    @Test
+    public void testJoins() {
+        assertEquals("JOIN #a,#b", coalescer.merge("JOIN #a", "join #b"));
+        assertEquals("JOIN #a,#b key", coalescer.merge("JOIN #a key", "JOIN #b"));
+        assertEquals("JOIN #a,#b k1,k2", coalescer.merge("JOIN #a k1", "JOIN #b k2"));
+        assertNull(coalescer.merge("JOIN #a,#b k1", "JOIN #c k2"));
+        assertNull(coalescer.merge("JOIN #a", "JOIN #A"));
+        assertNull(coalescer.merge("JOIN 0", "JOIN #a"));
+
+        coalescer.setTargetLimit("JOIN", 2);
+        assertNull(coalescer.merge("JOIN #a,#b", "JOIN #c"));
+    }
+
+    @Test
+    public void testMessages() {
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+
+        coalescer.setTargetLimit("PRIVMSG", 3);
+        assertEquals("PRIVMSG #a,#b :hi", coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+        assertEquals("PRIVMSG #a,#b,#c :hi",
+                coalescer.merge("PRIVMSG #a,#b :hi", "PRIVMSG #c :hi"));
+        assertNull(coalescer.merge("PRIVMSG #a,#b,#c :hi", "PRIVMSG #d :hi"));
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hello"));
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #a :hi"));
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "NOTICE #b :hi"));
+        assertNull(coalescer.merge("@label=1 PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+        assertNull(coalescer.merge("PRIVMSG :hi", "PRIVMSG :hi"));
+    }
+
+    @Test
+    public void testParts() {
+        assertEquals("PART #a,#b :bye", coalescer.merge("PART #a :bye", "PART #b :bye"));
+        assertNull(coalescer.merge("PART #a :bye", "PART #b"));
+    }
+
+    @Test
+    public void testUnmergedCommands() {
+        assertNull(coalescer.merge("KICK #a foo :bye", "KICK #b foo :bye"));
+        assertNull(coalescer.merge("WHO #a", "WHO #b"));
+        assertNull(coalescer.merge("QUIT", "QUIT"));
+    }
+
+    @Test
+    public void testModeChanges() {
+        assertEquals("MODE #a +ov foo bar", coalescer.merge("MODE #a +o foo", "MODE #a +v bar"));
+        assertEquals("MODE #a +o-v foo bar", coalescer.merge("MODE #a +o foo", "MODE #a -v bar"));
+        assertEquals("MODE #a -o+mv foo bar",
+                coalescer.merge("MODE #a -o+m foo", "MODE #a +v bar"));
+        assertNull(coalescer.merge("MODE #a +oo foo bar", "MODE #a +vv foo bar"));
+        assertNull(coalescer.merge("MODE #a +o foo", "MODE #b +o foo"));
+        assertNull(coalescer.merge("MODE #a +k :a key", "MODE #a +m"));
+
+        coalescer.setModeLimit(4);
+        assertEquals("MODE #a +oovv foo bar foo bar",
+                coalescer.merge("MODE #a +oo foo bar", "MODE #a +vv foo bar"));
+    }
+
+    @Test
+    public void testListModes() {
+        assertEquals("MODE #a be", coalescer.merge("MODE #a b", "MODE #a e"));
+        assertNull(coalescer.merge("MODE #a bI", "MODE #a eq"));
+        assertNull(coalescer.merge("MODE #a b", "MODE #a +m"));
+
+        coalescer.setListModesCombined(false);
+        assertNull(coalescer.merge("MODE #a b", "MODE #a e"));
+    }
+
+    @Test
+    public void testSignedListModeRequests() {
+        assertEquals("MODE #a be", coalescer.merge("MODE #a +b", "MODE #a +e"));
+        assertEquals("MODE #a be", coalescer.merge("MODE #a b", "MODE #a +e"));
+        assertEquals("MODE #a +be foo bar", coalescer.merge("MODE #a +b foo", "MODE #a +e bar"));
+        assertNull(coalescer.merge("MODE #a +b", "MODE #a +e bar"));
+        assertNull(coalescer.merge("MODE #a +b", "MODE #a +m"));
+        assertNull(coalescer.merge("MODE #a +kb key", "MODE #a +m"));
+        assertNull(coalescer.merge("MODE #a +bb foo", "MODE #a +e bar"));
+
+        coalescer.setChannelModes("q", "k", "l");
+        assertEquals("MODE #a +bq foo bar", coalescer.merge("MODE #a +b foo", "MODE #a +q bar"));
+        assertNull(coalescer.merge("MODE #a +q", "MODE #a +b foo"));
+
+        assertEquals("MODE #a qq", coalescer.merge("MODE #a +q", "MODE #a q"));
+
+        coalescer.setListModesCombined(false);
+        assertNull(coalescer.merge("MODE #a +q", "MODE #a +q"));
+    }
+
+    @Test
+    public void testCapabilities() {
+        assertNull(coalescer.merge("CAP REQ :sasl", "CAP REQ :multi-prefix"));
+
+        coalescer.setCapabilitiesCombined(true);
+        assertEquals("CAP REQ :sasl multi-prefix",
+                coalescer.merge("CAP REQ :sasl", "CAP REQ :multi-prefix"));
+        assertNull(coalescer.merge("CAP REQ :sasl", "CAP END"));
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LineWriterTest {
+
+    private final CountingOutputStream outputStream = new CountingOutputStream();
+    private final LineWriter writer = new LineWriter(StandardCharsets.UTF_8);
+
+    @Before
+    public void setup() {
+        writer.setOutputStream(outputStream);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThrowsIfOutputStreamNotSet() throws IOException {
+        new LineWriter(StandardCharsets.UTF_8).write("PING :a");
+    }
+
+    @Test
+    public void testLinesFlushedTogether() throws IOException {
+        assertEquals(9, writer.write("PING :a"));
+        assertEquals(9, writer.write("PING :b"));
+        assertEquals(0, outputStream.size());
+
+        writer.flush();
+        assertEquals("PING :a\r\nPING :b\r\n", outputStream.toString("UTF-8"));
+        assertEquals(1, outputStream.flushes);
+    }
+
+    @Test
+    public void testLength() throws IOException {
+        assertEquals(16, writer.getLength("PRIVMSG #a :\u00e9"));
+        writer.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals(15, writer.getLength("PRIVMSG #a :\u00e9"));
+
+        writer.flush();
+        assertEquals(0, outputStream.size());
+    }
+
+    @Test
+    public void testLengthWithUnflushedLines() throws IOException {
+        writer.write("PING :a");
+        assertEquals(9, writer.getLength("PING :b"));
+        writer.flush();
+        assertEquals("PING :a\r\n", outputStream.toString("UTF-8"));
+    }
+
+    @Test
+    public void testOutboundEncoder() throws IOException {
+        final List<String> targets = new ArrayList<>();
+        writer.setOutboundEncoder(target -> {
+            targets.add(target);
+            return "#latin".equals(target) ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        });
+
+        writer.write("@label=1 :me PRIVMSG #latin :\u00e9");
+        writer.write("PRIVMSG #utf :\u00e9");
+        writer.write("QUIT :\u00e9");
+        writer.flush();
+
+        assertEquals(Arrays.asList("#latin", "#utf", null), targets);
+        final byte[] expected = ("@label=1 :me PRIVMSG #latin :\u00e9\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        assertArrayEquals(expected, Arrays.copyOf(outputStream.toByteArray(), expected.length));
+        assertEquals("PRIVMSG #utf :\u00e9\r\nQUIT :\u00e9\r\n",
+                new String(outputStream.toByteArray(), expected.length,
+                        outputStream.size() - expected.length, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUnmappableCharactersReplaced() throws IOException {
+        writer.setCharset(StandardCharsets.US_ASCII);
+        writer.write("PRIVMSG #a :\u00e9");
+        writer.flush();
+        assertEquals("PRIVMSG #a :?\r\n", outputStream.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        final char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        final String line = new String(chars);
+
+        assertEquals(20002, writer.write(line));
+        assertEquals(20002, writer.write(line));
+        writer.flush();
+        assertEquals(40004, outputStream.size());
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        private int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+}
@@ -30,8 +30,14 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 
@@ -73,4 +79,103 @@ public class PriorityOutputQueueTest {
         assertEquals("456...", reader.readLine());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCoalescesQueuedLines() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setCoalescer(new CommandCoalescer());
+        // Disabling the queue sends everything queued so far.
+        outputQueue.getQueue().add(QueueItem.create("JOIN #a", QueuePriority.NORMAL));
+        outputQueue.getQueue().add(QueueItem.create("JOIN #b", QueuePriority.NORMAL));
+        outputQueue.getQueue().add(QueueItem.create("PRIVMSG #a :hi", QueuePriority.NORMAL));
+        outputQueue.getQueue().add(QueueItem.create("JOIN #c", QueuePriority.NORMAL));
+        outputQueue.setQueueEnabled(false);
+        outputStream.flush();
+
+        assertEquals("JOIN #a,#b", reader.readLine());
+        assertEquals("PRIVMSG #a :hi", reader.readLine());
+        assertEquals("JOIN #c", reader.readLine());
+    }
+
+    @Test
+    public void testUsesThreadFactory() throws IOException {
+        final AtomicInteger threads = new AtomicInteger();
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setThreadFactory(r -> {
+            threads.incrementAndGet();
+            return new Thread(r);
+        });
+        outputQueue.sendLine("test 123");
+        assertEquals("test 123", reader.readLine());
+        assertEquals(1, threads.get());
+    }
+
+    @Test
+    public void testUsesScheduler() throws IOException {
+        final List<Runnable> tasks = new ArrayList<>();
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setThreadFactory(r -> {
+            throw new AssertionError("No thread should be started");
+        });
+        outputQueue.setScheduler(new QueueScheduler() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+
+            @Override
+            public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+                throw new AssertionError("Nothing should wait");
+            }
+        });
+
+        outputQueue.sendLine("test 123");
+        outputQueue.sendLine("456...");
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals("test 123", reader.readLine());
+        assertEquals("456...", reader.readLine());
+    }
+
+    @Test(timeout = 5000)
+    public void testImmediateWriteDoesNotBlockQueueing() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Runnable> tasks = new ArrayList<>();
+        outputQueue.setOutputStream(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        });
+        outputQueue.setScheduler(new QueueScheduler() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+
+            @Override
+            public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+                throw new AssertionError("Nothing should wait");
+            }
+        });
+
+        final Thread sender = new Thread(() -> outputQueue.sendLine("PONG :123",
+                QueuePriority.IMMEDIATE));
+        sender.start();
+        writing.await();
+
+        outputQueue.sendLine("test 123");
+        assertEquals(1, tasks.size());
+        assertEquals(1, outputQueue.queueCount());
+
+        release.countDown();
+        sender.join();
+    }
+
+}
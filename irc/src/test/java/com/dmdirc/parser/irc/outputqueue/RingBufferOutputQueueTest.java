@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RingBufferOutputQueueTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private BufferedReader reader;
+    private BufferedOutputStream outputStream;
+    private RingBufferOutputQueue outputQueue;
+
+    @Before
+    public void setup() throws IOException {
+        PipedInputStream pipeInput = new PipedInputStream();
+        reader = new BufferedReader(new InputStreamReader(pipeInput, StandardCharsets.UTF_8));
+        outputStream = new BufferedOutputStream(new PipedOutputStream(pipeInput));
+        outputQueue = new RingBufferOutputQueue(4, StandardCharsets.UTF_8) {
+            @Override
+            protected long reserve(final byte[] line) {
+                return release.getCount() == 0 ? super.reserve(line) : TimeUnit.MILLISECONDS.toNanos(10);
+            }
+        };
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThrowsIfOutputStreamNotSet() {
+        outputQueue.sendLine("testing", QueuePriority.IMMEDIATE);
+    }
+
+    @Test
+    public void testSendsLinesToOutput() throws IOException {
+        release.countDown();
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("test 123");
+        outputQueue.sendLine("héllo");
+        assertEquals("test 123", reader.readLine());
+        assertEquals("héllo", reader.readLine());
+    }
+
+    @Test
+    public void testDiscarding() throws IOException {
+        release.countDown();
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setDiscarding(true);
+        outputQueue.sendLine("test 123");
+        outputQueue.setDiscarding(false);
+        outputQueue.sendLine("456...");
+        assertEquals("456...", reader.readLine());
+    }
+
+    @Test
+    public void testSendsInPriorityOrder() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("low", QueuePriority.LOW);
+        outputQueue.sendLine("normal 1", QueuePriority.NORMAL);
+        outputQueue.sendLine("high", QueuePriority.HIGH);
+        outputQueue.sendLine("normal 2", QueuePriority.NORMAL);
+        outputQueue.sendLine("immediate", QueuePriority.IMMEDIATE);
+        assertEquals(4, outputQueue.queueCount());
+
+        release.countDown();
+        assertEquals("immediate", reader.readLine());
+        assertEquals("high", reader.readLine());
+        assertEquals("normal 1", reader.readLine());
+        assertEquals("normal 2", reader.readLine());
+        assertEquals("low", reader.readLine());
+    }
+
+    @Test
+    public void testWritesReadyLinesTogether() throws InterruptedException {
+        final AtomicInteger writes = new AtomicInteger();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(final byte[] b, final int off, final int len) {
+                writes.incrementAndGet();
+                super.write(b, off, len);
+            }
+        };
+        outputQueue.setOutputStream(output);
+        outputQueue.sendLine("one");
+        outputQueue.sendLine("two");
+        outputQueue.sendLine("three");
+
+        release.countDown();
+        final long end = System.currentTimeMillis() + 5000;
+        while (outputQueue.queueCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        assertEquals("one\r\ntwo\r\nthree\r\n", new String(output.toByteArray(),
+                StandardCharsets.UTF_8));
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void testCoalescesWaitingLines() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setCoalescer(new CommandCoalescer());
+        outputQueue.sendLine("JOIN #a");
+        outputQueue.sendLine("JOIN #b");
+        outputQueue.sendLine("JOIN #c");
+        outputQueue.sendLine("PART #d");
+
+        release.countDown();
+        assertEquals("JOIN #a,#b,#c", reader.readLine());
+        assertEquals("PART #d", reader.readLine());
+    }
+
+    @Test
+    public void testClearQueue() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("one");
+        outputQueue.sendLine("two", QueuePriority.LOW);
+        outputQueue.clearQueue();
+        assertEquals(0, outputQueue.queueCount());
+
+        release.countDown();
+        outputQueue.setQueueEnabled(true);
+        outputQueue.sendLine("three");
+        assertEquals("three", reader.readLine());
+    }
+
+    @Test
+    public void testIgnoresOutboundEncoder() {
+        outputQueue.setOutboundEncoder(target -> StandardCharsets.UTF_16);
+        assertEquals(StandardCharsets.UTF_8, outputQueue.getCharset("#chan"));
+        assertEquals(9, outputQueue.getWireLength("héllo!"));
+    }
+
+    @Test
+    public void testDisablingQueueSendsWaitingLines() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("one", QueuePriority.LOW);
+        outputQueue.sendLine("two", QueuePriority.HIGH);
+
+        outputQueue.setQueueEnabled(false);
+        assertEquals(0, outputQueue.queueCount());
+        assertEquals("two", reader.readLine());
+        assertEquals("one", reader.readLine());
+    }
+
+    @Test
+    public void testQueuesPastCapacityOnScheduler() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final RingBufferOutputQueue queue = new RingBufferOutputQueue(
+                RingBufferOutputQueue.DEFAULT_CAPACITY, StandardCharsets.UTF_8);
+        queue.setOutputStream(output);
+        queue.setScheduler(new QueueScheduler() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+
+            @Override
+            public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+                throw new AssertionError("Nothing should wait");
+            }
+        });
+
+        final int lines = RingBufferOutputQueue.DEFAULT_CAPACITY + 10;
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            queue.sendLine("line " + i);
+            expected.append("line ").append(i).append("\r\n");
+        }
+        assertEquals(lines, queue.queueCount());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(0, queue.queueCount());
+        assertEquals(expected.toString(), new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSendsDirectlyWhenQueueDisabled() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setQueueEnabled(false);
+        outputQueue.sendLine("test 123");
+        assertEquals(0, outputQueue.queueCount());
+        assertEquals("test 123", reader.readLine());
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketOutputQueueTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private TokenBucketOutputQueue outputQueue;
+
+    @Before
+    public void setup() {
+        outputQueue = new TokenBucketOutputQueue(16, StandardCharsets.UTF_8, clock::get);
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(Duration.ofSeconds(2), outputQueue.getLineCost());
+        assertEquals(Duration.ofSeconds(10), outputQueue.getBurst());
+        assertEquals(Duration.ofSeconds(10), outputQueue.getCredit());
+        assertEquals(Duration.ZERO, outputQueue.getCommandPenalty("PRIVMSG"));
+    }
+
+    @Test
+    public void testBurstThenExactWait() {
+        outputQueue.setByteCost(Duration.ZERO);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, outputQueue.reserve(line("PRIVMSG #chan :hi")));
+        }
+        assertEquals(Duration.ZERO, outputQueue.getCredit());
+        assertEquals(Duration.ofSeconds(2).toNanos(), outputQueue.reserve(line("PRIVMSG #chan :hi")));
+
+        clock.addAndGet(Duration.ofMillis(500).toNanos());
+        assertEquals(Duration.ofMillis(1500).toNanos(), outputQueue.reserve(line("PRIVMSG #chan :hi")));
+
+        clock.addAndGet(Duration.ofMillis(1500).toNanos());
+        assertEquals(0, outputQueue.reserve(line("PRIVMSG #chan :hi")));
+    }
+
+    @Test
+    public void testSchedulerWaitsForCredit() throws IOException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        outputQueue.setOutputStream(output);
+        outputQueue.setByteCost(Duration.ZERO);
+        outputQueue.setScheduler(new QueueScheduler() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+
+            @Override
+            public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+                tasks.add(task);
+                delays.add(unit.toNanos(delay));
+            }
+        });
+
+        for (int i = 0; i < 6; i++) {
+            outputQueue.sendLine("PRIVMSG #chan :" + i);
+        }
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(5, output.toString("UTF-8").split("\r\n").length);
+        assertEquals(Collections.singletonList(Duration.ofSeconds(2).toNanos()), delays);
+
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        tasks.get(1).run();
+        assertTrue(output.toString("UTF-8").endsWith("PRIVMSG #chan :5\r\n"));
+    }
+
+    @Test
+    public void testCreditBuildsUpToBurst() {
+        outputQueue.setByteCost(Duration.ZERO);
+        outputQueue.reserve(line("PING :a"));
+        outputQueue.reserve(line("PING :b"));
+        assertEquals(Duration.ofSeconds(6), outputQueue.getCredit());
+
+        clock.addAndGet(Duration.ofSeconds(3).toNanos());
+        assertEquals(Duration.ofSeconds(9), outputQueue.getCredit());
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertEquals(Duration.ofSeconds(10), outputQueue.getCredit());
+    }
+
+    @Test
+    public void testByteCost() {
+        outputQueue.setLineCost(Duration.ofSeconds(1));
+        outputQueue.setByteCost(Duration.ofMillis(10));
+        // 8 bytes plus the line terminator.
+        assertEquals(Duration.ofMillis(1100).toNanos(), outputQueue.getCost(line("PING :ab")));
+    }
+
+    @Test
+    public void testCommandPenalties() {
+        outputQueue.setLineCost(Duration.ZERO);
+        outputQueue.setByteCost(Duration.ZERO);
+        outputQueue.setCommandPenalty("join", Duration.ofSeconds(3));
+
+        assertEquals(Duration.ofSeconds(3), outputQueue.getCommandPenalty("JOIN"));
+        assertEquals(Duration.ofSeconds(3).toNanos(), outputQueue.getCost(line("JOIN #chan")));
+        assertEquals(Duration.ofSeconds(3).toNanos(), outputQueue.getCost(line("join #chan")));
+        assertEquals(Duration.ofSeconds(3).toNanos(),
+                outputQueue.getCost(line("@label=1 :nick JOIN #chan")));
+        assertEquals(0, outputQueue.getCost(line("JOINED #chan")));
+        assertEquals(0, outputQueue.getCost(line("")));
+
+        outputQueue.setCommandPenalty("JOIN", Duration.ZERO);
+        assertEquals(0, outputQueue.getCost(line("JOIN #chan")));
+    }
+
+    @Test
+    public void testOversizedLineSentWithFullCredit() {
+        outputQueue.setLineCost(Duration.ofSeconds(15));
+        assertEquals(0, outputQueue.reserve(line("PRIVMSG #chan :long")));
+        assertEquals(Duration.ZERO, outputQueue.getCredit());
+    }
+
+    @Test
+    public void testFloodProfile() {
+        outputQueue.setCommandPenalty("WHO", Duration.ofSeconds(1));
+        final FloodProfile profile = new FloodProfile(Duration.ofSeconds(4),
+                Duration.ofSeconds(1), Duration.ZERO)
+                .withCommandPenalty("join", Duration.ofSeconds(1));
+        outputQueue.setFloodProfile(profile);
+
+        assertEquals(Duration.ofSeconds(4), outputQueue.getBurst());
+        assertEquals(Duration.ofSeconds(1), outputQueue.getLineCost());
+        assertEquals(Duration.ZERO, outputQueue.getByteCost());
+        assertEquals(Duration.ofSeconds(1), outputQueue.getCommandPenalty("JOIN"));
+        assertEquals(Duration.ZERO, outputQueue.getCommandPenalty("WHO"));
+        assertEquals(profile, outputQueue.getFloodProfile());
+    }
+
+    @Test
+    public void testUnlimitedFloodProfile() {
+        outputQueue.setFloodProfile(FloodProfile.UNLIMITED);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, outputQueue.reserve(line("PRIVMSG #chan :hello")));
+        }
+    }
+
+    private static byte[] line(final String line) {
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -698,9 +698,11 @@ public class XmppParser extends BaseSocketAwareParser {
         @Override
         public void processPacket(final Packet packet) {
             if (dataOut) {
-                getCallbackManager().publish(
-                        new DataOutEvent(XmppParser.this, LocalDateTime.now(), packet.toXML()));
-            } else {
+                if (isDataHandled(DataOutEvent.class)) {
+                    getCallbackManager().publish(
+                            new DataOutEvent(XmppParser.this, LocalDateTime.now(), packet.toXML()));
+                }
+            } else if (isDataHandled(DataInEvent.class)) {
                 getCallbackManager().publish(
                         new DataInEvent(XmppParser.this, LocalDateTime.now(), packet.toXML()));
             }